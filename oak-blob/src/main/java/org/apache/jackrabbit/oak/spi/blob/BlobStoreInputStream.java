@@ -31,6 +31,7 @@ public class BlobStoreInputStream extends InputStream {
     private final String id;
     private long pos;
     private byte[] oneByteBuff;
+    private long length = -1;
 
     public BlobStoreInputStream(BlobStore store, String id, long pos) {
         this.store = store;
@@ -65,6 +66,27 @@ public class BlobStoreInputStream extends InputStream {
         return oneByteBuff[0] & 0xff;
     }
 
+    /**
+     * Skips by moving the read position, without reading the skipped bytes
+     * from the store.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (length < 0) {
+            try {
+                length = store.getBlobLength(id);
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        long skipped = Math.max(0, Math.min(n, length - pos));
+        pos += skipped;
+        return skipped;
+    }
+
     public static byte[] readFully(BlobStore store, String id) throws IOException {
         int len = (int) store.getBlobLength(id);
         byte[] buff = new byte[len];
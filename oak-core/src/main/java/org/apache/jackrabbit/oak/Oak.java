@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerM
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerObserver;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.scheduleWithFixedDelay;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -54,7 +55,10 @@ import org.apache.jackrabbit.oak.api.ContentRepository;
 import org.apache.jackrabbit.oak.api.ContentSession;
 import org.apache.jackrabbit.oak.api.Root;
 import org.apache.jackrabbit.oak.api.jmx.IndexStatsMBean;
+import org.apache.jackrabbit.oak.api.jmx.OutOfBandReindexMBean;
+import org.apache.jackrabbit.oak.api.jmx.QueryCostFeedbackMBean;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
+import org.apache.jackrabbit.oak.api.jmx.QueryStatsMBean;
 import org.apache.jackrabbit.oak.api.jmx.RepositoryManagementMBean;
 import org.apache.jackrabbit.oak.core.ContentRepositoryImpl;
 import org.apache.jackrabbit.oak.management.RepositoryManager;
@@ -64,11 +68,14 @@ import org.apache.jackrabbit.oak.plugins.index.CompositeIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.OutOfBandReindex;
 import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
 import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounterMBean;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindex;
 import org.apache.jackrabbit.oak.plugins.index.property.jmx.PropertyIndexAsyncReindexMBean;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.observation.ChangeSetCache;
+import org.apache.jackrabbit.oak.plugins.observation.CheckpointJournalProvider;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.spi.commit.CommitHook;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
@@ -303,6 +310,10 @@ public class Oak {
      */
     private boolean asyncIndexing = false;
 
+    private File observationJournalDirectory;
+
+    private int observationJournalMaxCheckpoints;
+
     public Oak(NodeStore store) {
         this.store = checkNotNull(store);
     }
@@ -505,6 +516,24 @@ public class Oak {
         return this;
     }
 
+    /**
+     * Enable journaling of the content changes that don't fit into the queues
+     * of observation listeners. Instead of merging such changes, they are kept
+     * as checkpoints in an append-only journal file per listener.
+     *
+     * @param directory       directory for the journal files
+     * @param maxCheckpoints  maximum number of checkpoints retained per listener.
+     *                        Further changes are merged once this limit is reached.
+     * @return this builder
+     * @see CheckpointJournalProvider
+     */
+    @Nonnull
+    public Oak withObservationJournal(@Nonnull File directory, int maxCheckpoints) {
+        this.observationJournalDirectory = checkNotNull(directory);
+        this.observationJournalMaxCheckpoints = maxCheckpoints;
+        return this;
+    }
+
     @Nonnull
     public Whiteboard getWhiteboard() {
         return this.whiteboard;
@@ -513,6 +542,13 @@ public class Oak {
     public ContentRepository createContentRepository() {
         final List<Registration> regs = Lists.newArrayList();
         regs.add(whiteboard.register(Executor.class, getExecutor(), Collections.emptyMap()));
+        regs.add(whiteboard.register(ChangeSetCache.class, new ChangeSetCache(), Collections.emptyMap()));
+        if (observationJournalDirectory != null) {
+            regs.add(whiteboard.register(CheckpointJournalProvider.class,
+                    new CheckpointJournalProvider(store, observationJournalDirectory,
+                            observationJournalMaxCheckpoints, getExecutor()),
+                    Collections.emptyMap()));
+        }
 
         IndexEditorProvider indexEditors = CompositeIndexEditorProvider.compose(indexEditorProviders);
         OakInitializer.initialize(store, new CompositeInitializer(initializers), indexEditors);
@@ -541,6 +577,10 @@ public class Oak {
                     PropertyIndexAsyncReindexMBean.class, asyncPI,
                     PropertyIndexAsyncReindexMBean.TYPE, name));
         }
+
+        regs.add(registerMBean(whiteboard, OutOfBandReindexMBean.class,
+                new OutOfBandReindex(store, indexEditors, getExecutor()),
+                OutOfBandReindexMBean.TYPE, "Out-of-band reindex"));
         
         regs.add(registerMBean(whiteboard, NodeCounterMBean.class,
                 new NodeCounter(store), NodeCounterMBean.TYPE, "nodeCounter"));
@@ -548,6 +588,12 @@ public class Oak {
         regs.add(registerMBean(whiteboard, QueryEngineSettingsMBean.class,
                 queryEngineSettings, QueryEngineSettingsMBean.TYPE, "settings"));
 
+        regs.add(registerMBean(whiteboard, QueryStatsMBean.class,
+                queryEngineSettings.getQueryStats(), QueryStatsMBean.TYPE, "Oak Query Statistics"));
+
+        regs.add(registerMBean(whiteboard, QueryCostFeedbackMBean.class,
+                queryEngineSettings.getCostFeedback(), QueryCostFeedbackMBean.TYPE, "Oak Query Cost Feedback"));
+
         // FIXME: OAK-810 move to proper workspace initialization
         // initialize default workspace
         Iterable<WorkspaceInitializer> workspaceInitializers =
@@ -89,4 +89,35 @@ public interface QueryEngine {
             Map<String, ? extends PropertyValue> bindings,
             Map<String, String> mappings) throws ParseException;
 
+    /**
+     * Execute a query using keyset pagination, and get the result. Instead of
+     * skipping a number of rows, the result starts with the first row that
+     * sorts after the given position, which is the "order by" values and the
+     * path of the last row of the previous page. Rows with the same "order
+     * by" values are ordered by path. This allows indexes that return rows in
+     * the requested order to seek to the position, so that reading a page
+     * does not get slower the further down the result it is.
+     * <p>
+     * Keyset pagination is only supported for queries with one selector.
+     *
+     * @param statement the query statement
+     * @param language the language
+     * @param limit the maximum result set size (may not be negative)
+     * @param keysetValues the "order by" values of the last row of the
+     *            previous page (one entry per "order by" expression, entries
+     *            may be null), or null to get the first page
+     * @param keysetPath the path of the last row of the previous page (may
+     *            be null when getting the first page)
+     * @param bindings the bind variable value bindings
+     * @param mappings namespace prefix mappings
+     * @return the result
+     * @throws ParseException if the statement could not be parsed
+     * @throws IllegalArgumentException if there was an error executing the query
+     */
+    Result executeQuery(
+            String statement, String language, long limit,
+            PropertyValue[] keysetValues, String keysetPath,
+            Map<String, ? extends PropertyValue> bindings,
+            Map<String, String> mappings) throws ParseException;
+
 }
@@ -59,4 +59,58 @@ public interface Result {
      */
     long getSize();
 
+    /**
+     * Count the rows, without returning them.
+     * <p>
+     * If an approximation is sufficient, and the index can count the entries
+     * that match the conditions, the rows are not read at all. Such a count
+     * does not take access rights into account (and possibly not all
+     * conditions), and the index may only estimate it, so it is marked as
+     * not exact. Otherwise, the rows are read and checked as usual (including
+     * access rights), but are not returned, and the count is exact.
+     *
+     * @param exact whether an exact count is required
+     * @return the count
+     */
+    Count getCount(boolean exact);
+
+    /**
+     * The number of rows of a result, and whether it is exact.
+     */
+    final class Count {
+
+        private final long value;
+        private final boolean exact;
+
+        public Count(long value, boolean exact) {
+            this.value = value;
+            this.exact = exact;
+        }
+
+        /**
+         * Get the number of rows.
+         *
+         * @return the number of rows
+         */
+        public long getValue() {
+            return value;
+        }
+
+        /**
+         * Whether the count is exact (the rows were read and access rights
+         * were checked), or an approximation.
+         *
+         * @return true if exact
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        @Override
+        public String toString() {
+            return (exact ? "" : "~") + value;
+        }
+
+    }
+
 }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.api.jmx;
+
+/**
+ * MBean complementing the {@code EventListenerMBean} of an observation
+ * listener with statistics about how its commits are filtered and how far
+ * it lags behind. Commits are first checked against a change set shared by
+ * all listeners and only commits that pass this check are diffed for
+ * generating events.
+ */
+public interface EventListenerFilterMBean {
+    String TYPE = "EventListenerFilter";
+
+    /**
+     * @return the number of commits seen by the listener
+     */
+    long getCommitCount();
+
+    /**
+     * @return the number of commits skipped by checking the shared change
+     *         set, without generating events
+     */
+    long getSkippedCommitCount();
+
+    /**
+     * Get the estimated content diff time saved by skipping commits: the sum
+     * of the time it took to compute the shared change sets of the skipped
+     * commits.
+     *
+     * @return the time saved in milliseconds
+     */
+    long getDiffTimeSaved();
+
+    /**
+     * @return the time spent checking commits against the shared change set,
+     *         in milliseconds
+     */
+    long getPrefilterTime();
+
+    /**
+     * @return the time spent generating and filtering events, in milliseconds
+     */
+    long getFilterTime();
+
+    /**
+     * @return the number of revisions not yet processed by the listener,
+     *         including the ones in its journal
+     */
+    int getRevisionLag();
+
+    /**
+     * @return the age in seconds of the oldest revision not yet processed
+     *         by the listener
+     */
+    long getLagSeconds();
+
+}
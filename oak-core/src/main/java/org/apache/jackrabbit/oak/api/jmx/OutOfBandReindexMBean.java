@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.jackrabbit.oak.api.jmx;
+
+import javax.annotation.Nonnull;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * MBean for rebuilding a single index out-of-band: the new index content is
+ * built from a checkpoint in a staging location, caught up with the changes
+ * committed in the meantime and then atomically swapped into the index
+ * definition. The existing index content keeps serving queries until then.
+ */
+public interface OutOfBandReindexMBean {
+
+    String TYPE = "OutOfBandReindex";
+
+    String STATE_IDLE = "idle";
+
+    String STATE_INDEXING = "indexing";
+
+    String STATE_CATCHING_UP = "catching up";
+
+    String STATE_SWITCHING = "switching";
+
+    String STATE_DONE = "done";
+
+    String STATE_FAILED = "failed";
+
+    /**
+     * Initiate the out-of-band reindexing of the index definition at the
+     * given path, unless a reindex operation is already running.
+     *
+     * @param indexPath the path of the index definition, for example
+     *            {@code /oak:index/uuid}
+     * @return the status of the operation right after it was initiated
+     */
+    @Nonnull
+    CompositeData startReindex(@Nonnull String indexPath);
+
+    /**
+     * Out-of-band reindexing status
+     *
+     * @return the status of the ongoing operation or if none the terminal
+     *         status of the last operation or <em>Status not available</em> if
+     *         none.
+     */
+    @Nonnull
+    CompositeData getReindexStatus();
+
+    /**
+     * Cancels the running reindex operation. The staged index content is
+     * discarded and the existing index content is left untouched.
+     */
+    void cancel();
+
+    /**
+     * Returns the state of the current or last reindex operation
+     *
+     * @return one of {@value #STATE_IDLE}, {@value #STATE_INDEXING},
+     *         {@value #STATE_CATCHING_UP}, {@value #STATE_SWITCHING},
+     *         {@value #STATE_DONE} or {@value #STATE_FAILED}
+     */
+    @Nonnull
+    String getState();
+
+    /**
+     * @return the path of the index definition being reindexed, or
+     *         {@code ""} if no reindex operation was started yet
+     */
+    @Nonnull
+    String getIndexPath();
+
+    /**
+     * @return the number of nodes traversed by the current or last reindex
+     *         operation
+     */
+    long getTraversedNodes();
+
+    /**
+     * @return the number of index updates done by the current or last reindex
+     *         operation
+     */
+    long getUpdates();
+
+    /**
+     * Returns how far the staged index content lags behind the head revision,
+     * measured from the time the checkpoint it was built from was taken.
+     *
+     * @return the catch-up lag in milliseconds, or -1 if no reindex operation
+     *         is running
+     */
+    long getCatchUpLag();
+
+    /**
+     * @return the number of catch-up rounds done by the current or last
+     *         reindex operation
+     */
+    int getCatchUpRounds();
+
+    /**
+     * @return the delay in milliseconds applied after every 1000 traversed
+     *         nodes
+     */
+    int getThrottle();
+
+    /**
+     * Sets the delay in milliseconds applied after every 1000 traversed nodes,
+     * to limit the load the reindex operation puts on the repository. The
+     * final switch-over is never throttled.
+     *
+     * @param throttle the delay in milliseconds, 0 to disable throttling
+     */
+    void setThrottle(int throttle);
+
+    /**
+     * @return the lifetime in milliseconds of the checkpoints the index
+     *         content is built from
+     */
+    long getCheckpointLifetime();
+
+    /**
+     * Sets the lifetime in milliseconds of the checkpoints the index content
+     * is built from, starting with the next checkpoint taken. The traversal
+     * of a checkpoint fails once its lifetime is over, so it must be longer
+     * than the time it takes to traverse the repository.
+     *
+     * @param lifetime the checkpoint lifetime in milliseconds
+     */
+    void setCheckpointLifetime(long lifetime);
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.api.jmx;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean for the cost correction factors the query engine learns by comparing
+ * the estimated with the actual number of rows read from an index.
+ */
+public interface QueryCostFeedbackMBean {
+    String TYPE = "QueryCostFeedback";
+
+    /**
+     * Get the learned correction factors, one row per index definition and
+     * filter shape (the restricted properties and the kind of the
+     * restrictions).
+     *
+     * @return the correction factors
+     */
+    TabularData getCorrectionFactors();
+
+    /**
+     * Remove all learned correction factors.
+     */
+    void resetCorrectionFactors();
+
+    /**
+     * Remove the learned correction factors of the given index.
+     *
+     * @param indexName the index name (type), or the plan name (the path of
+     *            the index definition)
+     */
+    void resetCorrectionFactors(String indexName);
+
+    /**
+     * Whether the correction factors are learned and applied to the cost
+     * estimates.
+     *
+     * @return true if enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable the cost feedback. It is disabled by default.
+     *
+     * @param enabled the new value
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Get the weight of a new observation, between 0 and 1. The weight of
+     * older observations decays by (1 - weight) on each new observation.
+     *
+     * @return the weight
+     */
+    double getObservationWeight();
+
+    /**
+     * Change the weight of a new observation.
+     *
+     * @param weight the new value, between 0 and 1
+     */
+    void setObservationWeight(double weight);
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.api.jmx;
+
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean for query execution statistics: per (normalized) statement counts,
+ * timings and number of rows, and a list of the slowest query executions.
+ */
+public interface QueryStatsMBean {
+    String TYPE = "QueryStats";
+
+    /**
+     * Get the statistics of each query statement. Literals in the statement
+     * are replaced with "?", so that queries that only differ in literal
+     * values are counted together.
+     *
+     * @return the statistics, one row per normalized statement
+     */
+    TabularData getQueryStats();
+
+    /**
+     * Get the slowest query executions since the statistics were reset, with
+     * the number of rows read and returned, the index used, and the plan.
+     *
+     * @return the slowest query executions
+     */
+    TabularData getSlowQueries();
+
+    /**
+     * Remove all statistics and the list of slow queries.
+     */
+    void resetStats();
+
+    /**
+     * Whether the statistics are collected.
+     *
+     * @return true if enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable collecting the statistics.
+     *
+     * @param enabled the new value
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Get the sampling rate: 1 means every query execution is measured, 10
+     * means every tenth execution is measured. Executions are always
+     * counted.
+     *
+     * @return the sampling rate
+     */
+    int getSamplingRate();
+
+    /**
+     * Change the sampling rate.
+     *
+     * @param samplingRate the new value (at least 1)
+     */
+    void setSamplingRate(int samplingRate);
+
+    /**
+     * Get the duration in milliseconds above which a measured query
+     * execution is logged (if logging is enabled).
+     *
+     * @return the duration in milliseconds
+     */
+    long getSlowQueryLogLimit();
+
+    /**
+     * Change the duration above which query executions are logged.
+     *
+     * @param millis the new value in milliseconds
+     */
+    void setSlowQueryLogLimit(long millis);
+
+    /**
+     * Whether slow query executions are logged.
+     *
+     * @return true if logged
+     */
+    boolean isLogSlowQueries();
+
+    /**
+     * Enable or disable logging slow query executions.
+     *
+     * @param logSlowQueries the new value
+     */
+    void setLogSlowQueries(boolean logSlowQueries);
+
+}
@@ -50,6 +50,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -347,6 +350,20 @@ public final class DocumentNodeStore
 
     private final Executor executor;
 
+    /**
+     * Single daemon thread delivering the changes of the {@link #dispatcher}
+     * to the observers, so that commits do not wait for observers.
+     */
+    private final ExecutorService dispatchExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@Nonnull Runnable r) {
+                    Thread t = new Thread(r, "DocumentNodeStore change dispatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     private final LastRevRecoveryAgent lastRevRecoveryAgent;
 
     private final boolean disableBranches;
@@ -438,7 +455,7 @@ public final class DocumentNodeStore
         }
         getRevisionComparator().add(headRevision, Revision.newRevision(0));
 
-        dispatcher = new ChangeDispatcher(getRoot());
+        dispatcher = new ChangeDispatcher(getRoot(), dispatchExecutor);
         commitQueue = new CommitQueue(this, dispatcher);
         batchCommitQueue = new BatchCommitQueue(store, revisionComparator);
         backgroundReadThread = new Thread(
@@ -499,6 +516,14 @@ public final class DocumentNodeStore
         // the background thread stopped
         internalRunBackgroundUpdateOperations();
 
+        // let observers catch up before the document store goes away
+        dispatchExecutor.shutdown();
+        try {
+            dispatchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+
         if (leaseUpdateThread != null) {
             try {
                 leaseUpdateThread.join();
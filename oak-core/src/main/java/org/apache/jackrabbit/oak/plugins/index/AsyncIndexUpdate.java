@@ -90,7 +90,7 @@ public class AsyncIndexUpdate implements Runnable {
      * timed out. Another node in cluster would wait for timeout before
      * taking over a running job
      */
-    private static final long ASYNC_TIMEOUT;
+    static final long ASYNC_TIMEOUT;
 
     static {
         int value = 15;
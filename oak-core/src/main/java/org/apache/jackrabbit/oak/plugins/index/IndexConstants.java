@@ -60,5 +60,12 @@ public interface IndexConstants {
      */
     String DECLARING_NODE_TYPES = "declaringNodeTypes";
 
+    /**
+     * Number of buckets a (non unique) property index spreads the entries of
+     * each key over, to avoid conflicts between concurrent writers indexing
+     * the same value. Changing it requires a reindex.
+     */
+    String SHARDS_PROPERTY_NAME = "shards";
+
     String INDEX_CONTENT_NODE_NAME = ":index";
 }
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.index;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static org.apache.jackrabbit.oak.api.Type.BOOLEAN;
@@ -87,6 +88,12 @@ public class IndexUpdate implements Editor {
      */
     private final Map<String, Editor> reindex = new HashMap<String, Editor>();
 
+    /**
+     * Property indexes that are reindexed in parallel, only set for the root
+     * updater when enabled.
+     */
+    private ParallelReindex parallelReindex;
+
     private MissingIndexProviderStrategy missingProvider = new MissingIndexProviderStrategy();
 
     public IndexUpdate(
@@ -98,6 +105,7 @@ public class IndexUpdate implements Editor {
         this.path = "/";
         this.rootState = new IndexUpdateRootState(provider, async, root, updateCallback);
         this.builder = checkNotNull(builder);
+        withReindexThreads(ParallelReindex.DEFAULT_THREADS);
     }
 
     private IndexUpdate(IndexUpdate parent, String name) {
@@ -105,6 +113,7 @@ public class IndexUpdate implements Editor {
         this.name = name;
         this.rootState = parent.rootState;
         this.builder = parent.builder.getChildNode(checkNotNull(name));
+        this.parallelReindex = null;
     }
 
     @Override
@@ -117,6 +126,12 @@ public class IndexUpdate implements Editor {
                     reindex.keySet());
             rootState.reindexedIndexes.addAll(reindex.keySet());
         }
+        if (parallelReindex != null && !parallelReindex.isEmpty()) {
+            log.info("Reindexing will be performed in parallel for following indexes: {}",
+                    parallelReindex.getPaths());
+            rootState.reindexedIndexes.addAll(parallelReindex.getPaths());
+            parallelReindex.run(after);
+        }
 
         // no-op when reindex is empty
         CommitFailedException exception = process(
@@ -166,8 +181,10 @@ public class IndexUpdate implements Editor {
                 }
                 boolean shouldReindex = shouldReindex(definition,
                         before, name);
+                IndexUpdateCallback callback =
+                        rootState.newCallback(getIndexPath(getPath(), name), shouldReindex);
                 Editor editor = rootState.provider.getIndexEditor(type, definition, rootState.root,
-                        rootState.newCallback(getIndexPath(getPath(), name), shouldReindex));
+                        callback);
                 if (editor == null) {
                     missingProvider.onMissingIndex(type, definition);
                 } else if (shouldReindex) {
@@ -186,7 +203,12 @@ public class IndexUpdate implements Editor {
                                 definition.getChildNode(rm).remove();
                             }
                         }
-                        reindex.put(concat(getPath(), INDEX_DEFINITIONS_NAME, name), editor);
+                        String indexPath = concat(getPath(), INDEX_DEFINITIONS_NAME, name);
+                        if (parallelReindex != null && ParallelReindex.supports(type)) {
+                            parallelReindex.add(indexPath, type, definition, editor, callback);
+                        } else {
+                            reindex.put(indexPath, editor);
+                        }
                     }
                 } else {
                     editors.add(editor);
@@ -329,6 +351,25 @@ public class IndexUpdate implements Editor {
         return this;
     }
 
+    /**
+     * Sets the number of threads used for reindexing property indexes,
+     * {@code 1} disables parallel reindexing. Only applies to the root
+     * updater, before it is entered.
+     */
+    public IndexUpdate withReindexThreads(int threads) {
+        checkState(parent == null, "Only supported for the root updater");
+        this.parallelReindex = threads > 1
+                ? new ParallelReindex(rootState.provider, rootState.root, threads) : null;
+        return this;
+    }
+
+    /**
+     * @return the paths of the indexes reindexed by this update
+     */
+    Set<String> getReindexedIndexes() {
+        return rootState.reindexedIndexes;
+    }
+
     private static final class IndexUpdateRootState {
         final IndexEditorProvider provider;
         final String async;
@@ -40,21 +40,35 @@ public class IndexUpdateProvider implements EditorProvider {
 
     private final String async;
 
+    private final int reindexThreads;
+
     public IndexUpdateProvider(IndexEditorProvider provider) {
         this(provider, null);
     }
 
     public IndexUpdateProvider(
             @Nonnull IndexEditorProvider provider, @CheckForNull String async) {
+        this(provider, async, ParallelReindex.DEFAULT_THREADS);
+    }
+
+    /**
+     * @param reindexThreads the number of threads used for reindexing
+     *            property indexes, {@code 1} disables parallel reindexing
+     */
+    public IndexUpdateProvider(
+            @Nonnull IndexEditorProvider provider, @CheckForNull String async,
+            int reindexThreads) {
         this.provider = provider;
         this.async = async;
+        this.reindexThreads = reindexThreads;
     }
 
     @Override @CheckForNull
     public Editor getRootEditor(
             NodeState before, NodeState after,
             NodeBuilder builder, CommitInfo info) {
-        return VisibleEditor.wrap(new IndexUpdate(provider, async, after, builder, NOOP_CALLBACK));
+        return VisibleEditor.wrap(new IndexUpdate(provider, async, after, builder, NOOP_CALLBACK)
+                .withReindexThreads(reindexThreads));
     }
 
 }
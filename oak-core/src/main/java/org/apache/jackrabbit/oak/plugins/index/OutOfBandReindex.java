@@ -0,0 +1,743 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static org.apache.jackrabbit.oak.api.Type.LONG;
+import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getName;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
+import static org.apache.jackrabbit.oak.management.ManagementOperation.Status.formatTime;
+import static org.apache.jackrabbit.oak.management.ManagementOperation.done;
+import static org.apache.jackrabbit.oak.management.ManagementOperation.newManagementOperation;
+import static org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate.ASYNC;
+import static org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate.ASYNC_TIMEOUT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_COUNT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.apache.jackrabbit.oak.spi.state.NodeStateUtils.isHidden;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.management.openmbean.CompositeData;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.jmx.OutOfBandReindexMBean;
+import org.apache.jackrabbit.oak.management.ManagementOperation;
+import org.apache.jackrabbit.oak.spi.commit.CommitHook;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.CompositeHook;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.commit.EditorDiff;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.commit.VisibleEditor;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default implementation of {@link OutOfBandReindexMBean}. The index content
+ * is built from a checkpoint into a copy of the index definition below the
+ * hidden {@value #STAGING} node, without holding the commit hook of the
+ * change that triggered it or an async index lane. The staged content is then
+ * caught up by diffing from that checkpoint to newer ones, in the same way
+ * {@link AsyncIndexUpdate} does, until it lags less than the maximum lag,
+ * {@code oak.reindex.outOfBand.maxLag} milliseconds by default, behind the
+ * head. The remaining changes are indexed by the commit hook that swaps the
+ * staged content into the index definition, so the switch-over is atomic.
+ * The reindex operation fails if the staged content does not catch up within
+ * {@value #MAX_CATCH_UP_ROUNDS} rounds.
+ * <p>
+ * The checkpoints are taken with a lifetime of
+ * {@code oak.reindex.outOfBand.checkpointLifetime} milliseconds by default,
+ * which must cover the whole traversal, as a checkpoint cannot be renewed. A
+ * traversal outliving its checkpoint fails rather than reading content which
+ * may have been garbage collected.
+ * <p>
+ * The index is rebuilt up to the head revision. For an async index, the lease
+ * of its lane is taken once the staged content caught up, waiting for a
+ * running lane update to complete, and released by the switch-over, so the
+ * lane never writes to the index content while it is swapped. The changes
+ * between the lane checkpoint and the switch-over are indexed again by the
+ * next run of the lane.
+ */
+public class OutOfBandReindex implements OutOfBandReindexMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(OutOfBandReindex.class);
+
+    public static final String OP_NAME = "Out-of-band reindex";
+
+    /**
+     * Name of the hidden node below which the new index content is staged, at
+     * the same relative path as the index definition.
+     */
+    static final String STAGING = ":reindex";
+
+    private static final String TYPE = "Reindex";
+
+    /**
+     * Default catch-up lag in milliseconds below which the staged content is
+     * switched over.
+     */
+    static final long DEFAULT_MAX_LAG = Long.getLong("oak.reindex.outOfBand.maxLag", 10000);
+
+    /**
+     * Maximum number of catch-up rounds, after which the reindex operation
+     * fails if the staged content still lags behind by more than the maximum
+     * lag.
+     */
+    static final int MAX_CATCH_UP_ROUNDS = 10;
+
+    private static final int THROTTLE_BATCH = 1000;
+
+    /**
+     * Interval in milliseconds at which the lease of a running async lane is
+     * checked.
+     */
+    private static final long LEASE_POLL_INTERVAL = 1000;
+
+    private final NodeStore store;
+
+    private final IndexEditorProvider provider;
+
+    private final Executor executor;
+
+    private final long maxLag;
+
+    private final IndexUpdateCallback callback = new IndexUpdateCallback() {
+        @Override
+        public void indexUpdate() {
+            updates.incrementAndGet();
+        }
+    };
+
+    private ManagementOperation<String> op = done(OP_NAME, "");
+
+    private volatile String state = STATE_IDLE;
+
+    private volatile String indexPath = "";
+
+    private final AtomicLong traversed = new AtomicLong();
+
+    private final AtomicLong updates = new AtomicLong();
+
+    /** Time at which the checkpoint the staged content reflects was taken */
+    private volatile long baseTime;
+
+    private volatile int rounds;
+
+    private volatile boolean cancelled;
+
+    private volatile int throttle = Integer.getInteger("oak.reindex.outOfBand.throttle", 0);
+
+    private volatile long checkpointLifetime = Long.getLong(
+            "oak.reindex.outOfBand.checkpointLifetime", TimeUnit.DAYS.toMillis(7));
+
+    /** Expiration time of the checkpoint the staged content is built from */
+    private volatile long expires;
+
+    /** Name of the lease property of the async lane of the index, if any */
+    private String leaseName;
+
+    /** Expiration time of the async lane lease held, 0 if none */
+    private long lease;
+
+    /**
+     * @param store the node store
+     * @param provider provider of the editors for rebuilding the index content
+     * @param executor executor for running the reindex task
+     */
+    public OutOfBandReindex(@Nonnull NodeStore store,
+            @Nonnull IndexEditorProvider provider, @Nonnull Executor executor) {
+        this(store, provider, executor, DEFAULT_MAX_LAG);
+    }
+
+    /**
+     * @param store the node store
+     * @param provider provider of the editors for rebuilding the index content
+     * @param executor executor for running the reindex task
+     * @param maxLag catch-up lag in milliseconds below which the staged
+     *            content is switched over
+     */
+    public OutOfBandReindex(@Nonnull NodeStore store,
+            @Nonnull IndexEditorProvider provider, @Nonnull Executor executor,
+            long maxLag) {
+        this.store = checkNotNull(store);
+        this.provider = checkNotNull(provider);
+        this.executor = checkNotNull(executor);
+        this.maxLag = maxLag;
+    }
+
+    @Nonnull
+    @Override
+    public synchronized CompositeData startReindex(@Nonnull final String path) {
+        checkNotNull(path);
+        if (op.isDone()) {
+            indexPath = path;
+            traversed.set(0);
+            updates.set(0);
+            rounds = 0;
+            cancelled = false;
+            baseTime = currentTimeMillis();
+            state = STATE_INDEXING;
+            op = newManagementOperation(OP_NAME, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    long t0 = nanoTime();
+                    try {
+                        reindex(path);
+                    } catch (CommitFailedException e) {
+                        state = STATE_FAILED;
+                        discardStaging();
+                        throw e;
+                    } catch (RuntimeException e) {
+                        state = STATE_FAILED;
+                        discardStaging();
+                        throw e;
+                    }
+                    state = STATE_DONE;
+                    return "Reindex of " + path + " completed in " + formatTime(nanoTime() - t0);
+                }
+            });
+            executor.execute(op);
+        }
+        return getReindexStatus();
+    }
+
+    @Nonnull
+    @Override
+    public CompositeData getReindexStatus() {
+        return op.getStatus().toCompositeData();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Nonnull
+    @Override
+    public String getState() {
+        return state;
+    }
+
+    @Nonnull
+    @Override
+    public String getIndexPath() {
+        return indexPath;
+    }
+
+    @Override
+    public long getTraversedNodes() {
+        return traversed.get();
+    }
+
+    @Override
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    @Override
+    public long getCatchUpLag() {
+        String s = state;
+        if (STATE_INDEXING.equals(s) || STATE_CATCHING_UP.equals(s)
+                || STATE_SWITCHING.equals(s)) {
+            return currentTimeMillis() - baseTime;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getCatchUpRounds() {
+        return rounds;
+    }
+
+    @Override
+    public int getThrottle() {
+        return throttle;
+    }
+
+    @Override
+    public void setThrottle(int throttle) {
+        this.throttle = Math.max(0, throttle);
+    }
+
+    @Override
+    public long getCheckpointLifetime() {
+        return checkpointLifetime;
+    }
+
+    @Override
+    public void setCheckpointLifetime(long lifetime) {
+        this.checkpointLifetime = Math.max(0, lifetime);
+    }
+
+    private void reindex(String path) throws CommitFailedException {
+        NodeState definition = getNode(store.getRoot(), path);
+        String type = definition.getString(TYPE_PROPERTY_NAME);
+        if (type == null
+                || !INDEX_DEFINITIONS_NAME.equals(getName(getParentPath(path)))) {
+            throw new CommitFailedException(TYPE, 1,
+                    "No index definition found at " + path);
+        }
+
+        leaseName = null;
+        lease = 0;
+        long lifetime = checkpointLifetime;
+        baseTime = currentTimeMillis();
+        expires = baseTime + lifetime;
+        String checkpoint = checkpoint(path, lifetime);
+        try {
+            NodeState base = retrieve(checkpoint);
+            log.info("Out-of-band reindexing of {} started from checkpoint {}",
+                    path, checkpoint);
+
+            // build the new index content from the checkpoint. The staging
+            // definition is persisted first, as editors read the definition
+            // from the base state of the builder
+            NodeState original = getNode(base, path);
+            NodeBuilder builder = store.getRoot().builder();
+            stage(builder, path, original);
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            builder = store.getRoot().builder();
+            index(type, getNode(builder.getChildNode(STAGING), path), MISSING_NODE, base, true);
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+            // catch up with the changes committed in the meantime. The lane
+            // lease of an async index is taken once caught up, after which
+            // the staged content may have to catch up again
+            state = STATE_CATCHING_UP;
+            String lane = original.getString(ASYNC_PROPERTY_NAME);
+            while (true) {
+                if (currentTimeMillis() - baseTime <= maxLag) {
+                    if (lane == null || lease != 0) {
+                        break;
+                    }
+                    acquireLease(lane);
+                    continue;
+                }
+                if (rounds >= MAX_CATCH_UP_ROUNDS) {
+                    throw new CommitFailedException(TYPE, 6,
+                            "Unable to catch up with the changes to " + path
+                            + " within " + MAX_CATCH_UP_ROUNDS + " rounds");
+                }
+                long time = currentTimeMillis();
+                lifetime = checkpointLifetime;
+                String next = checkpoint(path, lifetime);
+                NodeState head;
+                try {
+                    head = retrieve(next);
+                    builder = store.getRoot().builder();
+                    index(type, getNode(builder.getChildNode(STAGING), path), base, head, true);
+                    long renewed = currentTimeMillis() + 2 * ASYNC_TIMEOUT;
+                    store.merge(builder, leaseHook(renewed), CommitInfo.EMPTY);
+                    if (lease != 0) {
+                        lease = renewed;
+                    }
+                } catch (CommitFailedException e) {
+                    store.release(next);
+                    throw e;
+                }
+                store.release(checkpoint);
+                checkpoint = next;
+                base = head;
+                baseTime = time;
+                expires = time + lifetime;
+                rounds++;
+                log.info("Out-of-band reindexing of {} caught up to checkpoint {} in round {}",
+                        path, checkpoint, rounds);
+            }
+
+            state = STATE_SWITCHING;
+            switchOver(type, path, original, base);
+            log.info("Out-of-band reindexing of {} completed: {} nodes traversed, {} index updates",
+                    path, traversed.get(), updates.get());
+        } finally {
+            if (lease != 0) {
+                releaseLease();
+            }
+            if (!store.release(checkpoint)) {
+                log.debug("Unable to release checkpoint {}", checkpoint);
+            }
+        }
+    }
+
+    /**
+     * Takes the lease of the given async lane, waiting for a running update
+     * of the lane to complete. The lane skips its runs while the lease is
+     * held.
+     */
+    private void acquireLease(String lane) throws CommitFailedException {
+        leaseName = lane + "-lease";
+        while (true) {
+            long now = currentTimeMillis();
+            long held = store.getRoot().getChildNode(ASYNC).getLong(leaseName);
+            if (held <= now) {
+                long next = now + 2 * ASYNC_TIMEOUT;
+                NodeBuilder builder = store.getRoot().builder();
+                builder.child(ASYNC).setProperty(leaseName, next);
+                try {
+                    store.merge(builder, new LeaseHook(leaseName, held, next),
+                            CommitInfo.EMPTY);
+                    lease = next;
+                    return;
+                } catch (CommitFailedException e) {
+                    if (!e.isOfType(TYPE) || e.getCode() != 7) {
+                        throw e;
+                    }
+                }
+            }
+            log.debug("Waiting for the running {} index update to complete"
+                    + " before switching over {}", lane, indexPath);
+            if (cancelled) {
+                throw new CommitFailedException(TYPE, 5, "Reindex cancelled");
+            }
+            sleep(LEASE_POLL_INTERVAL);
+        }
+    }
+
+    private void releaseLease() {
+        try {
+            store.merge(store.getRoot().builder(), leaseHook(0), CommitInfo.EMPTY);
+            lease = 0;
+        } catch (CommitFailedException e) {
+            log.warn("Unable to release the lease {} taken for reindexing {}",
+                    leaseName, indexPath, e);
+        }
+    }
+
+    /**
+     * Returns the hook checking that the lane lease, if held, was not taken
+     * over and setting it to the given expiration time, or removing it if
+     * {@code 0}.
+     */
+    private CommitHook leaseHook(long next) {
+        if (lease != 0) {
+            return new LeaseHook(leaseName, lease, next);
+        } else {
+            return EmptyHook.INSTANCE;
+        }
+    }
+
+    /**
+     * Indexes the changes committed after {@code base} and swaps the staged
+     * index content into the index definition, all within the commit hook of
+     * a single merge. The definition must not have changed since
+     * {@code original} was staged. Editors may have rewritten the staged
+     * definition, for example to upgrade an old definition format, so the
+     * visible part of the staged definition is copied as well.
+     */
+    private void switchOver(final String type, final String path,
+            final NodeState original, final NodeState base) throws CommitFailedException {
+        NodeBuilder builder = store.getRoot().builder();
+        store.merge(builder, new CompositeHook(new CommitHook() {
+            @Override @Nonnull
+            public NodeState processCommit(
+                    NodeState before, NodeState after, CommitInfo info)
+                    throws CommitFailedException {
+                NodeBuilder root = after.builder();
+                NodeBuilder staging = getNode(root.getChildNode(STAGING), path);
+                index(type, staging, base, after, false);
+
+                NodeBuilder definition = getNode(root, path);
+                if (!definition.exists() || !visibleDefinition(definition.getNodeState())
+                        .equals(visibleDefinition(original))) {
+                    throw new CommitFailedException(TYPE, 2,
+                            "Index definition " + path + " changed while reindexing");
+                }
+                for (String name : Lists.newArrayList(definition.getChildNodeNames())) {
+                    definition.getChildNode(name).remove();
+                }
+                for (PropertyState property : Lists.newArrayList(definition.getProperties())) {
+                    if (!isReindexProperty(property.getName())) {
+                        definition.removeProperty(property.getName());
+                    }
+                }
+                for (ChildNodeEntry entry : staging.getNodeState().getChildNodeEntries()) {
+                    definition.setChildNode(entry.getName(), entry.getNodeState());
+                }
+                for (PropertyState property : staging.getProperties()) {
+                    if (!isReindexProperty(property.getName())) {
+                        definition.setProperty(property);
+                    }
+                }
+                long count = definition.hasProperty(REINDEX_COUNT)
+                        ? definition.getProperty(REINDEX_COUNT).getValue(LONG) : 0;
+                definition.setProperty(REINDEX_COUNT, count + 1);
+                root.getChildNode(STAGING).remove();
+                return root.getNodeState();
+            }
+        }, leaseHook(0)), CommitInfo.EMPTY);
+        lease = 0;
+    }
+
+    private void index(String type, NodeBuilder staging, NodeState before,
+            NodeState after, boolean throttled) throws CommitFailedException {
+        Editor editor = provider.getIndexEditor(type, staging, after, callback);
+        if (editor == null) {
+            throw new CommitFailedException(TYPE, 3,
+                    "No index editor available for type " + type);
+        }
+        CommitFailedException exception = EditorDiff.process(
+                VisibleEditor.wrap(new CountingEditor(editor, throttled)),
+                before, after);
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void discardStaging() {
+        try {
+            NodeBuilder builder = store.getRoot().builder();
+            builder.getChildNode(STAGING).remove();
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        } catch (CommitFailedException e) {
+            log.warn("Unable to remove the staged content of {}", indexPath, e);
+        }
+    }
+
+    private String checkpoint(String path, long lifetime) {
+        return store.checkpoint(lifetime, ImmutableMap.of(
+                "creator", OutOfBandReindex.class.getSimpleName(),
+                "index", path));
+    }
+
+    private NodeState retrieve(String checkpoint) throws CommitFailedException {
+        NodeState state = store.retrieve(checkpoint);
+        if (state == null) {
+            throw new CommitFailedException(TYPE, 4,
+                    "Unable to retrieve checkpoint " + checkpoint);
+        }
+        return state;
+    }
+
+    private static void sleep(long millis) throws CommitFailedException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommitFailedException(TYPE, 5, "Reindex interrupted", e);
+        }
+    }
+
+    /**
+     * Creates the staging copy of the given index definition, without its
+     * index content and reindex flag.
+     */
+    private static NodeBuilder stage(NodeBuilder builder, String path,
+            NodeState definition) {
+        NodeBuilder parent = builder.child(STAGING);
+        for (String name : elements(getParentPath(path))) {
+            parent = parent.child(name);
+        }
+        NodeBuilder staging = parent.setChildNode(getName(path));
+        for (PropertyState property : definition.getProperties()) {
+            if (!isHidden(property.getName())
+                    && !REINDEX_PROPERTY_NAME.equals(property.getName())) {
+                staging.setProperty(property);
+            }
+        }
+        for (ChildNodeEntry entry : definition.getChildNodeEntries()) {
+            if (!isHidden(entry.getName())) {
+                staging.setChildNode(entry.getName(), entry.getNodeState());
+            }
+        }
+        return staging;
+    }
+
+    /**
+     * Returns the visible part of an index definition that affects the
+     * index content, for detecting definition changes while reindexing.
+     */
+    private static NodeState visibleDefinition(NodeState definition) {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (PropertyState property : definition.getProperties()) {
+            String name = property.getName();
+            if (!isHidden(name) && !isReindexProperty(name)) {
+                builder.setProperty(property);
+            }
+        }
+        for (ChildNodeEntry entry : definition.getChildNodeEntries()) {
+            if (!isHidden(entry.getName())) {
+                builder.setChildNode(entry.getName(), entry.getNodeState());
+            }
+        }
+        return builder.getNodeState();
+    }
+
+    private static boolean isReindexProperty(String name) {
+        return REINDEX_PROPERTY_NAME.equals(name) || REINDEX_COUNT.equals(name);
+    }
+
+    private static NodeState getNode(NodeState root, String path) {
+        NodeState node = root;
+        for (String name : elements(path)) {
+            node = node.getChildNode(name);
+        }
+        return node;
+    }
+
+    private static NodeBuilder getNode(NodeBuilder root, String path) {
+        NodeBuilder node = root;
+        for (String name : elements(path)) {
+            node = node.getChildNode(name);
+        }
+        return node;
+    }
+
+    /**
+     * Checks that the lease property of an async lane still has the expected
+     * value and updates it, so that a lane taking over an expired lease is
+     * detected.
+     */
+    private static class LeaseHook implements CommitHook {
+
+        private final String name;
+
+        private final long expected;
+
+        private final long next;
+
+        LeaseHook(String name, long expected, long next) {
+            this.name = name;
+            this.expected = expected;
+            this.next = next;
+        }
+
+        @Override @Nonnull
+        public NodeState processCommit(
+                NodeState before, NodeState after, CommitInfo info)
+                throws CommitFailedException {
+            if (before.getChildNode(ASYNC).getLong(name) != expected) {
+                throw new CommitFailedException(TYPE, 7,
+                        "Concurrent update of the lease " + name);
+            }
+            NodeBuilder builder = after.builder();
+            if (next != 0) {
+                builder.child(ASYNC).setProperty(name, next);
+            } else {
+                builder.getChildNode(ASYNC).removeProperty(name);
+            }
+            return builder.getNodeState();
+        }
+    }
+
+    /**
+     * Counts the traversed nodes, applies the throttle delay and aborts the
+     * traversal when the reindex operation gets cancelled or the checkpoint
+     * it reads from has expired.
+     */
+    private class CountingEditor implements Editor {
+
+        private final Editor editor;
+
+        private final boolean throttled;
+
+        CountingEditor(Editor editor, boolean throttled) {
+            this.editor = editor;
+            this.throttled = throttled;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after)
+                throws CommitFailedException {
+            if (throttled) {
+                if (cancelled) {
+                    throw new CommitFailedException(TYPE, 5, "Reindex cancelled");
+                }
+                if (traversed.incrementAndGet() % THROTTLE_BATCH == 0) {
+                    if (currentTimeMillis() >= expires) {
+                        throw new CommitFailedException(TYPE, 8,
+                                "Checkpoint expired while reindexing, the checkpoint"
+                                + " lifetime needs to be increased");
+                    }
+                    int delay = throttle;
+                    if (delay > 0) {
+                        sleep(delay);
+                    }
+                }
+            } else {
+                traversed.incrementAndGet();
+            }
+            editor.enter(before, after);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after)
+                throws CommitFailedException {
+            editor.leave(before, after);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after)
+                throws CommitFailedException {
+            editor.propertyAdded(after);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after)
+                throws CommitFailedException {
+            editor.propertyChanged(before, after);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before)
+                throws CommitFailedException {
+            editor.propertyDeleted(before);
+        }
+
+        @Override
+        public Editor childNodeAdded(String name, NodeState after)
+                throws CommitFailedException {
+            return wrap(editor.childNodeAdded(name, after));
+        }
+
+        @Override
+        public Editor childNodeChanged(String name, NodeState before,
+                NodeState after) throws CommitFailedException {
+            return wrap(editor.childNodeChanged(name, before, after));
+        }
+
+        @Override
+        public Editor childNodeDeleted(String name, NodeState before)
+                throws CommitFailedException {
+            return wrap(editor.childNodeDeleted(name, before));
+        }
+
+        private Editor wrap(Editor child) {
+            return child != null ? new CountingEditor(child, throttled) : null;
+        }
+    }
+}
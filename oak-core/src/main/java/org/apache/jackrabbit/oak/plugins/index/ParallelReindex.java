@@ -0,0 +1,658 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Collections.singleton;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.CONSTRAINT;
+import static org.apache.jackrabbit.oak.api.CommitFailedException.OAK;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.apache.jackrabbit.oak.spi.commit.CompositeEditor.compose;
+import static org.apache.jackrabbit.oak.spi.commit.EditorDiff.process;
+import static org.apache.jackrabbit.oak.spi.commit.VisibleEditor.wrap;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
+import org.apache.jackrabbit.oak.spi.commit.DefaultEditor;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.commit.ProgressNotificationEditor;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Sets;
+
+/**
+ * Reindexes a number of indexes with a pool of threads. The repository is
+ * partitioned into subtrees: the top level nodes, and the children of the
+ * ones that are big compared to the whole repository. Each partition is
+ * indexed by fresh editors writing to private copies of the index
+ * definitions, and the index content of each copy is then merged into the
+ * definitions being updated. The root node, and the nodes whose children
+ * were split into partitions of their own, are indexed by the regular
+ * editors once all partitions are merged.
+ * <p>
+ * This is only safe for indexes where the content written for two disjoint
+ * subtrees can be merged, which is the case for the property indexes.
+ * Uniqueness is checked over all keys once everything is merged.
+ * <p>
+ * The private copies are plain in-memory builders, so the index content of a
+ * partition is held on the heap until it is merged, while the merged content
+ * is persisted like with a sequential reindex. To bound the heap used, at most
+ * one partition per thread is indexed or waiting to be merged at any time,
+ * and partitions are split until their estimated size is below
+ * {@code oak.indexUpdate.reindexPartitionSize} nodes, if the node counter
+ * index is available.
+ */
+class ParallelReindex {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelReindex.class);
+
+    /**
+     * Default number of threads used for reindexing property indexes,
+     * {@code 1} disables parallel reindexing. Each thread holds the index
+     * content of its current partition on the heap, up to that of
+     * {@link #MAX_PARTITION_NODES} nodes for each index being reindexed.
+     */
+    static final int DEFAULT_THREADS = Integer.getInteger("oak.indexUpdate.reindexThreads", 1);
+
+    /**
+     * Subtrees are not split below this depth, unless they are estimated to
+     * hold more than {@link #MAX_PARTITION_NODES} nodes.
+     */
+    private static final int MAX_DEPTH = 3;
+
+    /**
+     * The estimated number of nodes above which a partition is split.
+     */
+    private static final long MAX_PARTITION_NODES =
+            Long.getLong("oak.indexUpdate.reindexPartitionSize", 100000);
+
+    /**
+     * The number of partitions aimed for, per thread.
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * The number of index updates reported to the callback at once.
+     */
+    private static final int CALLBACK_BATCH = 1000;
+
+    private final IndexEditorProvider provider;
+
+    private final NodeState root;
+
+    private final int threads;
+
+    private final List<Index> indexes = newArrayList();
+
+    ParallelReindex(IndexEditorProvider provider, NodeState root, int threads) {
+        this.provider = provider;
+        this.root = root;
+        this.threads = threads;
+    }
+
+    /**
+     * Register an index to reindex.
+     *
+     * @param path the path of the index definition
+     * @param type the type of the index
+     * @param definition the index definition, already cleared of its content
+     * @param editor the editor updating the definition, used for the nodes
+     *            that are not part of any partition
+     * @param callback the callback of the index
+     */
+    void add(String path, String type, NodeBuilder definition, Editor editor,
+            IndexUpdateCallback callback) {
+        indexes.add(new Index(path, type, definition, editor, callback));
+    }
+
+    boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+
+    /**
+     * @return the paths of the registered index definitions
+     */
+    List<String> getPaths() {
+        List<String> paths = newArrayList();
+        for (Index index : indexes) {
+            paths.add(index.path);
+        }
+        return paths;
+    }
+
+    /**
+     * @param type the type of an index
+     * @return whether indexes of the type can be reindexed in parallel
+     */
+    static boolean supports(String type) {
+        return PropertyIndexEditorProvider.TYPE.equals(type);
+    }
+
+    /**
+     * Reindex all the registered indexes.
+     *
+     * @param after the content to index
+     */
+    void run(final NodeState after) throws CommitFailedException {
+        Stopwatch watch = Stopwatch.createStarted();
+        // the definitions the partitions start from, without any content
+        final List<NodeState> definitions = newArrayList();
+        for (Index index : indexes) {
+            definitions.add(index.definition.getNodeState());
+        }
+
+        List<Partition> partitions = partition(after);
+        List<String> split = newArrayList();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread t = new Thread(r, "oak-reindex-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            // a partition is submitted for each merged one, so that no more
+            // than one partition per thread is held in memory
+            CompletionService<List<NodeState>> completion =
+                    new ExecutorCompletionService<List<NodeState>>(executor);
+            int submitted = 0;
+            for (; submitted < Math.min(threads, partitions.size()); submitted++) {
+                submit(completion, after, partitions.get(submitted), definitions);
+            }
+            for (Partition partition : partitions) {
+                if (partition.shallow) {
+                    split.add(partition.path);
+                }
+                List<NodeState> states = get(take(completion));
+                for (int i = 0; i < indexes.size(); i++) {
+                    mergeContent(indexes.get(i).definition, states.get(i));
+                }
+                if (submitted < partitions.size()) {
+                    submit(completion, after, partitions.get(submitted++), definitions);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the root node is indexed by the regular editors
+        List<Editor> editors = newArrayList();
+        for (Index index : indexes) {
+            editors.add(index.time(index.editor));
+        }
+        CommitFailedException exception = process(
+                wrap(new ShallowEditor(compose(editors))), MISSING_NODE, after);
+        if (exception != null) {
+            throw exception;
+        }
+
+        for (Index index : indexes) {
+            checkUniqueness(index);
+        }
+
+        log.info("Reindexed {} using {} partitions on {} threads in {} (split: {})",
+                new Object[] {indexes, partitions.size(), threads, watch, split});
+    }
+
+    private void submit(CompletionService<List<NodeState>> completion,
+            final NodeState after, final Partition partition,
+            final List<NodeState> definitions) {
+        completion.submit(new Callable<List<NodeState>>() {
+            @Override
+            public List<NodeState> call() throws Exception {
+                return index(after, partition, definitions);
+            }
+        });
+    }
+
+    /**
+     * Index a partition for all indexes.
+     *
+     * @return the state of the private copy of each definition
+     */
+    private List<NodeState> index(NodeState after, Partition partition,
+            List<NodeState> definitions) throws CommitFailedException {
+        Stopwatch watch = Stopwatch.createStarted();
+        List<NodeBuilder> builders = newArrayList();
+        List<BatchingCallback> callbacks = newArrayList();
+        List<Editor> editors = newArrayList();
+        for (int i = 0; i < indexes.size(); i++) {
+            Index index = indexes.get(i);
+            NodeBuilder builder = definitions.get(i).builder();
+            BatchingCallback callback = new BatchingCallback(index.callback);
+            Editor editor = provider.getIndexEditor(index.type, builder, root, callback);
+            editor = descend(editor, after, partition.path);
+            if (editor != null) {
+                editors.add(index.time(editor));
+            }
+            builders.add(builder);
+            callbacks.add(callback);
+        }
+
+        Editor editor = compose(editors);
+        if (partition.shallow) {
+            editor = new ShallowEditor(editor);
+        }
+        editor = ProgressNotificationEditor.wrap(
+                editor, log, "Reindexing " + partition.path);
+        CommitFailedException exception = process(wrap(editor), MISSING_NODE, partition.state);
+        if (exception != null) {
+            throw exception;
+        }
+        for (BatchingCallback callback : callbacks) {
+            callback.flush();
+        }
+
+        List<NodeState> states = newArrayList();
+        for (NodeBuilder builder : builders) {
+            states.add(builder.getNodeState());
+        }
+        log.debug("Reindexed partition {} in {}", partition.path, watch);
+        return states;
+    }
+
+    /**
+     * Get the editor for the given path, without entering its ancestors.
+     */
+    @CheckForNull
+    private static Editor descend(@CheckForNull Editor editor, NodeState after, String path)
+            throws CommitFailedException {
+        NodeState state = after;
+        for (String name : PathUtils.elements(path)) {
+            if (editor == null) {
+                break;
+            }
+            state = state.getChildNode(name);
+            editor = editor.childNodeAdded(name, state);
+        }
+        return editor;
+    }
+
+    /**
+     * Partition the repository into subtrees that can be indexed
+     * independently. Top level nodes are split into their children if they
+     * hold more than their share of the repository, according to the node
+     * counter, or more than the maximum partition size. Without node
+     * counter, they are split until there are at least as many partitions as
+     * threads.
+     */
+    private List<Partition> partition(NodeState after) {
+        long total = NodeCounter.getEstimatedNodeCount(after, "/", false);
+        long target = total > 0
+                ? Math.min(total / (threads * PARTITIONS_PER_THREAD), MAX_PARTITION_NODES) : -1;
+
+        List<Partition> partitions = newArrayList();
+        List<Partition> candidates = children(after, "/");
+        while (!candidates.isEmpty()) {
+            Partition candidate = candidates.remove(0);
+            boolean split = false;
+            boolean shallow = PathUtils.getDepth(candidate.path) < MAX_DEPTH;
+            if (candidate.state.getChildNodeCount(2) > 1) {
+                if (target > 0) {
+                    long count = NodeCounter.getEstimatedNodeCount(after, candidate.path, false);
+                    split = count > target && (shallow || count > MAX_PARTITION_NODES);
+                } else {
+                    split = shallow && partitions.size() + candidates.size() + 1 < threads;
+                }
+            }
+            if (split) {
+                partitions.add(new Partition(candidate.path, candidate.state, true));
+                candidates.addAll(children(candidate.state, candidate.path));
+            } else {
+                partitions.add(candidate);
+            }
+        }
+        return partitions;
+    }
+
+    private static List<Partition> children(NodeState state, String path) {
+        List<Partition> children = newArrayList();
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            if (!NodeStateUtils.isHidden(child.getName())) {
+                children.add(new Partition(PathUtils.concat(path, child.getName()),
+                        child.getNodeState(), false));
+            }
+        }
+        return children;
+    }
+
+    private void checkUniqueness(Index index) throws CommitFailedException {
+        if (!index.definition.getBoolean(UNIQUE_PROPERTY_NAME)) {
+            return;
+        }
+        NodeState definition = index.definition.getNodeState();
+        UniqueEntryStoreStrategy strategy = new UniqueEntryStoreStrategy();
+        for (String key : definition.getChildNode(INDEX_CONTENT_NODE_NAME).getChildNodeNames()) {
+            if (!NodeStateUtils.isHidden(key)
+                    && strategy.count(root, definition, singleton(key), 2) > 1) {
+                String msg = String.format("Uniqueness constraint violated in %s for one of "
+                        + "the properties having value %s", index.path, key);
+                throw new CommitFailedException(CONSTRAINT, 30, msg);
+            }
+        }
+    }
+
+    /**
+     * Merge the hidden child nodes of a copy of a definition into the
+     * definition.
+     */
+    private static void mergeContent(NodeBuilder definition, NodeState copy) {
+        for (ChildNodeEntry child : copy.getChildNodeEntries()) {
+            if (NodeStateUtils.isHidden(child.getName())) {
+                merge(definition, child.getName(), child.getNodeState());
+            }
+        }
+    }
+
+    /**
+     * Merge a node into the child of a builder. Partitions cover disjoint
+     * paths, so they only meet at the nodes of the index keys. Properties
+     * found on both sides are kept as they are, except multi-valued strings
+     * (like the entries of a unique index) for which the values are
+     * combined.
+     */
+    private static void merge(NodeBuilder parent, String name, NodeState state) {
+        if (!parent.hasChildNode(name)) {
+            parent.setChildNode(name, state);
+            return;
+        }
+        NodeBuilder builder = parent.getChildNode(name);
+        for (PropertyState property : state.getProperties()) {
+            PropertyState existing = builder.getProperty(property.getName());
+            if (existing == null) {
+                builder.setProperty(property);
+            } else if (existing.getType() == Type.STRINGS
+                    && property.getType() == Type.STRINGS) {
+                Set<String> values = Sets.newLinkedHashSet(existing.getValue(Type.STRINGS));
+                for (String value : property.getValue(Type.STRINGS)) {
+                    values.add(value);
+                }
+                builder.setProperty(PropertyStates.createProperty(
+                        property.getName(), values, Type.STRINGS));
+            }
+        }
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            merge(builder, child.getName(), child.getNodeState());
+        }
+    }
+
+    private static <T> Future<T> take(CompletionService<T> completion)
+            throws CommitFailedException {
+        try {
+            return completion.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommitFailedException(OAK, 34, "Reindexing was interrupted", e);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws CommitFailedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommitFailedException(OAK, 34, "Reindexing was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommitFailedException) {
+                throw (CommitFailedException) e.getCause();
+            }
+            throw new CommitFailedException(OAK, 35, "Reindexing failed", e.getCause());
+        }
+    }
+
+    /**
+     * An index being reindexed.
+     */
+    private static class Index {
+
+        final String path;
+
+        final String type;
+
+        final NodeBuilder definition;
+
+        final Editor editor;
+
+        final IndexUpdateCallback callback;
+
+        /**
+         * Time spent in the editors of this index, over all threads.
+         */
+        final AtomicLong nanos = new AtomicLong();
+
+        Index(String path, String type, NodeBuilder definition, Editor editor,
+                IndexUpdateCallback callback) {
+            this.path = path;
+            this.type = type;
+            this.definition = definition;
+            this.editor = editor;
+            this.callback = callback;
+        }
+
+        Editor time(Editor editor) {
+            return new TimedEditor(editor, nanos);
+        }
+
+        @Override
+        public String toString() {
+            return path + "(" + TimeUnit.NANOSECONDS.toMillis(nanos.get()) + " ms)";
+        }
+    }
+
+    /**
+     * A subtree of the repository.
+     */
+    private static class Partition {
+
+        final String path;
+
+        final NodeState state;
+
+        /**
+         * Whether only the node itself is part of the partition, its
+         * children being partitions of their own.
+         */
+        final boolean shallow;
+
+        Partition(String path, NodeState state, boolean shallow) {
+            this.path = path;
+            this.state = state;
+            this.shallow = shallow;
+        }
+    }
+
+    /**
+     * Forwards index updates to the callback of the index in batches, as
+     * the callbacks are not thread-safe.
+     */
+    private static class BatchingCallback implements IndexUpdateCallback {
+
+        private final IndexUpdateCallback callback;
+
+        private int pending;
+
+        BatchingCallback(IndexUpdateCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void indexUpdate() throws CommitFailedException {
+            if (++pending >= CALLBACK_BATCH) {
+                flush();
+            }
+        }
+
+        void flush() throws CommitFailedException {
+            synchronized (BatchingCallback.class) {
+                for (; pending > 0; pending--) {
+                    callback.indexUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Only indexes the node it is entered with, not its children.
+     */
+    private static class ShallowEditor extends DefaultEditor {
+
+        private final Editor editor;
+
+        ShallowEditor(Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) throws CommitFailedException {
+            if (editor != null) {
+                editor.enter(before, after);
+            }
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after) throws CommitFailedException {
+            if (editor != null) {
+                editor.leave(before, after);
+            }
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) throws CommitFailedException {
+            if (editor != null) {
+                editor.propertyAdded(after);
+            }
+        }
+
+        @Override
+        public Editor childNodeAdded(String name, NodeState after) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the time spent in an editor and its child editors to a counter.
+     */
+    private static class TimedEditor implements Editor {
+
+        private final Editor editor;
+
+        private final AtomicLong nanos;
+
+        TimedEditor(Editor editor, AtomicLong nanos) {
+            this.editor = editor;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) throws CommitFailedException {
+            long start = System.nanoTime();
+            editor.enter(before, after);
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after) throws CommitFailedException {
+            long start = System.nanoTime();
+            editor.leave(before, after);
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) throws CommitFailedException {
+            long start = System.nanoTime();
+            editor.propertyAdded(after);
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after)
+                throws CommitFailedException {
+            long start = System.nanoTime();
+            editor.propertyChanged(before, after);
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) throws CommitFailedException {
+            long start = System.nanoTime();
+            editor.propertyDeleted(before);
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+
+        @Override
+        public Editor childNodeAdded(String name, NodeState after) throws CommitFailedException {
+            long start = System.nanoTime();
+            Editor child = editor.childNodeAdded(name, after);
+            nanos.addAndGet(System.nanoTime() - start);
+            return child == null ? null : new TimedEditor(child, nanos);
+        }
+
+        @Override
+        public Editor childNodeChanged(String name, NodeState before, NodeState after)
+                throws CommitFailedException {
+            long start = System.nanoTime();
+            Editor child = editor.childNodeChanged(name, before, after);
+            nanos.addAndGet(System.nanoTime() - start);
+            return child == null ? null : new TimedEditor(child, nanos);
+        }
+
+        @Override
+        public Editor childNodeDeleted(String name, NodeState before)
+                throws CommitFailedException {
+            long start = System.nanoTime();
+            Editor child = editor.childNodeDeleted(name, before);
+            nanos.addAndGet(System.nanoTime() - start);
+            return child == null ? null : new TimedEditor(child, nanos);
+        }
+    }
+}
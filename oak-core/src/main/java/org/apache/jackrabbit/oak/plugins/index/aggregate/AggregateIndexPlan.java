@@ -202,4 +202,10 @@ public class AggregateIndexPlan implements IndexPlan {
         return null;
     }
 
+    @Override
+    @CheckForNull
+    public String getPlanName() {
+        return null;
+    }
+
 }
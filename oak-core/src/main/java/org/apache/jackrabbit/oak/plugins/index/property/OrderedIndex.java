@@ -143,6 +143,30 @@ public interface OrderedIndex {
      */
     int LANES = Integer.getInteger("oak.orderedIndex.lanes", 15);
     
+    /**
+     * the 'key' used for choosing how the ordered keys are persisted. Changing it on an existing
+     * index requires a reindex; until then the existing content keeps being used and updated
+     * with the previous storage.
+     * 
+     * {@code  { "propertyNames"="foobar", "storage"="btree" } }
+     */
+    String STORAGE = "storage";
+
+    /**
+     * keys are kept in a skip list (default)
+     */
+    String STORAGE_SKIP_LIST = "skiplist";
+
+    /**
+     * keys are kept in a paged B+tree
+     */
+    String STORAGE_BTREE = "btree";
+
+    /**
+     * the maximum number of entries in a page of the B+tree before it's split
+     */
+    int BTREE_PAGE_SIZE = Integer.getInteger("oak.orderedIndex.pageSize", 100);
+    
     /**
      * Convenience Predicate that will force the implementor to expose what we're searching for
      *
@@ -201,7 +201,7 @@ public class OrderedPropertyIndex implements QueryIndex, AdvancedQueryIndex {
                 String propertyName = PathUtils.getName(oe.getPropertyName());
                 depth = PathUtils.getDepth(oe.getPropertyName());
                 paths = strategy.query(plan.getFilter(), propertyName,
-                        plan.getDefinition(), new PropertyRestriction(), pathPrefix);
+                        plan.getDefinition(), getKeysetRestriction(filter, oe), pathPrefix);
             }
         }
 
@@ -218,6 +218,33 @@ public class OrderedPropertyIndex implements QueryIndex, AdvancedQueryIndex {
         return cursor;
     }
 
+    /**
+     * Get the range to read when the index is only used for sorting. With
+     * keyset pagination, this is the range starting at the last value of the
+     * previous page, so that the index can seek to that value instead of
+     * reading all the values before.
+     * 
+     * @param filter the filter
+     * @param oe the order entry
+     * @return the restriction (never null)
+     */
+    static PropertyRestriction getKeysetRestriction(Filter filter, OrderEntry oe) {
+        PropertyRestriction keyset = filter.getKeysetRestriction();
+        if (keyset == null || !oe.getPropertyName().equals(keyset.propertyName)) {
+            return new PropertyRestriction();
+        }
+        // the index returns entries in the order of its definition, which
+        // is the order of the query as the plan has this sort order
+        PropertyRestriction pr = new PropertyRestriction();
+        pr.propertyName = PathUtils.getName(keyset.propertyName);
+        pr.propertyType = keyset.propertyType;
+        pr.first = keyset.first;
+        pr.firstIncluding = keyset.firstIncluding;
+        pr.last = keyset.last;
+        pr.lastIncluding = keyset.lastIncluding;
+        return pr;
+    }
+
     //--------------------------------------------------------< QueryIndex >--
 
     @Override
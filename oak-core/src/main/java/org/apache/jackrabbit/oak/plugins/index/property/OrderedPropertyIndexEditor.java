@@ -29,6 +29,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -52,6 +53,16 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
      */
     static final IndexStoreStrategy ORDERED_MIRROR_DESCENDING = new OrderedContentMirrorStoreStrategy(OrderDirection.DESC);
 
+    /**
+     * the Ascending B+tree StoreStrategy
+     */
+    static final IndexStoreStrategy ORDERED_BTREE = new OrderedBTreeStoreStrategy();
+
+    /**
+     * the Descending B+tree StoreStrategy
+     */
+    static final IndexStoreStrategy ORDERED_BTREE_DESCENDING = new OrderedBTreeStoreStrategy(OrderDirection.DESC);
+
     private static final Logger LOG = LoggerFactory.getLogger(OrderedPropertyIndexEditor.class);
     
     private final Set<String> propertyNames;
@@ -59,6 +70,8 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
     private boolean properlyConfigured;
 
     private OrderDirection direction = OrderedIndex.DEFAULT_DIRECTION;
+
+    private boolean btree;
     
     private StopwatchLogger swl;
 
@@ -97,6 +110,23 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
             }
         }
         
+        // configuring storage
+        String storage = definition.getString(OrderedIndex.STORAGE);
+        if (OrderedIndex.STORAGE_BTREE.equals(storage)) {
+            // content written as a skip list keeps being updated as such until it's reindexed
+            NodeBuilder content = definition.getChildNode(IndexConstants.INDEX_CONTENT_NODE_NAME);
+            if (!definition.getBoolean(IndexConstants.REINDEX_PROPERTY_NAME)
+                    && content.hasChildNode(OrderedContentMirrorStoreStrategy.START)
+                    && !content.hasChildNode(OrderedBTreeStoreStrategy.BTREE)) {
+                LOG.warn("The storage of the index is '{}' but its content has not been "
+                        + "reindexed yet. Using the skip list.", storage);
+            } else {
+                this.btree = true;
+            }
+        } else if (storage != null && !OrderedIndex.STORAGE_SKIP_LIST.equals(storage)) {
+            LOG.warn("An unknown storage has been specified: '{}'. Using the skip list.", storage);
+        }
+        
         // initialising the stopwatch.
         swl = new StopwatchLogger(OrderedPropertyIndexEditor.class);
     }
@@ -105,6 +135,7 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
         super(parent, name);
         this.propertyNames = parent.getPropertyNames();
         this.direction = parent.getDirection();
+        this.btree = parent.btree;
         this.swl = parent.swl;
     }
 
@@ -115,9 +146,9 @@ public class OrderedPropertyIndexEditor extends PropertyIndexEditor {
      */
     @Override
     IndexStoreStrategy getStrategy(boolean unique) {
-        IndexStoreStrategy store = ORDERED_MIRROR;
+        IndexStoreStrategy store = btree ? ORDERED_BTREE : ORDERED_MIRROR;
         if (!OrderedIndex.DEFAULT_DIRECTION.equals(getDirection())) {
-            store = ORDERED_MIRROR_DESCENDING;
+            store = btree ? ORDERED_BTREE_DESCENDING : ORDERED_MIRROR_DESCENDING;
         }
         return store;
     }
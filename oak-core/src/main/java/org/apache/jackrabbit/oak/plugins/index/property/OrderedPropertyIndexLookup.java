@@ -36,6 +36,7 @@ import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
@@ -63,6 +64,16 @@ public class OrderedPropertyIndexLookup {
      * the descending ordered index
      */
     private static final OrderedContentMirrorStoreStrategy REVERSED_STORE = new OrderedContentMirrorStoreStrategy(OrderDirection.DESC);
+
+    /**
+     * the Ascending ordered index kept in a B+tree
+     */
+    private static final OrderedContentMirrorStoreStrategy BTREE_STORE = new OrderedBTreeStoreStrategy();
+
+    /**
+     * the Descending ordered index kept in a B+tree
+     */
+    private static final OrderedContentMirrorStoreStrategy REVERSED_BTREE_STORE = new OrderedBTreeStoreStrategy(OrderDirection.DESC);
     
     /**
      * we're slightly more expensive than the standard PropertyIndex.
@@ -149,7 +160,11 @@ public class OrderedPropertyIndexLookup {
     }
 
     static OrderedContentMirrorStoreStrategy getStrategy(NodeState indexMeta) {
-        if (OrderDirection.isAscending(indexMeta)) {
+        if (OrderedIndex.STORAGE_BTREE.equals(indexMeta.getString(OrderedIndex.STORAGE))
+                && !OrderedBTreeStoreStrategy.isSkipList(
+                        indexMeta.getChildNode(INDEX_CONTENT_NODE_NAME))) {
+            return OrderDirection.isAscending(indexMeta) ? BTREE_STORE : REVERSED_BTREE_STORE;
+        } else if (OrderDirection.isAscending(indexMeta)) {
             return STORE;
         } else {
             return REVERSED_STORE;
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.index.property;
 
 import static com.google.common.base.Preconditions.checkState;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
@@ -31,6 +32,9 @@ import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.CountingQueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.NamedPlanQueryIndex;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.slf4j.Logger;
@@ -84,10 +88,16 @@ import com.google.common.base.Charsets;
  * @see QueryIndex
  * @see PropertyIndexLookup
  */
-class PropertyIndex implements QueryIndex {
+class PropertyIndex implements QueryIndex, CountingQueryIndex, NamedPlanQueryIndex {
 
     private static final String PROPERTY = "property";
 
+    /**
+     * The number of index entries to read at most when counting (if the
+     * index has no approximate counters); larger counts are extrapolated.
+     */
+    private static final int MAX_COUNT = 10000;
+
     // TODO the max string length should be removed, or made configurable
     private static final int MAX_STRING_LENGTH = 100;
 
@@ -191,4 +201,29 @@ class PropertyIndex implements QueryIndex {
         }
     }
 
-}
\ No newline at end of file
+    //------------------------------------------------< CountingQueryIndex >--
+
+    @Override
+    public long getEntryCount(Filter filter, IndexPlan plan, NodeState root) {
+        if (filter.getFullTextConstraint() != null || filter.containsNativeConstraint()) {
+            return -1;
+        }
+        PropertyIndexPlan p = plan(root, filter);
+        if (p == null) {
+            return -1;
+        }
+        return p.getEntryCount(MAX_COUNT);
+    }
+
+    //-----------------------------------------------< NamedPlanQueryIndex >--
+
+    @Override
+    public String getPlanName(Filter filter, NodeState root) {
+        if (filter.getFullTextConstraint() != null || filter.containsNativeConstraint()) {
+            return null;
+        }
+        PropertyIndexPlan p = plan(root, filter);
+        return p == null ? null : concat("/", INDEX_DEFINITIONS_NAME, p.getName());
+    }
+
+}
@@ -21,12 +21,14 @@ import static java.util.Collections.singleton;
 import static org.apache.jackrabbit.JcrConstants.JCR_MIXINTYPES;
 import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.oak.api.CommitFailedException.CONSTRAINT;
+import static org.apache.jackrabbit.oak.api.Type.LONG;
 import static org.apache.jackrabbit.oak.api.Type.NAME;
 import static org.apache.jackrabbit.oak.api.Type.NAMES;
 import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.DECLARING_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.SHARDS_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndex.encode;
 
 import java.util.Set;
@@ -41,6 +43,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ShardedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.nodetype.TypePredicate;
 import org.apache.jackrabbit.oak.spi.commit.Editor;
@@ -108,6 +111,9 @@ class PropertyIndexEditor implements IndexEditor {
 
     private final IndexUpdateCallback updateCallback;
 
+    /** Storage strategy for non unique indexes */
+    private final IndexStoreStrategy mirror;
+
     public PropertyIndexEditor(NodeBuilder definition, NodeState root,
             IndexUpdateCallback updateCallback) {
         this.parent = null;
@@ -143,6 +149,15 @@ class PropertyIndexEditor implements IndexEditor {
             this.keysToCheckForUniqueness = null;
         }
         this.updateCallback = updateCallback;
+
+        // spread the entries of each key over buckets, if configured
+        PropertyState shards = definition.getProperty(SHARDS_PROPERTY_NAME);
+        if (shards != null && shards.getValue(LONG) > 1) {
+            this.mirror = ShardedContentMirrorStoreStrategy.getInstance(
+                    shards.getValue(LONG).intValue());
+        } else {
+            this.mirror = MIRROR;
+        }
     }
     
     PropertyIndexEditor(PropertyIndexEditor parent, String name) {
@@ -155,6 +170,7 @@ class PropertyIndexEditor implements IndexEditor {
         this.typePredicate = parent.typePredicate;
         this.keysToCheckForUniqueness = parent.keysToCheckForUniqueness;
         this.updateCallback = parent.updateCallback;
+        this.mirror = parent.mirror;
     }
     
     /**
@@ -211,7 +227,7 @@ class PropertyIndexEditor implements IndexEditor {
     }
 
     IndexStoreStrategy getStrategy(boolean unique) {
-        return unique ? UNIQUE : MIRROR;
+        return unique ? UNIQUE : mirror;
     }
 
     @Override
@@ -24,6 +24,7 @@ import static com.google.common.collect.Sets.newLinkedHashSet;
 import static java.util.Collections.emptySet;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.DECLARING_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.SHARDS_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.UNIQUE_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndex.encode;
 
@@ -33,6 +34,7 @@ import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ShardedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.ast.ComparisonImpl;
@@ -102,6 +104,9 @@ public class PropertyIndexPlan {
 
         if (definition.getBoolean(UNIQUE_PROPERTY_NAME)) {
             this.strategy = UNIQUE;
+        } else if (definition.getLong(SHARDS_PROPERTY_NAME) > 1) {
+            this.strategy = ShardedContentMirrorStoreStrategy.getInstance(
+                    (int) definition.getLong(SHARDS_PROPERTY_NAME));
         } else {
             this.strategy = MIRROR;
         }
@@ -244,6 +249,16 @@ public class PropertyIndexPlan {
         return cost;
     }
 
+    /**
+     * Get the (approximate) number of entries for the selected values.
+     * 
+     * @param max the maximum number of entries to read when counting
+     * @return the number of entries
+     */
+    long getEntryCount(int max) {
+        return strategy.count(filter, root, definition, values, max);
+    }
+
     Cursor execute() {
         QueryEngineSettings settings = filter.getQueryEngineSettings();
         Cursor cursor = Cursors.newPathCursor(
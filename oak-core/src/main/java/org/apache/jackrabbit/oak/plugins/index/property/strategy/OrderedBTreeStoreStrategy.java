@@ -0,0 +1,522 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Queues.newArrayDeque;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+
+/**
+ * Same as for {@link OrderedContentMirrorStoreStrategy} but the order of the keys is kept in a
+ * paged B+tree instead of a skip list. The key nodes stay where {@link ContentMirrorStoreStrategy}
+ * puts them and the tree only references them by name, so adding a path to an existing key never
+ * touches the tree and splitting a page never moves content.
+ * 
+ * <code>
+ *  :index : {
+ *      :btree : { :root = p2f09,
+ *          p07c3 : { :keys = [n0, n1] },
+ *          p5a1e : { :keys = [n2, n3] },
+ *          p2f09 : { :keys = [n0, n2], :pages = [p07c3, p5a1e] }
+ *      },
+ *      n0 : { /content/foo/bar(match=true) },
+ *      n1 : { /content/foo1/bar(match=true) },
+ *      n2 : { /content/foo2/bar(match=true) },
+ *      n3 : { /content/foo3/bar(match=true) }
+ *  }
+ * </code>
+ * 
+ * Leaf pages list the keys in ascending order. Inner pages list their child pages together with
+ * the lowest key of the range each one covers; the first of these keys is never used for routing
+ * as the first child page covers everything below the second one. Pages are split when they grow
+ * beyond the page size and dropped when they become empty. The index is iterated in ascending or
+ * descending order depending on its direction. New pages get random names, so that concurrent
+ * splits of different pages do not conflict on a shared counter.
+ * <p>
+ * Inserting a key still rewrites the {@code :keys} of its leaf page. Keys that keep increasing,
+ * like creation dates, all go to the rightmost leaf, so concurrent commits adding such keys
+ * conflict on that page as they do on the head of the skip list. The tree helps with keys spread
+ * over the whole range and with large indexes, where it bounds the size of the nodes written.
+ * <p>
+ * Existing index content needs to be reindexed when switching to this strategy. Until then
+ * {@link #isSkipList(NodeState)} tells that the content still is a skip list.
+ */
+public class OrderedBTreeStoreStrategy extends OrderedContentMirrorStoreStrategy {
+    /**
+     * node holding the pages of the tree
+     */
+    public static final String BTREE = ":btree";
+
+    /**
+     * the property on {@code :btree} with the name of the root page
+     */
+    public static final String ROOT = ":root";
+
+    /**
+     * the keys of a page
+     */
+    public static final String KEYS = ":keys";
+
+    /**
+     * the child pages of an inner page
+     */
+    public static final String PAGES = ":pages";
+
+    /**
+     * the direction of the index.
+     */
+    private final OrderDirection direction;
+
+    /**
+     * the maximum number of entries in a page
+     */
+    private final int pageSize;
+
+    private static final Random RANDOM = new Random();
+
+    public OrderedBTreeStoreStrategy() {
+        this(OrderedIndex.DEFAULT_DIRECTION);
+    }
+
+    public OrderedBTreeStoreStrategy(OrderDirection direction) {
+        this(direction, OrderedIndex.BTREE_PAGE_SIZE);
+    }
+
+    public OrderedBTreeStoreStrategy(OrderDirection direction, int pageSize) {
+        super(direction);
+        this.direction = direction;
+        this.pageSize = Math.max(pageSize, 2);
+    }
+
+    /**
+     * @param content the index content ({@code :index})
+     * @return whether the content has been written by {@link OrderedContentMirrorStoreStrategy},
+     *         as the index has not been reindexed since its storage was switched to the B+tree
+     */
+    public static boolean isSkipList(@Nonnull NodeState content) {
+        return content.hasChildNode(START) && !content.hasChildNode(BTREE);
+    }
+
+    @Override
+    NodeBuilder fetchKeyNode(@Nonnull NodeBuilder index, @Nonnull String key) {
+        NodeBuilder node = index.getChildNode(key);
+        if (!node.exists()) {
+            // a new key: the only case where the tree has to change
+            insertKey(index, key);
+            node = index.child(key);
+        }
+        return node;
+    }
+
+    @Override
+    void prune(final NodeBuilder index, final Deque<NodeBuilder> builders, final String key) {
+        for (NodeBuilder node : builders) {
+            if (node.getBoolean("match") || node.getChildNodeCount(1) > 0) {
+                return;
+            } else if (node.exists()) {
+                node.remove();
+            }
+        }
+        // the key node itself has gone
+        removeKey(index, key);
+    }
+
+    @Override
+    @Nonnull
+    Iterable<? extends ChildNodeEntry> getChildNodeEntries(@Nonnull final NodeState index) {
+        return entries(index, keys(index, null, false, null, false));
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+                                  final NodeState indexMeta, final String indexStorageNodeName,
+                                  final PropertyRestriction pr, final String pathPrefix) {
+        final NodeState indexState = indexMeta.getChildNode(indexStorageNodeName);
+        final String first = pr.first == null ? null : encode(pr.first.getValue(Type.STRING));
+        final String last = pr.last == null ? null : encode(pr.last.getValue(Type.STRING));
+
+        final Iterable<? extends ChildNodeEntry> children;
+        if (first != null && first.equals(last)) {
+            // property = $value case
+            NodeState key = indexState.getChildNode(first);
+            if (!key.exists()) {
+                return Collections.emptyList();
+            }
+            children = Collections.singleton(new OrderedChildNodeEntry(first, key));
+        } else {
+            children = entries(indexState,
+                    keys(indexState, first, pr.firstIncluding, last, pr.lastIncluding));
+        }
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                PathIterator pi = new PathIterator(filter, indexName, pathPrefix);
+                pi.setPathContainsValue(true);
+                pi.enqueue(children.iterator());
+                return pi;
+            }
+        };
+    }
+
+    @Override
+    public long count(NodeState indexMeta, PropertyRestriction pr, int max) {
+        NodeState content = indexMeta.getChildNode(INDEX_CONTENT_NODE_NAME);
+        if (!content.exists()) {
+            return 0;
+        }
+        String first = pr == null || pr.first == null ? null 
+                : encode(pr.first.getValue(Type.STRING));
+        String last = pr == null || pr.last == null ? null
+                : encode(pr.last.getValue(Type.STRING));
+
+        CountingNodeVisitor v = new CountingNodeVisitor(max);
+        if (first != null && first.equals(last)) {
+            // property==value case
+            v.visit(content.getChildNode(first));
+        } else {
+            if (first == null && last == null) {
+                // property not null case
+                PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
+                if (ec != null) {
+                    return ec.getValue(Type.LONG);
+                }
+            }
+            boolean firstIncluding = pr != null && pr.firstIncluding;
+            boolean lastIncluding = pr != null && pr.lastIncluding;
+            for (String key : keys(content, first, firstIncluding, last, lastIncluding)) {
+                v.visit(content.getChildNode(key));
+                if (v.getCount() >= max) {
+                    break;
+                }
+            }
+        }
+        return v.getEstimatedCount();
+    }
+
+    /**
+     * The keys between the two provided bounds, in the order of the index.
+     * 
+     * @param index the index content ({@code :index})
+     * @param lower the lower bound, or null if unbounded
+     * @param lowerIncluding whether the lower bound itself is part of the range
+     * @param upper the upper bound, or null if unbounded
+     * @param upperIncluding whether the upper bound itself is part of the range
+     * @return the keys
+     */
+    Iterable<String> keys(@Nonnull final NodeState index,
+                          @Nullable final String lower, final boolean lowerIncluding,
+                          @Nullable final String upper, final boolean upperIncluding) {
+        final NodeState btree = index.getChildNode(BTREE);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                if (direction.isAscending()) {
+                    return new KeyIterator(btree, true, lower, lowerIncluding, upper,
+                            upperIncluding);
+                } else {
+                    return new KeyIterator(btree, false, upper, upperIncluding, lower,
+                            lowerIncluding);
+                }
+            }
+        };
+    }
+
+    private static Iterable<ChildNodeEntry> entries(final NodeState index,
+                                                    final Iterable<String> keys) {
+        return new Iterable<ChildNodeEntry>() {
+            @Override
+            public Iterator<ChildNodeEntry> iterator() {
+                return Iterators.transform(keys.iterator(), new Function<String, ChildNodeEntry>() {
+                    @Override
+                    public ChildNodeEntry apply(String key) {
+                        return new OrderedChildNodeEntry(key, index.getChildNode(key));
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Add the key to its leaf page, splitting the pages that overflow from the leaf up to the
+     * root.
+     */
+    private void insertKey(NodeBuilder index, String key) {
+        NodeBuilder btree = index.child(BTREE);
+        String root = btree.getString(ROOT);
+        if (root == null) {
+            root = newPage(btree);
+            btree.setProperty(ROOT, root);
+        }
+
+        // the names of the pages from the root to the leaf and the child taken in each
+        List<String> names = newArrayList(root);
+        List<Integer> positions = newArrayList();
+        NodeBuilder page = btree.getChildNode(root);
+        while (page.hasProperty(PAGES)) {
+            int i = route(strings(page, KEYS), key);
+            String child = strings(page, PAGES).get(i);
+            names.add(child);
+            positions.add(i);
+            page = btree.getChildNode(child);
+        }
+
+        List<String> keys = strings(page, KEYS);
+        int pos = Collections.binarySearch(keys, key);
+        if (pos >= 0) {
+            return;
+        }
+        keys.add(-pos - 1, key);
+        page.setProperty(KEYS, keys, Type.STRINGS);
+
+        int level = names.size() - 1;
+        while (keys.size() > pageSize) {
+            int mid = keys.size() / 2;
+            String separator = keys.get(mid);
+            String right = newPage(btree);
+            btree.child(right).setProperty(KEYS, newArrayList(keys.subList(mid, keys.size())),
+                    Type.STRINGS);
+            page.setProperty(KEYS, newArrayList(keys.subList(0, mid)), Type.STRINGS);
+            if (page.hasProperty(PAGES)) {
+                List<String> pages = strings(page, PAGES);
+                btree.child(right).setProperty(PAGES,
+                        newArrayList(pages.subList(mid, pages.size())), Type.STRINGS);
+                page.setProperty(PAGES, newArrayList(pages.subList(0, mid)), Type.STRINGS);
+            }
+
+            if (level == 0) {
+                // the root has been split: the tree grows by one level
+                String newRoot = newPage(btree);
+                NodeBuilder r = btree.child(newRoot);
+                r.setProperty(KEYS, newArrayList(keys.get(0), separator), Type.STRINGS);
+                r.setProperty(PAGES, newArrayList(names.get(0), right), Type.STRINGS);
+                btree.setProperty(ROOT, newRoot);
+                return;
+            }
+
+            level--;
+            int i = positions.get(level);
+            page = btree.getChildNode(names.get(level));
+            keys = strings(page, KEYS);
+            keys.add(i + 1, separator);
+            page.setProperty(KEYS, keys, Type.STRINGS);
+            List<String> pages = strings(page, PAGES);
+            pages.add(i + 1, right);
+            page.setProperty(PAGES, pages, Type.STRINGS);
+        }
+    }
+
+    /**
+     * Remove the key from its leaf page, dropping the pages that become empty. Pages are not
+     * merged; the tree only shrinks when the root is left with a single child.
+     */
+    private static void removeKey(NodeBuilder index, String key) {
+        NodeBuilder btree = index.getChildNode(BTREE);
+        String root = btree.getString(ROOT);
+        if (root == null) {
+            return;
+        }
+
+        List<String> names = newArrayList(root);
+        List<Integer> positions = newArrayList();
+        NodeBuilder page = btree.getChildNode(root);
+        while (page.hasProperty(PAGES)) {
+            int i = route(strings(page, KEYS), key);
+            String child = strings(page, PAGES).get(i);
+            names.add(child);
+            positions.add(i);
+            page = btree.getChildNode(child);
+        }
+
+        List<String> keys = strings(page, KEYS);
+        int pos = Collections.binarySearch(keys, key);
+        if (pos < 0) {
+            return;
+        }
+        keys.remove(pos);
+        page.setProperty(KEYS, keys, Type.STRINGS);
+
+        int level = names.size() - 1;
+        while (keys.isEmpty() && level > 0) {
+            page.remove();
+            level--;
+            int i = positions.get(level);
+            page = btree.getChildNode(names.get(level));
+            keys = strings(page, KEYS);
+            keys.remove(i);
+            page.setProperty(KEYS, keys, Type.STRINGS);
+            List<String> pages = strings(page, PAGES);
+            pages.remove(i);
+            page.setProperty(PAGES, pages, Type.STRINGS);
+        }
+
+        page = btree.getChildNode(root);
+        while (page.hasProperty(PAGES) && strings(page, PAGES).size() == 1) {
+            root = strings(page, PAGES).get(0);
+            page.remove();
+            btree.setProperty(ROOT, root);
+            page = btree.getChildNode(root);
+        }
+    }
+
+    private static String newPage(NodeBuilder btree) {
+        String name;
+        do {
+            name = "p" + Integer.toHexString(RANDOM.nextInt());
+        } while (btree.hasChildNode(name));
+        btree.child(name).setProperty(KEYS, Collections.<String>emptyList(), Type.STRINGS);
+        return name;
+    }
+
+    private static List<String> strings(NodeBuilder page, String name) {
+        PropertyState ps = page.getProperty(name);
+        List<String> values = newArrayList();
+        if (ps != null) {
+            values.addAll(newArrayList(ps.getValue(Type.STRINGS)));
+        }
+        return values;
+    }
+
+    /**
+     * @param keys the keys of an inner page
+     * @param key the key we're looking for
+     * @return the position of the child page covering the key
+     */
+    static int route(List<String> keys, String key) {
+        if (keys.size() < 2) {
+            return 0;
+        }
+        int i = Collections.binarySearch(keys.subList(1, keys.size()), key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * a page being iterated
+     */
+    private static class Page {
+        final List<String> keys;
+
+        /**
+         * the child pages, null for a leaf
+         */
+        final List<String> pages;
+
+        int pos;
+
+        Page(NodeState state) {
+            keys = newArrayList(state.getStrings(KEYS));
+            pages = state.hasProperty(PAGES) ? newArrayList(state.getStrings(PAGES)) : null;
+        }
+    }
+
+    /**
+     * iterates the keys of the tree from a starting key up to an end key, reading one page per
+     * level at a time.
+     */
+    private static class KeyIterator extends AbstractIterator<String> {
+        private final NodeState btree;
+        private final int step;
+        private final String to;
+        private final boolean toIncluding;
+        private final Deque<Page> stack = newArrayDeque();
+
+        KeyIterator(NodeState btree, boolean ascending,
+                    @Nullable String from, boolean fromIncluding,
+                    @Nullable String to, boolean toIncluding) {
+            this.btree = btree;
+            this.step = ascending ? 1 : -1;
+            this.to = to;
+            this.toIncluding = toIncluding;
+
+            // position the stack on the first key
+            String name = btree.getString(ROOT);
+            while (name != null) {
+                Page page = new Page(btree.getChildNode(name));
+                stack.addLast(page);
+                if (from == null) {
+                    page.pos = ascending ? 0 : page.keys.size() - 1;
+                } else if (page.pages != null) {
+                    page.pos = route(page.keys, from);
+                } else {
+                    int i = Collections.binarySearch(page.keys, from);
+                    if (i >= 0) {
+                        page.pos = fromIncluding ? i : i + step;
+                    } else {
+                        page.pos = ascending ? -i - 1 : -i - 2;
+                    }
+                }
+                name = page.pages == null || page.pos < 0 || page.pos >= page.pages.size()
+                        ? null : page.pages.get(page.pos);
+            }
+        }
+
+        @Override
+        protected String computeNext() {
+            while (!stack.isEmpty()) {
+                Page page = stack.getLast();
+                if (page.pos < 0 || page.pos >= page.keys.size()) {
+                    stack.removeLast();
+                    if (!stack.isEmpty()) {
+                        stack.getLast().pos += step;
+                    }
+                } else if (page.pages == null) {
+                    String key = page.keys.get(page.pos);
+                    page.pos += step;
+                    if (to != null) {
+                        int c = key.compareTo(to) * step;
+                        if (c > 0 || (c == 0 && !toIncluding)) {
+                            stack.clear();
+                            break;
+                        }
+                    }
+                    return key;
+                } else {
+                    Page child = new Page(btree.getChildNode(page.pages.get(page.pos)));
+                    child.pos = step > 0 ? 0 : child.keys.size() - 1;
+                    stack.addLast(child);
+                }
+            }
+            return endOfData();
+        }
+    }
+}
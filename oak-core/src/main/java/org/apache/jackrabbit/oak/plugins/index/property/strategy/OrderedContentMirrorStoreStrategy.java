@@ -449,7 +449,7 @@ public class OrderedContentMirrorStoreStrategy extends ContentMirrorStoreStrateg
         }
     }
     
-    private static String encode(@Nonnull final String value) {
+    static String encode(@Nonnull final String value) {
         checkNotNull(value);
         String v;
         try {
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+import com.google.common.collect.Iterators;
+
+/**
+ * Same as for {@link ContentMirrorStoreStrategy} but the entries are spread
+ * over a fixed number of buckets, picked by hashing the indexed path. Every
+ * bucket is a complete content mirror, so writers indexing the same value
+ * below different paths mostly touch different nodes.
+ * 
+ * <code>
+ *  :index : {
+ *      :shard-0 : { published : { content : { a(match=true) } } },
+ *      :shard-1 : { published : { content : { b(match=true) } } }
+ *  }
+ * </code>
+ * 
+ * Queries return the union of all buckets.
+ */
+public class ShardedContentMirrorStoreStrategy extends ContentMirrorStoreStrategy {
+
+    /**
+     * prefix of the bucket node names
+     */
+    public static final String SHARD_PREFIX = ":shard-";
+
+    /**
+     * the strategies created so far, by number of buckets
+     */
+    private static final ConcurrentMap<Integer, ShardedContentMirrorStoreStrategy> STRATEGIES =
+            new ConcurrentHashMap<Integer, ShardedContentMirrorStoreStrategy>();
+
+    private final int shards;
+
+    public ShardedContentMirrorStoreStrategy(int shards) {
+        this.shards = Math.max(shards, 1);
+    }
+
+    /**
+     * @param shards the number of buckets
+     * @return the shared strategy for the given number of buckets
+     */
+    public static ShardedContentMirrorStoreStrategy getInstance(int shards) {
+        ShardedContentMirrorStoreStrategy strategy = STRATEGIES.get(shards);
+        if (strategy == null) {
+            strategy = new ShardedContentMirrorStoreStrategy(shards);
+            ShardedContentMirrorStoreStrategy existing = STRATEGIES.putIfAbsent(shards, strategy);
+            if (existing != null) {
+                strategy = existing;
+            }
+        }
+        return strategy;
+    }
+
+    /**
+     * @param path the indexed path
+     * @return the name of the bucket for the path
+     */
+    String getShardName(String path) {
+        return SHARD_PREFIX + ((path.hashCode() & Integer.MAX_VALUE) % shards);
+    }
+
+    @Override
+    public void update(
+            NodeBuilder index, String path,
+            @Nullable final String indexName,
+            @Nullable final NodeBuilder indexMeta,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        super.update(index.child(getShardName(path)), path,
+                indexName, indexMeta, beforeKeys, afterKeys);
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final String indexStorageNodeName,
+            final Iterable<String> values) {
+        final NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                PathIterator it = new PathIterator(filter, indexName, "");
+                if (values == null) {
+                    it.setPathContainsValue(true);
+                }
+                for (int i = 0; i < shards; i++) {
+                    NodeState shard = index.getChildNode(SHARD_PREFIX + i);
+                    if (values == null) {
+                        it.enqueue(shard.getChildNodeEntries().iterator());
+                    } else {
+                        for (String p : values) {
+                            NodeState property = shard.getChildNode(p);
+                            if (property.exists()) {
+                                it.enqueue(Iterators.singletonIterator(
+                                        new MemoryChildNodeEntry("", property)));
+                            }
+                        }
+                    }
+                }
+                return it;
+            }
+        };
+    }
+
+    @Override
+    public long count(Filter filter, NodeState root, NodeState indexMeta,
+            final String indexStorageNodeName, Set<String> values, int max) {
+        PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
+        if (ec != null && ec.getValue(Type.LONG) >= 0) {
+            // the estimation only relies on the index definition
+            return super.count(filter, root, indexMeta, indexStorageNodeName, values, max);
+        }
+        // every bucket is counted as an index of its own, using the
+        // approximate counters kept for each of them. The sum is capped at
+        // max, so that the estimate does not grow with the number of buckets
+        NodeState index = indexMeta.getChildNode(indexStorageNodeName);
+        long count = 0;
+        for (int i = 0; i < shards && count < max; i++) {
+            String name = SHARD_PREFIX + i;
+            if (index.hasChildNode(name)) {
+                count += super.count(filter, root, index, name, values, max);
+            }
+        }
+        return Math.min(count, max);
+    }
+
+}
@@ -49,17 +49,20 @@ import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.oak.spi.state.NodeStoreBranch;
+import org.apache.jackrabbit.oak.spi.state.RootCheckpoints;
 
 /**
  * Basic in-memory node store implementation. Useful as a base class for
  * more complex functionality.
  */
-public class MemoryNodeStore implements NodeStore, Observable {
+public class MemoryNodeStore implements NodeStore, Observable, RootCheckpoints {
 
     private final AtomicReference<NodeState> root;
 
     private final Map<String, Checkpoint> checkpoints = newHashMap();
 
+    private long checkpointCounter;
+
     private final Map<Closeable, Observer> observers = newHashMap();
 
     public MemoryNodeStore(NodeState state) {
@@ -191,10 +194,12 @@ public class MemoryNodeStore implements NodeStore, Observable {
 
     @Nonnull
     @Override
-    public String checkpoint(long lifetime, @Nonnull Map<String, String> properties) {
+    public synchronized String checkpoint(long lifetime, @Nonnull Map<String, String> properties) {
         checkArgument(lifetime > 0);
         checkNotNull(properties);
-        String checkpoint = "checkpoint" + checkpoints.size();
+        // don't derive the name from the number of checkpoints, which
+        // would reuse names of live checkpoints after a release
+        String checkpoint = "checkpoint" + checkpointCounter++;
         checkpoints.put(checkpoint, new Checkpoint(getRoot(), properties));
         return checkpoint;
     }
@@ -204,6 +209,16 @@ public class MemoryNodeStore implements NodeStore, Observable {
         return checkpoint(lifetime, Collections.<String, String>emptyMap());
     }
 
+    @Override @Nonnull
+    public synchronized String checkpoint(@Nonnull NodeState root, long lifetime) {
+        checkNotNull(root);
+        checkArgument(lifetime > 0);
+        String checkpoint = "checkpoint" + checkpointCounter++;
+        checkpoints.put(checkpoint,
+                new Checkpoint(root, Collections.<String, String>emptyMap()));
+        return checkpoint;
+    }
+
     @Nonnull
     @Override
     public Map<String, String> checkpointInfo(@Nonnull String checkpoint) {
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+import static javax.jcr.observation.Event.NODE_ADDED;
+import static javax.jcr.observation.Event.NODE_MOVED;
+import static javax.jcr.observation.Event.NODE_REMOVED;
+import static javax.jcr.observation.Event.PROPERTY_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_CHANGED;
+import static javax.jcr.observation.Event.PROPERTY_REMOVED;
+import static org.apache.jackrabbit.JcrConstants.JCR_MIXINTYPES;
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.oak.api.Type.NAME;
+import static org.apache.jackrabbit.oak.api.Type.NAMES;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
+import static org.apache.jackrabbit.oak.plugins.observation.filter.VisibleFilter.VISIBLE_FILTER;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * A compact summary of the content changes between two root node states.
+ * A change set records the paths of the nodes with direct changes, the
+ * roots of added and removed subtrees, the node types of the changed nodes,
+ * the names of the changed properties and the kinds of changes that occurred.
+ * <p>
+ * Change sets are computed once per pair of root states (see
+ * {@link ChangeSetCache}) and are used to cheaply rule out observation
+ * listeners that cannot match any of the changes before running a full,
+ * per listener content diff. The computation does not descend into added or
+ * removed subtrees and stops collecting once {@link #MAX_PATHS} paths have
+ * been seen, in which case the change set {@link #isOverflow() overflows}
+ * and conservatively matches everything.
+ */
+public final class ChangeSet {
+
+    /**
+     * Maximum number of paths collected before the change set overflows.
+     */
+    public static final int MAX_PATHS = 10000;
+
+    private final Set<String> parentPaths;
+    private final Set<String> subtreePaths;
+    private final Set<String> nodeTypes;
+    private final Set<String> propertyNames;
+    private final int eventTypes;
+    private final boolean overflow;
+    private final long diffTime;
+
+    /**
+     * Prefix trie of {@code parentPaths} and {@code subtreePaths} for
+     * matching paths in time proportional to their depth
+     */
+    private final PathNode paths = new PathNode();
+
+    private ChangeSet(Collector collector, long diffTime) {
+        this.parentPaths = Collections.unmodifiableSet(collector.parentPaths);
+        this.subtreePaths = Collections.unmodifiableSet(collector.subtreePaths);
+        this.nodeTypes = Collections.unmodifiableSet(collector.nodeTypes);
+        this.propertyNames = Collections.unmodifiableSet(collector.propertyNames);
+        this.eventTypes = collector.eventTypes;
+        this.overflow = collector.overflow;
+        this.diffTime = diffTime;
+        for (String path : parentPaths) {
+            paths.add(path).changed = true;
+        }
+        for (String path : subtreePaths) {
+            paths.add(path).subtree = true;
+        }
+    }
+
+    /**
+     * Compute the change set between the passed root states.
+     * @param before  before state
+     * @param after   after state
+     * @return  the change set of the content changes from {@code before} to {@code after}
+     */
+    @Nonnull
+    public static ChangeSet create(@Nonnull NodeState before, @Nonnull NodeState after) {
+        long start = System.nanoTime();
+        Collector collector = new Collector();
+        EventGenerator generator = new EventGenerator(before, after,
+                new FilteredHandler(VISIBLE_FILTER, new ChangeSetHandler(collector, "/")));
+        while (!generator.isDone() && !collector.overflow) {
+            generator.generate();
+        }
+        return new ChangeSet(collector, System.nanoTime() - start);
+    }
+
+    /**
+     * @return  paths of the nodes having direct changes: added, removed or changed
+     *          properties and added, removed, moved or reordered child nodes.
+     */
+    @Nonnull
+    public Set<String> getParentPaths() {
+        return parentPaths;
+    }
+
+    /**
+     * @return  paths of the roots of added and removed subtrees. The content
+     *          below these paths is not further summarised.
+     */
+    @Nonnull
+    public Set<String> getSubtreePaths() {
+        return subtreePaths;
+    }
+
+    /**
+     * @return  names of the primary and mixin types of the nodes at
+     *          {@link #getParentPaths()}
+     */
+    @Nonnull
+    public Set<String> getNodeTypes() {
+        return nodeTypes;
+    }
+
+    /**
+     * @return  names of the added, removed and changed properties of the nodes at
+     *          {@link #getParentPaths()}
+     */
+    @Nonnull
+    public Set<String> getPropertyNames() {
+        return propertyNames;
+    }
+
+    /**
+     * @return  bit mask of the {@link javax.jcr.observation.Event} types of the
+     *          changes in this change set
+     */
+    public int getEventTypes() {
+        return eventTypes;
+    }
+
+    /**
+     * @return  {@code true} if the changes exceeded the size limit of this change set.
+     *          An overflown change set is incomplete and matches everything.
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    /**
+     * @return  time in nanoseconds it took to compute this change set
+     */
+    public long getDiffTime() {
+        return diffTime;
+    }
+
+    /**
+     * Determine whether this change set contains changes that would be reported
+     * for the subtree rooted at {@code path}, that is, changes to child items of
+     * the node at {@code path} or of any of its descendants.
+     * @param path  absolute path
+     * @return  {@code true} if there might be changes in the subtree at {@code path}
+     */
+    public boolean containsChangesIn(@Nonnull String path) {
+        if (overflow) {
+            return true;
+        }
+        PathNode node = paths;
+        for (String name : elements(path)) {
+            if (node.subtree) {
+                // path is within an added or removed subtree
+                return true;
+            }
+            node = node.children.get(name);
+            if (node == null) {
+                return false;
+            }
+        }
+        // Every leaf of the trie is a changed path, hence there
+        // are changes at or below any node but an empty root
+        return node.changed || node.subtree || !node.children.isEmpty();
+    }
+
+    /**
+     * Determine whether this change set contains any changes of the given
+     * event types.
+     * @param eventTypes  bit mask of {@link javax.jcr.observation.Event} types
+     * @return  {@code true} if there might be changes of any of the given types
+     */
+    public boolean containsEventTypes(int eventTypes) {
+        return overflow || (this.eventTypes & eventTypes) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSet{paths=" + parentPaths + ", subtrees=" + subtreePaths
+                + ", nodeTypes=" + nodeTypes + ", properties=" + propertyNames
+                + ", eventTypes=" + eventTypes + ", overflow=" + overflow + '}';
+    }
+
+    //------------------------------------------------------------< internal >---
+
+    private static class PathNode {
+        final Map<String, PathNode> children = newHashMap();
+        boolean changed;
+        boolean subtree;
+
+        PathNode add(String path) {
+            PathNode node = this;
+            for (String name : elements(path)) {
+                PathNode child = node.children.get(name);
+                if (child == null) {
+                    child = new PathNode();
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+    }
+
+    private static class Collector {
+        final Set<String> parentPaths = newHashSet();
+        final Set<String> subtreePaths = newHashSet();
+        final Set<String> nodeTypes = newHashSet();
+        final Set<String> propertyNames = newHashSet();
+        int eventTypes;
+        boolean overflow;
+
+        void addParent(String path, NodeState before, NodeState after, int eventType) {
+            eventTypes |= eventType;
+            if (parentPaths.add(path)) {
+                NodeState node = after.exists() ? after : before;
+                PropertyState primaryType = node.getProperty(JCR_PRIMARYTYPE);
+                if (primaryType != null) {
+                    nodeTypes.add(primaryType.getValue(NAME));
+                }
+                PropertyState mixinTypes = node.getProperty(JCR_MIXINTYPES);
+                if (mixinTypes != null) {
+                    for (String mixin : mixinTypes.getValue(NAMES)) {
+                        nodeTypes.add(mixin);
+                    }
+                }
+                checkOverflow();
+            }
+        }
+
+        void addSubtree(String path, int eventType) {
+            eventTypes |= eventType;
+            if (subtreePaths.add(path)) {
+                checkOverflow();
+            }
+        }
+
+        private void checkOverflow() {
+            if (parentPaths.size() + subtreePaths.size() > MAX_PATHS) {
+                overflow = true;
+            }
+        }
+    }
+
+    private static class ChangeSetHandler extends DefaultEventHandler {
+        private final Collector collector;
+        private final String path;
+        private NodeState before;
+        private NodeState after;
+
+        ChangeSetHandler(Collector collector, String path) {
+            this.collector = collector;
+            this.path = path;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public EventHandler getChildHandler(String name, NodeState before, NodeState after) {
+            if (collector.overflow || !before.exists() || !after.exists()) {
+                // Added and removed subtrees are recorded as a whole
+                // by nodeAdded and nodeDeleted
+                return null;
+            }
+            return new ChangeSetHandler(collector, concat(path, name));
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) {
+            collector.propertyNames.add(after.getName());
+            collector.addParent(path, before, this.after, PROPERTY_ADDED);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after) {
+            collector.propertyNames.add(after.getName());
+            collector.addParent(path, this.before, this.after, PROPERTY_CHANGED);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) {
+            collector.propertyNames.add(before.getName());
+            collector.addParent(path, this.before, after, PROPERTY_REMOVED);
+        }
+
+        @Override
+        public void nodeAdded(String name, NodeState after) {
+            collector.addParent(path, before, this.after, NODE_ADDED);
+            collector.addSubtree(concat(path, name), NODE_ADDED | PROPERTY_ADDED);
+        }
+
+        @Override
+        public void nodeDeleted(String name, NodeState before) {
+            collector.addParent(path, this.before, after, NODE_REMOVED);
+            collector.addSubtree(concat(path, name), NODE_REMOVED | PROPERTY_REMOVED);
+        }
+
+        @Override
+        public void nodeMoved(String sourcePath, String name, NodeState moved) {
+            collector.addParent(path, before, after, NODE_MOVED);
+        }
+
+        @Override
+        public void nodeReordered(String destName, String name, NodeState reordered) {
+            collector.addParent(path, before, after, NODE_MOVED);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * A small cache of {@link ChangeSet}s of the most recent pairs of root states.
+ * <p>
+ * All observation listeners of a repository see the same sequence of root
+ * states. Sharing an instance of this class between them ensures the change
+ * set of each pair of root states is computed only once, regardless of the
+ * number of listeners. Concurrent requests for the same pair of root states
+ * wait for the first one to compute the change set instead of computing it
+ * again. Root states are compared by identity.
+ */
+public class ChangeSetCache {
+
+    /**
+     * Default number of change sets retained
+     */
+    public static final int DEFAULT_SIZE = 16;
+
+    private final Map<Key, Entry> entries;
+
+    private final AtomicLong computeCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong computeTime = new AtomicLong();
+
+    public ChangeSetCache(final int size) {
+        entries = new LinkedHashMap<Key, Entry>(size, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    public ChangeSetCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Get the change set for the changes from {@code before} to {@code after},
+     * computing it if not already cached.
+     * @param before  before state
+     * @param after   after state
+     * @return  the change set
+     */
+    @Nonnull
+    public ChangeSet getChangeSet(@Nonnull NodeState before, @Nonnull NodeState after) {
+        Key key = new Key(checkNotNull(before), checkNotNull(after));
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(before, after);
+                entries.put(key, entry);
+            } else {
+                hitCount.incrementAndGet();
+            }
+        }
+        return entry.get();
+    }
+
+    /**
+     * @return  number of change sets computed by this cache
+     */
+    public long getComputeCount() {
+        return computeCount.get();
+    }
+
+    /**
+     * @return  number of times a change set was served from this cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return  total time in nanoseconds spent computing change sets
+     */
+    public long getComputeTime() {
+        return computeTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetCache{computed=" + computeCount + ", hits=" + hitCount + '}';
+    }
+
+    private class Entry {
+        private NodeState before;
+        private NodeState after;
+        private ChangeSet changeSet;
+
+        Entry(NodeState before, NodeState after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        synchronized ChangeSet get() {
+            if (changeSet == null) {
+                changeSet = ChangeSet.create(before, after);
+                computeCount.incrementAndGet();
+                computeTime.addAndGet(changeSet.getDiffTime());
+                // release the states, only the key needs them from here on
+                before = null;
+                after = null;
+            }
+            return changeSet;
+        }
+    }
+
+    private static class Key {
+        private final NodeState before;
+        private final NodeState after;
+
+        Key(NodeState before, NodeState after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (other instanceof Key) {
+                Key that = (Key) other;
+                return before == that.before && after == that.after;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(before) + System.identityHashCode(after);
+        }
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Queues.newArrayDeque;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.commons.json.JsonObject;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.ContentChangeJournal;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.spi.state.RootCheckpoints;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ContentChangeJournal} keeping references to the root states of the
+ * content changes as {@link NodeStore#checkpoint(long) checkpoints} in an
+ * append-only file. This allows a slow observer to fall behind by many
+ * commits without retaining the root states in memory and without
+ * blocking the committing threads.
+ * <p>
+ * Appending a content change only queues it in memory. The checkpoints are
+ * created and the journal file is written by a background task on the passed
+ * executor, as creating a checkpoint may have to wait for the commit in
+ * progress. Content changes are replayed in order, the ones not yet written
+ * directly from memory.
+ * <p>
+ * If the node store implements {@link RootCheckpoints}, the checkpoints
+ * reference the root states of the content changes. Otherwise they
+ * reference the head state of the node store at the time the checkpoint is
+ * created. If that moved on since a change, the change is journaled as an
+ * external change.
+ * <p>
+ * The number of retained checkpoints is bounded. Once that limit is reached
+ * further content changes are merged into the most recent one, which at that
+ * point is kept in memory only. Only string values of the
+ * {@link CommitInfo#getInfo() commit info} map survive the round trip through
+ * the journal file. The file is truncated whenever the journal has been
+ * replayed completely and deleted when the journal is closed.
+ */
+public class CheckpointJournal implements ContentChangeJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    /**
+     * Default life time of the checkpoints created by the journal
+     */
+    public static final long DEFAULT_CHECKPOINT_LIFETIME = TimeUnit.DAYS.toMillis(1);
+
+    private final NodeStore store;
+    private final File file;
+    private final int maxCheckpoints;
+    private final long checkpointLifetime;
+    private final Executor executor;
+
+    private final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private RandomAccessFile journal;
+
+    /**
+     * Content changes appended but not yet written to the journal. Guarded by
+     * its own monitor so that appending never waits for file I/O.
+     */
+    private final Queue<Change> pending = newArrayDeque();
+
+    /**
+     * {@code true} while the {@link #writer} is scheduled or running. Guarded
+     * by {@link #pending}.
+     */
+    private boolean writing;
+
+    /**
+     * Guarded by {@link #pending}.
+     */
+    private boolean closed;
+
+    /**
+     * Number of entries in the journal file and {@link #last}. Kept separately
+     * so that {@link #size()} does not wait for file I/O.
+     */
+    private volatile int written;
+
+    /**
+     * Position of the next entry to read from the journal file
+     */
+    private long readPosition;
+
+    /**
+     * Number of entries in the journal file not yet read
+     */
+    private int fileEntries;
+
+    /**
+     * Time stamp of the oldest entry in the journal file not yet read
+     */
+    private long oldestFileTimestamp = -1;
+
+    /**
+     * The most recent entry. It is only written to the journal file once a
+     * more recent entry is appended, which allows to merge entries once the
+     * maximum number of checkpoints is reached.
+     */
+    private Entry last;
+
+    public CheckpointJournal(@Nonnull NodeStore store, @Nonnull File file,
+            int maxCheckpoints, long checkpointLifetime, @Nonnull Executor executor) {
+        checkArgument(maxCheckpoints > 0, "maxCheckpoints must be positive");
+        this.store = checkNotNull(store);
+        this.file = checkNotNull(file);
+        this.maxCheckpoints = maxCheckpoints;
+        this.checkpointLifetime = checkpointLifetime;
+        this.executor = checkNotNull(executor);
+    }
+
+    public CheckpointJournal(@Nonnull NodeStore store, @Nonnull File file, int maxCheckpoints,
+            @Nonnull Executor executor) {
+        this(store, file, maxCheckpoints, DEFAULT_CHECKPOINT_LIFETIME, executor);
+    }
+
+    @Override
+    public void append(@Nonnull NodeState root, @Nullable CommitInfo info) {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            pending.add(new Change(checkNotNull(root), info, System.currentTimeMillis()));
+            if (writing) {
+                return;
+            }
+            writing = true;
+        }
+        try {
+            executor.execute(writer);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Failed to schedule writing observation journal " + file +
+                    ". Keeping content changes in memory.", e);
+            synchronized (pending) {
+                writing = false;
+            }
+        }
+    }
+
+    @Override
+    public boolean replay(@Nonnull Observer observer) {
+        Entry entry;
+        Change change = null;
+        synchronized (this) {
+            entry = poll();
+            if (entry == null) {
+                // Not written yet: still in memory
+                synchronized (pending) {
+                    change = pending.poll();
+                }
+            }
+        }
+        if (change != null) {
+            observer.contentChanged(change.root, change.info);
+            return true;
+        } else if (entry == null) {
+            return false;
+        }
+        try {
+            NodeState root = store.retrieve(entry.checkpoint);
+            if (root == null) {
+                LOG.warn("Checkpoint {} of observation journal {} expired. " +
+                        "Skipping content change.", entry.checkpoint, file);
+            } else {
+                observer.contentChanged(root, entry.info);
+            }
+        } finally {
+            store.release(entry.checkpoint);
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        synchronized (pending) {
+            return written + pending.size();
+        }
+    }
+
+    @Override
+    public synchronized long getOldestTimestamp() {
+        if (fileEntries > 0) {
+            return oldestFileTimestamp;
+        } else if (last != null) {
+            return last.timestamp;
+        }
+        synchronized (pending) {
+            Change change = pending.peek();
+            return change == null ? -1 : change.timestamp;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (pending) {
+            closed = true;
+            pending.clear();
+        }
+        while (fileEntries > 0) {
+            Entry entry = poll();
+            if (entry != null) {
+                store.release(entry.checkpoint);
+            }
+        }
+        if (last != null) {
+            store.release(last.checkpoint);
+            last = null;
+        }
+        updateWritten();
+        closeFile();
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Failed to delete observation journal {}", file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CheckpointJournal{file=" + file + ", size=" + size() + '}';
+    }
+
+    //------------------------------------------------------------< internal >---
+
+    /**
+     * Create the checkpoints for the pending content changes and write them to
+     * the journal file, oldest first. The checkpoints are created without
+     * holding the lock of this journal, so that committing threads appending
+     * further changes are not blocked.
+     */
+    private void writePending() {
+        while (true) {
+            Change change;
+            synchronized (pending) {
+                change = pending.peek();
+                if (change == null || closed) {
+                    writing = false;
+                    return;
+                }
+            }
+
+            Entry entry = createEntry(change);
+            if (entry == null) {
+                synchronized (pending) {
+                    // Keep the change in memory. Retried on the next append.
+                    writing = false;
+                    return;
+                }
+            }
+            synchronized (this) {
+                // Replaying and closing also lock this journal, so the change
+                // stays at the head of the queue until removed below
+                boolean current;
+                synchronized (pending) {
+                    current = !closed && pending.peek() == change;
+                }
+                if (!current) {
+                    // Closed or replayed from memory in the meantime
+                    store.release(entry.checkpoint);
+                    continue;
+                }
+                if (last != null && fileEntries + 1 >= maxCheckpoints) {
+                    // Merge into the most recent entry. Since the changes of several
+                    // commits are collapsed, the commit information cannot be retained.
+                    store.release(last.checkpoint);
+                    entry = new Entry(entry.checkpoint, last.timestamp, null);
+                } else if (last != null) {
+                    try {
+                        write(last);
+                    } catch (IOException e) {
+                        LOG.warn("Failed to write to observation journal " + file +
+                                ". Merging content changes.", e);
+                        store.release(last.checkpoint);
+                        entry = new Entry(entry.checkpoint, last.timestamp, null);
+                    }
+                }
+                synchronized (pending) {
+                    // Atomically with respect to size()
+                    pending.remove();
+                    last = entry;
+                    updateWritten();
+                }
+            }
+        }
+    }
+
+    @CheckForNull
+    private Entry createEntry(Change change) {
+        try {
+            CommitInfo info = change.info;
+            String checkpoint;
+            if (store instanceof RootCheckpoints) {
+                checkpoint = ((RootCheckpoints) store).checkpoint(change.root, checkpointLifetime);
+            } else {
+                checkpoint = store.checkpoint(checkpointLifetime);
+                NodeState root = store.retrieve(checkpoint);
+                if (root == null) {
+                    checkpoint = null;
+                } else if (info != null && !change.root.equals(root)) {
+                    // The head state moved on since this change. The checkpoint covers
+                    // later changes too, so the commit information does not apply.
+                    info = null;
+                }
+            }
+            if (checkpoint == null) {
+                LOG.warn("Failed to create checkpoint for observation journal {}. " +
+                        "Keeping content change in memory.", file);
+                return null;
+            }
+            return new Entry(checkpoint, change.timestamp, info);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to create checkpoint for observation journal " + file +
+                    ". Keeping content change in memory.", e);
+            return null;
+        }
+    }
+
+    @CheckForNull
+    private Entry poll() {
+        if (fileEntries > 0) {
+            try {
+                Entry entry = read();
+                if (--fileEntries == 0) {
+                    // Fully replayed: start over with an empty file
+                    journal.setLength(0);
+                    readPosition = 0;
+                    oldestFileTimestamp = -1;
+                } else {
+                    oldestFileTimestamp = peekTimestamp();
+                }
+                return entry;
+            } catch (IOException e) {
+                LOG.warn("Failed to read from observation journal " + file +
+                        ". Skipping " + fileEntries + " content changes.", e);
+                fileEntries = 0;
+                oldestFileTimestamp = -1;
+                closeFile();
+                file.delete();
+            }
+        }
+        Entry entry = last;
+        last = null;
+        updateWritten();
+        return entry;
+    }
+
+    private void updateWritten() {
+        written = fileEntries + (last == null ? 0 : 1);
+    }
+
+    private void write(Entry entry) throws IOException {
+        if (journal == null) {
+            journal = new RandomAccessFile(file, "rw");
+            journal.setLength(0);
+        }
+        journal.seek(journal.length());
+        journal.write(entry.toJson().getBytes("UTF-8"));
+        journal.write('\n');
+        if (fileEntries++ == 0) {
+            oldestFileTimestamp = entry.timestamp;
+        }
+    }
+
+    private Entry read() throws IOException {
+        journal.seek(readPosition);
+        String line = journal.readLine();
+        readPosition = journal.getFilePointer();
+        if (line == null) {
+            throw new IOException("Unexpected end of observation journal");
+        }
+        // readLine maps each byte to a character
+        return Entry.fromJson(new String(line.getBytes("ISO-8859-1"), "UTF-8"));
+    }
+
+    private long peekTimestamp() throws IOException {
+        long position = readPosition;
+        Entry entry = read();
+        readPosition = position;
+        return entry.timestamp;
+    }
+
+    private void closeFile() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing observation journal " + file, e);
+            }
+            journal = null;
+            readPosition = 0;
+        }
+    }
+
+    private static class Change {
+        final NodeState root;
+        final CommitInfo info;
+        final long timestamp;
+
+        Change(NodeState root, CommitInfo info, long timestamp) {
+            this.root = root;
+            this.info = info;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class Entry {
+        final String checkpoint;
+        final long timestamp;
+        final CommitInfo info;
+
+        Entry(String checkpoint, long timestamp, CommitInfo info) {
+            this.checkpoint = checkpoint;
+            this.timestamp = timestamp;
+            this.info = info;
+        }
+
+        String toJson() {
+            JsopBuilder json = new JsopBuilder();
+            json.object()
+                .key("checkpoint").value(checkpoint)
+                .key("timestamp").value(timestamp);
+            if (info != null) {
+                json.key("sessionId").value(info.getSessionId())
+                    .key("userId").value(info.getUserId())
+                    .key("date").value(info.getDate())
+                    .key("info").object();
+                for (Map.Entry<String, Object> e : info.getInfo().entrySet()) {
+                    if (e.getValue() instanceof String) {
+                        json.key(e.getKey()).value((String) e.getValue());
+                    }
+                }
+                json.endObject();
+            }
+            return json.endObject().toString();
+        }
+
+        static Entry fromJson(String json) {
+            JsopTokenizer tokenizer = new JsopTokenizer(json);
+            tokenizer.read('{');
+            JsonObject object = JsonObject.create(tokenizer);
+            Map<String, String> properties = object.getProperties();
+            CommitInfo info = null;
+            if (properties.containsKey("sessionId")) {
+                Map<String, Object> infoMap = newHashMap();
+                JsonObject infoObject = object.getChildren().get("info");
+                if (infoObject != null) {
+                    for (Map.Entry<String, String> e : infoObject.getProperties().entrySet()) {
+                        infoMap.put(e.getKey(), JsopTokenizer.decodeQuoted(e.getValue()));
+                    }
+                }
+                info = new CommitInfo(
+                        JsopTokenizer.decodeQuoted(properties.get("sessionId")),
+                        JsopTokenizer.decodeQuoted(properties.get("userId")),
+                        infoMap,
+                        Long.parseLong(properties.get("date")));
+            }
+            return new Entry(
+                    JsopTokenizer.decodeQuoted(properties.get("checkpoint")),
+                    Long.parseLong(properties.get("timestamp")),
+                    info);
+        }
+    }
+
+}
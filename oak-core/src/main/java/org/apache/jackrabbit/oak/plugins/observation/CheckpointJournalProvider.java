@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.spi.commit.ContentChangeJournal;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+
+/**
+ * Factory for the {@link CheckpointJournal}s of the observers of a repository.
+ * When registered with the whiteboard, observation listeners use a journal
+ * from this factory for the content changes that don't fit into their queue.
+ * All journal files are kept in a common directory.
+ *
+ * @see org.apache.jackrabbit.oak.Oak#withObservationJournal(File, int)
+ */
+public class CheckpointJournalProvider {
+    private final NodeStore store;
+    private final File directory;
+    private final int maxCheckpoints;
+    private final Executor executor;
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * @param store           node store to create the checkpoints in
+     * @param directory       directory for the journal files
+     * @param maxCheckpoints  maximum number of checkpoints retained per journal
+     * @param executor        executor for creating the checkpoints and writing
+     *                        the journal files
+     */
+    public CheckpointJournalProvider(@Nonnull NodeStore store, @Nonnull File directory,
+            int maxCheckpoints, @Nonnull Executor executor) {
+        checkArgument(maxCheckpoints > 0, "maxCheckpoints must be positive");
+        this.store = checkNotNull(store);
+        this.directory = checkNotNull(directory);
+        this.maxCheckpoints = maxCheckpoints;
+        this.executor = checkNotNull(executor);
+    }
+
+    /**
+     * Create a new journal.
+     * @param name  name of the observer the journal is for. Used for naming the
+     *              journal file.
+     * @return  a new, empty journal
+     */
+    @Nonnull
+    public ContentChangeJournal create(@Nonnull String name) {
+        if (!directory.exists() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IllegalStateException("Cannot create observation journal directory " + directory);
+        }
+        String fileName = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (fileName.length() > 64) {
+            fileName = fileName.substring(0, 64);
+        }
+        File file = new File(directory, fileName + '-' + counter.incrementAndGet() + ".journal");
+        return new CheckpointJournal(store, file, maxCheckpoints, executor);
+    }
+
+}
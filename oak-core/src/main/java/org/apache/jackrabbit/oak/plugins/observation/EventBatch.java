@@ -0,0 +1,284 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static javax.jcr.observation.Event.NODE_ADDED;
+import static javax.jcr.observation.Event.NODE_MOVED;
+import static javax.jcr.observation.Event.NODE_REMOVED;
+import static javax.jcr.observation.Event.PROPERTY_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_CHANGED;
+import static javax.jcr.observation.Event.PROPERTY_REMOVED;
+
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * A batch of observation events in columnar form. Instead of one object per
+ * event, a batch keeps the attributes of its events in parallel arrays indexed
+ * by the position of the event in the batch. Adding an event to a batch
+ * only stores references to already existing objects.
+ * <p>
+ * Batches are reused by their {@link EventBatchObserver}: a batch is only
+ * valid during the {@link EventBatchObserver#onEvents(EventBatch)} call it is
+ * passed to and must not be retained afterwards. All events of a batch belong
+ * to the same commit. Paths and names are Oak paths and names.
+ */
+public final class EventBatch {
+
+    private final int capacity;
+
+    private final int[] types;
+    private final String[] parentPaths;
+    private final String[] names;
+    private final String[] identifiers;
+    private final NodeState[] nodes;
+    private final PropertyState[] before;
+    private final PropertyState[] after;
+    private final String[] moveInfo;
+    private final boolean[] reorders;
+
+    private int size;
+    private CommitInfo commitInfo;
+
+    EventBatch(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+        types = new int[capacity];
+        parentPaths = new String[capacity];
+        names = new String[capacity];
+        identifiers = new String[capacity];
+        nodes = new NodeState[capacity];
+        before = new PropertyState[capacity];
+        after = new PropertyState[capacity];
+        moveInfo = new String[capacity];
+        reorders = new boolean[capacity];
+    }
+
+    /**
+     * @return  number of events in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return  the commit info of the commit the events of this batch belong
+     *          to or {@code null} for external changes
+     */
+    @CheckForNull
+    public CommitInfo getCommitInfo() {
+        return commitInfo;
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the {@link javax.jcr.observation.Event} type of the event
+     */
+    public int getType(int index) {
+        return types[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the path of the parent of the item of the event
+     */
+    @Nonnull
+    public String getParentPath(int index) {
+        return parentPaths[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the name of the item of the event
+     */
+    @Nonnull
+    public String getName(int index) {
+        return names[checkElementIndex(index, size)];
+    }
+
+    /**
+     * Convenience method concatenating {@link #getParentPath(int)} and
+     * {@link #getName(int)}. Note that this allocates a new string on each call.
+     * @param index  index of an event
+     * @return  the path of the item of the event
+     */
+    @Nonnull
+    public String getPath(int index) {
+        return PathUtils.concat(getParentPath(index), getName(index));
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the identifier of the node of a node event or of the parent
+     *          node of a property event
+     */
+    @Nonnull
+    public String getIdentifier(int index) {
+        return identifiers[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the node of a node event or the parent node of a property event
+     */
+    @Nonnull
+    public NodeState getNode(int index) {
+        return nodes[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the property state before the change of a property event
+     *          or {@code null} if not applicable
+     */
+    @CheckForNull
+    public PropertyState getBefore(int index) {
+        return before[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the property state after the change of a property event
+     *          or {@code null} if not applicable
+     */
+    @CheckForNull
+    public PropertyState getAfter(int index) {
+        return after[checkElementIndex(index, size)];
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the source path of a move or {@code null} if not applicable
+     */
+    @CheckForNull
+    public String getSourcePath(int index) {
+        return getType(index) == NODE_MOVED && !reorders[index]
+                ? moveInfo[index]
+                : null;
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  the name of the node a node was reordered before or
+     *          {@code null} if not applicable
+     */
+    @CheckForNull
+    public String getDestName(int index) {
+        return getType(index) == NODE_MOVED && reorders[index]
+                ? moveInfo[index]
+                : null;
+    }
+
+    /**
+     * @param index  index of an event
+     * @return  {@code true} if the event is about the reordering of a node,
+     *          which are reported as {@link javax.jcr.observation.Event#NODE_MOVED}
+     */
+    public boolean isReorder(int index) {
+        return reorders[checkElementIndex(index, size)];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EventBatch{");
+        for (int k = 0; k < size; k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(types[k]).append(':').append(getPath(k));
+        }
+        return sb.append('}').toString();
+    }
+
+    //------------------------------------------------------------< internal >---
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    void reset(CommitInfo commitInfo) {
+        Arrays.fill(parentPaths, 0, size, null);
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(identifiers, 0, size, null);
+        Arrays.fill(nodes, 0, size, null);
+        Arrays.fill(before, 0, size, null);
+        Arrays.fill(after, 0, size, null);
+        Arrays.fill(moveInfo, 0, size, null);
+        size = 0;
+        this.commitInfo = commitInfo;
+    }
+
+    void propertyAdded(String parentPath, NodeState parent, String identifier,
+            PropertyState after) {
+        add(PROPERTY_ADDED, parentPath, after.getName(), identifier, parent, null, after, null, false);
+    }
+
+    void propertyChanged(String parentPath, NodeState parent, String identifier,
+            PropertyState before, PropertyState after) {
+        add(PROPERTY_CHANGED, parentPath, after.getName(), identifier, parent, before, after, null, false);
+    }
+
+    void propertyDeleted(String parentPath, NodeState parent, String identifier,
+            PropertyState before) {
+        add(PROPERTY_REMOVED, parentPath, before.getName(), identifier, parent, before, null, null, false);
+    }
+
+    void nodeAdded(String parentPath, String name, String identifier, NodeState after) {
+        add(NODE_ADDED, parentPath, name, identifier, after, null, null, null, false);
+    }
+
+    void nodeDeleted(String parentPath, String name, String identifier, NodeState before) {
+        add(NODE_REMOVED, parentPath, name, identifier, before, null, null, null, false);
+    }
+
+    void nodeMoved(String parentPath, String name, String identifier, NodeState moved,
+            String sourcePath) {
+        add(NODE_MOVED, parentPath, name, identifier, moved, null, null, sourcePath, false);
+    }
+
+    void nodeReordered(String parentPath, String name, String identifier, NodeState reordered,
+            String destName) {
+        add(NODE_MOVED, parentPath, name, identifier, reordered, null, null, destName, true);
+    }
+
+    private void add(int type, String parentPath, String name, String identifier,
+            NodeState node, PropertyState before, PropertyState after, String moveInfo,
+            boolean reorder) {
+        int k = size++;
+        types[k] = type;
+        parentPaths[k] = parentPath;
+        names[k] = name;
+        identifiers[k] = identifier;
+        nodes[k] = node;
+        this.before[k] = before;
+        this.after[k] = after;
+        this.moveInfo[k] = moveInfo;
+        reorders[k] = reorder;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.plugins.observation.filter.VisibleFilter.VISIBLE_FILTER;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.namepath.PathTracker;
+import org.apache.jackrabbit.oak.plugins.identifier.IdentifierTracker;
+import org.apache.jackrabbit.oak.plugins.observation.filter.EventFilter;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterProvider;
+import org.apache.jackrabbit.oak.plugins.observation.filter.Filters;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for {@code Observer} instances consuming observation events in
+ * batches instead of one {@code javax.jcr.observation.Event} instance at a
+ * time. The events of a commit passing the {@link FilterProvider filter} are
+ * collected into an {@link EventBatch}, which is passed to
+ * {@link #onEvents(EventBatch)} whenever it is full and at the end of the
+ * commit. No objects are created per event and the batch instance is reused.
+ * <p>
+ * Like other observers, instances of this class should be wrapped into a
+ * {@link org.apache.jackrabbit.oak.spi.commit.BackgroundObserver} to keep
+ * event processing off the committing thread.
+ */
+public abstract class EventBatchObserver implements Observer {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatchObserver.class);
+
+    /**
+     * Default maximum number of events per batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final String sessionId;
+    private final FilterProvider filterProvider;
+    private final EventBatch batch;
+
+    private NodeState previousRoot;
+
+    /**
+     * @param sessionId       id of the observing session as passed to
+     *                        {@link FilterProvider#includeCommit(String, CommitInfo)}
+     * @param filterProvider  filter for the events to report
+     * @param batchSize       maximum number of events per batch
+     */
+    protected EventBatchObserver(@Nonnull String sessionId,
+            @Nonnull FilterProvider filterProvider, int batchSize) {
+        this.sessionId = checkNotNull(sessionId);
+        this.filterProvider = checkNotNull(filterProvider);
+        this.batch = new EventBatch(batchSize);
+    }
+
+    protected EventBatchObserver(@Nonnull String sessionId,
+            @Nonnull FilterProvider filterProvider) {
+        this(sessionId, filterProvider, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Called with a batch of events. The batch must not be retained beyond
+     * this call as it is reused for subsequent batches. The events of a single
+     * commit may be split across several consecutive batches, all of which
+     * carry the same {@link EventBatch#getCommitInfo() commit info}.
+     *
+     * @param batch  non empty batch of events
+     */
+    protected abstract void onEvents(@Nonnull EventBatch batch);
+
+    @Override
+    public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+        if (previousRoot != null) {
+            try {
+                if (filterProvider.includeCommit(sessionId, info)) {
+                    generate(previousRoot, root, info);
+                }
+            } catch (Exception e) {
+                LOG.warn("Error while dispatching observation events to " + this, e);
+            }
+        }
+        previousRoot = root;
+    }
+
+    private void generate(NodeState before, NodeState after, CommitInfo info) {
+        batch.reset(info);
+        EventFilter filter = Filters.all(filterProvider.getFilter(before, after), VISIBLE_FILTER);
+        EventHandler rootHandler = new FilteredHandler(filter, new BatchingHandler(before, after));
+        EventGenerator generator = new EventGenerator();
+        for (String path : filterProvider.getSubTrees()) {
+            NodeState b = before;
+            NodeState a = after;
+            EventHandler handler = rootHandler;
+            for (String name : PathUtils.elements(path)) {
+                b = b.getChildNode(name);
+                a = a.getChildNode(name);
+                handler = handler.getChildHandler(name, b, a);
+                if (handler == null) {
+                    break;
+                }
+            }
+            if (handler != null) {
+                generator.addHandler(b, a, handler);
+            }
+        }
+        while (!generator.isDone()) {
+            generator.generate();
+        }
+        flush();
+    }
+
+    private void flush() {
+        if (batch.size() > 0) {
+            CommitInfo info = batch.getCommitInfo();
+            onEvents(batch);
+            batch.reset(info);
+        }
+    }
+
+    private void flushIfFull() {
+        if (batch.isFull()) {
+            flush();
+        }
+    }
+
+    /**
+     * Event handler adding the events to the current batch. Paths and
+     * identifiers are tracked the same way as for the events delivered
+     * to JCR event listeners.
+     */
+    private class BatchingHandler extends DefaultEventHandler {
+        private final PathTracker pathTracker;
+
+        // need to track identifiers for both before and after trees,
+        // to get correct identifiers for events in removed subtrees
+        private final IdentifierTracker beforeIdentifierTracker;
+        private final IdentifierTracker identifierTracker;
+
+        private final NodeState parent;
+
+        BatchingHandler(NodeState before, NodeState after) {
+            this.pathTracker = new PathTracker();
+            this.beforeIdentifierTracker = new IdentifierTracker(before);
+            if (after.exists()) {
+                this.identifierTracker = new IdentifierTracker(after);
+                this.parent = after;
+            } else {
+                this.identifierTracker = beforeIdentifierTracker;
+                this.parent = before;
+            }
+        }
+
+        private BatchingHandler(BatchingHandler parent,
+                String name, NodeState before, NodeState after) {
+            this.pathTracker = parent.pathTracker.getChildTracker(name);
+            this.beforeIdentifierTracker =
+                    parent.beforeIdentifierTracker.getChildTracker(name, before);
+            if (after.exists()) {
+                this.identifierTracker =
+                        parent.identifierTracker.getChildTracker(name, after);
+                this.parent = after;
+            } else {
+                this.identifierTracker = beforeIdentifierTracker;
+                this.parent = before;
+            }
+        }
+
+        @Override
+        public EventHandler getChildHandler(String name, NodeState before, NodeState after) {
+            return new BatchingHandler(this, name, before, after);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) {
+            flushIfFull();
+            batch.propertyAdded(pathTracker.getPath(), parent,
+                    identifierTracker.getIdentifier(), after);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after) {
+            flushIfFull();
+            batch.propertyChanged(pathTracker.getPath(), parent,
+                    identifierTracker.getIdentifier(), before, after);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) {
+            flushIfFull();
+            batch.propertyDeleted(pathTracker.getPath(), parent,
+                    identifierTracker.getIdentifier(), before);
+        }
+
+        @Override
+        public void nodeAdded(String name, NodeState after) {
+            flushIfFull();
+            IdentifierTracker tracker = identifierTracker.getChildTracker(name, after);
+            batch.nodeAdded(pathTracker.getPath(), name, tracker.getIdentifier(), after);
+        }
+
+        @Override
+        public void nodeDeleted(String name, NodeState before) {
+            flushIfFull();
+            IdentifierTracker tracker = beforeIdentifierTracker.getChildTracker(name, before);
+            batch.nodeDeleted(pathTracker.getPath(), name, tracker.getIdentifier(), before);
+        }
+
+        @Override
+        public void nodeMoved(String sourcePath, String name, NodeState moved) {
+            flushIfFull();
+            IdentifierTracker tracker = identifierTracker.getChildTracker(name, moved);
+            batch.nodeMoved(pathTracker.getPath(), name, tracker.getIdentifier(), moved,
+                    sourcePath);
+        }
+
+        @Override
+        public void nodeReordered(String destName, String name, NodeState reordered) {
+            flushIfFull();
+            IdentifierTracker tracker = identifierTracker.getChildTracker(name, reordered);
+            batch.nodeReordered(pathTracker.getPath(), name, tracker.getIdentifier(), reordered,
+                    destName);
+        }
+    }
+
+}
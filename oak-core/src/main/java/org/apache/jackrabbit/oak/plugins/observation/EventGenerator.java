@@ -30,9 +30,14 @@ import static org.apache.jackrabbit.oak.spi.state.MoveDetector.SOURCE_PATH;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
@@ -53,6 +58,14 @@ import org.slf4j.LoggerFactory;
  *     generator.generate();
  * }
  * </pre>
+ * <p>
+ * A generator created with an {@link Executor} runs the content diffs of
+ * the next few pending continuations concurrently on that executor. The
+ * callbacks of each continuation are recorded and replayed on the thread
+ * calling {@link #generate()} in the same order a generator without executor
+ * would deliver them. Only {@link EventHandler#getChildHandler(String,
+ * NodeState, NodeState)} is called from the executor threads, so it must
+ * be safe to call concurrently on different handler instances.
  */
 public class EventGenerator {
 
@@ -74,13 +87,40 @@ public class EventGenerator {
      */
     private static final int MAX_QUEUED_CONTINUATIONS = 1000;
 
+    /**
+     * Number of pending continuations processed ahead concurrently
+     * when running with an executor.
+     */
+    private static final int PARALLEL_CONTINUATIONS =
+            2 * Runtime.getRuntime().availableProcessors();
+
     private final LinkedList<Continuation> continuations = newLinkedList();
 
+    /**
+     * Executor for processing continuations ahead, {@code null} for
+     * processing them on the calling thread only.
+     */
+    private final Executor executor;
+
     /**
      * Creates a new generator instance. Changes to process need to be added
      * through {@link #addHandler(NodeState, NodeState, EventHandler)}
      */
-    public EventGenerator() {}
+    public EventGenerator() {
+        this(null);
+    }
+
+    /**
+     * Creates a new generator instance processing continuations concurrently
+     * on the given executor. Changes to process need to be added through
+     * {@link #addHandler(NodeState, NodeState, EventHandler)}
+     *
+     * @param executor  executor for processing continuations or {@code null}
+     *                  to process them on the thread calling {@link #generate()}.
+     */
+    public EventGenerator(@CheckForNull Executor executor) {
+        this.executor = executor;
+    }
 
     /**
      * Creates a new generator instance for processing the given changes.
@@ -88,6 +128,7 @@ public class EventGenerator {
     public EventGenerator(
             @Nonnull NodeState before, @Nonnull NodeState after,
             @Nonnull EventHandler handler) {
+        this.executor = null;
         continuations.addFirst(new Continuation(handler, before, after, 0));
     }
 
@@ -114,12 +155,46 @@ public class EventGenerator {
             final Continuation c = continuations.removeFirst();
             final long start = perfLogger
                     .start("generate: Starting event generation");
-            c.run();
+            if (executor == null) {
+                c.run();
+            } else {
+                c.replay();
+                processAhead();
+            }
             perfLogger.end(start, 1, "generate: Generated {} events",
                     c.counter);
         }
     }
 
+    /**
+     * Submit the first {@link #PARALLEL_CONTINUATIONS} pending continuations
+     * to the executor unless they have been submitted already.
+     */
+    private void processAhead() {
+        int k = 0;
+        for (Continuation c : continuations) {
+            if (k++ == PARALLEL_CONTINUATIONS) {
+                break;
+            }
+            c.submit();
+        }
+    }
+
+    /**
+     * Add a continuation to the pending ones, either directly or, when
+     * called from an executor thread, through the recording of the
+     * continuation {@code parent} when this recording is replayed.
+     */
+    private void schedule(Continuation parent, Continuation c, boolean first) {
+        if (parent.recording != null) {
+            parent.recording.schedule(c, first);
+        } else if (first) {
+            continuations.addFirst(c);
+        } else {
+            continuations.add(c);
+        }
+    }
+
     private class Continuation implements NodeStateDiff, Runnable {
 
         /**
@@ -147,6 +222,18 @@ public class EventGenerator {
          */
         private int counter = 0;
 
+        /**
+         * Recorded callbacks when processed on an executor thread,
+         * {@code null} otherwise.
+         */
+        private Recording recording;
+
+        /**
+         * Task processing this continuation on an executor thread,
+         * {@code null} if not submitted yet.
+         */
+        private FutureTask<Recording> task;
+
         private Continuation(
                 EventHandler handler, NodeState before, NodeState after,
                 int skip) {
@@ -164,6 +251,7 @@ public class EventGenerator {
          */
         @Override
         public void run() {
+            EventHandler handler = target();
             if (skip == 0) {
                 // Only call enter if this is not a continuation that hit
                 // the MAX_CHANGES_PER_CONTINUATION limit before
@@ -176,12 +264,46 @@ public class EventGenerator {
             }
         }
 
+        /**
+         * Process this continuation on the executor, recording all callbacks
+         * for later replay.
+         */
+        void submit() {
+            if (task == null) {
+                recording = new Recording();
+                task = new FutureTask<Recording>(this, recording);
+                executor.execute(task);
+            }
+        }
+
+        /**
+         * Deliver the callbacks of this continuation to its handler and
+         * schedule the continuations it created. Processes this continuation
+         * on the calling thread if no executor thread has started doing so.
+         */
+        void replay() {
+            submit();
+            task.run(); // no-op if already run by the executor
+            try {
+                Uninterruptibles.getUninterruptibly(task).replay(handler);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            }
+        }
+
         //-------------------------------------------------< NodeStateDiff >--
 
         @Override
         public boolean propertyAdded(PropertyState after) {
             if (beforeEvent()) {
-                handler.propertyAdded(after);
+                target().propertyAdded(after);
                 return afterEvent();
             } else {
                 return true;
@@ -237,14 +359,14 @@ public class EventGenerator {
                             }
 
                             // deliver the reordering event
-                            handler.nodeReordered(
+                            target().nodeReordered(
                                     destName, afterName,
                                     this.after.getChildNode(afterName));
                         }
                     }
                 }
 
-                handler.propertyChanged(before, after);
+                target().propertyChanged(before, after);
                 return afterEvent();
             } else {
                 return true;
@@ -254,7 +376,7 @@ public class EventGenerator {
         @Override
         public boolean propertyDeleted(PropertyState before) {
             if (beforeEvent()) {
-                handler.propertyDeleted(before);
+                target().propertyDeleted(before);
                 return afterEvent();
             } else {
                 return true;
@@ -269,10 +391,10 @@ public class EventGenerator {
                 PropertyState sourceProperty = after.getProperty(SOURCE_PATH);
                 if (sourceProperty != null) {
                     String sourcePath = sourceProperty.getValue(STRING);
-                    handler.nodeMoved(sourcePath, name, after);
+                    target().nodeMoved(sourcePath, name, after);
                 }
 
-                handler.nodeAdded(name, after);
+                target().nodeAdded(name, after);
                 addChildDiff(name, MISSING_NODE, after);
                 return afterEvent();
             } else {
@@ -298,7 +420,7 @@ public class EventGenerator {
             if (fullQueue()) {
                 return false;
             } else if (beforeEvent()) {
-                handler.nodeDeleted(name, before);
+                target().nodeDeleted(name, before);
                 addChildDiff(name, before, MISSING_NODE);
                 return afterEvent();
             } else {
@@ -316,10 +438,18 @@ public class EventGenerator {
                 String name, NodeState before, NodeState after) {
             EventHandler h = handler.getChildHandler(name, before, after);
             if (h != null) {
-                continuations.addFirst(new Continuation(h, before, after, 0));
+                schedule(this, new Continuation(h, before, after, 0), true);
             }
         }
 
+        /**
+         * The handler to deliver callbacks to: either the actual handler or
+         * the recording of the callbacks if processed on an executor thread.
+         */
+        private EventHandler target() {
+            return recording != null ? recording : handler;
+        }
+
         /**
          * Increases the event counter and checks whether the event should
          * be processed, i.e. whether the initial skip count has been reached.
@@ -337,7 +467,10 @@ public class EventGenerator {
          * automatically clean up the backlog.
          */
         private boolean fullQueue() {
+            // The size of the queue is not known while processing ahead.
+            // The number of continuations processed ahead is limited anyway.
             if (counter > skip // must have processed at least one event
+                    && recording == null
                     && continuations.size() >= MAX_QUEUED_CONTINUATIONS) {
                 continuations.add(new Continuation(
                         handler, this.before, this.after, counter));
@@ -355,8 +488,7 @@ public class EventGenerator {
          */
         private boolean afterEvent() {
             if (counter >= skip + MAX_CHANGES_PER_CONTINUATION) {
-                continuations.addFirst(
-                        new Continuation(handler, before, after, counter));
+                schedule(this, new Continuation(handler, before, after, counter), true);
                 return false;
             } else {
                 return true;
@@ -365,4 +497,129 @@ public class EventGenerator {
 
     }
 
+    /**
+     * Recording of the callbacks of a continuation and the continuations
+     * it scheduled, for replaying them in order on another thread.
+     */
+    private class Recording extends DefaultEventHandler {
+        private static final int ENTER = 0;
+        private static final int LEAVE = 1;
+        private static final int PROPERTY_ADDED = 2;
+        private static final int PROPERTY_CHANGED = 3;
+        private static final int PROPERTY_DELETED = 4;
+        private static final int NODE_ADDED = 5;
+        private static final int NODE_DELETED = 6;
+        private static final int NODE_MOVED = 7;
+        private static final int NODE_REORDERED = 8;
+        private static final int SCHEDULE_FIRST = 9;
+        private static final int SCHEDULE_LAST = 10;
+
+        /**
+         * Sequence of operations, each consisting of the operation
+         * code followed by its three arguments.
+         */
+        private final List<Object> ops = newArrayList();
+
+        private void record(int op, Object a, Object b, Object c) {
+            ops.add(op);
+            ops.add(a);
+            ops.add(b);
+            ops.add(c);
+        }
+
+        void schedule(Continuation continuation, boolean first) {
+            record(first ? SCHEDULE_FIRST : SCHEDULE_LAST, continuation, null, null);
+        }
+
+        void replay(EventHandler handler) {
+            for (int k = 0; k < ops.size(); k += 4) {
+                Object a = ops.get(k + 1);
+                Object b = ops.get(k + 2);
+                Object c = ops.get(k + 3);
+                switch ((Integer) ops.get(k)) {
+                    case ENTER:
+                        handler.enter((NodeState) a, (NodeState) b);
+                        break;
+                    case LEAVE:
+                        handler.leave((NodeState) a, (NodeState) b);
+                        break;
+                    case PROPERTY_ADDED:
+                        handler.propertyAdded((PropertyState) a);
+                        break;
+                    case PROPERTY_CHANGED:
+                        handler.propertyChanged((PropertyState) a, (PropertyState) b);
+                        break;
+                    case PROPERTY_DELETED:
+                        handler.propertyDeleted((PropertyState) a);
+                        break;
+                    case NODE_ADDED:
+                        handler.nodeAdded((String) a, (NodeState) b);
+                        break;
+                    case NODE_DELETED:
+                        handler.nodeDeleted((String) a, (NodeState) b);
+                        break;
+                    case NODE_MOVED:
+                        handler.nodeMoved((String) a, (String) b, (NodeState) c);
+                        break;
+                    case NODE_REORDERED:
+                        handler.nodeReordered((String) a, (String) b, (NodeState) c);
+                        break;
+                    case SCHEDULE_FIRST:
+                        continuations.addFirst((Continuation) a);
+                        break;
+                    case SCHEDULE_LAST:
+                        continuations.add((Continuation) a);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown operation " + ops.get(k));
+                }
+            }
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) {
+            record(ENTER, before, after, null);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after) {
+            record(LEAVE, before, after, null);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) {
+            record(PROPERTY_ADDED, after, null, null);
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after) {
+            record(PROPERTY_CHANGED, before, after, null);
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) {
+            record(PROPERTY_DELETED, before, null, null);
+        }
+
+        @Override
+        public void nodeAdded(String name, NodeState after) {
+            record(NODE_ADDED, name, after, null);
+        }
+
+        @Override
+        public void nodeDeleted(String name, NodeState before) {
+            record(NODE_DELETED, name, before, null);
+        }
+
+        @Override
+        public void nodeMoved(String sourcePath, String name, NodeState moved) {
+            record(NODE_MOVED, sourcePath, name, moved);
+        }
+
+        @Override
+        public void nodeReordered(String destName, String name, NodeState reordered) {
+            record(NODE_REORDERED, destName, name, reordered);
+        }
+    }
+
 }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation.filter;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.plugins.observation.ChangeSet;
+
+/**
+ * A {@code ChangeSetFilter} allows to cheaply rule out whole commits based on
+ * a {@link ChangeSet} before generating individual events. {@link FilterProvider}
+ * instances may implement this interface in order to be skipped for commits
+ * that cannot produce any events for them.
+ */
+public interface ChangeSetFilter {
+
+    /**
+     * Determine whether the changes in the passed change set are excluded.
+     * Implementations must be conservative: only return {@code true} if
+     * none of the changes can produce an event.
+     *
+     * @param changeSet  change set of a commit
+     * @return  {@code true} if no event can match, {@code false} otherwise.
+     */
+    boolean excludes(@Nonnull ChangeSet changeSet);
+
+}
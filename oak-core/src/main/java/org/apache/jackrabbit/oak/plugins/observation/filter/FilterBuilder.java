@@ -41,6 +41,7 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.plugins.nodetype.TypePredicate;
+import org.apache.jackrabbit.oak.plugins.observation.ChangeSet;
 import org.apache.jackrabbit.oak.plugins.observation.filter.UniversalFilter.Selector;
 import org.apache.jackrabbit.oak.plugins.tree.RootFactory;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
@@ -365,12 +366,13 @@ public final class FilterBuilder {
      */
     @Nonnull
     public FilterProvider build() {
-        return new FilterProvider() {
+        return new ChangeSetFilterProvider() {
             final boolean includeSessionLocal = FilterBuilder.this.includeSessionLocal;
             final boolean includeClusterExternal = FilterBuilder.this.includeClusterExternal;
             final boolean includeClusterLocal = FilterBuilder.this.includeClusterLocal;
             final Iterable<String> subTrees = FilterBuilder.this.getSubTrees();
             final Condition condition = FilterBuilder.this.condition;
+            final int eventTypes = getEventTypes(condition);
 
             @Override
             public boolean includeCommit(@Nonnull String sessionId, @CheckForNull CommitInfo info) {
@@ -391,6 +393,19 @@ public final class FilterBuilder {
                 return subTrees;
             }
 
+            @Override
+            public boolean excludes(@Nonnull ChangeSet changeSet) {
+                if (!changeSet.containsEventTypes(eventTypes)) {
+                    return true;
+                }
+                for (String subTree : subTrees) {
+                    if (changeSet.containsChangesIn(subTree)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
             private boolean isLocal(String sessionId, CommitInfo info) {
                 return info != null && Objects.equal(info.getSessionId(), sessionId);
             }
@@ -401,6 +416,35 @@ public final class FilterBuilder {
         };
     }
 
+    /**
+     * Conservatively determine the event types the passed condition can match.
+     * Conditions other than event type conditions and compounds thereof are
+     * assumed to match all event types.
+     */
+    private static int getEventTypes(Condition condition) {
+        if (condition == ConstantCondition.EXCLUDE_ALL) {
+            return 0;
+        } else if (condition instanceof EventTypeCondition) {
+            return ((EventTypeCondition) condition).eventTypes;
+        } else if (condition instanceof AllCondition) {
+            int eventTypes = ALL_EVENTS;
+            for (Condition c : ((AllCondition) condition).conditions) {
+                eventTypes &= getEventTypes(c);
+            }
+            return eventTypes;
+        } else if (condition instanceof AnyCondition) {
+            int eventTypes = 0;
+            for (Condition c : ((AnyCondition) condition).conditions) {
+                eventTypes |= getEventTypes(c);
+            }
+            return eventTypes;
+        } else {
+            return ALL_EVENTS;
+        }
+    }
+
+    private interface ChangeSetFilterProvider extends FilterProvider, ChangeSetFilter { }
+
     //------------------------------------------------------------< Conditions >---
 
     private static class ConstantCondition implements Condition {
@@ -56,6 +56,7 @@ import org.apache.jackrabbit.oak.spi.state.ConflictAnnotatingRebaseDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.spi.state.RootCheckpoints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,7 +66,7 @@ import org.slf4j.LoggerFactory;
  * The root node of the JCR content tree is actually stored in the node "/root",
  * and checkpoints are stored under "/checkpoints".
  */
-public class SegmentNodeStore implements NodeStore, Observable {
+public class SegmentNodeStore implements NodeStore, Observable, RootCheckpoints {
 
     private static final Logger log = LoggerFactory
             .getLogger(SegmentNodeStore.class);
@@ -233,57 +234,91 @@ public class SegmentNodeStore implements NodeStore, Observable {
         checkArgument(lifetime > 0);
         checkNotNull(properties);
         String name = UUID.randomUUID().toString();
+        if (!createCheckpoint(name, null, lifetime, properties, 0)) {
+            log.debug("Failed to create checkpoint {}", name);
+        }
+        return name;
+    }
+
+    @Override @CheckForNull
+    public String checkpoint(@Nonnull NodeState root, long lifetime) {
+        checkNotNull(root);
+        checkArgument(lifetime > 0);
+        String name = UUID.randomUUID().toString();
+        if (createCheckpoint(name, root, lifetime,
+                Collections.<String, String>emptyMap(), maximumBackoff)) {
+            return name;
+        } else {
+            log.debug("Failed to create checkpoint {}", name);
+            return null;
+        }
+    }
+
+    /**
+     * Create a checkpoint for the passed root state or the current head state
+     * if {@code null}.
+     *
+     * @param wait  maximum time in milliseconds to wait for a commit in progress
+     * @return  {@code true} if the checkpoint was created
+     */
+    private boolean createCheckpoint(String name, NodeState root, long lifetime,
+            Map<String, String> properties, long wait) {
         long now = System.currentTimeMillis();
 
         // try 5 times
         for (int i = 0; i < 5; i++) {
-            if (commitSemaphore.tryAcquire()) {
-                try {
-                    refreshHead();
-
-                    SegmentNodeState state = head.get();
-                    SegmentNodeBuilder builder = state.builder();
+            try {
+                if (!commitSemaphore.tryAcquire(wait, MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            try {
+                refreshHead();
 
-                    NodeBuilder checkpoints = builder.child("checkpoints");
-                    for (String n : checkpoints.getChildNodeNames()) {
-                        NodeBuilder cp = checkpoints.getChildNode(n);
-                        PropertyState ts = cp.getProperty("timestamp");
-                        if (ts == null
-                                || ts.getType() != Type.LONG
-                                || now > ts.getValue(Type.LONG)) {
-                            cp.remove();
-                        }
+                SegmentNodeState state = head.get();
+                SegmentNodeBuilder builder = state.builder();
+
+                NodeBuilder checkpoints = builder.child("checkpoints");
+                for (String n : checkpoints.getChildNodeNames()) {
+                    NodeBuilder cp = checkpoints.getChildNode(n);
+                    PropertyState ts = cp.getProperty("timestamp");
+                    if (ts == null
+                            || ts.getType() != Type.LONG
+                            || now > ts.getValue(Type.LONG)) {
+                        cp.remove();
                     }
+                }
 
-                    NodeBuilder cp = checkpoints.child(name);
-                    cp.setProperty("timestamp",  now + lifetime);
-                    cp.setProperty("created", now);
+                NodeBuilder cp = checkpoints.child(name);
+                cp.setProperty("timestamp",  now + lifetime);
+                cp.setProperty("created", now);
 
-                    NodeBuilder props = cp.setChildNode("properties");
-                    for (Entry<String, String> p : properties.entrySet()) {
-                        props.setProperty(p.getKey(), p.getValue());
-                    }
+                NodeBuilder props = cp.setChildNode("properties");
+                for (Entry<String, String> p : properties.entrySet()) {
+                    props.setProperty(p.getKey(), p.getValue());
+                }
 
-                    cp.setChildNode(ROOT, state.getChildNode(ROOT));
+                cp.setChildNode(ROOT, root != null ? root : state.getChildNode(ROOT));
 
-                    SegmentNodeState newState = builder.getNodeState();
-                    if (store.setHead(state, newState)) {
-                        refreshHead();
-                        return name;
-                    } else {
-                        log.debug(
-                                "Unable to update the head state for checkpoint {} ({}/5)",
-                                new Object[] { name, i + 1 });
-                    }
-
-                } finally {
-                    commitSemaphore.release();
+                SegmentNodeState newState = builder.getNodeState();
+                if (store.setHead(state, newState)) {
+                    // Only the checkpoints changed: don't notify the observers
+                    head.set(newState);
+                    return true;
+                } else {
+                    log.debug(
+                            "Unable to update the head state for checkpoint {} ({}/5)",
+                            new Object[] { name, i + 1 });
                 }
+
+            } finally {
+                commitSemaphore.release();
             }
         }
-
-        log.debug("Failed to create checkpoint {}", name);
-        return name;
+        return false;
     }
 
     @Override @Nonnull
@@ -340,7 +375,8 @@ public class SegmentNodeStore implements NodeStore, Observable {
                         cp.remove();
                         SegmentNodeState newState = builder.getNodeState();
                         if (store.setHead(state, newState)) {
-                            refreshHead();
+                            // Only the checkpoints changed: don't notify the observers
+                            head.set(newState);
                             return true;
                         }
                     }
@@ -93,6 +93,64 @@ public class FilterIterators {
         return it;
     }
     
+    /**
+     * Get a filter for keyset pagination. Unlike with offset pagination,
+     * entries are not counted and skipped: only entries that sort after the
+     * start entry (the last entry of the previous page) are returned.
+     * 
+     * @param it the source iterator
+     * @param distinct whether to filter duplicate entries
+     * @param limit the maximum number of entries
+     * @param sortedBy the order of the source iterator, or null if unsorted
+     * @param keysetOrder the total order of the result, which must be
+     *            compatible with the order of the source iterator
+     * @param start the last entry of the previous page, or null for the
+     *            first page
+     * @param settings the query engine settings
+     * @return the filtered iterator
+     */
+    public static <K> Iterator<K> newCombinedKeysetFilter(
+            Iterator<K> it, boolean distinct, long limit,
+            Comparator<K> sortedBy, Comparator<K> keysetOrder, K start,
+            QueryEngineSettings settings) {
+        if (distinct) {
+            it = FilterIterators.newDistinct(it, settings);
+        }
+        it = FilterIterators.newKeyset(it, sortedBy, keysetOrder, start, settings);
+        if (sortedBy == null) {
+            int max = (int) Math.min(Integer.MAX_VALUE, limit);
+            it = FilterIterators.newSort(it, keysetOrder, max, settings);
+        }
+        if (limit < Long.MAX_VALUE) {
+            it = FilterIterators.newLimit(it, limit);
+        }
+        return it;
+    }
+
+    public static <K> Iterator<K> newKeyset(Iterator<K> it, Comparator<K> sortedBy,
+            Comparator<K> keysetOrder, K start, QueryEngineSettings settings) {
+        return new KeysetIterator<K>(it, sortedBy, keysetOrder, start, settings);
+    }
+
+    /**
+     * Merge two iterators that are both sorted by the given order. Entries
+     * are read on demand, so that only the next entry of each source is kept
+     * in memory. If duplicates are to be removed, they are expected to be
+     * equal according to the order as well, so that only the entries with
+     * the current sort key need to be remembered.
+     * 
+     * @param a the first sorted source
+     * @param b the second sorted source
+     * @param orderBy the order of both sources
+     * @param distinct whether to filter duplicate entries
+     * @param settings the query engine settings
+     * @return the merged, sorted iterator
+     */
+    public static <K> Iterator<K> newMergeUnion(Iterator<K> a, Iterator<K> b,
+            Comparator<K> orderBy, boolean distinct, QueryEngineSettings settings) {
+        return new MergeIterator<K>(a, b, orderBy, distinct, settings);
+    }
+
     public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryEngineSettings settings) {
         return new DistinctIterator<K>(it, settings);
     }
@@ -173,6 +231,99 @@ public class FilterIterators {
 
     }
     
+    /**
+     * An iterator that merges two sorted iterators, optionally filtering
+     * duplicate entries. Duplicates must sort next to each other, so the set
+     * of returned entries is cleared whenever the sort key changes.
+     * 
+     * @param <K> the entry type
+     */
+    static class MergeIterator<K> implements Iterator<K> {
+
+        private final Iterator<K> a, b;
+        private final Comparator<K> orderBy;
+        private final boolean distinct;
+        private final QueryEngineSettings settings;
+        private final HashSet<K> group = new HashSet<K>();
+        private K nextA, nextB;
+        private K groupKey;
+        private K current;
+        private boolean end;
+
+        MergeIterator(Iterator<K> a, Iterator<K> b, Comparator<K> orderBy,
+                boolean distinct, QueryEngineSettings settings) {
+            this.a = a;
+            this.b = b;
+            this.orderBy = orderBy;
+            this.distinct = distinct;
+            this.settings = settings;
+        }
+
+        private void fetchNext() {
+            if (end) {
+                return;
+            }
+            while (true) {
+                if (nextA == null && a.hasNext()) {
+                    nextA = a.next();
+                }
+                if (nextB == null && b.hasNext()) {
+                    nextB = b.next();
+                }
+                if (nextA == null && nextB == null) {
+                    current = null;
+                    end = true;
+                    return;
+                }
+                if (nextB == null || (nextA != null && orderBy.compare(nextA, nextB) <= 0)) {
+                    current = nextA;
+                    nextA = null;
+                } else {
+                    current = nextB;
+                    nextB = null;
+                }
+                if (!distinct) {
+                    return;
+                }
+                if (groupKey == null || orderBy.compare(groupKey, current) != 0) {
+                    group.clear();
+                    groupKey = current;
+                }
+                if (group.add(current)) {
+                    checkMemoryLimit(group.size(), settings);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (current == null) {
+                fetchNext();
+            }
+            return !end;
+        }
+
+        @Override
+        public K next() {
+            if (end) {
+                throw new NoSuchElementException();
+            }
+            if (current == null) {
+                fetchNext();
+            }
+            K r = current;
+            current = null;
+            return r;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
     /**
      * An iterator that returns entries in sorted order. The internal list of
      * sorted entries can be limited to a given number of entries, and the
@@ -251,6 +402,91 @@ public class FilterIterators {
         
     }
     
+    /**
+     * An iterator that ignores all entries up to and including the start
+     * entry (keyset pagination). If the source is sorted, entries that are
+     * equal according to the source order are re-ordered according to the
+     * keyset order, so that only one group of equal entries is kept in
+     * memory at any time. Entries are only read when needed (on demand).
+     * 
+     * @param <K> the entry type
+     */
+    static class KeysetIterator<K> implements Iterator<K> {
+
+        private final Iterator<K> source;
+        private final Comparator<K> sortedBy;
+        private final Comparator<K> keysetOrder;
+        private final K start;
+        private final QueryEngineSettings settings;
+        private Iterator<K> result = Collections.<K>emptyList().iterator();
+        private K next;
+
+        KeysetIterator(Iterator<K> source, Comparator<K> sortedBy,
+                Comparator<K> keysetOrder, K start, QueryEngineSettings settings) {
+            this.source = source;
+            this.sortedBy = sortedBy;
+            this.keysetOrder = keysetOrder;
+            this.start = start;
+            this.settings = settings;
+        }
+
+        private void fetchNext() {
+            while (!result.hasNext()) {
+                if (next == null) {
+                    if (!source.hasNext()) {
+                        return;
+                    }
+                    next = source.next();
+                }
+                ArrayList<K> group = new ArrayList<K>();
+                K first = next;
+                next = null;
+                addIfAfterStart(group, first);
+                if (sortedBy != null) {
+                    while (source.hasNext()) {
+                        K x = source.next();
+                        if (sortedBy.compare(first, x) != 0) {
+                            next = x;
+                            break;
+                        }
+                        addIfAfterStart(group, x);
+                        checkMemoryLimit(group.size(), settings);
+                    }
+                    if (group.size() > 1) {
+                        Collections.sort(group, keysetOrder);
+                    }
+                }
+                result = group.iterator();
+            }
+        }
+
+        private void addIfAfterStart(ArrayList<K> group, K x) {
+            if (start == null || keysetOrder.compare(x, start) > 0) {
+                group.add(x);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fetchNext();
+            return result.hasNext();
+        }
+
+        @Override
+        public K next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return result.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
     /**
      * An iterator that ignores the first number of entries. Entries are only
      * read when needed (on demand).
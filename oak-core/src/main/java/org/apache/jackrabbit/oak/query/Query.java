@@ -37,6 +37,17 @@ public interface Query {
 
     void setOffset(long offset);
 
+    /**
+     * Use keyset pagination: only return rows that sort after the given
+     * position (the last row of the previous page). Rows with the same
+     * "order by" values are ordered by path.
+     * 
+     * @param values the "order by" values of the last row of the previous
+     *            page, or null to get the first page
+     * @param path the path of the last row of the previous page
+     */
+    void setKeyset(PropertyValue[] values, String path);
+
     void bindValue(String key, PropertyValue value);
 
     void setTraversalEnabled(boolean traversalEnabled);
@@ -90,6 +101,25 @@ public interface Query {
      */
     double getEstimatedCost();
 
+    /**
+     * Whether the rows are returned in the requested order without sorting
+     * them in memory, because the index returns them in this order. The
+     * query is prepared if needed.
+     * 
+     * @return true if there is an order and the rows are sorted by the index
+     */
+    boolean isSortedByIndex();
+
+    /**
+     * Get the number of rows from the index, without reading the rows. The
+     * count does not take access rights into account, and may be an
+     * estimate. Limit and offset are applied.
+     * 
+     * @return the approximate number of rows, or -1 if the index can not
+     *         count the rows (or the query is not supported)
+     */
+    long getIndexEntryCount();
+
     Tree getTree(String path);
 
     boolean isMeasureOrExplainEnabled();
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nullable;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.jackrabbit.oak.api.jmx.QueryCostFeedbackMBean;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
+
+/**
+ * Learns how far off the cost estimates of the indexes are. After a query
+ * read all rows of an index, the number of rows read is compared with the
+ * estimate, and a correction factor is updated for the plan (the index
+ * definition, see {@link IndexPlan#getPlanName()}) and the shape of the filter
+ * (the restricted properties and the kind of restrictions, but not the
+ * values). The factor is a weighted geometric mean of the observed ratios
+ * (starting at 1), where the weight of older observations decays with each
+ * new observation. The factor is then applied to the estimates used when
+ * selecting an index. Plans without a name are not corrected, as they can not
+ * be told apart from other indexes of the same type.
+ * <p>
+ * The feedback is disabled by default; it is enabled with the system property
+ * "oak.queryCostFeedback.enabled", or at runtime using the MBean.
+ */
+public class QueryCostFeedback implements QueryCostFeedbackMBean {
+
+    /**
+     * The maximum number of index and filter shape combinations to keep.
+     */
+    private static final int MAX_ENTRIES =
+            Integer.getInteger("oak.queryCostFeedback.maxEntries", 1000);
+
+    /**
+     * The maximum correction per observation (in both directions).
+     */
+    private static final double MAX_RATIO = 1000;
+
+    private static final boolean DEFAULT_ENABLED =
+            Boolean.getBoolean("oak.queryCostFeedback.enabled");
+
+    private final ConcurrentHashMap<String, Factor> factors =
+            new ConcurrentHashMap<String, Factor>();
+
+    private volatile boolean enabled = DEFAULT_ENABLED;
+
+    private volatile double observationWeight = 0.25;
+
+    /**
+     * Get the correction factor for the given plan and filter shape.
+     *
+     * @param indexName the index name (the type of the index)
+     * @param planName the plan name (see {@link IndexPlan#getPlanName()}),
+     *            or null if not known
+     * @param shape the filter shape (see {@link #getShape(Filter)})
+     * @return the factor (1 if unknown or disabled)
+     */
+    public double getCorrectionFactor(String indexName, @Nullable String planName, String shape) {
+        if (!enabled || planName == null) {
+            return 1;
+        }
+        Factor f = factors.get(getKey(indexName, planName, shape));
+        return f == null ? 1 : f.get();
+    }
+
+    /**
+     * Record the actual number of rows read from an index.
+     *
+     * @param indexName the index name (the type of the index)
+     * @param planName the plan name (see {@link IndexPlan#getPlanName()}),
+     *            or null if not known, in which case nothing is recorded
+     * @param shape the filter shape (see {@link #getShape(Filter)})
+     * @param estimated the (uncorrected) estimated number of rows
+     * @param actual the number of rows read
+     */
+    public void record(String indexName, @Nullable String planName, String shape,
+            double estimated, long actual) {
+        if (!enabled || planName == null || estimated < 0
+                || Double.isInfinite(estimated) || Double.isNaN(estimated)) {
+            return;
+        }
+        String key = getKey(indexName, planName, shape);
+        Factor f = factors.get(key);
+        if (f == null) {
+            if (factors.size() >= MAX_ENTRIES) {
+                return;
+            }
+            f = new Factor(indexName, planName, shape);
+            Factor old = factors.putIfAbsent(key, f);
+            if (old != null) {
+                f = old;
+            }
+        }
+        double ratio = Math.max(1, actual) / Math.max(1, estimated);
+        ratio = Math.max(1 / MAX_RATIO, Math.min(MAX_RATIO, ratio));
+        f.observe(ratio, estimated, actual, observationWeight);
+    }
+
+    private static String getKey(String indexName, String planName, String shape) {
+        return indexName + " " + planName + " " + shape;
+    }
+
+    /**
+     * Get the shape of the filter: the restricted properties with the kind of
+     * restriction, the full-text and the path restriction.
+     *
+     * @param filter the filter
+     * @return the shape
+     */
+    public static String getShape(Filter filter) {
+        TreeSet<String> set = new TreeSet<String>();
+        for (PropertyRestriction pr : filter.getPropertyRestrictions()) {
+            String kind;
+            if (pr.list != null) {
+                kind = " in";
+            } else if (pr.isLike) {
+                kind = " like";
+            } else if (pr.isNotNullRestriction()) {
+                kind = " is not null";
+            } else if (pr.isNullRestriction()) {
+                kind = " is null";
+            } else if (pr.first != null && pr.first.equals(pr.last)) {
+                kind = "=";
+            } else {
+                kind = " range";
+            }
+            set.add(pr.propertyName + kind);
+        }
+        StringBuilder buff = new StringBuilder();
+        for (String s : set) {
+            if (buff.length() > 0) {
+                buff.append(", ");
+            }
+            buff.append(s);
+        }
+        if (filter.getFullTextConstraint() != null) {
+            buff.append(buff.length() > 0 ? ", " : "").append("fulltext");
+        }
+        buff.append(buff.length() > 0 ? ", " : "").append("path ").
+                append(filter.getPathRestriction().name());
+        return buff.toString();
+    }
+
+    @Override
+    public TabularData getCorrectionFactors() {
+        TabularDataSupport tds;
+        try {
+            TabularType tt = new TabularType(Factor.class.getName(),
+                    "Query Cost Correction Factors", Factor.TYPE, new String[]{"index", "plan", "shape"});
+            tds = new TabularDataSupport(tt);
+            for (Factor f : factors.values()) {
+                tds.put(f.toCompositeData());
+            }
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+        return tds;
+    }
+
+    @Override
+    public void resetCorrectionFactors() {
+        factors.clear();
+    }
+
+    @Override
+    public void resetCorrectionFactors(String indexName) {
+        Iterator<Map.Entry<String, Factor>> it = factors.entrySet().iterator();
+        while (it.hasNext()) {
+            Factor f = it.next().getValue();
+            if (f.indexName.equals(indexName) || f.planName.equals(indexName)) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public double getObservationWeight() {
+        return observationWeight;
+    }
+
+    @Override
+    public void setObservationWeight(double weight) {
+        if (weight <= 0 || weight > 1) {
+            throw new IllegalArgumentException("Weight must be larger than 0 and at most 1: " + weight);
+        }
+        this.observationWeight = weight;
+    }
+
+    /**
+     * The correction factor for a plan and filter shape.
+     */
+    private static class Factor {
+
+        static final String[] FIELD_NAMES = new String[]{
+                "index",
+                "plan",
+                "shape",
+                "factor",
+                "observations",
+                "lastEstimated",
+                "lastActual",
+        };
+
+        static final String[] FIELD_DESCRIPTIONS = FIELD_NAMES;
+
+        @SuppressWarnings("rawtypes")
+        static final OpenType[] FIELD_TYPES = new OpenType[]{
+                SimpleType.STRING,
+                SimpleType.STRING,
+                SimpleType.STRING,
+                SimpleType.DOUBLE,
+                SimpleType.LONG,
+                SimpleType.DOUBLE,
+                SimpleType.LONG,
+        };
+
+        static final CompositeType TYPE = createCompositeType();
+
+        static CompositeType createCompositeType() {
+            try {
+                return new CompositeType(
+                        Factor.class.getName(),
+                        "Composite data type for query cost correction factors",
+                        FIELD_NAMES,
+                        FIELD_DESCRIPTIONS,
+                        FIELD_TYPES);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final String indexName;
+        final String planName;
+        final String shape;
+
+        /**
+         * The natural logarithm of the factor.
+         */
+        private double logFactor;
+        private long observations;
+        private double lastEstimated;
+        private long lastActual;
+
+        Factor(String indexName, String planName, String shape) {
+            this.indexName = indexName;
+            this.planName = planName;
+            this.shape = shape;
+        }
+
+        synchronized double get() {
+            return Math.exp(logFactor);
+        }
+
+        synchronized void observe(double ratio, double estimated, long actual, double weight) {
+            logFactor = (1 - weight) * logFactor + weight * Math.log(ratio);
+            observations++;
+            lastEstimated = estimated;
+            lastActual = actual;
+        }
+
+        synchronized CompositeDataSupport toCompositeData() {
+            Object[] values = new Object[]{
+                    indexName,
+                    planName,
+                    shape,
+                    Math.exp(logFactor),
+                    observations,
+                    lastEstimated,
+                    lastActual,
+            };
+            try {
+                return new CompositeDataSupport(TYPE, FIELD_NAMES, values);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.QueryEngine;
 import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.namepath.LocalNameMapper;
 import org.apache.jackrabbit.oak.namepath.NamePathMapper;
 import org.apache.jackrabbit.oak.namepath.NamePathMapperImpl;
@@ -156,6 +157,33 @@ public abstract class QueryEngineImpl implements QueryEngine {
         if (offset < 0) {
             throw new IllegalArgumentException("Offset may not be negative, is: " + offset);
         }
+        return executeQuery(statement, language, limit, offset, false, 
+                null, null, bindings, mappings);
+    }
+
+    @Override
+    public Result executeQuery(
+            String statement, String language, long limit,
+            PropertyValue[] keysetValues, String keysetPath,
+            Map<String, ? extends PropertyValue> bindings,
+            Map<String, String> mappings) throws ParseException {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit may not be negative, is: " + limit);
+        }
+        if (keysetValues != null && 
+                (keysetPath == null || !PathUtils.isAbsolute(keysetPath))) {
+            throw new IllegalArgumentException(
+                    "Keyset path must be an absolute path, is: " + keysetPath);
+        }
+        return executeQuery(statement, language, limit, 0, true, 
+                keysetValues, keysetPath, bindings, mappings);
+    }
+
+    private Result executeQuery(
+            String statement, String language, long limit, long offset,
+            boolean keyset, PropertyValue[] keysetValues, String keysetPath,
+            Map<String, ? extends PropertyValue> bindings,
+            Map<String, String> mappings) throws ParseException {
 
         // avoid having to deal with null arguments
         if (bindings == null) {
@@ -170,6 +198,9 @@ public abstract class QueryEngineImpl implements QueryEngine {
         q.setExecutionContext(context);
         q.setLimit(limit);
         q.setOffset(offset);
+        if (keyset) {
+            q.setKeyset(keysetValues, keysetPath);
+        }
         if (bindings != null) {
             for (Entry<String, ? extends PropertyValue> e : bindings.entrySet()) {
                 q.bindValue(e.getKey(), e.getValue());
@@ -41,6 +41,10 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean {
     private boolean fullTextComparisonWithoutIndex = 
             DEFAULT_FULL_TEXT_COMPARISON_WITHOUT_INDEX;
     
+    private final QueryStats queryStats = new QueryStats();
+    
+    private final QueryCostFeedback costFeedback = new QueryCostFeedback();
+    
     /**
      * Get the limit on how many nodes a query may read at most into memory, for
      * "order by" and "distinct" queries. If this limit is exceeded, the query
@@ -93,4 +97,22 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean {
         return fullTextComparisonWithoutIndex;
     }
     
+    /**
+     * Get the query execution statistics.
+     * 
+     * @return the statistics
+     */
+    public QueryStats getQueryStats() {
+        return queryStats;
+    }
+    
+    /**
+     * Get the cost correction factors learned from query executions.
+     * 
+     * @return the cost feedback
+     */
+    public QueryCostFeedback getCostFeedback() {
+        return costFeedback;
+    }
+    
 }
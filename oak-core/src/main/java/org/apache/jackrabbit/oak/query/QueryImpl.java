@@ -13,6 +13,7 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.lang.ref.Reference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -21,6 +22,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Tree;
@@ -70,10 +72,12 @@ import org.apache.jackrabbit.oak.query.index.TraversingIndex;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
 import org.apache.jackrabbit.oak.spi.query.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.NamedPlanQueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.OrderEntry.Order;
 import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
@@ -82,6 +86,8 @@ import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Supplier;
+
 /**
  * Represents a parsed query.
  */
@@ -143,6 +149,16 @@ public class QueryImpl implements Query {
     private long limit = Long.MAX_VALUE;
     private long offset;
     private long size = -1;
+
+    /**
+     * Whether keyset pagination is used, and if yes, the "order by" values
+     * and the path of the last row of the previous page (null for the first
+     * page).
+     */
+    private boolean keyset;
+    private PropertyValue[] keysetValues;
+    private String keysetPath;
+
     private boolean prepared;
     private ExecutionContext context;
 
@@ -433,6 +449,13 @@ public class QueryImpl implements Query {
         this.offset = offset;
     }
 
+    @Override
+    public void setKeyset(PropertyValue[] values, String path) {
+        this.keyset = true;
+        this.keysetValues = values;
+        this.keysetPath = path;
+    }
+
     @Override
     public void setExplain(boolean explain) {
         this.explain = explain;
@@ -454,6 +477,7 @@ public class QueryImpl implements Query {
 
     @Override
     public Iterator<ResultRowImpl> getRows() {
+        long startNanos = System.nanoTime();
         prepare();
         if (explain) {
             String plan = getPlan();
@@ -470,47 +494,29 @@ public class QueryImpl implements Query {
         }
         RowIterator rowIt = new RowIterator(context.getBaseState());
         Comparator<ResultRowImpl> orderBy;
-        boolean sortUsingIndex = false;
-        // TODO add issue about order by optimization for multiple selectors
-        if (orderings != null && selectors.size() == 1) {
-            IndexPlan plan = selectors.get(0).getExecutionPlan().getIndexPlan();
-            if (plan != null) {
-                List<OrderEntry> list = plan.getSortOrder();
-                if (list != null && list.size() == orderings.length) {
-                    sortUsingIndex = true;
-                    for (int i = 0; i < list.size(); i++) {
-                        OrderEntry e = list.get(i);
-                        OrderingImpl o = orderings[i];
-                        DynamicOperandImpl op = o.getOperand();
-                        if (!(op instanceof PropertyValueImpl)) {
-                            // ordered by a function: currently not supported
-                            sortUsingIndex = false;
-                            break;
-                        }
-                        // we only have one selector, so no need to check that
-                        // TODO support joins
-                        String pn = ((PropertyValueImpl) op).getPropertyName();
-                        if (!pn.equals(e.getPropertyName())) {
-                            // ordered by another property
-                            sortUsingIndex = false;
-                            break;
-                        }
-                        if (o.isDescending() != (e.getOrder() == Order.DESCENDING)) {
-                            // ordered ascending versus descending
-                            sortUsingIndex = false;
-                            break;
-                        }
-                    }
-                }
-            }
-        }
+        boolean sortUsingIndex = isSortedByIndex();
         if (sortUsingIndex) {
             orderBy = null;
         } else {
             orderBy = ResultRowImpl.getComparator(orderings);
         }
-        Iterator<ResultRowImpl> it = 
-                FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings);
+        Iterator<ResultRowImpl> it;
+        if (keyset) {
+            // the index (if sorting) already seeked to the first order value,
+            // rows with the same order values are re-ordered by path
+            it = FilterIterators.newCombinedKeysetFilter(rowIt, distinct, limit,
+                    sortUsingIndex ? ResultRowImpl.getComparator(orderings) : null,
+                    ResultRowImpl.getKeysetComparator(orderings),
+                    getKeysetStart(), settings);
+        } else {
+            it = FilterIterators.newCombinedFilter(rowIt, distinct, limit, offset, orderBy, settings);
+        }
+        if (!measure) {
+            QueryStats stats = settings.getQueryStats();
+            if (stats.startExecution(statement)) {
+                it = new MeasuringIterator(it, stats, System.nanoTime() - startNanos);
+            }
+        }
         if (measure) {
             // run the query
             while (it.hasNext()) {
@@ -544,6 +550,59 @@ public class QueryImpl implements Query {
         return it;
     }
     
+    @Override
+    public boolean isSortedByIndex() {
+        prepare();
+        boolean sortUsingIndex = false;
+        // TODO add issue about order by optimization for multiple selectors
+        if (orderings != null && selectors.size() == 1) {
+            IndexPlan plan = selectors.get(0).getExecutionPlan().getIndexPlan();
+            if (plan != null) {
+                List<OrderEntry> list = plan.getSortOrder();
+                if (list != null && list.size() == orderings.length) {
+                    sortUsingIndex = true;
+                    for (int i = 0; i < list.size(); i++) {
+                        OrderEntry e = list.get(i);
+                        OrderingImpl o = orderings[i];
+                        DynamicOperandImpl op = o.getOperand();
+                        if (!(op instanceof PropertyValueImpl)) {
+                            // ordered by a function: currently not supported
+                            sortUsingIndex = false;
+                            break;
+                        }
+                        // we only have one selector, so no need to check that
+                        // TODO support joins
+                        String pn = ((PropertyValueImpl) op).getPropertyName();
+                        if (!pn.equals(e.getPropertyName())) {
+                            // ordered by another property
+                            sortUsingIndex = false;
+                            break;
+                        }
+                        if (o.isDescending() != (e.getOrder() == Order.DESCENDING)) {
+                            // ordered ascending versus descending
+                            sortUsingIndex = false;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return sortUsingIndex;
+    }
+
+    @Override
+    public long getIndexEntryCount() {
+        prepare();
+        if (explain || measure || distinct || keyset || selectors.size() != 1) {
+            return -1;
+        }
+        long count = selectors.get(0).getIndexEntryCount(context.getBaseState());
+        if (count < 0) {
+            return -1;
+        }
+        return Math.min(limit, Math.max(0, count - offset));
+    }
+
     @Override
     public String getPlan() {
         return source.getPlan(context.getBaseState());
@@ -559,6 +618,9 @@ public class QueryImpl implements Query {
         if (prepared) {
             return;
         }
+        if (keyset) {
+            checkKeyset();
+        }
         prepared = true;
         List<SourceImpl> sources = source.getInnerJoinSelectors();
         List<JoinConditionImpl> conditions = source.getInnerJoinConditions();
@@ -624,6 +686,95 @@ public class QueryImpl implements Query {
         return null;
     }
  
+    private void checkKeyset() {
+        if (selectors.size() != 1) {
+            throw new IllegalArgumentException(
+                    "Keyset pagination is only supported for queries with one selector");
+        }
+        if (keysetValues != null) {
+            int count = orderings == null ? 0 : orderings.length;
+            if (keysetValues.length != count) {
+                throw new IllegalArgumentException("Expected " + count + 
+                        " keyset values, got " + keysetValues.length);
+            }
+        }
+    }
+
+    /**
+     * Get the last row of the previous page, for keyset pagination.
+     * 
+     * @return the row, or null for the first page
+     */
+    private ResultRowImpl getKeysetStart() {
+        if (keysetValues == null) {
+            return null;
+        }
+        Tree tree = context.getRoot().getTree(keysetPath);
+        return ResultRowImpl.newKeysetStart(this, tree, keysetValues);
+    }
+
+    /**
+     * Get the keyset pagination position as a restriction on the first
+     * "order by" property, if that property is one of the given selector.
+     * Rows without the property sort first, so only the position after a
+     * non-null value can be expressed.
+     * 
+     * @param selector the selector
+     * @return the restriction, or null
+     */
+    public PropertyRestriction getKeysetRestriction(SelectorImpl selector) {
+        if (keysetValues == null || keysetValues.length == 0 || orderings == null) {
+            return null;
+        }
+        PropertyValue v = keysetValues[0];
+        DynamicOperandImpl op = orderings[0].getOperand();
+        if (v == null || !(op instanceof PropertyValueImpl)) {
+            return null;
+        }
+        PropertyValueImpl p = (PropertyValueImpl) op;
+        if (!p.getSelectors().iterator().next().equals(selector)) {
+            return null;
+        }
+        PropertyRestriction pr = new PropertyRestriction();
+        pr.propertyName = p.getPropertyName();
+        pr.propertyType = v.getType().tag();
+        if (orderings[0].isDescending()) {
+            pr.last = v;
+            pr.lastIncluding = true;
+        } else {
+            pr.first = v;
+            pr.firstIncluding = true;
+        }
+        return pr;
+    }
+
+    /**
+     * Get the maximum number of rows the given selector needs to return,
+     * that is the offset plus the limit, if the selector is the only one
+     * of the query. With joins the number of rows of a selector is not
+     * related to the limit.
+     * 
+     * @param selector the selector
+     * @return the limit hint, or Long.MAX_VALUE
+     */
+    public long getLimitHint(SelectorImpl selector) {
+        if (source != selector) {
+            return Long.MAX_VALUE;
+        }
+        return getMaxEntryCount();
+    }
+
+    private long getMaxEntryCount() {
+        if (offset > 0) {
+            if (offset + limit < 0) {
+                // long overflow
+                return Long.MAX_VALUE;
+            }
+            return offset + limit;
+        }
+        return limit;
+    }
+
     /**
      * <b>!Test purpose only! <b>
      * 
@@ -634,6 +785,128 @@ public class QueryImpl implements Query {
         return source.createFilter(preparing);
     }
 
+    /**
+     * An iterator that measures the time spent reading the result (in the
+     * query engine and the indexes).
+     */
+    class MeasuringIterator implements Iterator<ResultRowImpl> {
+
+        private final Iterator<ResultRowImpl> it;
+        private final Measurement measurement;
+
+        MeasuringIterator(Iterator<ResultRowImpl> it, QueryStats stats, long nanos) {
+            this.it = it;
+            this.measurement = new Measurement(stats, nanos);
+            measurement.watch = stats.watch(this, measurement);
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean result = it.hasNext();
+            measurement.read(System.nanoTime() - start, 0, !result);
+            return result;
+        }
+
+        @Override
+        public ResultRowImpl next() {
+            long start = System.nanoTime();
+            ResultRowImpl r = it.next();
+            measurement.read(System.nanoTime() - start, r == null ? 0 : 1, r == null);
+            return r;
+        }
+
+        @Override
+        public void remove() {
+            it.remove();
+        }
+
+    }
+
+    /**
+     * A measured execution. It is recorded once: when all rows are read, as
+     * soon as reading took longer than the slow query log limit, or when the
+     * result gets garbage collected before it was fully read, as happens with
+     * results that are read partially or abandoned.
+     */
+    private class Measurement implements Runnable {
+
+        private final QueryStats stats;
+        private final AtomicBoolean done = new AtomicBoolean();
+        // only written by the thread reading the result
+        private volatile long nanos;
+        private volatile long rowCount;
+        Reference<Object> watch;
+
+        Measurement(QueryStats stats, long nanos) {
+            this.stats = stats;
+            this.nanos = nanos;
+        }
+
+        void read(long n, int rows, boolean end) {
+            if (done.get()) {
+                return;
+            }
+            nanos += n;
+            rowCount += rows;
+            if (end || stats.isSlow(nanos)) {
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            if (watch != null) {
+                stats.unwatch(watch);
+            }
+            long rowsRead = 0;
+            StringBuilder indexes = new StringBuilder();
+            for (SelectorImpl s : selectors) {
+                rowsRead += s.getScanCount();
+                SelectorExecutionPlan p = s.getExecutionPlan();
+                if (p != null && p.getIndex() != null) {
+                    if (indexes.length() > 0) {
+                        indexes.append(", ");
+                    }
+                    indexes.append(p.getIndex().getIndexName());
+                }
+            }
+            stats.executionDone(statement, nanos, rowsRead, rowCount,
+                    indexes.toString(), new Supplier<String>() {
+                        @Override
+                        public String get() {
+                            return getPlan();
+                        }
+                    });
+        }
+
+    }
+
+    /**
+     * Compare the number of rows read from the index with the estimate. This
+     * is only done if all rows were read, and if there is only one selector
+     * (with joins, the index of the inner selector is read multiple times).
+     */
+    void recordCostFeedback() {
+        if (selectors.size() != 1) {
+            return;
+        }
+        SelectorImpl s = selectors.get(0);
+        SelectorExecutionPlan p = s.getExecutionPlan();
+        if (p == null || p.getIndex() == null || p.getFilter() == null) {
+            return;
+        }
+        QueryCostFeedback feedback = settings.getCostFeedback();
+        if (feedback.isEnabled()) {
+            feedback.record(p.getIndex().getIndexName(), p.getPlanName(),
+                    QueryCostFeedback.getShape(p.getFilter()),
+                    p.getEstimatedEntryCount(), s.getScanCount());
+        }
+    }
+
     /**
      * An iterator over result rows.
      */
@@ -675,6 +948,7 @@ public class QueryImpl implements Query {
                 } else {
                     current = null;
                     end = true;
+                    recordCostFeedback();
                     break;
                 }
             }
@@ -802,10 +1076,17 @@ public class QueryImpl implements Query {
             logDebug("cost using filter " + filter);
         }
 
+        QueryCostFeedback feedback = settings.getCostFeedback();
+        String shape = feedback.isEnabled() ? QueryCostFeedback.getShape(filter) : null;
         double bestCost = Double.POSITIVE_INFINITY;
+        double bestEntryCount = -1;
+        String bestPlanName = null;
         IndexPlan bestPlan = null;
         for (QueryIndex index : indexProvider.getQueryIndexes(rootState)) {
             double cost;
+            double entries = -1;
+            double factor = 1;
+            String planName = null;
             IndexPlan indexPlan = null;
             if (index instanceof AdvancedQueryIndex) {
                 AdvancedQueryIndex advIndex = (AdvancedQueryIndex) index;
@@ -835,32 +1116,36 @@ public class QueryImpl implements Query {
                         sortOrder = null;
                     }
                 }
-                long maxEntryCount = limit;
-                if (offset > 0) {
-                    if (offset + limit < 0) {
-                        // long overflow
-                        maxEntryCount = Long.MAX_VALUE;
-                    } else {
-                        maxEntryCount = offset + limit;
-                    }
-                }
+                long maxEntryCount = getMaxEntryCount();
                 List<IndexPlan> ipList = advIndex.getPlans(
                         filter, sortOrder, rootState);
                 cost = Double.POSITIVE_INFINITY;
                 for (IndexPlan p : ipList) {
+                    double f = shape == null ? 1 :
+                            feedback.getCorrectionFactor(index.getIndexName(), p.getPlanName(), shape);
                     // TODO limit is after all conditions
-                    long entryCount = Math.min(maxEntryCount, p.getEstimatedEntryCount());
+                    double entryCount = Math.min(maxEntryCount, p.getEstimatedEntryCount() * f);
                     double c = p.getCostPerExecution() + entryCount * p.getCostPerEntry();
                     if (c < cost) {
                         cost = c;
                         indexPlan = p;
+                        entries = p.getEstimatedEntryCount();
+                        factor = f;
+                        planName = p.getPlanName();
                     }
                 }
             } else {
-                cost = index.getCost(filter, rootState);
+                // for these indexes, the cost is about the number of entries
+                entries = index.getCost(filter, rootState);
+                if (shape != null && index instanceof NamedPlanQueryIndex) {
+                    planName = ((NamedPlanQueryIndex) index).getPlanName(filter, rootState);
+                    factor = feedback.getCorrectionFactor(index.getIndexName(), planName, shape);
+                }
+                cost = entries * factor;
             }
             if (LOG.isDebugEnabled()) {
-                logDebug("cost for " + index.getIndexName() + " is " + cost);
+                logDebug("cost for " + index.getIndexName() + " is " + cost +
+                        (factor == 1 ? "" : " (corrected by factor " + factor + ")"));
             }
             if (cost < 0) {
                 LOG.error("cost below 0 for " + index.getIndexName() + " is " + cost);
@@ -869,22 +1154,33 @@ public class QueryImpl implements Query {
                 bestCost = cost;
                 bestIndex = index;
                 bestPlan = indexPlan;
+                bestEntryCount = entries;
+                bestPlanName = planName;
             }
         }
 
         if (traversalEnabled) {
             QueryIndex traversal = new TraversingIndex();
-            double cost = traversal.getCost(filter, rootState);
+            double entries = traversal.getCost(filter, rootState);
+            // there is only one traversing index, so the name is the plan
+            String planName = traversal.getIndexName();
+            double factor = shape == null ? 1 :
+                    feedback.getCorrectionFactor(traversal.getIndexName(), planName, shape);
+            double cost = entries * factor;
             if (LOG.isDebugEnabled()) {
-                logDebug("cost for " + traversal.getIndexName() + " is " + cost);
+                logDebug("cost for " + traversal.getIndexName() + " is " + cost +
+                        (factor == 1 ? "" : " (corrected by factor " + factor + ")"));
             }
             if (cost < bestCost || bestCost == Double.POSITIVE_INFINITY) {
                 bestCost = cost;
                 bestPlan = null;
                 bestIndex = traversal;
+                bestEntryCount = entries;
+                bestPlanName = planName;
             }
         }
-        return new SelectorExecutionPlan(filter.getSelector(), bestIndex, bestPlan, bestCost);
+        return new SelectorExecutionPlan(filter.getSelector(), bestIndex, bestPlan, bestCost,
+                filter, bestEntryCount, bestPlanName);
     }
     
     private void logDebug(String msg) {
@@ -0,0 +1,575 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.jackrabbit.oak.api.jmx.QueryStatsMBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Query execution statistics. Executions are grouped by the normalized
+ * statement (with literals replaced by "?"). Only every n-th execution is
+ * measured (see the sampling rate); measuring does not need locks, except
+ * when an execution is slower than the slowest executions seen so far.
+ */
+public class QueryStats implements QueryStatsMBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStats.class);
+
+    /**
+     * The maximum number of distinct (normalized) statements to keep.
+     */
+    private static final int MAX_STATEMENTS =
+            Integer.getInteger("oak.queryStats.maxStatements", 1000);
+
+    /**
+     * The number of slow query executions to keep.
+     */
+    private static final int MAX_SLOW_QUERIES =
+            Integer.getInteger("oak.queryStats.maxSlowQueries", 100);
+
+    private static final int DEFAULT_SAMPLING_RATE =
+            Integer.getInteger("oak.queryStats.samplingRate", 1);
+
+    private static final long DEFAULT_SLOW_QUERY_LOG_LIMIT =
+            Long.getLong("oak.queryStats.slowQueryLogLimit", 10000);
+
+    private final ConcurrentHashMap<String, StatementStats> statements =
+            new ConcurrentHashMap<String, StatementStats>();
+
+    private final PriorityQueue<SlowQuery> slowQueries =
+            new PriorityQueue<SlowQuery>(MAX_SLOW_QUERIES, new Comparator<SlowQuery>() {
+                @Override
+                public int compare(SlowQuery o1, SlowQuery o2) {
+                    return o1.nanos < o2.nanos ? -1 : o1.nanos > o2.nanos ? 1 : 0;
+                }
+            });
+
+    /**
+     * The duration of the fastest execution in the list of slow queries, if
+     * the list is full. Faster executions don't need to synchronize.
+     */
+    private volatile long slowQueryMinNanos;
+
+    private final AtomicLong executionCount = new AtomicLong();
+
+    /**
+     * Results of measured executions that were not fully read yet. A result
+     * that gets garbage collected was abandoned, and its execution is
+     * recorded with the rows read until then.
+     */
+    private final Set<Watch> watched = Collections.newSetFromMap(
+            new ConcurrentHashMap<Watch, Boolean>());
+
+    private final ReferenceQueue<Object> abandoned = new ReferenceQueue<Object>();
+
+    private volatile boolean enabled = true;
+
+    private volatile int samplingRate = Math.max(1, DEFAULT_SAMPLING_RATE);
+
+    private volatile long slowQueryLogLimit = DEFAULT_SLOW_QUERY_LOG_LIMIT;
+
+    private volatile boolean logSlowQueries = true;
+
+    /**
+     * Count a query execution, and check whether it should be measured.
+     *
+     * @param statement the statement
+     * @return true if the execution should be measured
+     */
+    public boolean startExecution(String statement) {
+        if (!enabled) {
+            return false;
+        }
+        recordAbandoned();
+        getStats(statement).count.incrementAndGet();
+        return executionCount.incrementAndGet() % samplingRate == 0;
+    }
+
+    /**
+     * Record a measured query execution.
+     *
+     * @param statement the statement
+     * @param nanos the time spent in the query engine and the indexes
+     * @param rowsRead the number of rows read (from all selectors)
+     * @param rowsReturned the number of rows returned
+     * @param indexes the names of the indexes used
+     * @param plan the query plan (only calculated for slow queries)
+     */
+    public void executionDone(String statement, long nanos, long rowsRead,
+            long rowsReturned, String indexes, Supplier<String> plan) {
+        StatementStats s = getStats(statement);
+        s.sampled.incrementAndGet();
+        s.totalNanos.addAndGet(nanos);
+        s.rowsRead.addAndGet(rowsRead);
+        s.rowsReturned.addAndGet(rowsReturned);
+        s.indexes = indexes;
+        while (true) {
+            long max = s.maxNanos.get();
+            if (nanos <= max || s.maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        boolean log = logSlowQueries && millis >= slowQueryLogLimit;
+        if (!log && nanos <= slowQueryMinNanos) {
+            return;
+        }
+        SlowQuery q = new SlowQuery(statement, nanos, rowsRead,
+                rowsReturned, indexes, plan.get());
+        if (log) {
+            LOG.warn("Slow query ({} ms, {} rows read, {} rows returned): {}; plan: {}",
+                    new Object[] {millis, rowsRead, rowsReturned, statement, q.plan});
+        }
+        if (nanos > slowQueryMinNanos) {
+            addSlowQuery(q);
+        }
+    }
+
+    /**
+     * Whether a measured execution took longer than the slow query log limit
+     * so far. Such executions are recorded right away, even if their result is
+     * not fully read yet.
+     *
+     * @param nanos the time spent so far
+     * @return true if the execution is slow
+     */
+    boolean isSlow(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) >= slowQueryLogLimit;
+    }
+
+    /**
+     * Watch the result of a measured execution. If the result gets garbage
+     * collected before the execution was recorded, {@code record} is run.
+     *
+     * @param result the result
+     * @param record records the execution
+     * @return the watch, to be passed to {@link #unwatch(Reference)} once the
+     *         execution was recorded
+     */
+    Reference<Object> watch(Object result, Runnable record) {
+        Watch w = new Watch(result, abandoned, record);
+        watched.add(w);
+        return w;
+    }
+
+    void unwatch(Reference<Object> watch) {
+        watched.remove(watch);
+    }
+
+    /**
+     * Record the executions whose result was garbage collected before it was
+     * fully read.
+     */
+    private void recordAbandoned() {
+        Reference<?> r;
+        while ((r = abandoned.poll()) != null) {
+            Watch w = (Watch) r;
+            if (watched.remove(w)) {
+                w.record.run();
+            }
+        }
+    }
+
+    private synchronized void addSlowQuery(SlowQuery q) {
+        slowQueries.add(q);
+        if (slowQueries.size() > MAX_SLOW_QUERIES) {
+            slowQueries.poll();
+        }
+        if (slowQueries.size() >= MAX_SLOW_QUERIES) {
+            slowQueryMinNanos = slowQueries.peek().nanos;
+        }
+    }
+
+    private StatementStats getStats(String statement) {
+        String key = normalize(statement);
+        StatementStats s = statements.get(key);
+        if (s == null) {
+            if (statements.size() >= MAX_STATEMENTS) {
+                removeRarelyUsed();
+            }
+            s = new StatementStats(key);
+            StatementStats old = statements.putIfAbsent(key, s);
+            if (old != null) {
+                s = old;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Remove the statements that were executed least often, so that a quarter
+     * of the entries is free again.
+     */
+    private synchronized void removeRarelyUsed() {
+        if (statements.size() < MAX_STATEMENTS) {
+            return;
+        }
+        ArrayList<StatementStats> list = new ArrayList<StatementStats>(statements.values());
+        Collections.sort(list, new Comparator<StatementStats>() {
+            @Override
+            public int compare(StatementStats o1, StatementStats o2) {
+                long c1 = o1.count.get(), c2 = o2.count.get();
+                return c1 < c2 ? -1 : c1 > c2 ? 1 : 0;
+            }
+        });
+        int remove = list.size() - MAX_STATEMENTS * 3 / 4;
+        for (int i = 0; i < remove; i++) {
+            statements.remove(list.get(i).statement);
+        }
+    }
+
+    /**
+     * Replace string and number literals in the statement with "?".
+     *
+     * @param statement the statement
+     * @return the normalized statement
+     */
+    static String normalize(String statement) {
+        StringBuilder buff = new StringBuilder(statement.length());
+        int len = statement.length();
+        for (int i = 0; i < len; i++) {
+            char c = statement.charAt(i);
+            if (c == '\'' || c == '"') {
+                // skip the literal; a quote is escaped by doubling it
+                for (i++; i < len; i++) {
+                    if (statement.charAt(i) == c) {
+                        if (i + 1 < len && statement.charAt(i + 1) == c) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                buff.append('?');
+            } else if (Character.isDigit(c) && !isIdentifierPart(buff)) {
+                while (i + 1 < len) {
+                    char n = statement.charAt(i + 1);
+                    if (!Character.isDigit(n) && n != '.') {
+                        break;
+                    }
+                    i++;
+                }
+                buff.append('?');
+            } else {
+                buff.append(c);
+            }
+        }
+        return buff.toString();
+    }
+
+    private static boolean isIdentifierPart(StringBuilder buff) {
+        if (buff.length() == 0) {
+            return false;
+        }
+        char c = buff.charAt(buff.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == ':' || c == '-' || c == '.';
+    }
+
+    @Override
+    public TabularData getQueryStats() {
+        recordAbandoned();
+        TabularDataSupport tds;
+        try {
+            TabularType tt = new TabularType(StatementStats.class.getName(),
+                    "Query Statistics", StatementStats.TYPE, new String[]{"statement"});
+            tds = new TabularDataSupport(tt);
+            for (StatementStats s : statements.values()) {
+                tds.put(s.toCompositeData());
+            }
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+        return tds;
+    }
+
+    @Override
+    public TabularData getSlowQueries() {
+        recordAbandoned();
+        List<SlowQuery> list;
+        synchronized (this) {
+            list = new ArrayList<SlowQuery>(slowQueries);
+        }
+        Collections.sort(list, Collections.reverseOrder(slowQueries.comparator()));
+        TabularDataSupport tds;
+        try {
+            TabularType tt = new TabularType(SlowQuery.class.getName(),
+                    "Slow Queries", SlowQuery.TYPE, new String[]{"rank"});
+            tds = new TabularDataSupport(tt);
+            int rank = 0;
+            for (SlowQuery q : list) {
+                tds.put(q.toCompositeData(++rank));
+            }
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+        return tds;
+    }
+
+    @Override
+    public void resetStats() {
+        statements.clear();
+        synchronized (this) {
+            slowQueries.clear();
+            slowQueryMinNanos = 0;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Override
+    public void setSamplingRate(int samplingRate) {
+        this.samplingRate = Math.max(1, samplingRate);
+    }
+
+    @Override
+    public long getSlowQueryLogLimit() {
+        return slowQueryLogLimit;
+    }
+
+    @Override
+    public void setSlowQueryLogLimit(long millis) {
+        this.slowQueryLogLimit = millis;
+    }
+
+    @Override
+    public boolean isLogSlowQueries() {
+        return logSlowQueries;
+    }
+
+    @Override
+    public void setLogSlowQueries(boolean logSlowQueries) {
+        this.logSlowQueries = logSlowQueries;
+    }
+
+    private static class Watch extends WeakReference<Object> {
+
+        final Runnable record;
+
+        Watch(Object result, ReferenceQueue<Object> queue, Runnable record) {
+            super(result, queue);
+            this.record = record;
+        }
+
+    }
+
+    /**
+     * The statistics of one normalized statement.
+     */
+    private static class StatementStats {
+
+        static final String[] FIELD_NAMES = new String[]{
+                "statement",
+                "executionCount",
+                "measuredCount",
+                "totalMillis",
+                "averageMillis",
+                "maxMillis",
+                "averageRowsRead",
+                "averageRowsReturned",
+                "indexes",
+        };
+
+        static final String[] FIELD_DESCRIPTIONS = FIELD_NAMES;
+
+        @SuppressWarnings("rawtypes")
+        static final OpenType[] FIELD_TYPES = new OpenType[]{
+                SimpleType.STRING,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.STRING,
+        };
+
+        static final CompositeType TYPE = createCompositeType();
+
+        static CompositeType createCompositeType() {
+            try {
+                return new CompositeType(
+                        StatementStats.class.getName(),
+                        "Composite data type for query statistics",
+                        FIELD_NAMES,
+                        FIELD_DESCRIPTIONS,
+                        FIELD_TYPES);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final String statement;
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sampled = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsReturned = new AtomicLong();
+        volatile String indexes = "";
+
+        StatementStats(String statement) {
+            this.statement = statement;
+        }
+
+        CompositeDataSupport toCompositeData() {
+            long n = Math.max(1, sampled.get());
+            long total = TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+            Object[] values = new Object[]{
+                    statement,
+                    count.get(),
+                    sampled.get(),
+                    total,
+                    total / n,
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+                    rowsRead.get() / n,
+                    rowsReturned.get() / n,
+                    indexes,
+            };
+            try {
+                return new CompositeDataSupport(TYPE, FIELD_NAMES, values);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    /**
+     * A slow query execution.
+     */
+    private static class SlowQuery {
+
+        static final String[] FIELD_NAMES = new String[]{
+                "rank",
+                "statement",
+                "millis",
+                "rowsRead",
+                "rowsReturned",
+                "indexes",
+                "plan",
+                "time",
+        };
+
+        static final String[] FIELD_DESCRIPTIONS = FIELD_NAMES;
+
+        @SuppressWarnings("rawtypes")
+        static final OpenType[] FIELD_TYPES = new OpenType[]{
+                SimpleType.INTEGER,
+                SimpleType.STRING,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.STRING,
+                SimpleType.STRING,
+                SimpleType.STRING,
+        };
+
+        static final CompositeType TYPE = createCompositeType();
+
+        static CompositeType createCompositeType() {
+            try {
+                return new CompositeType(
+                        SlowQuery.class.getName(),
+                        "Composite data type for slow queries",
+                        FIELD_NAMES,
+                        FIELD_DESCRIPTIONS,
+                        FIELD_TYPES);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final String statement;
+        final long nanos;
+        final long rowsRead;
+        final long rowsReturned;
+        final String indexes;
+        final String plan;
+        final long time = System.currentTimeMillis();
+
+        SlowQuery(String statement, long nanos, long rowsRead,
+                long rowsReturned, String indexes, String plan) {
+            this.statement = statement;
+            this.nanos = nanos;
+            this.rowsRead = rowsRead;
+            this.rowsReturned = rowsReturned;
+            this.indexes = indexes;
+            this.plan = plan;
+        }
+
+        CompositeDataSupport toCompositeData(int rank) {
+            Object[] values = new Object[]{
+                    rank,
+                    statement,
+                    TimeUnit.NANOSECONDS.toMillis(nanos),
+                    rowsRead,
+                    rowsReturned,
+                    indexes,
+                    plan,
+                    String.format("%tF %<tT", time),
+            };
+            try {
+                return new CompositeDataSupport(TYPE, FIELD_NAMES, values);
+            } catch (OpenDataException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
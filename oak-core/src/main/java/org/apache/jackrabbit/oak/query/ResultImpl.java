@@ -80,4 +80,22 @@ public class ResultImpl implements Result {
         return query.getSize();
     }
 
+    @Override
+    public Count getCount(boolean exact) {
+        if (!exact) {
+            long count = query.getIndexEntryCount();
+            if (count >= 0) {
+                return new Count(count, false);
+            }
+        }
+        // read (and check) all rows, but don't keep them
+        long count = 0;
+        Iterator<ResultRowImpl> it = query.getRows();
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return new Count(count, true);
+    }
+
 }
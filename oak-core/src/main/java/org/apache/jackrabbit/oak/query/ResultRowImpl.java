@@ -60,6 +60,20 @@ public class ResultRowImpl implements ResultRow {
         this.orderValues = orderValues;
     }
     
+    /**
+     * Create a row that represents the last row of the previous page, for
+     * keyset pagination. The row only contains the path and order values.
+     * 
+     * @param query the query
+     * @param tree the tree of the last row
+     * @param orderValues the order values of the last row
+     * @return the row
+     */
+    static ResultRowImpl newKeysetStart(Query query, Tree tree, PropertyValue[] orderValues) {
+        return new ResultRowImpl(query, new Tree[] { tree }, 
+                new PropertyValue[0], null, orderValues);
+    }
+
     PropertyValue[] getOrderValues() {
         return orderValues;
     }
@@ -249,4 +263,46 @@ public class ResultRowImpl implements ResultRow {
 
     }
 
+    /**
+     * Get the comparator for keyset pagination: rows are ordered as with
+     * {@link #getComparator(OrderingImpl[])}, and rows that have the same
+     * order values are ordered by path, so that the order is total.
+     * 
+     * @param orderings the orderings (may be null)
+     * @return the comparator
+     */
+    public static Comparator<ResultRowImpl> getKeysetComparator(
+            final OrderingImpl[] orderings) {
+        final Comparator<ResultRowImpl> orderBy = getComparator(orderings);
+        return new Comparator<ResultRowImpl>() {
+
+            @Override
+            public int compare(ResultRowImpl o1, ResultRowImpl o2) {
+                if (orderBy != null) {
+                    int comp = orderBy.compare(o1, o2);
+                    if (comp != 0) {
+                        return comp;
+                    }
+                }
+                String[] p1 = o1.getPaths();
+                String[] p2 = o2.getPaths();
+                for (int i = 0, size = Math.min(p1.length, p2.length); i < size; i++) {
+                    String a = p1[i];
+                    String b = p2[i];
+                    if (a == null || b == null) {
+                        if (a != b) {
+                            return a == null ? -1 : 1;
+                        }
+                    } else {
+                        int comp = a.compareTo(b);
+                        if (comp != 0) {
+                            return comp;
+                        }
+                    }
+                }
+                return p1.length - p2.length;
+            }
+        };
+    }
+
 }
@@ -47,6 +47,9 @@ public class UnionQueryImpl implements Query {
     private long limit = Long.MAX_VALUE;
     private long offset;
     private long size = -1;
+    private boolean keyset;
+    private PropertyValue[] keysetValues;
+    private String keysetPath;
     private final QueryEngineSettings settings;
     private boolean isInternal;
     
@@ -94,6 +97,15 @@ public class UnionQueryImpl implements Query {
         this.offset = offset;
     }
 
+    @Override
+    public void setKeyset(PropertyValue[] values, String path) {
+        this.keyset = true;
+        this.keysetValues = values;
+        this.keysetPath = path;
+        left.setKeyset(values, path);
+        right.setKeyset(values, path);
+    }
+
     @Override
     public void bindValue(String key, PropertyValue value) {
         left.bindValue(key, value);
@@ -239,17 +251,56 @@ public class UnionQueryImpl implements Query {
                 LOG.debug("query union plan {}", getPlan());
             }
         }
-        Iterator<ResultRowImpl> it = Iterators.concat(left.getRows(), right.getRows());
         if (measure) {
             // both queries measure themselves
-            return it;
+            return Iterators.concat(left.getRows(), right.getRows());
         }
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
-        it = FilterIterators.newCombinedFilter(it, distinct, limit, offset, orderBy, settings);
+        Iterator<ResultRowImpl> it;
+        boolean sorted = isSortedByIndex();
+        if (sorted) {
+            // both sides are sorted: merge them on demand,
+            // instead of reading and sorting all rows
+            it = FilterIterators.newMergeUnion(left.getRows(), right.getRows(), 
+                    orderBy, distinct, settings);
+            distinct = false;
+        } else {
+            it = Iterators.concat(left.getRows(), right.getRows());
+        }
+        if (keyset) {
+            // both sides only return rows after the start row
+            ResultRowImpl start = keysetValues == null ? null : 
+                ResultRowImpl.newKeysetStart(this, left.getTree(keysetPath), keysetValues);
+            return FilterIterators.newCombinedKeysetFilter(it, distinct, limit, 
+                    sorted ? orderBy : null,
+                    ResultRowImpl.getKeysetComparator(orderings), start, settings);
+        }
+        it = FilterIterators.newCombinedFilter(it, distinct, limit, offset, 
+                sorted ? null : orderBy, settings);
         return it;     
     }
 
+    @Override
+    public boolean isSortedByIndex() {
+        return orderings != null && left.isSortedByIndex() && right.isSortedByIndex();
+    }
+
+    @Override
+    public long getIndexEntryCount() {
+        if (explain || measure || keyset) {
+            return -1;
+        }
+        long l = left.getIndexEntryCount();
+        long r = right.getIndexEntryCount();
+        if (l < 0 || r < 0) {
+            return -1;
+        }
+        // rows that match both sides are counted twice
+        long count = l + r < 0 ? Long.MAX_VALUE : l + r;
+        return Math.min(limit, Math.max(0, count - offset));
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
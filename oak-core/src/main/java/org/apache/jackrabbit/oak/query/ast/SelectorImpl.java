@@ -56,6 +56,7 @@ import org.apache.jackrabbit.oak.spi.query.IndexRow;
 import org.apache.jackrabbit.oak.spi.query.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.CountingQueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.slf4j.Logger;
@@ -327,6 +328,27 @@ public class SelectorImpl extends SourceImpl {
         }
     }
 
+    /**
+     * Count the entries the index returns for this selector, without reading
+     * them. Access rights (and conditions the index does not evaluate) are
+     * not taken into account.
+     * 
+     * @param rootState the root state
+     * @return the number of entries, or -1 if the index can not count them
+     */
+    public long getIndexEntryCount(NodeState rootState) {
+        QueryIndex index = getIndex();
+        if (!(index instanceof CountingQueryIndex)) {
+            return -1;
+        }
+        FilterImpl f = createFilter(false);
+        IndexPlan p = plan.getIndexPlan();
+        if (p != null) {
+            p.setFilter(f);
+        }
+        return ((CountingQueryIndex) index).getEntryCount(f, p, rootState);
+    }
+
     @Override
     public String getPlan(NodeState rootState) {
         StringBuilder buff = new StringBuilder();
@@ -392,6 +414,8 @@ public class SelectorImpl extends SourceImpl {
         for (ConstraintImpl constraint : selectorConstraints) {
             constraint.restrict(f);
         }
+        f.setKeysetRestriction(query.getKeysetRestriction(this));
+        f.setLimitHint(query.getLimitHint(this));
 
         return f;
     }
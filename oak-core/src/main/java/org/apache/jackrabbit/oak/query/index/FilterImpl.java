@@ -108,6 +108,16 @@ public class FilterImpl implements Filter {
      */
     private boolean preparing;
 
+    /**
+     * The keyset pagination position, if any.
+     */
+    private PropertyRestriction keysetRestriction;
+
+    /**
+     * The maximum number of rows the query needs, if known.
+     */
+    private long limitHint = Long.MAX_VALUE;
+
     // TODO support "order by"
     
     public FilterImpl() {
@@ -142,6 +152,8 @@ public class FilterImpl implements Filter {
         this.matchesAllTypes = selector != null ? selector.matchesAllTypes()
                 : false;
         this.settings = filter.getQueryEngineSettings();
+        this.keysetRestriction = impl.keysetRestriction;
+        this.limitHint = impl.limitHint;
     }
 
     public void setPreparing(boolean preparing) {
@@ -399,6 +411,10 @@ public class FilterImpl implements Filter {
             }
             buff.append("]");
         }
+        if (keysetRestriction != null) {
+            buff.append(", keyset=").append(keysetRestriction.propertyName).
+                    append("=").append(keysetRestriction);
+        }
         buff.append(")");
         return buff.toString();
     }
@@ -571,6 +587,25 @@ public class FilterImpl implements Filter {
         this.matchesAllTypes = matchesAllTypes;
     }
 
+    public void setKeysetRestriction(PropertyRestriction keysetRestriction) {
+        this.keysetRestriction = keysetRestriction;
+    }
+
+    @Override
+    @Nullable
+    public PropertyRestriction getKeysetRestriction() {
+        return keysetRestriction;
+    }
+
+    public void setLimitHint(long limitHint) {
+        this.limitHint = limitHint;
+    }
+
+    @Override
+    public long getLimitHint() {
+        return limitHint;
+    }
+
     @Override
     public QueryEngineSettings getQueryEngineSettings() {
         return settings;
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.query.plan;
 
 import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
+import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex;
 import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 
@@ -32,12 +33,23 @@ public class SelectorExecutionPlan implements ExecutionPlan {
     private final double estimatedCost;
     private final QueryIndex index;
     private final IndexPlan plan;
+    private final Filter filter;
+    private final double estimatedEntryCount;
+    private final String planName;
 
     public SelectorExecutionPlan(SelectorImpl selector, QueryIndex index, IndexPlan plan, double estimatedCost) {
+        this(selector, index, plan, estimatedCost, null, -1, null);
+    }
+
+    public SelectorExecutionPlan(SelectorImpl selector, QueryIndex index, IndexPlan plan,
+            double estimatedCost, Filter filter, double estimatedEntryCount, String planName) {
         this.selector = selector;
         this.index = index;
         this.estimatedCost = estimatedCost;
         this.plan = plan;
+        this.filter = filter;
+        this.estimatedEntryCount = estimatedEntryCount;
+        this.planName = planName;
     }
     
     @Override
@@ -57,4 +69,33 @@ public class SelectorExecutionPlan implements ExecutionPlan {
         return plan;
     }
 
+    /**
+     * Get the filter the index was selected for.
+     *
+     * @return the filter, or null if not known
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Get the number of entries the index was expected to return, before any
+     * cost correction was applied.
+     *
+     * @return the estimated entry count, or -1 if not known
+     */
+    public double getEstimatedEntryCount() {
+        return estimatedEntryCount;
+    }
+
+    /**
+     * Get the name of the plan, which identifies the index definition (see
+     * {@link IndexPlan#getPlanName()}).
+     *
+     * @return the plan name, or null if not known
+     */
+    public String getPlanName() {
+        return planName;
+    }
+
 }
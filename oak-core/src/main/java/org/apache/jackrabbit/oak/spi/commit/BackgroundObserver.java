@@ -49,6 +49,11 @@ import org.slf4j.LoggerFactory;
  * To help prevent such cases, any sequential external content changes that
  * the background observer thread has yet to process are automatically merged
  * to just one change.
+ * <p>
+ * If a {@link ContentChangeJournal} is passed, content changes are appended
+ * to that journal once the queue is full instead of being merged. Until the
+ * journal has been replayed all further content changes are appended to it
+ * as well in order to preserve their order.
  */
 public class BackgroundObserver implements Observer, Closeable {
 
@@ -82,9 +87,17 @@ public class BackgroundObserver implements Observer, Closeable {
      */
     private final int maxQueueLength;
 
+    /**
+     * Journal taking content changes that don't fit into the queue or
+     * {@code null} for merging such changes.
+     */
+    @Nullable
+    private final ContentChangeJournal journal;
+
     private static class ContentChange {
         private final NodeState root;
         private final CommitInfo info;
+        private final long timestamp = System.currentTimeMillis();
         ContentChange(NodeState root, CommitInfo info) {
             this.root = root;
             this.info = info;
@@ -121,6 +134,9 @@ public class BackgroundObserver implements Observer, Closeable {
                     if (change != null && change != STOP) {
                         observer.contentChanged(change.root, change.info);
                         currentTask.onComplete(completionHandler);
+                    } else if (change == null && journal != null && !stopped
+                            && journal.replay(observer)) {
+                        currentTask.onComplete(completionHandler);
                     }
                 } catch (Throwable t) {
                     exceptionHandler.uncaughtException(Thread.currentThread(), t);
@@ -145,24 +161,42 @@ public class BackgroundObserver implements Observer, Closeable {
             @Nonnull Observer observer,
             @Nonnull Executor executor,
             int queueLength,
-            @Nonnull UncaughtExceptionHandler exceptionHandler) {
+            @Nonnull UncaughtExceptionHandler exceptionHandler,
+            @Nullable ContentChangeJournal journal) {
         this.observer = checkNotNull(observer);
         this.executor = checkNotNull(executor);
         this.exceptionHandler = checkNotNull(exceptionHandler);
         this.maxQueueLength = queueLength;
         this.queue = newArrayBlockingQueue(maxQueueLength);
+        this.journal = journal;
+    }
+
+    public BackgroundObserver(
+            @Nonnull Observer observer,
+            @Nonnull Executor executor,
+            int queueLength,
+            @Nonnull UncaughtExceptionHandler exceptionHandler) {
+        this(observer, executor, queueLength, exceptionHandler, null);
     }
 
     public BackgroundObserver(
             @Nonnull final Observer observer,
             @Nonnull Executor executor,
-            int queueLength) {
+            int queueLength,
+            @Nullable ContentChangeJournal journal) {
         this(observer, executor, queueLength, new UncaughtExceptionHandler() {
             @Override
             public void uncaughtException(Thread t, Throwable e) {
                 getLogger(observer).error("Uncaught exception in " + observer, e);
             }
-        });
+        }, journal);
+    }
+
+    public BackgroundObserver(
+            @Nonnull Observer observer,
+            @Nonnull Executor executor,
+            int queueLength) {
+        this(observer, executor, queueLength, (ContentChangeJournal) null);
     }
 
     public BackgroundObserver(
@@ -184,6 +218,29 @@ public class BackgroundObserver implements Observer, Closeable {
         return maxQueueLength;
     }
 
+    /**
+     * @return  The number of content changes not yet delivered, including the
+     *          ones in the journal
+     */
+    public int getBacklog() {
+        return queue.size() + (journal == null ? 0 : journal.size());
+    }
+
+    /**
+     * @return  The time in milliseconds since the oldest content change not yet
+     *          delivered was added or {@code 0} if there is no such change
+     */
+    public long getLag() {
+        long timestamp = -1;
+        ContentChange change = queue.peek();
+        if (change != null && change != STOP) {
+            timestamp = change.timestamp;
+        } else if (journal != null) {
+            timestamp = journal.getOldestTimestamp();
+        }
+        return timestamp < 0 ? 0 : System.currentTimeMillis() - timestamp;
+    }
+
     /**
      * Clears the change queue and signals the background thread to stop
      * without making any further {@link #contentChanged(NodeState, CommitInfo)}
@@ -200,6 +257,9 @@ public class BackgroundObserver implements Observer, Closeable {
         queue.clear();
         queue.add(STOP);
         stopped = true;
+        if (journal != null) {
+            journal.close();
+        }
     }
 
     //----------------------------------------------------------< Observer >--
@@ -212,6 +272,15 @@ public class BackgroundObserver implements Observer, Closeable {
         checkState(!stopped);
         checkNotNull(root);
 
+        if (journal != null && (journal.size() > 0 || queue.remainingCapacity() == 0)) {
+            // The queue is full or earlier changes are still in the journal:
+            // append to the journal to preserve the order of the changes
+            journal.append(root, info);
+            currentTask.onComplete(completionHandler);
+            added(queue.size());
+            return;
+        }
+
         if (info == null && last != null && last.info == null) {
             // This is an external change. If the previous change was
             // also external, we can drop it from the queue (since external
@@ -18,14 +18,21 @@
  */
 package org.apache.jackrabbit.oak.spi.commit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A {@code ChangeDispatcher} instance dispatches content changes
@@ -35,25 +42,92 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
  * <p>
  * The {@link #addObserver(Observer)} method registers an {@link Observer} for receiving
  * notifications for all changes reported to this instance.
+ * <p>
+ * A change dispatcher created without an {@code Executor} reports changes to its
+ * observers synchronously from {@code contentChanged}. A change dispatcher created with
+ * an {@code Executor} only publishes the changes to a ring buffer from where each observer
+ * consumes them in order on the executor. Reporting a change then never waits for
+ * observers. An observer falling behind by more than the capacity of the ring buffer
+ * skips the overwritten changes and receives the most recent root state with a
+ * {@code null} commit info instead, like a {@link BackgroundObserver} with a full queue.
+ * <p>
+ * Note that this changes the contract of {@code contentChanged} for dispatchers
+ * created with an {@code Executor}: it returns as soon as the change is published
+ * and observers may see the change only later. Observers still see the changes in
+ * the order they were reported. Callers that need to know when an observer has
+ * seen a change must track this in the observer itself.
  */
 public class ChangeDispatcher implements Observable, Observer {
-    private final CompositeObserver observers = new CompositeObserver();
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeDispatcher.class);
 
-    @Nonnull
-    private NodeState root;
+    /**
+     * Default capacity of the ring buffer
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    /**
+     * Executor for delivering changes to the observers, {@code null} to deliver
+     * them synchronously.
+     */
+    @Nullable
+    private final Executor executor;
+
+    /**
+     * Ring buffer of the most recently published changes. The change with sequence
+     * number {@code n} is kept at index {@code n % capacity}.
+     */
+    private final AtomicReferenceArray<Change> changes;
+
+    /**
+     * Sequence number of the most recently published change
+     */
+    private volatile long published;
 
     /**
-     * Create a new instance for dispatching content changes
+     * Registered observers. Copied on write.
+     */
+    private volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+
+    /**
+     * Create a new instance for dispatching content changes synchronously
      * @param root  current root node state
      */
     public ChangeDispatcher(@Nonnull NodeState root) {
-        this.root = checkNotNull(root);
+        this(root, null, 1);
+    }
+
+    /**
+     * Create a new instance for dispatching content changes on the given executor
+     * @param root      current root node state
+     * @param executor  executor for delivering the changes to the observers or
+     *                  {@code null} to deliver them synchronously
+     */
+    public ChangeDispatcher(@Nonnull NodeState root, @Nullable Executor executor) {
+        this(root, executor, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new instance for dispatching content changes on the given executor
+     * @param root      current root node state
+     * @param executor  executor for delivering the changes to the observers or
+     *                  {@code null} to deliver them synchronously
+     * @param capacity  number of changes an observer may fall behind before
+     *                  changes are skipped
+     */
+    public ChangeDispatcher(@Nonnull NodeState root, @Nullable Executor executor, int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.executor = executor;
+        this.changes = new AtomicReferenceArray<Change>(capacity);
+        this.changes.set(0, new Change(0, checkNotNull(root), null));
     }
 
     /**
      * Register a new {@link Observer} for receiving notifications about changes reported to
-     * this change dispatcher. Changes are reported synchronously and clients need to ensure
-     * to no block any length of time (e.g. by relaying through a {@link BackgroundObserver}).
+     * this change dispatcher. Without executor changes are reported synchronously and clients
+     * need to ensure to no block any length of time (e.g. by relaying through a
+     * {@link BackgroundObserver}).
      * <p>
      * Clients need to call {@link java.io.Closeable#close()} close} on the returned
      * {@code Closeable} instance to stop receiving notifications.
@@ -62,21 +136,172 @@ public class ChangeDispatcher implements Observable, Observer {
      */
     @Override
     @Nonnull
-    public synchronized Closeable addObserver(final Observer observer) {
-        observer.contentChanged(root, null);
-        observers.addObserver(observer);
+    public Closeable addObserver(final Observer observer) {
+        final Subscriber subscriber;
+        synchronized (this) {
+            subscriber = new Subscriber(checkNotNull(observer), published);
+            if (executor == null) {
+                subscriber.deliver(published);
+            }
+            Subscriber[] s = Arrays.copyOf(subscribers, subscribers.length + 1);
+            s[s.length - 1] = subscriber;
+            subscribers = s;
+        }
+        if (executor != null) {
+            subscriber.schedule();
+        }
         return new Closeable() {
             @Override
             public void close() {
-                observers.removeObserver(observer);
+                subscriber.closed = true;
+                removeSubscriber(subscriber);
             }
         };
     }
 
+    private synchronized void removeSubscriber(Subscriber subscriber) {
+        Subscriber[] s = subscribers;
+        for (int k = 0; k < s.length; k++) {
+            if (s[k] == subscriber) {
+                Subscriber[] t = new Subscriber[s.length - 1];
+                System.arraycopy(s, 0, t, 0, k);
+                System.arraycopy(s, k + 1, t, k, s.length - k - 1);
+                subscribers = t;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Report a change to the observers. Without executor the observers have seen
+     * the change when this method returns. With an executor it only publishes the
+     * change, which the observers receive later on the executor.
+     */
     @Override
-    public synchronized void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+    public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
         checkNotNull(root);
-        observers.contentChanged(root, info);
-        this.root = root;
+        if (executor == null) {
+            synchronized (this) {
+                publish(root, info);
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.deliver(published);
+                }
+            }
+        } else {
+            synchronized (this) {
+                publish(root, info);
+            }
+            for (Subscriber subscriber : subscribers) {
+                subscriber.schedule();
+            }
+        }
+    }
+
+    private void publish(NodeState root, CommitInfo info) {
+        long sequence = published + 1;
+        changes.set(index(sequence), new Change(sequence, root, info));
+        published = sequence;
     }
+
+    private int index(long sequence) {
+        return (int) (sequence % changes.length());
+    }
+
+    private static class Change {
+        final long sequence;
+        final NodeState root;
+        final CommitInfo info;
+
+        Change(long sequence, NodeState root, CommitInfo info) {
+            this.sequence = sequence;
+            this.root = root;
+            this.info = info;
+        }
+    }
+
+    /**
+     * A registered observer together with the sequence number of the
+     * next change to deliver to it.
+     */
+    private class Subscriber implements Runnable {
+        private final Observer observer;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * Sequence number of the next change to deliver. Only accessed while
+         * delivering changes, which happens for one subscriber at a time.
+         */
+        private long next;
+
+        /**
+         * The first change is delivered with a {@code null} commit info
+         */
+        private boolean initial = true;
+
+        volatile boolean closed;
+
+        Subscriber(Observer observer, long next) {
+            this.observer = observer;
+            this.next = next;
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Deliver the changes published up to when the task started. Changes
+         * published later are delivered by a new task submitted to the executor,
+         * so a task never keeps delivering under sustained commits, which would
+         * stall a caller running the task itself.
+         */
+        @Override
+        public void run() {
+            try {
+                deliver(published);
+            } catch (RuntimeException e) {
+                LOG.warn("Error while dispatching content changes to " + observer, e);
+            } finally {
+                scheduled.set(false);
+            }
+            // Reschedule for changes published after the task started
+            if (next <= published) {
+                schedule();
+            }
+        }
+
+        /**
+         * Deliver the changes not yet delivered up to and including the change
+         * with the given sequence number
+         */
+        void deliver(long until) {
+            while (!closed && next <= until) {
+                Change change = changes.get(index(next));
+                if (change.sequence == next) {
+                    CommitInfo info = initial ? null : change.info;
+                    initial = false;
+                    next++;
+                    observer.contentChanged(change.root, info);
+                } else {
+                    // Fell behind by more than the capacity of the ring buffer.
+                    // Skip to the most recent change.
+                    long last = published;
+                    Change latest = changes.get(index(last));
+                    if (latest.sequence == last) {
+                        initial = false;
+                        next = last + 1;
+                        observer.contentChanged(latest.root, null);
+                    }
+                }
+            }
+        }
+    }
+
 }
@@ -49,7 +49,7 @@ public final class CommitInfo {
 
     private final String userId;
 
-    private final long date = System.currentTimeMillis();
+    private final long date;
 
     private final Map<String, Object> info;
 
@@ -72,9 +72,25 @@ public final class CommitInfo {
      * @param info info map
      */
     public CommitInfo(@Nonnull String sessionId, @Nullable String userId, Map<String, Object> info) {
+        this(sessionId, userId, info, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a commit info for the given session and user and info map
+     * with an explicit time stamp. Used for restoring the commit information
+     * of a commit that has been persisted.
+     *
+     * @param sessionId session identifier
+     * @param userId The user id.
+     * @param info info map
+     * @param date time stamp
+     */
+    public CommitInfo(@Nonnull String sessionId, @Nullable String userId, Map<String, Object> info,
+            long date) {
         this.sessionId = checkNotNull(sessionId);
         this.userId = (userId == null) ? OAK_UNKNOWN : userId;
         this.info = checkNotNull(info);
+        this.date = date;
     }
 
     /**
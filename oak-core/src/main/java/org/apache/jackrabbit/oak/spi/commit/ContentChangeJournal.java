@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.spi.commit;
+
+import java.io.Closeable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Overflow storage for the content changes of a {@link BackgroundObserver}.
+ * Once the in memory queue of a background observer is full, further content
+ * changes are appended to its journal instead of being merged, until the
+ * journal has been replayed. Implementations should keep the per commit
+ * granularity of the changes and bound their resource usage.
+ * <p>
+ * Implementations must be thread safe: changes are appended on the
+ * committing thread while they are replayed on the background thread.
+ */
+public interface ContentChangeJournal extends Closeable {
+
+    /**
+     * Append a content change to this journal. This method must not block for
+     * any length of time.
+     *
+     * @param root  root state of the change
+     * @param info  commit info of the change or {@code null} for external changes
+     */
+    void append(@Nonnull NodeState root, @Nullable CommitInfo info);
+
+    /**
+     * Remove the oldest content change from this journal and report it to the
+     * passed observer.
+     *
+     * @param observer  observer to report the change to
+     * @return  {@code true} if a change was reported, {@code false} if this
+     *          journal is empty
+     */
+    boolean replay(@Nonnull Observer observer);
+
+    /**
+     * @return  the number of content changes in this journal
+     */
+    int size();
+
+    /**
+     * @return  the time in milliseconds the oldest content change in this
+     *          journal was appended or {@code -1} if this journal is empty
+     */
+    long getOldestTimestamp();
+
+    /**
+     * Discard all content changes in this journal and release its resources.
+     */
+    @Override
+    void close();
+
+}
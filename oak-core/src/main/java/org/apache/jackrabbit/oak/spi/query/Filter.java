@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.jcr.PropertyType;
@@ -178,6 +179,37 @@ public interface Filter {
      */
     boolean isAlwaysFalse();
 
+    /**
+     * Get the keyset pagination position, if any, as a restriction on the
+     * first "order by" property: "first" is set for ascending order, and
+     * "last" for descending order. Rows sorting before this position were
+     * already returned on a previous page.
+     * <p>
+     * This is not a condition: an index that returns rows in the requested
+     * sort order may use it to seek to the position instead of returning
+     * rows that are skipped afterwards, but all other indexes must ignore
+     * it. The query engine removes rows before the position in any case.
+     * 
+     * @return the restriction, or null if keyset pagination is not used
+     */
+    @CheckForNull
+    PropertyRestriction getKeysetRestriction();
+
+    /**
+     * Get the maximum number of rows the query needs from this selector,
+     * that is the offset plus the limit of the query. This is only known
+     * for queries with a limit and without joins.
+     * <p>
+     * This is a hint, not a condition: the query engine may still drop rows
+     * returned by the index (for example conditions that are not handled by
+     * the index, or rows that are not accessible), in which case it reads
+     * more rows. An index may use it to size the first batch of rows it
+     * loads.
+     * 
+     * @return the limit hint, or Long.MAX_VALUE if not known
+     */
+    long getLimitHint();
+
     /**
      * A restriction for a property.
      */
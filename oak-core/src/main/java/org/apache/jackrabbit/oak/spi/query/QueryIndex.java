@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.Maps;
 import org.apache.jackrabbit.oak.api.Type;
@@ -191,6 +192,50 @@ public interface QueryIndex {
 
     }
 
+    /**
+     * A query index that can count the entries matching a filter, without
+     * reading them. This is used for queries that only need the number of
+     * rows.
+     */
+    public interface CountingQueryIndex {
+
+        /**
+         * Count the entries this index would return for the given filter.
+         * Access rights are not checked, and the count may be an estimate
+         * (for example, based on approximate counters), so the result is
+         * only an approximation of the number of rows of the query.
+         * 
+         * @param filter the filter
+         * @param plan the index plan (for advanced query indexes), or null
+         * @param rootState root state of the current repository snapshot
+         * @return the number of entries, or -1 if the index can not count
+         *         them without reading them
+         */
+        long getEntryCount(Filter filter, @Nullable IndexPlan plan, NodeState rootState);
+
+    }
+
+    /**
+     * A query index that uses one of several index definitions depending on
+     * the filter, and can name the one it uses. This allows to keep
+     * statistics per index definition instead of per index type. Advanced
+     * query indexes use {@link IndexPlan#getPlanName()} instead.
+     */
+    public interface NamedPlanQueryIndex {
+
+        /**
+         * Get the name of the plan this index would use for the given filter,
+         * for example the path of the index definition.
+         * 
+         * @param filter the filter
+         * @param rootState root state of the current repository snapshot
+         * @return the plan name, or null if the index is not applicable
+         */
+        @CheckForNull
+        String getPlanName(Filter filter, NodeState rootState);
+
+    }
+
     /**
      * An index plan.
      */
@@ -307,6 +352,16 @@ public interface QueryIndex {
          */
         @CheckForNull
         Object getAttribute(String name);
+
+        /**
+         * The name of the plan, which tells apart plans of different index
+         * definitions of the same index, for example the path of the index
+         * definition.
+         *
+         * @return the plan name, or <code>null</code> if not set
+         */
+        @CheckForNull
+        String getPlanName();
         
         /**
          * A builder for index plans.
@@ -325,6 +380,7 @@ public interface QueryIndex {
             protected PropertyRestriction propRestriction;
             protected String pathPrefix = "/";
             protected Map<String, Object> attributes = Maps.newHashMap();
+            protected String planName;
 
             public Builder setCostPerExecution(double costPerExecution) {
                 this.costPerExecution = costPerExecution;
@@ -386,6 +442,11 @@ public interface QueryIndex {
                return this;
             }
 
+            public Builder setPlanName(String name) {
+                this.planName = name;
+                return this;
+            }
+
             public IndexPlan build() {
                 
                 return new IndexPlan() {
@@ -416,6 +477,8 @@ public interface QueryIndex {
                             Builder.this.pathPrefix;
                     private final Map<String, Object> attributes =
                             Builder.this.attributes;
+                    private final String planName =
+                            Builder.this.planName;
 
                     @Override
                     public String toString() {
@@ -430,7 +493,8 @@ public interface QueryIndex {
                             + " sortOrder : %s,"
                             + " definition : %s,"
                             + " propertyRestriction : %s,"
-                            + " pathPrefix : %s }",
+                            + " pathPrefix : %s,"
+                            + " planName : %s }",
                             costPerExecution,
                             costPerEntry,
                             estimatedEntryCount,
@@ -441,7 +505,8 @@ public interface QueryIndex {
                             sortOrder,
                             definition,
                             propRestriction,
-                            pathPrefix
+                            pathPrefix,
+                            planName
                             );
                     }
 
@@ -523,6 +588,11 @@ public interface QueryIndex {
                     public Object getAttribute(String name) {
                         return attributes.get(name);
                     }
+
+                    @Override
+                    public String getPlanName() {
+                        return planName;
+                    }
                 };
             }
 
@@ -14,7 +14,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Version("1.0")
+@Version("2.0")
 @Export(optional = "provide:=true")
 package org.apache.jackrabbit.oak.spi.query;
 
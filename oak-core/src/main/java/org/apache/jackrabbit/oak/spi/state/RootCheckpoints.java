@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.spi.state;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Optional capability of a {@link NodeStore} to create a checkpoint for a
+ * root state other than the current head state, for example for the root
+ * state an {@link org.apache.jackrabbit.oak.spi.commit.Observer} was notified
+ * with. Unlike {@link NodeStore#checkpoint(long)} this allows to keep a
+ * reference to a specific revision after the head state moved on.
+ */
+public interface RootCheckpoints {
+
+    /**
+     * Create a checkpoint for the passed root state. The root state must have
+     * been obtained from this store. This method may wait for a commit in
+     * progress to complete, so it must not be called from the committing
+     * thread.
+     *
+     * @param root  root state to create the checkpoint for
+     * @param lifetime  time (in milliseconds, &gt; 0) that the checkpoint
+     *                  should remain available
+     * @return  the name of the checkpoint or {@code null} if it could not be
+     *          created
+     */
+    @CheckForNull
+    String checkpoint(@Nonnull NodeState root, long lifetime);
+
+}
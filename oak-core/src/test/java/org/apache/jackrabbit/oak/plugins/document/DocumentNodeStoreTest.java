@@ -52,6 +52,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -71,6 +72,7 @@ import org.apache.jackrabbit.oak.spi.commit.Editor;
 import org.apache.jackrabbit.oak.spi.commit.EditorHook;
 import org.apache.jackrabbit.oak.spi.commit.EditorProvider;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
@@ -1323,4 +1325,48 @@ public class DocumentNodeStoreTest {
             }
         }
     }
+
+    // commits do not wait for observers
+    @Test
+    public void slowObserver() throws Exception {
+        DocumentNodeStore store = new DocumentMK.Builder().getNodeStore();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final List<NodeState> roots = Collections.synchronizedList(new ArrayList<NodeState>());
+        store.addObserver(new Observer() {
+            @Override
+            public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+                if (root.hasChildNode("n0")) {
+                    entered.countDown();
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                roots.add(root);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            NodeBuilder builder = store.getRoot().builder();
+            builder.child("n" + i);
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+            assertTrue(entered.await(10, SECONDS));
+        }
+        // all merges returned while the observer is busy with the first one
+        assertEquals(1, roots.size());
+
+        blocked.countDown();
+        long timeout = System.currentTimeMillis() + SECONDS.toMillis(10);
+        while (roots.size() < 6 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(6, roots.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(roots.get(i + 1).hasChildNode("n" + i));
+            assertFalse(roots.get(i + 1).hasChildNode("n" + (i + 1)));
+        }
+        store.dispose();
+    }
 }
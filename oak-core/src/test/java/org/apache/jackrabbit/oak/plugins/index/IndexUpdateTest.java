@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPE
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_REINDEX_VALUE;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NAMES;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_ASYNC_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
@@ -32,8 +33,10 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 
@@ -49,7 +52,9 @@ import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.commit.EditorDiff;
 import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.commit.VisibleEditor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.PropertyValues;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
@@ -58,6 +63,7 @@ import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
 public class IndexUpdateTest {
@@ -418,6 +424,139 @@ public class IndexUpdateTest {
                 .getProperty(IndexConstants.REINDEX_COUNT).getValue(Type.LONG);
     }
 
+    @Test
+    public void parallelReindex() throws Exception {
+        NodeBuilder definition = createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null);
+
+        // content spread over several top level partitions
+        builder.child("other").setProperty("foo", "abc");
+        NodeBuilder content = builder.child("content");
+        content.setProperty("foo", "xyz");
+        for (int i = 0; i < 20; i++) {
+            content.child("c" + i).setProperty("foo", i % 2 == 0 ? "abc" : "xyz");
+        }
+        NodeState after = builder.getNodeState();
+
+        ParallelReindex reindex = newParallelReindex(after, definition);
+        assertEquals(ImmutableSet.of("/oak:index/rootIndex"),
+                ImmutableSet.copyOf(reindex.getPaths()));
+        reindex.run(after);
+
+        NodeState indexed = builder.getNodeState();
+        checkPathExists(indexed, INDEX_DEFINITIONS_NAME, "rootIndex",
+                INDEX_CONTENT_NODE_NAME);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        Set<String> abc = find(lookup, "foo", "abc");
+        assertEquals(11, abc.size());
+        assertTrue(abc.contains("other"));
+        assertTrue(abc.contains("content/c18"));
+        Set<String> xyz = find(lookup, "foo", "xyz");
+        assertEquals(11, xyz.size());
+        assertTrue(xyz.contains("content"));
+    }
+
+    @Test
+    public void parallelReindexUniqueness() throws Exception {
+        NodeBuilder definition = createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, true, ImmutableSet.of("foo"), null);
+        builder.child("a").setProperty("foo", "abc");
+        builder.child("b").setProperty("foo", "abc");
+        NodeState after = builder.getNodeState();
+
+        try {
+            newParallelReindex(after, definition).run(after);
+            fail("duplicate values in different partitions should be detected");
+        } catch (CommitFailedException e) {
+            assertTrue(e.isConstraintViolation());
+        }
+    }
+
+    @Test
+    public void parallelReindexHook() throws Exception {
+        NodeState before = builder.getNodeState();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null);
+        builder.child("other").setProperty("foo", "abc");
+        NodeBuilder content = builder.child("content");
+        for (int i = 0; i < 20; i++) {
+            content.child("c" + i).setProperty("foo", i % 2 == 0 ? "abc" : "xyz");
+        }
+        NodeState after = builder.getNodeState();
+
+        final AtomicInteger editors = new AtomicInteger();
+        IndexEditorProvider provider = new PropertyIndexEditorProvider() {
+            @Override
+            public Editor getIndexEditor(@Nonnull String type, @Nonnull NodeBuilder definition,
+                    @Nonnull NodeState root, @Nonnull IndexUpdateCallback callback) {
+                if (Iterables.contains(definition.getNames(PROPERTY_NAMES), "foo")) {
+                    editors.incrementAndGet();
+                }
+                return super.getIndexEditor(type, definition, root, callback);
+            }
+        };
+        EditorHook hook = new EditorHook(new IndexUpdateProvider(provider, null, 4));
+        NodeState indexed = hook.processCommit(before, after, CommitInfo.EMPTY);
+
+        // the partitions are indexed by editors of their own
+        assertTrue(editors.get() > 1);
+        NodeState definition = checkPathExists(indexed, INDEX_DEFINITIONS_NAME, "rootIndex");
+        assertFalse(definition.getBoolean(REINDEX_PROPERTY_NAME));
+        assertEquals(1, definition.getLong(IndexConstants.REINDEX_COUNT));
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        assertEquals(11, find(lookup, "foo", "abc").size());
+        assertEquals(10, find(lookup, "foo", "xyz").size());
+
+        // later commits update the index as usual
+        editors.set(0);
+        NodeBuilder b2 = indexed.builder();
+        b2.child("other").setProperty("foo", "xyz");
+        indexed = hook.processCommit(indexed, b2.getNodeState(), CommitInfo.EMPTY);
+        assertEquals(1, editors.get());
+        lookup = new PropertyIndexLookup(indexed);
+        assertEquals(10, find(lookup, "foo", "abc").size());
+        assertEquals(11, find(lookup, "foo", "xyz").size());
+    }
+
+    @Test
+    public void parallelReindexReported() throws Exception {
+        NodeState before = builder.getNodeState();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null);
+        builder.child("a").setProperty("foo", "abc");
+        builder.child("b").setProperty("foo", "abc");
+        NodeState after = builder.getNodeState();
+
+        NodeBuilder target = after.builder();
+        IndexUpdate update = new IndexUpdate(new PropertyIndexEditorProvider(), null, after,
+                target, new IndexUpdateCallback() {
+                    @Override
+                    public void indexUpdate() {
+                    }
+                }).withReindexThreads(4);
+        assertNull(EditorDiff.process(VisibleEditor.wrap(update), before, after));
+
+        assertEquals(ImmutableSet.of("/oak:index/rootIndex"), update.getReindexedIndexes());
+        assertTrue(update.isReindexingPerformed());
+        assertEquals(ImmutableSet.of("a", "b"),
+                find(new PropertyIndexLookup(target.getNodeState()), "foo", "abc"));
+    }
+
+    private static ParallelReindex newParallelReindex(NodeState after, NodeBuilder definition)
+            throws CommitFailedException {
+        IndexEditorProvider provider = new PropertyIndexEditorProvider();
+        IndexUpdateCallback callback = new IndexUpdateCallback() {
+            @Override
+            public void indexUpdate() {
+            }
+        };
+        ParallelReindex reindex = new ParallelReindex(provider, after, 4);
+        reindex.add("/oak:index/rootIndex", PropertyIndexEditorProvider.TYPE, definition,
+                provider.getIndexEditor(PropertyIndexEditorProvider.TYPE, definition, after,
+                        callback), callback);
+        return reindex;
+    }
+
     private static IndexEditorProvider emptyProvider() {
         return new IndexEditorProvider() {
             @Override
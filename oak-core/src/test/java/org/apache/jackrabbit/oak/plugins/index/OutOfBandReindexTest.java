@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
+import static org.apache.jackrabbit.JcrConstants.NT_BASE;
+import static org.apache.jackrabbit.oak.api.jmx.OutOfBandReindexMBean.STATE_CATCHING_UP;
+import static org.apache.jackrabbit.oak.api.jmx.OutOfBandReindexMBean.STATE_DONE;
+import static org.apache.jackrabbit.oak.api.jmx.OutOfBandReindexMBean.STATE_FAILED;
+import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
+import static org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate.ASYNC;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_COUNT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.nodetype.NodeTypeConstants.JCR_NODE_TYPES;
+import static org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent.INITIAL_CONTENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexLookup;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.Editor;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.PropertyValues;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class OutOfBandReindexTest {
+
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final String INDEX_PATH = "/oak:index/rootIndex";
+
+    private final IndexEditorProvider provider = new PropertyIndexEditorProvider();
+
+    private final NodeStore store = new MemoryNodeStore();
+
+    @Before
+    public void setUp() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null);
+        builder.child("a").setProperty("foo", "abc");
+        store.merge(builder, new EditorHook(new IndexUpdateProvider(provider)),
+                CommitInfo.EMPTY);
+
+        // content committed without updating the index
+        builder = store.getRoot().builder();
+        builder.child("b").setProperty("foo", "abc");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        assertEquals(ImmutableSet.of("a"), find(store.getRoot(), "abc"));
+    }
+
+    /**
+     * The index is rebuilt from a checkpoint, and a change committed after
+     * the checkpoint was taken is indexed during the switch-over.
+     */
+    @Test
+    public void reindex() throws Exception {
+        OutOfBandReindex reindex = new OutOfBandReindex(store,
+                withConcurrentChange(provider, "/c", "foo", "abc"), SAME_THREAD);
+        reindex.startReindex(INDEX_PATH);
+
+        assertEquals(STATE_DONE, reindex.getState());
+        assertEquals(INDEX_PATH, reindex.getIndexPath());
+        assertEquals(-1, reindex.getCatchUpLag());
+        assertTrue(reindex.getUpdates() > 0);
+
+        NodeState root = store.getRoot();
+        assertEquals(ImmutableSet.of("a", "b", "c"), find(root, "abc"));
+        assertFalse(root.hasChildNode(OutOfBandReindex.STAGING));
+        NodeState definition = root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("rootIndex");
+        assertEquals(2, definition.getLong(REINDEX_COUNT));
+    }
+
+    /**
+     * A definition change while reindexing aborts the switch-over and leaves
+     * the existing index content in place.
+     */
+    @Test
+    public void definitionChanged() throws Exception {
+        OutOfBandReindex reindex = new OutOfBandReindex(store,
+                withConcurrentChange(provider, INDEX_PATH, "unique", "true"),
+                SAME_THREAD);
+        reindex.startReindex(INDEX_PATH);
+
+        assertEquals(STATE_FAILED, reindex.getState());
+        NodeState root = store.getRoot();
+        assertEquals(ImmutableSet.of("a"), find(root, "abc"));
+        assertFalse(root.hasChildNode(OutOfBandReindex.STAGING));
+        assertTrue(root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("rootIndex")
+                .hasChildNode(INDEX_CONTENT_NODE_NAME));
+    }
+
+    /**
+     * Changes committed during each catch-up round are indexed by the next
+     * round, until a round is fast enough to stay within the maximum lag.
+     */
+    @Test
+    public void catchUp() throws Exception {
+        int changes = 3;
+        OutOfBandReindex reindex = new OutOfBandReindex(store,
+                withConcurrentChanges(provider, changes, 400), SAME_THREAD, 200);
+        reindex.startReindex(INDEX_PATH);
+
+        assertEquals(STATE_DONE, reindex.getState());
+        assertEquals(changes, reindex.getCatchUpRounds());
+        Set<String> expected = Sets.newHashSet("a", "b");
+        for (int i = 0; i < changes; i++) {
+            expected.add("c" + i);
+        }
+        assertEquals(expected, find(store.getRoot(), "abc"));
+        assertFalse(store.getRoot().hasChildNode(OutOfBandReindex.STAGING));
+    }
+
+    /**
+     * Staged content that does not catch up within the maximum number of
+     * rounds is discarded instead of being switched over with an unbounded
+     * lag.
+     */
+    @Test
+    public void catchUpFailed() throws Exception {
+        int changes = OutOfBandReindex.MAX_CATCH_UP_ROUNDS + 1;
+        OutOfBandReindex reindex = new OutOfBandReindex(store,
+                withConcurrentChanges(provider, changes, 0), SAME_THREAD, -1);
+        reindex.startReindex(INDEX_PATH);
+
+        assertEquals(STATE_FAILED, reindex.getState());
+        assertEquals(OutOfBandReindex.MAX_CATCH_UP_ROUNDS, reindex.getCatchUpRounds());
+        NodeState root = store.getRoot();
+        assertEquals(ImmutableSet.of("a"), find(root, "abc"));
+        assertFalse(root.hasChildNode(OutOfBandReindex.STAGING));
+        assertEquals(1, root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("rootIndex").getLong(REINDEX_COUNT));
+    }
+
+    /**
+     * The switch-over of an async index waits for a concurrent run of its
+     * lane to complete, and the lane skips its runs until the switch-over is
+     * done, so that it never writes to the index content being swapped.
+     */
+    @Test
+    public void asyncLaneRunning() throws Exception {
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "asyncIndex", true, false, ImmutableSet.of("bar"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        builder.child("d").setProperty("bar", "xyz");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        new AsyncIndexUpdate("async", store, provider).run();
+
+        builder = store.getRoot().builder();
+        builder.child("e").setProperty("bar", "xyz");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AsyncIndexUpdate lane = new AsyncIndexUpdate("async", store,
+                new IndexEditorProvider() {
+                    @Override
+                    public Editor getIndexEditor(@Nonnull String type,
+                            @Nonnull NodeBuilder definition, @Nonnull NodeState root,
+                            @Nonnull IndexUpdateCallback callback)
+                            throws CommitFailedException {
+                        running.countDown();
+                        try {
+                            proceed.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return provider.getIndexEditor(type, definition, root, callback);
+                    }
+                });
+        Thread laneRun = new Thread(lane);
+        laneRun.start();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            OutOfBandReindex reindex = new OutOfBandReindex(store, provider, executor);
+            reindex.startReindex("/oak:index/asyncIndex");
+            awaitState(reindex, STATE_CATCHING_UP);
+            Thread.sleep(500);
+            assertEquals(STATE_CATCHING_UP, reindex.getState());
+
+            proceed.countDown();
+            laneRun.join();
+            awaitState(reindex, STATE_DONE);
+        } finally {
+            executor.shutdown();
+        }
+
+        NodeState root = store.getRoot();
+        assertFalse(root.getChildNode(ASYNC).hasProperty("async-lease"));
+        NodeState definition = root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("asyncIndex");
+        assertEquals(2, definition.getLong(REINDEX_COUNT));
+        NodeState content = definition.getChildNode(INDEX_CONTENT_NODE_NAME)
+                .getChildNode("xyz");
+        assertEquals(ImmutableSet.of("d", "e"),
+                ImmutableSet.copyOf(content.getChildNodeNames()));
+    }
+
+    /**
+     * Editors rewriting the staged definition, like the Lucene index does for
+     * definitions of an old format, do not prevent the switch-over, and the
+     * rewritten definition replaces the existing one.
+     */
+    @Test
+    public void definitionRewritten() throws Exception {
+        IndexEditorProvider rewriting = new IndexEditorProvider() {
+            @Override
+            public Editor getIndexEditor(@Nonnull String type, @Nonnull NodeBuilder definition,
+                    @Nonnull NodeState root, @Nonnull IndexUpdateCallback callback)
+                    throws CommitFailedException {
+                if (!definition.getBaseState().hasProperty("compatVersion")) {
+                    definition.setProperty("compatVersion", 2L);
+                }
+                return provider.getIndexEditor(type, definition, root, callback);
+            }
+        };
+        OutOfBandReindex reindex = new OutOfBandReindex(store, rewriting, SAME_THREAD);
+        reindex.startReindex(INDEX_PATH);
+
+        assertEquals(STATE_DONE, reindex.getState());
+        NodeState root = store.getRoot();
+        assertEquals(ImmutableSet.of("a", "b"), find(root, "abc"));
+        NodeState definition = root.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("rootIndex");
+        assertEquals(2, definition.getLong("compatVersion"));
+        assertEquals(2, definition.getLong(REINDEX_COUNT));
+    }
+
+    /**
+     * Commits a new node on each of the first {@code count} index editor
+     * requests, none of which is made by the switch-over commit, and then
+     * waits for {@code delay} milliseconds.
+     */
+    private IndexEditorProvider withConcurrentChanges(
+            final IndexEditorProvider provider, final int count, final long delay) {
+        return new IndexEditorProvider() {
+            private int changes;
+
+            @Override
+            public Editor getIndexEditor(@Nonnull String type, @Nonnull NodeBuilder definition,
+                    @Nonnull NodeState root, @Nonnull IndexUpdateCallback callback)
+                    throws CommitFailedException {
+                if (changes < count) {
+                    NodeBuilder builder = store.getRoot().builder();
+                    builder.child("c" + changes++).setProperty("foo", "abc");
+                    store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return provider.getIndexEditor(type, definition, root, callback);
+            }
+        };
+    }
+
+    /**
+     * Commits a change right after the first index editor was requested, that
+     * is after the checkpoint to reindex from was taken.
+     */
+    private IndexEditorProvider withConcurrentChange(
+            final IndexEditorProvider provider, final String path,
+            final String name, final String value) {
+        return new IndexEditorProvider() {
+            private boolean changed;
+
+            @Override
+            public Editor getIndexEditor(@Nonnull String type, @Nonnull NodeBuilder definition,
+                    @Nonnull NodeState root, @Nonnull IndexUpdateCallback callback)
+                    throws CommitFailedException {
+                if (!changed) {
+                    changed = true;
+                    NodeBuilder builder = store.getRoot().builder();
+                    NodeBuilder node = builder;
+                    for (String element : elements(path)) {
+                        node = node.child(element);
+                    }
+                    node.setProperty(name, value);
+                    store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                }
+                return provider.getIndexEditor(type, definition, root, callback);
+            }
+        };
+    }
+
+    private static void awaitState(OutOfBandReindex reindex, String state)
+            throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (!state.equals(reindex.getState())
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(state, reindex.getState());
+    }
+
+    private static Set<String> find(NodeState root, String value) {
+        NodeState system = INITIAL_CONTENT.getChildNode(JCR_SYSTEM);
+        NodeState types = system.getChildNode(JCR_NODE_TYPES);
+        NodeState type = types.getChildNode(NT_BASE);
+        SelectorImpl selector = new SelectorImpl(type, NT_BASE);
+        Filter filter = new FilterImpl(selector, "SELECT * FROM [nt:base]", new QueryEngineSettings());
+        return Sets.newHashSet(new PropertyIndexLookup(root).query(filter,
+                "foo", PropertyValues.newString(value)));
+    }
+
+}
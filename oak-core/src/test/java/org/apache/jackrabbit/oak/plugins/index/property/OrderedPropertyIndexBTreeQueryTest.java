@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.apache.jackrabbit.JcrConstants.NT_UNSTRUCTURED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
+import org.apache.jackrabbit.oak.spi.query.PropertyValues;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.apache.jackrabbit.oak.util.NodeUtil;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Queries through the {@link OrderedPropertyIndex} of an index kept in a B+tree
+ */
+public class OrderedPropertyIndexBTreeQueryTest extends BasicOrderedPropertyIndexQueryTest {
+
+    /**
+     * enough nodes for the tree to grow beyond a single page
+     */
+    private static final int BTREE_NODES = 3 * OrderedIndex.BTREE_PAGE_SIZE;
+
+    private static final String INDEX_PATH = "/" + INDEX_DEFINITIONS_NAME + "/" + TEST_INDEX_NAME;
+
+    private final NodeStore store = new MemoryNodeStore();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(store).with(new InitialContent())
+            .with(new OpenSecurityProvider())
+            .with(new LowCostOrderedPropertyIndexProvider())
+            .with(new OrderedPropertyIndexEditorProvider())
+            .createContentRepository();
+    }
+
+    @Override
+    protected void createTestIndexNode() throws Exception {
+        Tree index = root.getTree("/");
+        IndexUtils.createIndexDefinition(
+            new NodeUtil(index.getChild(INDEX_DEFINITIONS_NAME)),
+            TEST_INDEX_NAME,
+            false,
+            new String[] { ORDERED_PROPERTY },
+            null,
+            OrderedIndex.TYPE,
+            ImmutableMap.of(OrderedIndex.STORAGE, OrderedIndex.STORAGE_BTREE)
+        );
+        root.commit();
+    }
+
+    @Test
+    public void queryAllEntries() throws CommitFailedException, ParseException {
+        setTraversalEnabled(false);
+
+        Tree test = root.getTree("/").addChild("test");
+        List<ValuePathTuple> nodes = addChildNodes(generateOrderedValues(BTREE_NODES), test,
+            OrderDirection.ASC, Type.STRING);
+        root.commit();
+
+        NodeState content = indexContent();
+        assertTrue("the keys should be kept in the B+tree",
+            content.hasChildNode(OrderedBTreeStoreStrategy.BTREE));
+        assertFalse(content.hasChildNode(OrderedContentMirrorStoreStrategy.START));
+
+        Iterator<? extends ResultRow> results = executeQuery(
+            String.format("SELECT * from [%s] WHERE foo IS NOT NULL", NT_UNSTRUCTURED), SQL2, null)
+            .getRows().iterator();
+        assertRightOrder(nodes, results);
+        assertFalse("We should have looped through all the results", results.hasNext());
+
+        setTraversalEnabled(true);
+    }
+
+    /**
+     * dates are added in increasing order, all of them going to the rightmost leaf of the tree
+     */
+    @Test
+    public void queryGreaterThanIncreasingDates() throws CommitFailedException, ParseException {
+        setTraversalEnabled(false);
+
+        final OrderDirection direction = OrderDirection.ASC;
+        final String query = "SELECT * FROM [nt:base] AS n WHERE n.%s > $%s";
+
+        Tree test = root.getTree("/").addChild("test");
+        Calendar start = midnightFirstJan2013();
+        List<String> dates = generateOrderedDates(BTREE_NODES, direction, start);
+        List<ValuePathTuple> nodes = Lists.newArrayList();
+        for (int i = 0; i < dates.size(); i++) {
+            Tree t = child(test, "n" + i, ORDERED_PROPERTY, dates.get(i), Type.DATE);
+            nodes.add(new ValuePathTuple(dates.get(i), t.getPath()));
+            if (i % OrderedIndex.BTREE_PAGE_SIZE == 0) {
+                root.commit();
+            }
+        }
+        root.commit();
+
+        Calendar searchForCalendar = (Calendar) start.clone();
+        searchForCalendar.add(Calendar.HOUR_OF_DAY, 36);
+        String searchFor = new SimpleDateFormat(ISO_8601_2000).format(searchForCalendar.getTime());
+        Map<String, PropertyValue> filter = ImmutableMap.of(ORDERED_PROPERTY,
+            PropertyValues.newDate(searchFor));
+        Iterator<? extends ResultRow> results = executeQuery(
+            String.format(query, ORDERED_PROPERTY, ORDERED_PROPERTY), SQL2, filter).getRows()
+            .iterator();
+        Iterator<ValuePathTuple> filtered = Iterables.filter(nodes,
+            new ValuePathTuple.GreaterThanPredicate(searchFor)).iterator();
+        assertRightOrder(Lists.newArrayList(filtered), results);
+        assertFalse("We should have looped through all the results", results.hasNext());
+
+        setTraversalEnabled(true);
+    }
+
+    /**
+     * switching the storage of an existing index keeps using and updating the skip list until the
+     * index is reindexed.
+     */
+    @Test
+    public void storageSwitchedWithoutReindex() throws CommitFailedException, ParseException {
+        setTraversalEnabled(false);
+
+        root.getTree(INDEX_PATH).removeProperty(OrderedIndex.STORAGE);
+        root.commit();
+
+        Tree test = root.getTree("/").addChild("test");
+        List<ValuePathTuple> nodes = addChildNodes(generateOrderedValues(NUMBER_OF_NODES), test,
+            OrderDirection.ASC, Type.STRING);
+        root.commit();
+
+        root.getTree(INDEX_PATH).setProperty(OrderedIndex.STORAGE, OrderedIndex.STORAGE_BTREE);
+        root.commit();
+        assertRightOrder(nodes, queryAll());
+
+        // updates go to the skip list as well
+        nodes.addAll(addChildNodes(generateOrderedValues(10, NUMBER_OF_NODES, OrderDirection.ASC),
+            test.addChild("more"), OrderDirection.ASC, Type.STRING));
+        root.commit();
+        Collections.sort(nodes);
+        NodeState content = indexContent();
+        assertTrue(content.hasChildNode(OrderedContentMirrorStoreStrategy.START));
+        assertFalse(content.hasChildNode(OrderedBTreeStoreStrategy.BTREE));
+        assertRightOrder(nodes, queryAll());
+
+        // reindexing switches to the B+tree
+        root.getTree(INDEX_PATH).setProperty(REINDEX_PROPERTY_NAME, true);
+        root.commit();
+        content = indexContent();
+        assertTrue(content.hasChildNode(OrderedBTreeStoreStrategy.BTREE));
+        assertFalse(content.hasChildNode(OrderedContentMirrorStoreStrategy.START));
+        assertRightOrder(nodes, queryAll());
+
+        setTraversalEnabled(true);
+    }
+
+    private NodeState indexContent() {
+        NodeState state = store.getRoot();
+        for (String name : PathUtils.elements(INDEX_PATH)) {
+            state = state.getChildNode(name);
+        }
+        return state.getChildNode(INDEX_CONTENT_NODE_NAME);
+    }
+
+    private Iterator<? extends ResultRow> queryAll() throws ParseException {
+        return executeQuery(
+            String.format("SELECT * from [%s] WHERE foo IS NOT NULL", NT_UNSTRUCTURED), SQL2, null)
+            .getRows().iterator();
+    }
+}
@@ -23,6 +23,7 @@ import static junit.framework.Assert.assertTrue;
 import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
 import static org.apache.jackrabbit.JcrConstants.NT_UNSTRUCTURED;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
 import static org.apache.jackrabbit.oak.api.Type.NAME;
 import static org.apache.jackrabbit.oak.api.Type.STRING;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
@@ -35,6 +36,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -1038,4 +1040,72 @@ public class OrderedPropertyIndexQueryTest extends BasicOrderedPropertyIndexQuer
 
         setTraversalEnabled(true);
     }
+    @Test
+    public void keysetPagination() throws Exception {
+        setTraversalEnabled(false);
+
+        // few distinct values, so that pages end within runs of equal values
+        Tree test = root.getTree("/").addChild("test");
+        final List<String[]> nodes = new ArrayList<String[]>();
+        for (int i = 0; i < 20; i++) {
+            Tree child = test.addChild("n" + i);
+            child.setProperty(JCR_PRIMARYTYPE, NT_UNSTRUCTURED, NAME);
+            String value = "value" + (i % 4);
+            child.setProperty(ORDERED_PROPERTY, value, STRING);
+            nodes.add(new String[] { value, child.getPath() });
+        }
+        root.commit();
+
+        String query = "SELECT [jcr:path], [" + ORDERED_PROPERTY + "] FROM [nt:base] ORDER BY ["
+                + ORDERED_PROPERTY + "]";
+        assertEquals(getKeysetOrder(nodes, false), readKeysetPages(query, 3));
+        assertEquals(getKeysetOrder(nodes, true), readKeysetPages(query + " DESC", 3));
+
+        setTraversalEnabled(true);
+    }
+
+    /**
+     * Read all pages of a query using keyset pagination, starting each page
+     * after the last row of the previous one.
+     */
+    private List<String> readKeysetPages(String query, int pageSize) throws ParseException {
+        List<String> paths = new ArrayList<String>();
+        PropertyValue[] lastValues = null;
+        String lastPath = null;
+        int count;
+        do {
+            count = 0;
+            for (ResultRow row : qe.executeQuery(query, SQL2, pageSize, lastValues, lastPath,
+                    null, NO_MAPPINGS).getRows()) {
+                lastPath = row.getPath();
+                lastValues = new PropertyValue[] { row.getValue(ORDERED_PROPERTY) };
+                paths.add(lastPath);
+                count++;
+            }
+            assertTrue("too many rows: " + paths, paths.size() <= 20);
+        } while (count == pageSize);
+        return paths;
+    }
+
+    /**
+     * The order of keyset pagination: by value, and by path for equal values.
+     */
+    private static List<String> getKeysetOrder(List<String[]> nodes, final boolean descending) {
+        List<String[]> sorted = new ArrayList<String[]>(nodes);
+        Collections.sort(sorted, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] o1, String[] o2) {
+                int comp = o1[0].compareTo(o2[0]);
+                if (comp != 0) {
+                    return descending ? -comp : comp;
+                }
+                return o1[1].compareTo(o2[1]);
+            }
+        });
+        List<String> paths = new ArrayList<String>();
+        for (String[] node : sorted) {
+            paths.add(node[1]);
+        }
+        return paths;
+    }
 }
\ No newline at end of file
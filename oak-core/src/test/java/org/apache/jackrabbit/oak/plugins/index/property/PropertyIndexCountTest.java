@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
+import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
+import org.apache.jackrabbit.oak.query.AbstractQueryTest;
+import org.apache.jackrabbit.oak.spi.lifecycle.RepositoryInitializer;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Test;
+
+/**
+ * Tests counting the rows of a query using the property index.
+ */
+public class PropertyIndexCountTest extends AbstractQueryTest {
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak().with(new InitialContent())
+                .with(new RepositoryInitializer() {
+                    @Override
+                    public void initialize(@Nonnull NodeBuilder builder) {
+                        NodeBuilder index = IndexUtils.getOrCreateOakIndex(builder);
+                        IndexUtils.createIndexDefinition(
+                                index, "x", true, false,
+                                ImmutableList.<String>of("x"), null);
+                    }
+                })
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .createContentRepository();
+    }
+
+    @Test
+    public void count() throws Exception {
+        Tree t = root.getTree("/").addChild("test");
+        for (int i = 0; i < 15; i++) {
+            t.addChild("n" + i).setProperty("x", i < 10 ? "foo" : "bar");
+        }
+        root.commit();
+        String sql = "select [jcr:path] from [nt:base] where [x] = 'foo'";
+
+        Result.Count exact = qe.executeQuery(sql, SQL2, Long.MAX_VALUE, 0,
+                NO_BINDINGS, NO_MAPPINGS).getCount(true);
+        assertTrue(exact.isExact());
+        assertEquals(10, exact.getValue());
+
+        Result.Count approx = qe.executeQuery(sql, SQL2, Long.MAX_VALUE, 0,
+                NO_BINDINGS, NO_MAPPINGS).getCount(false);
+        assertFalse(approx.isExact());
+        // the estimate is within a factor of 2 of the actual count
+        assertTrue(approx.toString(), approx.getValue() >= exact.getValue() / 2);
+        assertTrue(approx.toString(), approx.getValue() <= exact.getValue() * 2);
+
+        // the limit is applied
+        approx = qe.executeQuery(sql, SQL2, 3, 0,
+                NO_BINDINGS, NO_MAPPINGS).getCount(false);
+        assertFalse(approx.isExact());
+        assertTrue(approx.toString(), approx.getValue() <= 3);
+
+        // fall back to reading the rows if the index can not count
+        Result.Count noIndex = qe.executeQuery(
+                "select [jcr:path] from [nt:base] where [y] = 'foo'", SQL2,
+                Long.MAX_VALUE, 0, NO_BINDINGS, NO_MAPPINGS).getCount(false);
+        assertTrue(noIndex.isExact());
+        assertEquals(0, noIndex.getValue());
+    }
+
+}
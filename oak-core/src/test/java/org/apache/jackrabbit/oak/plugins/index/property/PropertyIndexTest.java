@@ -21,13 +21,16 @@ import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
 import static org.apache.jackrabbit.JcrConstants.NT_BASE;
 import static org.apache.jackrabbit.JcrConstants.NT_FILE;
 import static org.apache.jackrabbit.JcrConstants.NT_UNSTRUCTURED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.SHARDS_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
 import static org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditor.COUNT_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.apache.jackrabbit.oak.plugins.nodetype.NodeTypeConstants.JCR_NODE_TYPES;
 import static org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent.INITIAL_CONTENT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -37,6 +40,7 @@ import java.util.Set;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.ShardedContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
 import org.apache.jackrabbit.oak.query.ast.SelectorImpl;
@@ -283,6 +287,55 @@ public class PropertyIndexTest {
         assertEquals(ImmutableSet.of("a"), find(lookup, "foo", "abc", f));
     }
 
+    @Test
+    public void testShardedPropertyLookup() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+
+        // Add index definition
+        NodeBuilder builder = root.builder();
+        NodeBuilder index = createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        index.setProperty(SHARDS_PROPERTY_NAME, 4L);
+        NodeState before = builder.getNodeState();
+
+        // Add some content and process it through the property index hook
+        builder.child("a").setProperty("foo", "abc");
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).setProperty("foo", "xyz");
+        }
+        NodeState after = builder.getNodeState();
+
+        NodeState indexed = HOOK.processCommit(before, after, CommitInfo.EMPTY);
+        NodeState content = indexed.getChildNode(INDEX_DEFINITIONS_NAME)
+                .getChildNode("foo").getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertEquals("the hot key should be spread over all buckets",
+                4, content.getChildNodeCount(10));
+
+        FilterImpl f = createFilter(indexed, NT_BASE);
+
+        // Query the index
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        assertEquals(ImmutableSet.of("a"), find(lookup, "foo", "abc", f));
+        assertEquals(MANY, find(lookup, "foo", "xyz", f).size());
+        assertEquals(MANY + 1, find(lookup, "foo", null, f).size());
+
+        // the estimate is capped like for a single bucket, and the strategy is shared
+        assertTrue(lookup.getCost(f, "foo", null) <= 2 + PropertyIndexLookup.MAX_COST);
+        assertSame(ShardedContentMirrorStoreStrategy.getInstance(4), lookup.getStrategy(
+                indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo")));
+
+        // removing entries only touches the bucket of each path
+        builder = indexed.builder();
+        builder.child("a").removeProperty("foo");
+        builder.child("n0").setProperty("foo", "abc");
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+
+        lookup = new PropertyIndexLookup(indexed);
+        f = createFilter(indexed, NT_BASE);
+        assertEquals(ImmutableSet.of("n0"), find(lookup, "foo", "abc", f));
+        assertEquals(MANY - 1, find(lookup, "foo", "xyz", f).size());
+    }
+
     private static Set<String> find(PropertyIndexLookup lookup, String name,
             String value, Filter filter) {
         return Sets.newHashSet(lookup.query(filter, name, value == null ? null
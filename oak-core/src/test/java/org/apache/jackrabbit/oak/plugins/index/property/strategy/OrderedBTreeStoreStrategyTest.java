@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy.BTREE;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy.PAGES;
+import static org.apache.jackrabbit.oak.plugins.index.property.strategy.OrderedBTreeStoreStrategy.ROOT;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.plugins.index.property.OrderedIndex.OrderDirection;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+/**
+ * Test the B+tree ordered strategy
+ */
+public class OrderedBTreeStoreStrategyTest {
+
+    private static final Set<String> EMPTY = newHashSet();
+
+    private static final int PAGE_SIZE = 4;
+
+    @Test
+    public void ascending() {
+        OrderedBTreeStoreStrategy store = new OrderedBTreeStoreStrategy(OrderDirection.ASC,
+                PAGE_SIZE);
+        NodeBuilder index = EMPTY_NODE.builder();
+        List<String> keys = keys(50);
+        insert(store, index, keys);
+
+        NodeState state = index.getNodeState();
+        NodeState btree = state.getChildNode(BTREE);
+        assertTrue("the tree should have grown beyond a single page",
+                btree.getChildNode(btree.getString(ROOT)).hasProperty(PAGES));
+
+        Collections.sort(keys);
+        assertEquals(keys, names(store.getChildNodeEntries(state)));
+        assertEquals(keys.subList(10, 20), newArrayList(store.keys(state, "k10", true, "k20", false)));
+        assertEquals(keys.subList(11, 21), newArrayList(store.keys(state, "k10", false, "k20", true)));
+        assertEquals(keys.subList(45, 50), newArrayList(store.keys(state, "k45", true, null, false)));
+        assertEquals(keys.subList(0, 3), newArrayList(store.keys(state, null, false, "k03", false)));
+    }
+
+    @Test
+    public void descending() {
+        OrderedBTreeStoreStrategy store = new OrderedBTreeStoreStrategy(OrderDirection.DESC,
+                PAGE_SIZE);
+        NodeBuilder index = EMPTY_NODE.builder();
+        List<String> keys = keys(50);
+        insert(store, index, keys);
+
+        NodeState state = index.getNodeState();
+        Collections.sort(keys, Collections.reverseOrder());
+        assertEquals(keys, names(store.getChildNodeEntries(state)));
+        // k29 down to k20
+        assertEquals(keys.subList(20, 30), newArrayList(store.keys(state, "k20", true, "k30", false)));
+        assertEquals(keys.subList(0, 5), newArrayList(store.keys(state, "k45", true, null, false)));
+    }
+
+    @Test
+    public void remove() {
+        OrderedBTreeStoreStrategy store = new OrderedBTreeStoreStrategy(OrderDirection.ASC,
+                PAGE_SIZE);
+        NodeBuilder index = EMPTY_NODE.builder();
+        List<String> keys = keys(50);
+        insert(store, index, keys);
+
+        List<String> left = newArrayList();
+        for (String key : keys) {
+            if (Integer.parseInt(key.substring(1)) % 3 == 0) {
+                left.add(key);
+            } else {
+                store.update(index, "/content/" + key, null, null, newHashSet(key), EMPTY);
+                assertFalse(index.hasChildNode(key));
+            }
+        }
+        Collections.sort(left);
+        assertEquals(left, names(store.getChildNodeEntries(index.getNodeState())));
+
+        for (String key : left) {
+            store.update(index, "/content/" + key, null, null, newHashSet(key), EMPTY);
+        }
+        NodeState state = index.getNodeState();
+        assertFalse(store.getChildNodeEntries(state).iterator().hasNext());
+        NodeState btree = state.getChildNode(BTREE);
+        assertEquals("only the empty root page should be left", 1, btree.getChildNodeCount(10));
+        assertFalse(btree.getChildNode(btree.getString(ROOT)).hasProperty(PAGES));
+    }
+
+    private static void insert(OrderedBTreeStoreStrategy store, NodeBuilder index,
+                               List<String> keys) {
+        for (String key : keys) {
+            store.update(index, "/content/" + key, null, null, EMPTY, newHashSet(key));
+        }
+    }
+
+    /**
+     * @return the keys k00 to k(n-1) in random order
+     */
+    private static List<String> keys(int n) {
+        List<String> keys = newArrayList();
+        for (int i = 0; i < n; i++) {
+            keys.add(String.format("k%02d", i));
+        }
+        Collections.shuffle(keys, new Random(42));
+        return keys;
+    }
+
+    private static List<String> names(Iterable<? extends ChildNodeEntry> entries) {
+        List<String> names = newArrayList();
+        for (ChildNodeEntry entry : entries) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+}
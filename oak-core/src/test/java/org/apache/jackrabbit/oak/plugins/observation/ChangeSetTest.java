@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static javax.jcr.observation.Event.NODE_ADDED;
+import static javax.jcr.observation.Event.NODE_REMOVED;
+import static javax.jcr.observation.Event.PROPERTY_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_CHANGED;
+import static javax.jcr.observation.Event.PROPERTY_REMOVED;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.jackrabbit.oak.plugins.observation.filter.ChangeSetFilter;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+public class ChangeSetTest {
+    private final NodeState before;
+
+    {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setChildNode("a").setChildNode("b").setProperty("p", 1);
+        builder.setChildNode("c").setChildNode("d").setProperty("q", 2);
+        builder.getChildNode("c").setProperty("jcr:primaryType", "nt:folder");
+        before = builder.getNodeState();
+    }
+
+    @Test
+    public void propertyChanges() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("a").getChildNode("b").setProperty("p", 3);
+        builder.getChildNode("c").setProperty("r", 4);
+        builder.getChildNode("c").getChildNode("d").removeProperty("q");
+        ChangeSet changeSet = ChangeSet.create(before, builder.getNodeState());
+
+        assertEquals(ImmutableSet.of("/a/b", "/c", "/c/d"), changeSet.getParentPaths());
+        assertTrue(changeSet.getSubtreePaths().isEmpty());
+        assertEquals(ImmutableSet.of("p", "r", "q"), changeSet.getPropertyNames());
+        assertTrue(changeSet.getNodeTypes().contains("nt:folder"));
+        assertEquals(PROPERTY_ADDED | PROPERTY_CHANGED | PROPERTY_REMOVED, changeSet.getEventTypes());
+        assertFalse(changeSet.isOverflow());
+
+        assertTrue(changeSet.containsChangesIn("/"));
+        assertTrue(changeSet.containsChangesIn("/a"));
+        assertTrue(changeSet.containsChangesIn("/a/b"));
+        assertFalse(changeSet.containsChangesIn("/a/b/z"));
+        assertTrue(changeSet.containsChangesIn("/c/d"));
+        assertFalse(changeSet.containsChangesIn("/x"));
+    }
+
+    @Test
+    public void subtreeChanges() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("a").setChildNode("x").setChildNode("y").setProperty("p", 5);
+        builder.getChildNode("c").remove();
+        ChangeSet changeSet = ChangeSet.create(before, builder.getNodeState());
+
+        assertEquals(ImmutableSet.of("/", "/a"), changeSet.getParentPaths());
+        assertEquals(ImmutableSet.of("/a/x", "/c"), changeSet.getSubtreePaths());
+        assertEquals(NODE_ADDED | PROPERTY_ADDED | NODE_REMOVED | PROPERTY_REMOVED,
+                changeSet.getEventTypes());
+
+        assertTrue(changeSet.containsChangesIn("/"));
+        assertTrue(changeSet.containsChangesIn("/a"));
+        assertTrue(changeSet.containsChangesIn("/a/x/y"));
+        assertTrue(changeSet.containsChangesIn("/c/d"));
+        assertFalse(changeSet.containsChangesIn("/a/b"));
+        assertFalse(changeSet.containsChangesIn("/e"));
+    }
+
+    @Test
+    public void hiddenChanges() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("a").setChildNode(":hidden").setProperty("p", 1);
+        builder.getChildNode("c").setProperty(":hidden", 1);
+        ChangeSet changeSet = ChangeSet.create(before, builder.getNodeState());
+
+        assertTrue(changeSet.getParentPaths().isEmpty());
+        assertFalse(changeSet.containsChangesIn("/"));
+    }
+
+    @Test
+    public void overflow() {
+        NodeBuilder builder = before.builder();
+        NodeBuilder a = builder.getChildNode("a");
+        for (int k = 0; k <= ChangeSet.MAX_PATHS; k++) {
+            a.setChildNode("n" + k).setProperty("p", k);
+        }
+        ChangeSet changeSet = ChangeSet.create(before, builder.getNodeState());
+
+        assertTrue(changeSet.isOverflow());
+        assertTrue(changeSet.containsChangesIn("/e"));
+        assertTrue(changeSet.containsEventTypes(PROPERTY_REMOVED));
+    }
+
+    @Test
+    public void filterExcludes() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("a").getChildNode("b").setProperty("p", 3);
+        ChangeSet changeSet = ChangeSet.create(before, builder.getNodeState());
+
+        FilterBuilder filterBuilder = new FilterBuilder();
+        ChangeSetFilter inA = (ChangeSetFilter) filterBuilder.addSubTree("/a").build();
+        assertFalse(inA.excludes(changeSet));
+
+        filterBuilder = new FilterBuilder();
+        ChangeSetFilter inC = (ChangeSetFilter) filterBuilder.addSubTree("/c").build();
+        assertTrue(inC.excludes(changeSet));
+
+        filterBuilder = new FilterBuilder();
+        ChangeSetFilter nodeEvents = (ChangeSetFilter) filterBuilder
+                .condition(filterBuilder.all(
+                        filterBuilder.path("/a/**"),
+                        filterBuilder.eventType(NODE_ADDED | NODE_REMOVED)))
+                .build();
+        assertTrue(nodeEvents.excludes(changeSet));
+    }
+
+    @Test
+    public void cache() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("a").getChildNode("b").setProperty("p", 3);
+        NodeState after = builder.getNodeState();
+
+        ChangeSetCache cache = new ChangeSetCache(2);
+        ChangeSet changeSet = cache.getChangeSet(before, after);
+        assertSame(changeSet, cache.getChangeSet(before, after));
+        assertEquals(1, cache.getComputeCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.spi.commit.BackgroundObserver;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointJournalTest {
+    private final MemoryNodeStore store = new MemoryNodeStore();
+    private final List<NodeState> roots = Collections.synchronizedList(Lists.<NodeState>newArrayList());
+    private final List<CommitInfo> infos = Collections.synchronizedList(Lists.<CommitInfo>newArrayList());
+
+    private final Observer recorder = new Observer() {
+        @Override
+        public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+            roots.add(root);
+            infos.add(info);
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void setup() throws IOException {
+        file = File.createTempFile("CheckpointJournalTest", ".journal", new File("target"));
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void replay() throws CommitFailedException {
+        CheckpointJournal journal = new CheckpointJournal(store, file, 3, sameThreadExecutor());
+        CommitInfo first = null;
+        for (int k = 0; k < 5; k++) {
+            CommitInfo info = commitInfo(k);
+            if (first == null) {
+                first = info;
+            }
+            journal.append(commit(k, info), info);
+        }
+
+        // The last three changes are merged into one
+        assertEquals(3, journal.size());
+        assertEquals(3, store.listCheckpoints().size());
+        assertTrue(journal.getOldestTimestamp() > 0);
+
+        while (journal.replay(recorder)) { }
+
+        assertEquals(0, journal.size());
+        assertEquals(-1, journal.getOldestTimestamp());
+        assertTrue(store.listCheckpoints().isEmpty());
+
+        assertEquals(3, roots.size());
+        assertEquals(0, getP(roots.get(0)));
+        assertEquals(1, getP(roots.get(1)));
+        assertEquals(4, getP(roots.get(2)));
+
+        assertNotNull(first);
+        assertEquals(first, infos.get(0));
+        assertEquals("v1", infos.get(1).getInfo().get("key"));
+        assertNull(infos.get(2));
+
+        journal.close();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void close() throws CommitFailedException {
+        CheckpointJournal journal = new CheckpointJournal(store, file, 10, sameThreadExecutor());
+        for (int k = 0; k < 5; k++) {
+            CommitInfo info = commitInfo(k);
+            journal.append(commit(k, info), info);
+        }
+        journal.close();
+
+        assertEquals(0, journal.size());
+        assertTrue(store.listCheckpoints().isEmpty());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void backgroundObserver() throws CommitFailedException, InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        Observer slow = slowObserver(blocked);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            BackgroundObserver observer = new BackgroundObserver(
+                    slow, executor, 2, new CheckpointJournal(store, file, 100, sameThreadExecutor()));
+            for (int k = 0; k < 10; k++) {
+                CommitInfo info = commitInfo(k);
+                observer.contentChanged(commit(k, info), info);
+            }
+            assertTrue(observer.getBacklog() >= 9);
+
+            blocked.countDown();
+            for (int k = 0; k < 100 && roots.size() < 10; k++) {
+                Thread.sleep(10);
+            }
+
+            // No change merged, each delivered in order with its commit info
+            assertEquals(10, roots.size());
+            for (int k = 0; k < 10; k++) {
+                assertEquals(k, getP(roots.get(k)));
+                assertEquals("v" + k, infos.get(k).getInfo().get("key"));
+            }
+            assertEquals(0, observer.getBacklog());
+            assertEquals(0, observer.getLag());
+            observer.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void segmentNodeStore() throws Exception {
+        SegmentNodeStore segmentStore = new SegmentNodeStore();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        Observer slow = slowObserver(blocked);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService journalExecutor = Executors.newSingleThreadExecutor();
+        try {
+            BackgroundObserver observer = new BackgroundObserver(slow, executor, 2,
+                    new CheckpointJournal(segmentStore, file, 100, journalExecutor));
+            // Content changes are reported on the committing thread while
+            // holding the commit lock of the store
+            Closeable registration = segmentStore.addObserver(observer);
+            for (int k = 0; k < 10; k++) {
+                CommitInfo info = commitInfo(k);
+                NodeBuilder builder = segmentStore.getRoot().builder();
+                builder.setProperty("p", k);
+                segmentStore.merge(builder, EmptyHook.INSTANCE, info);
+            }
+            assertTrue(observer.getBacklog() >= 9);
+
+            // Wait for the journal to be written while the observer is blocked
+            for (int k = 0; k < 100 && file.length() == 0; k++) {
+                Thread.sleep(10);
+            }
+            assertTrue(file.length() > 0);
+
+            blocked.countDown();
+            for (int k = 0; k < 100 && roots.size() < 11; k++) {
+                Thread.sleep(10);
+            }
+
+            // The initial root state followed by each change in order with
+            // its commit info: none merged or skipped as expired
+            assertEquals(11, roots.size());
+            for (int k = 0; k < 10; k++) {
+                assertEquals(k, getP(roots.get(k + 1)));
+                assertEquals("v" + k, infos.get(k + 1).getInfo().get("key"));
+            }
+            assertEquals(0, observer.getBacklog());
+            registration.close();
+            observer.close();
+        } finally {
+            executor.shutdown();
+            journalExecutor.shutdown();
+        }
+    }
+
+    private Observer slowObserver(final CountDownLatch blocked) {
+        return new Observer() {
+            @Override
+            public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                recorder.contentChanged(root, info);
+            }
+        };
+    }
+
+    private NodeState commit(int k, CommitInfo info) throws CommitFailedException {
+        NodeBuilder builder = store.getRoot().builder();
+        builder.setProperty("p", k);
+        return store.merge(builder, EmptyHook.INSTANCE, info);
+    }
+
+    private static CommitInfo commitInfo(int k) {
+        return new CommitInfo("session", "user", ImmutableMap.<String, Object>of("key", "v" + k));
+    }
+
+    private static long getP(NodeState root) {
+        return root.getProperty("p").getValue(Type.LONG);
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+import static javax.jcr.observation.Event.NODE_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_CHANGED;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterBuilder;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterProvider;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventBatchObserverTest {
+    private final NodeState before;
+
+    {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setChildNode("x").setProperty("p", 1);
+        before = builder.getNodeState();
+    }
+
+    private final CommitInfo commitInfo = new CommitInfo("session", "user");
+
+    private TestObserver observer;
+
+    @Before
+    public void setup() {
+        observer = new TestObserver(new FilterBuilder().build(), 4);
+        observer.contentChanged(before, commitInfo);
+    }
+
+    @Test
+    public void singleBatch() {
+        NodeBuilder builder = before.builder();
+        builder.getChildNode("x").setProperty("p", 2);
+        builder.getChildNode("x").setProperty("q", 3);
+        observer.contentChanged(builder.getNodeState(), commitInfo);
+
+        assertEquals(ImmutableList.of(2), observer.sizes);
+        assertEquals(ImmutableSet.of(
+                PROPERTY_CHANGED + ":/x/p",
+                PROPERTY_ADDED + ":/x/q"), observer.events);
+    }
+
+    @Test
+    public void multipleBatches() {
+        NodeBuilder builder = before.builder();
+        builder.setChildNode("a").setProperty("p", 1);
+        builder.setChildNode("b").setProperty("p", 1);
+        builder.setChildNode("c").setProperty("p", 1);
+        observer.contentChanged(builder.getNodeState(), commitInfo);
+
+        assertEquals(ImmutableList.of(4, 2), observer.sizes);
+        assertEquals(ImmutableSet.of(
+                NODE_ADDED + ":/a", PROPERTY_ADDED + ":/a/p",
+                NODE_ADDED + ":/b", PROPERTY_ADDED + ":/b/p",
+                NODE_ADDED + ":/c", PROPERTY_ADDED + ":/c/p"), observer.events);
+    }
+
+    @Test
+    public void filtered() {
+        observer = new TestObserver(new FilterBuilder().addSubTree("/x").build(), 4);
+        observer.contentChanged(before, commitInfo);
+
+        NodeBuilder builder = before.builder();
+        builder.setChildNode("a").setProperty("p", 1);
+        builder.getChildNode("x").setProperty("q", 1);
+        observer.contentChanged(builder.getNodeState(), commitInfo);
+
+        assertEquals(ImmutableList.of(1), observer.sizes);
+        assertEquals(ImmutableSet.of(PROPERTY_ADDED + ":/x/q"), observer.events);
+    }
+
+    @Test
+    public void noChanges() {
+        observer.contentChanged(before, commitInfo);
+        assertTrue(observer.sizes.isEmpty());
+    }
+
+    //------------------------------------------------------------< TestObserver >---
+
+    private class TestObserver extends EventBatchObserver {
+        final List<Integer> sizes = newArrayList();
+        final Set<String> events = newHashSet();
+
+        TestObserver(FilterProvider filterProvider, int batchSize) {
+            super("other", filterProvider, batchSize);
+        }
+
+        @Override
+        protected void onEvents(@Nonnull EventBatch batch) {
+            assertSame(commitInfo, batch.getCommitInfo());
+            sizes.add(batch.size());
+            for (int k = 0; k < batch.size(); k++) {
+                events.add(batch.getType(k) + ":" + batch.getPath(k));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.observation;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Test;
+
+public class EventGeneratorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void parallelSameOrder() {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder a = builder.child("a" + i);
+            for (int j = 0; j < 10; j++) {
+                a.child("b" + j).setProperty("p", j);
+            }
+        }
+        NodeState before = builder.getNodeState();
+
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder a = builder.child("a" + i);
+            a.setProperty("q", i);
+            for (int j = 0; j < 10; j += 2) {
+                a.child("b" + j).setProperty("p", -j);
+                for (int k = 0; k < 5; k++) {
+                    a.child("b" + j).child("c" + k).setProperty("r", k);
+                }
+            }
+            a.child("b1").remove();
+        }
+        builder.child("a3").remove();
+        NodeState after = builder.getNodeState();
+
+        List<String> serial = generate(before, after, new EventGenerator());
+        List<String> parallel = generate(before, after, new EventGenerator(executor));
+        assertTrue(serial.size() > 500);
+        assertEquals(serial, parallel);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parallelFailure() {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        NodeState before = builder.getNodeState();
+        builder.child("a").child("b");
+        NodeState after = builder.getNodeState();
+
+        EventGenerator generator = new EventGenerator(executor);
+        generator.addHandler(before, after, new DefaultEventHandler() {
+            @Override
+            public EventHandler getChildHandler(String name, NodeState before, NodeState after) {
+                throw new IllegalStateException("fail");
+            }
+        });
+        while (!generator.isDone()) {
+            generator.generate();
+        }
+    }
+
+    private static List<String> generate(NodeState before, NodeState after,
+            EventGenerator generator) {
+        List<String> events = newArrayList();
+        generator.addHandler(before, after, new Handler("/", events));
+        while (!generator.isDone()) {
+            generator.generate();
+        }
+        return events;
+    }
+
+    private static class Handler extends DefaultEventHandler {
+        private final String path;
+        private final List<String> events;
+
+        Handler(String path, List<String> events) {
+            this.path = path;
+            this.events = events;
+        }
+
+        @Override
+        public void enter(NodeState before, NodeState after) {
+            events.add("enter " + path);
+        }
+
+        @Override
+        public void leave(NodeState before, NodeState after) {
+            events.add("leave " + path);
+        }
+
+        @Override
+        public EventHandler getChildHandler(String name, NodeState before, NodeState after) {
+            return new Handler(PathUtils.concat(path, name), events);
+        }
+
+        @Override
+        public void propertyAdded(PropertyState after) {
+            events.add("+" + PathUtils.concat(path, after.getName()));
+        }
+
+        @Override
+        public void propertyChanged(PropertyState before, PropertyState after) {
+            events.add("^" + PathUtils.concat(path, after.getName()));
+        }
+
+        @Override
+        public void propertyDeleted(PropertyState before) {
+            events.add("-" + PathUtils.concat(path, before.getName()));
+        }
+
+        @Override
+        public void nodeAdded(String name, NodeState after) {
+            events.add("+" + PathUtils.concat(path, name) + "/");
+        }
+
+        @Override
+        public void nodeDeleted(String name, NodeState before) {
+            events.add("-" + PathUtils.concat(path, name) + "/");
+        }
+    }
+
+}
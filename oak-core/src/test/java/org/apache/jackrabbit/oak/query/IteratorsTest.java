@@ -86,6 +86,32 @@ public class IteratorsTest {
         assertEquals("2, 3", toString(FilterIterators.newOffset(it(1, 2, 3), 1)));
     }
     
+    @Test
+    public void mergeUnion() {
+        assertEquals("", toString(FilterIterators.newMergeUnion(
+                it(new Integer[]{}), it(new Integer[]{}), INT_COMP, true, settings)));
+        assertEquals("1, 2, 3, 4", toString(FilterIterators.newMergeUnion(
+                it(1, 3), it(2, 4), INT_COMP, true, settings)));
+        assertEquals("1, 2, 3", toString(FilterIterators.newMergeUnion(
+                it(1, 2, 3), it(new Integer[]{}), INT_COMP, true, settings)));
+        assertEquals("1, 2, 3", toString(FilterIterators.newMergeUnion(
+                it(1, 2, 3), it(1, 2, 3), INT_COMP, true, settings)));
+        assertEquals("1, 1, 2, 2, 3", toString(FilterIterators.newMergeUnion(
+                it(1, 2, 3), it(1, 2), INT_COMP, false, settings)));
+        // duplicates are only filtered within the same sort key
+        Comparator<Integer> tens = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return o1 / 10 - o2 / 10;
+            }
+        };
+        assertEquals("11, 12, 10, 21, 20", toString(FilterIterators.newMergeUnion(
+                it(11, 12, 21), it(10, 12, 11, 20, 21), tens, true, settings)));
+        // rows are read on demand
+        assertEquals("1, 2", toString(FilterIterators.newLimit(FilterIterators.newMergeUnion(
+                it(1, 3, null), it(2, 4, null), INT_COMP, true, settings), 2)));
+    }
+
     @Test
     public void sort() {
         assertEquals("", toString(FilterIterators.newSort(it(new Integer[]{}), INT_COMP, 0, settings)));
@@ -194,6 +220,51 @@ public class IteratorsTest {
 
 }
 
+    @Test
+    public void keyset() {
+        // the first character is the sort key,
+        // the second character makes the order total
+        Comparator<String> sortKey = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.charAt(0) - o2.charAt(0);
+            }
+        };
+        Comparator<String> total = new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return o1.compareTo(o2);
+            }
+        };
+
+        // sorted source: only entries with the same key are re-ordered
+        assertEquals("1a, 1b, 2a, 2c, 3a", 
+                toString(FilterIterators.newKeyset(
+                it("1b", "1a", "2c", "2a", "3a"), sortKey, total, null, settings)));
+        assertEquals("2a, 2c, 3a", 
+                toString(FilterIterators.newKeyset(
+                it("1b", "1a", "2c", "2a", "3a"), sortKey, total, "1b", settings)));
+        assertEquals("2c, 3a", 
+                toString(FilterIterators.newKeyset(
+                it("1b", "1a", "2c", "2a", "3a"), sortKey, total, "2a", settings)));
+        assertEquals("", 
+                toString(FilterIterators.newKeyset(
+                it("1b", "1a", "2c", "2a", "3a"), sortKey, total, "3a", settings)));
+
+        // sorted source & limit
+        assertEquals("2a, 2c", 
+                toString(FilterIterators.newCombinedKeysetFilter(
+                it("1b", "1a", "2c", "2a", "3a"), false, 2, sortKey, total, "1b", settings)));
+
+        // unsorted source & distinct & limit
+        assertEquals("1a, 1b", 
+                toString(FilterIterators.newCombinedKeysetFilter(
+                it("3a", "1b", "2c", "1b", "1a", "2a"), true, 2, null, total, null, settings)));
+        assertEquals("2a, 2c", 
+                toString(FilterIterators.newCombinedKeysetFilter(
+                it("3a", "1b", "2c", "1b", "1a", "2a"), true, 2, null, total, "1b", settings)));
+    }
+
     private static <K> Iterator<K> it(K... x) {
         return Collections.unmodifiableCollection(Lists.newArrayList(x)).iterator();
     }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexProvider;
+import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
+import org.apache.jackrabbit.oak.spi.lifecycle.RepositoryInitializer;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests the query cost feedback with queries that run against property
+ * indexes.
+ */
+public class QueryCostFeedbackQueryTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        settings.getCostFeedback().setEnabled(true);
+        return new Oak().with(new InitialContent())
+                .with(new OpenSecurityProvider())
+                .with(new PropertyIndexProvider())
+                .with(new PropertyIndexEditorProvider())
+                .with(settings)
+                .with(new RepositoryInitializer() {
+                    @Override
+                    public void initialize(@Nonnull NodeBuilder builder) {
+                        NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+                        createIndexDefinition(index, "foo", true, false,
+                                ImmutableSet.of("foo"), null);
+                        createIndexDefinition(index, "bar", true, false,
+                                ImmutableSet.of("bar"), null);
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(new QueryEngineSettings().getCostFeedback().isEnabled());
+    }
+
+    @Test
+    public void feedbackPerIndexDefinition() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 20; i++) {
+            test.addChild("foo" + i).setProperty("foo", "x");
+            test.addChild("bar" + i).setProperty("bar", "y");
+        }
+        root.commit();
+        setTraversalEnabled(false);
+
+        assertEquals(20, readAll("select [jcr:path] from [nt:base] where [foo] = 'x'"));
+        assertEquals(20, readAll("select [jcr:path] from [nt:base] where [bar] = 'y'"));
+
+        QueryCostFeedback feedback = settings.getCostFeedback();
+        Set<String> plans = new HashSet<String>();
+        for (Object o : feedback.getCorrectionFactors().values()) {
+            CompositeData d = (CompositeData) o;
+            assertEquals("property", d.get("index"));
+            plans.add(d.get("plan") + " " + d.get("shape"));
+        }
+        assertEquals(ImmutableSet.of(
+                "/oak:index/foo foo=, path NO_RESTRICTION",
+                "/oak:index/bar bar=, path NO_RESTRICTION"), plans);
+
+        // the factors of one index do not apply to another index of the same type
+        feedback.setObservationWeight(1);
+        feedback.record("property", "/oak:index/foo", "bar=, path NO_RESTRICTION", 1, 1000);
+        assertEquals(1000, feedback.getCorrectionFactor(
+                "property", "/oak:index/foo", "bar=, path NO_RESTRICTION"), 0.001);
+        assertEquals(1, feedback.getCorrectionFactor(
+                "property", "/oak:index/bar", "bar=, path NO_RESTRICTION"), 0.1);
+
+        feedback.resetCorrectionFactors("/oak:index/foo");
+        assertEquals(1, feedback.getCorrectionFactors().size());
+        feedback.resetCorrectionFactors("property");
+        assertEquals(0, feedback.getCorrectionFactors().size());
+    }
+
+    private int readAll(String query) throws Exception {
+        int count = 0;
+        for (ResultRow row : executeQuery(query, SQL2, null).getRows()) {
+            assertTrue(row.getPath().startsWith("/test/"));
+            count++;
+        }
+        return count;
+    }
+
+}
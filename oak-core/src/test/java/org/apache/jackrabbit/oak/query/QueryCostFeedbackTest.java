@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jackrabbit.oak.query.ast.Operator;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Filter.PathRestriction;
+import org.apache.jackrabbit.oak.spi.query.PropertyValues;
+import org.junit.Test;
+
+/**
+ * Tests the query cost correction factors.
+ */
+public class QueryCostFeedbackTest {
+
+    @Test
+    public void shape() {
+        FilterImpl f = new FilterImpl();
+        f.restrictProperty("x", Operator.EQUAL, PropertyValues.newString("1"));
+        f.restrictProperty("a", Operator.GREATER_THAN, PropertyValues.newLong(1L));
+        f.restrictPath("/content", PathRestriction.ALL_CHILDREN);
+        assertEquals("a range, x=, path ALL_CHILDREN", QueryCostFeedback.getShape(f));
+
+        FilterImpl f2 = new FilterImpl();
+        f2.restrictProperty("x", Operator.EQUAL, PropertyValues.newString("2"));
+        f2.restrictProperty("a", Operator.GREATER_THAN, PropertyValues.newLong(5L));
+        f2.restrictPath("/other", PathRestriction.ALL_CHILDREN);
+        assertEquals(QueryCostFeedback.getShape(f), QueryCostFeedback.getShape(f2));
+    }
+
+    @Test
+    public void correctionFactor() {
+        QueryCostFeedback feedback = new QueryCostFeedback();
+        feedback.setEnabled(true);
+        assertEquals(1.0, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 0.0);
+
+        // the index reads 100 times more rows than estimated
+        for (int i = 0; i < 50; i++) {
+            feedback.record("property", "/oak:index/x", "x=", 10, 1000);
+        }
+        assertEquals(100, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 1);
+        assertEquals(1.0, feedback.getCorrectionFactor("lucene", "/oak:index/x", "x="), 0.0);
+        assertEquals(1.0, feedback.getCorrectionFactor("property", "/oak:index/x", "y="), 0.0);
+        assertEquals(1.0, feedback.getCorrectionFactor("property", "/oak:index/y", "x="), 0.0);
+        assertEquals(1.0, feedback.getCorrectionFactor("property", null, "x="), 0.0);
+
+        // newer observations have more weight
+        feedback.record("property", "/oak:index/x", "x=", 1000, 1000);
+        double f = feedback.getCorrectionFactor("property", "/oak:index/x", "x=");
+        assertTrue(f > 1 && f < 100);
+
+        assertEquals(1, feedback.getCorrectionFactors().size());
+        feedback.setEnabled(false);
+        assertEquals(1.0, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 0.0);
+        feedback.setEnabled(true);
+        feedback.resetCorrectionFactors("lucene");
+        assertEquals(1, feedback.getCorrectionFactors().size());
+        feedback.resetCorrectionFactors("property");
+        assertEquals(1.0, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 0.0);
+    }
+
+    @Test
+    public void ratioIsBounded() {
+        QueryCostFeedback feedback = new QueryCostFeedback();
+        feedback.setEnabled(true);
+        feedback.setObservationWeight(1);
+        feedback.record("property", "/oak:index/x", "x=", 0, Long.MAX_VALUE);
+        assertEquals(1000, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 0.001);
+        feedback.record("property", "/oak:index/x", "x=", Double.MAX_VALUE, 0);
+        assertEquals(0.001, feedback.getCorrectionFactor("property", "/oak:index/x", "x="), 0.000001);
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.QueryEngine;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Root;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Test;
+
+import com.google.common.base.Suppliers;
+
+/**
+ * Tests the query statistics.
+ */
+public class QueryStatsTest {
+
+    @Test
+    public void normalize() {
+        assertEquals("select * from [nt:base] where [x] = ?",
+                QueryStats.normalize("select * from [nt:base] where [x] = 'a''b'"));
+        assertEquals("/jcr:root/content2//*[@x = ? and @y > ?]",
+                QueryStats.normalize("/jcr:root/content2//*[@x = \"1\" and @y > 1.5]"));
+        assertEquals("select * from [nt:base] where [p1] in(?, ?)",
+                QueryStats.normalize("select * from [nt:base] where [p1] in(1, 20)"));
+    }
+
+    @Test
+    public void countAndSample() {
+        QueryStats stats = new QueryStats();
+        stats.setSamplingRate(2);
+        int measured = 0;
+        for (int i = 0; i < 10; i++) {
+            String statement = "select * from [nt:base] where [x] = " + i;
+            if (stats.startExecution(statement)) {
+                measured++;
+                stats.executionDone(statement, 1000, 10, 1, "p",
+                        Suppliers.ofInstance("plan"));
+            }
+        }
+        assertEquals(5, measured);
+        TabularData data = stats.getQueryStats();
+        assertEquals(1, data.size());
+        CompositeData row = (CompositeData) data.values().iterator().next();
+        assertEquals("select * from [nt:base] where [x] = ?", row.get("statement"));
+        assertEquals(10L, row.get("executionCount"));
+        assertEquals(5L, row.get("measuredCount"));
+        assertEquals(10L, row.get("averageRowsRead"));
+
+        stats.setEnabled(false);
+        assertFalse(stats.startExecution("select * from [nt:base]"));
+        stats.resetStats();
+        assertTrue(stats.getQueryStats().isEmpty());
+    }
+
+    /**
+     * A result that is only read partially is recorded as soon as reading it
+     * takes longer than the slow query log limit.
+     */
+    @Test
+    public void partiallyReadResult() throws Exception {
+        QueryEngineSettings settings = new QueryEngineSettings();
+        QueryStats stats = settings.getQueryStats();
+        stats.setLogSlowQueries(false);
+        stats.setSlowQueryLogLimit(0);
+        ContentRepository repository = new Oak()
+                .with(new InitialContent())
+                .with(new OpenSecurityProvider())
+                .with(settings)
+                .createContentRepository();
+        Root root = repository.login(null, null).getLatestRoot();
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 10; i++) {
+            test.addChild("n" + i);
+        }
+        root.commit();
+        stats.resetStats();
+
+        String statement = "select [jcr:path] from [nt:base] where isdescendantnode('/test')";
+        Iterator<? extends ResultRow> rows = root.getQueryEngine().executeQuery(
+                statement, "JCR-SQL2", Long.MAX_VALUE, 0, QueryEngine.NO_BINDINGS,
+                QueryEngine.NO_MAPPINGS)
+                .getRows().iterator();
+        assertTrue(rows.hasNext());
+        rows.next();
+
+        TabularData data = stats.getQueryStats();
+        assertEquals(1, data.size());
+        CompositeData row = (CompositeData) data.values().iterator().next();
+        assertEquals(1L, row.get("measuredCount"));
+        assertEquals(1, stats.getSlowQueries().size());
+
+        // reading the rest does not record the execution again
+        while (rows.hasNext()) {
+            rows.next();
+        }
+        row = (CompositeData) stats.getQueryStats().values().iterator().next();
+        assertEquals(1L, row.get("measuredCount"));
+    }
+
+    @Test
+    public void slowQueries() {
+        QueryStats stats = new QueryStats();
+        stats.setLogSlowQueries(false);
+        for (int i = 0; i < 200; i++) {
+            String statement = "select * from [nt:base] where [x] = " + i;
+            stats.startExecution(statement);
+            stats.executionDone(statement, TimeUnit.MILLISECONDS.toNanos(i),
+                    i, 0, "p", Suppliers.ofInstance("plan " + i));
+        }
+        TabularData data = stats.getSlowQueries();
+        assertEquals(100, data.size());
+        CompositeData slowest = data.get(new Object[] {1});
+        assertEquals("select * from [nt:base] where [x] = 199", slowest.get("statement"));
+        assertEquals(199L, slowest.get("millis"));
+        assertEquals("plan 199", slowest.get("plan"));
+        CompositeData last = data.get(new Object[] {100});
+        assertEquals(100L, last.get("millis"));
+    }
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.spi.commit;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static org.apache.jackrabbit.oak.api.Type.LONG;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Lists;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Test;
+
+public class ChangeDispatcherTest {
+    private static final CommitInfo COMMIT_INFO = new CommitInfo("no-session", null);
+
+    private final ExecutorService executor = newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void synchronous() {
+        ChangeDispatcher dispatcher = new ChangeDispatcher(root(0));
+        RecordingObserver observer = new RecordingObserver(0);
+        dispatcher.addObserver(observer);
+        assertEquals(1, observer.roots.size());
+        assertNull(observer.infos.get(0));
+
+        dispatcher.contentChanged(root(1), COMMIT_INFO);
+        assertEquals(2, observer.roots.size());
+        assertEquals(root(1), observer.roots.get(1));
+        assertSame(COMMIT_INFO, observer.infos.get(1));
+    }
+
+    @Test
+    public void ordered() throws InterruptedException {
+        ChangeDispatcher dispatcher = new ChangeDispatcher(root(0), executor);
+        RecordingObserver observer = new RecordingObserver(0);
+        dispatcher.addObserver(observer);
+
+        for (int k = 1; k <= 1000; k++) {
+            dispatcher.contentChanged(root(k), COMMIT_INFO);
+        }
+        observer.awaitRoot(root(1000));
+
+        assertEquals(1001, observer.roots.size());
+        for (int k = 0; k <= 1000; k++) {
+            assertEquals(root(k), observer.roots.get(k));
+        }
+        assertNull(observer.infos.get(0));
+        assertSame(COMMIT_INFO, observer.infos.get(1));
+    }
+
+    /**
+     * Reporting changes must not wait for a slow observer.
+     */
+    @Test
+    public void slowObserver() throws InterruptedException {
+        ChangeDispatcher dispatcher = new ChangeDispatcher(root(0), executor);
+        RecordingObserver slow = new RecordingObserver(100);
+        RecordingObserver fast = new RecordingObserver(0);
+        dispatcher.addObserver(slow);
+        dispatcher.addObserver(fast);
+
+        long t0 = System.currentTimeMillis();
+        for (int k = 1; k <= 20; k++) {
+            dispatcher.contentChanged(root(k), COMMIT_INFO);
+        }
+        long latency = System.currentTimeMillis() - t0;
+        assertTrue("Commits were delayed by " + latency + " ms", latency < 1000);
+
+        fast.awaitRoot(root(20));
+        slow.awaitRoot(root(20));
+        assertEquals(21, slow.roots.size());
+    }
+
+    /**
+     * An observer falling behind by more than the capacity skips to the most
+     * recent change.
+     */
+    @Test
+    public void overflow() throws InterruptedException, IOException {
+        ChangeDispatcher dispatcher = new ChangeDispatcher(root(0), executor, 4);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver(0) {
+            @Override
+            public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.contentChanged(root, info);
+            }
+        };
+        Closeable registration = dispatcher.addObserver(observer);
+
+        for (int k = 1; k <= 10; k++) {
+            dispatcher.contentChanged(root(k), COMMIT_INFO);
+        }
+        blocked.countDown();
+        observer.awaitRoot(root(10));
+
+        assertTrue(observer.roots.size() < 11);
+        assertNull(observer.infos.get(observer.infos.size() - 1));
+        long previous = -1;
+        for (NodeState root : observer.roots) {
+            long value = root.getProperty("p").getValue(LONG);
+            assertTrue(value > previous);
+            previous = value;
+        }
+        registration.close();
+    }
+
+    /**
+     * Reporting a change returns while an observer is still busy with an
+     * earlier change. The observer then receives the changes in order, with
+     * the ones overwritten in the meantime coalesced into the most recent one.
+     */
+    @Test
+    public void returnsBeforeDelivery() throws InterruptedException {
+        ChangeDispatcher dispatcher = new ChangeDispatcher(root(0), executor, 4);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        RecordingObserver observer = new RecordingObserver(0) {
+            @Override
+            public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+                if (!roots.isEmpty()) {
+                    entered.countDown();
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.contentChanged(root, info);
+            }
+        };
+        dispatcher.addObserver(observer);
+
+        dispatcher.contentChanged(root(1), COMMIT_INFO);
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        for (int k = 2; k <= 10; k++) {
+            dispatcher.contentChanged(root(k), COMMIT_INFO);
+        }
+        // all changes were reported while the observer is still busy
+        assertEquals(1, observer.roots.size());
+
+        blocked.countDown();
+        observer.awaitRoot(root(10));
+        assertEquals(root(1), observer.roots.get(1));
+        assertSame(COMMIT_INFO, observer.infos.get(1));
+        assertTrue(observer.roots.size() < 11);
+        assertNull(observer.infos.get(observer.infos.size() - 1));
+        long previous = -1;
+        for (NodeState root : observer.roots) {
+            long value = root.getProperty("p").getValue(LONG);
+            assertTrue(value > previous);
+            previous = value;
+        }
+    }
+
+    private static NodeState root(long value) {
+        return EMPTY_NODE.builder().setProperty("p", value).getNodeState();
+    }
+
+    private static class RecordingObserver implements Observer {
+        final List<NodeState> roots = Collections.synchronizedList(Lists.<NodeState>newArrayList());
+        final List<CommitInfo> infos = Collections.synchronizedList(Lists.<CommitInfo>newArrayList());
+        private final long delay;
+
+        RecordingObserver(long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public void contentChanged(@Nonnull NodeState root, @Nullable CommitInfo info) {
+            if (delay > 0 && !roots.isEmpty()) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                roots.add(root);
+                infos.add(info);
+                notifyAll();
+            }
+        }
+
+        synchronized void awaitRoot(NodeState root) throws InterruptedException {
+            long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (roots.isEmpty() || !roots.get(roots.size() - 1).equals(root)) {
+                long wait = timeout - System.currentTimeMillis();
+                assertTrue("Timed out waiting for " + root, wait > 0);
+                wait(wait);
+            }
+        }
+    }
+
+}
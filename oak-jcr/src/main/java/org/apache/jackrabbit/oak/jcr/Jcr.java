@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.jcr;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.oak.plugins.commit.JcrConflictHandler.createJcrConflictHandler;
 
+import java.io.File;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -185,6 +186,12 @@ public class Jcr {
         return this;
     }
 
+    @Nonnull
+    public Jcr withObservationJournal(@Nonnull File directory, int maxCheckpoints) {
+        oak.withObservationJournal(directory, maxCheckpoints);
+        return this;
+    }
+
     @Nonnull
     public Jcr with(CommitRateLimiter commitRateLimiter) {
         oak.with(commitRateLimiter);
@@ -23,9 +23,11 @@ import static org.apache.jackrabbit.api.stats.RepositoryStatistics.Type.OBSERVAT
 import static org.apache.jackrabbit.api.stats.RepositoryStatistics.Type.OBSERVATION_EVENT_DURATION;
 import static org.apache.jackrabbit.oak.plugins.observation.filter.VisibleFilter.VISIBLE_FILTER;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerMBean;
+import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.getService;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.registerObserver;
 import static org.apache.jackrabbit.oak.spi.whiteboard.WhiteboardUtils.scheduleWithFixedDelay;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -41,13 +43,19 @@ import com.google.common.util.concurrent.Monitor.Guard;
 import org.apache.jackrabbit.api.jmx.EventListenerMBean;
 import org.apache.jackrabbit.commons.observation.ListenerTracker;
 import org.apache.jackrabbit.oak.api.ContentSession;
+import org.apache.jackrabbit.oak.api.jmx.EventListenerFilterMBean;
 import org.apache.jackrabbit.oak.namepath.NamePathMapper;
+import org.apache.jackrabbit.oak.plugins.observation.ChangeSet;
+import org.apache.jackrabbit.oak.plugins.observation.ChangeSetCache;
+import org.apache.jackrabbit.oak.plugins.observation.CheckpointJournalProvider;
 import org.apache.jackrabbit.oak.plugins.observation.CommitRateLimiter;
+import org.apache.jackrabbit.oak.plugins.observation.filter.ChangeSetFilter;
 import org.apache.jackrabbit.oak.plugins.observation.filter.EventFilter;
 import org.apache.jackrabbit.oak.plugins.observation.filter.FilterProvider;
 import org.apache.jackrabbit.oak.plugins.observation.filter.Filters;
 import org.apache.jackrabbit.oak.spi.commit.BackgroundObserver;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.ContentChangeJournal;
 import org.apache.jackrabbit.oak.spi.commit.Observer;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.whiteboard.CompositeRegistration;
@@ -63,6 +71,16 @@ import org.slf4j.LoggerFactory;
  * A {@code ChangeProcessor} generates observation {@link javax.jcr.observation.Event}s
  * based on a {@link FilterProvider filter} and delivers them to an {@link EventListener}.
  * <p>
+ * Filters implementing {@link ChangeSetFilter} are first checked against the
+ * {@link ChangeSet} of a commit, which is computed once and shared with all
+ * other change processors through the {@link ChangeSetCache} registered with
+ * the whiteboard. Only commits that pass this check are diffed for generating
+ * events.
+ * <p>
+ * If a {@link CheckpointJournalProvider} is registered with the whiteboard,
+ * revisions that don't fit into the revision queue are appended to a journal
+ * instead of being compacted and commits are neither delayed nor blocked.
+ * <p>
  * After instantiation a {@code ChangeProcessor} must be started in order to start
  * delivering observation events and stopped to stop doing so.
  */
@@ -81,6 +99,14 @@ class ChangeProcessor implements Observer {
      */
     public static final int MAX_DELAY = 10000;
 
+    /**
+     * Whether the content diffs for generating the events of a commit are
+     * run concurrently on the executor of the whiteboard. Events are still
+     * delivered in the same order.
+     */
+    static final boolean PARALLEL_EVENT_GENERATION =
+            Boolean.getBoolean("oak.observation.parallelEventGeneration");
+
     private final ContentSession contentSession;
     private final NamePathMapper namePathMapper;
     private final ListenerTracker tracker;
@@ -91,7 +117,10 @@ class ChangeProcessor implements Observer {
     private final TimeSeriesMax maxQueueLength;
     private final int queueLength;
     private final CommitRateLimiter commitRateLimiter;
+    private final FilterStats filterStats = new FilterStats();
 
+    private ChangeSetCache changeSetCache;
+    private Executor eventGeneratorExecutor;
     private CompositeRegistration registration;
     private volatile NodeState previousRoot;
 
@@ -131,13 +160,25 @@ class ChangeProcessor implements Observer {
      */
     public synchronized void start(Whiteboard whiteboard) {
         checkState(registration == null, "Change processor started already");
+        changeSetCache = getService(whiteboard, ChangeSetCache.class);
+        if (changeSetCache == null) {
+            changeSetCache = new ChangeSetCache();
+        }
         final WhiteboardExecutor executor = new WhiteboardExecutor();
         executor.start(whiteboard);
-        final BackgroundObserver observer = createObserver(executor);
+        eventGeneratorExecutor = PARALLEL_EVENT_GENERATION ? executor : null;
+        CheckpointJournalProvider journalProvider = getService(whiteboard, CheckpointJournalProvider.class);
+        ContentChangeJournal journal = journalProvider == null
+                ? null
+                : journalProvider.create(tracker.toString());
+        final BackgroundObserver observer = createObserver(executor, journal);
+        filterStats.observer = observer;
         registration = new CompositeRegistration(
             registerObserver(whiteboard, observer),
             registerMBean(whiteboard, EventListenerMBean.class,
                     tracker.getListenerMBean(), "EventListener", tracker.toString()),
+            registerMBean(whiteboard, EventListenerFilterMBean.class,
+                    filterStats, EventListenerFilterMBean.TYPE, tracker.toString()),
             new Registration() {
                 @Override
                 public void unregister() {
@@ -159,8 +200,12 @@ class ChangeProcessor implements Observer {
         );
     }
 
-    private BackgroundObserver createObserver(final WhiteboardExecutor executor) {
-        return new BackgroundObserver(this, executor, queueLength) {
+    private BackgroundObserver createObserver(final WhiteboardExecutor executor,
+            final ContentChangeJournal journal) {
+        // Revisions exceeding the queue go to the journal if present,
+        // so there is no need to hold back commits in that case
+        final CommitRateLimiter commitRateLimiter = journal == null ? this.commitRateLimiter : null;
+        return new BackgroundObserver(this, executor, queueLength, journal) {
             private volatile long delay;
             private volatile boolean blocking;
 
@@ -176,7 +221,11 @@ class ChangeProcessor implements Observer {
                         }
                         commitRateLimiter.blockCommits();
                     } else if (!blocking) {
-                        LOG.warn("Revision queue is full. Further revisions will be compacted.");
+                        if (journal != null) {
+                            LOG.warn("Revision queue is full. Further revisions will be journaled.");
+                        } else {
+                            LOG.warn("Revision queue is full. Further revisions will be compacted.");
+                        }
                     }
                     blocking = true;
                 } else {
@@ -270,16 +319,19 @@ class ChangeProcessor implements Observer {
             try {
                 FilterProvider provider = filterProvider.get();
                 // FIXME don't rely on toString for session id
-                if (provider.includeCommit(contentSession.toString(), info)) {
+                if (provider.includeCommit(contentSession.toString(), info)
+                        && !excludes(provider, previousRoot, root)) {
                     EventFilter filter = provider.getFilter(previousRoot, root);
                     EventIterator events = new EventQueue(namePathMapper, info, previousRoot, root,
-                            provider.getSubTrees(), Filters.all(filter, VISIBLE_FILTER));
+                            provider.getSubTrees(), Filters.all(filter, VISIBLE_FILTER),
+                            eventGeneratorExecutor);
 
                     if (events.hasNext() && runningMonitor.enterIf(running)) {
                         try {
                             CountingIterator countingEvents = new CountingIterator(events);
                             eventListener.onEvent(countingEvents);
                             countingEvents.updateCounters(eventCount, eventDuration);
+                            filterStats.filterTime.addAndGet(countingEvents.sysTime);
                         } finally {
                             runningMonitor.leave();
                         }
@@ -292,6 +344,74 @@ class ChangeProcessor implements Observer {
         previousRoot = root;
     }
 
+    /**
+     * Check the change set of the commit from {@code before} to {@code after}
+     * against the passed filter provider if it supports this.
+     * @return  {@code true} if the filter provider excludes all changes of the commit
+     */
+    private boolean excludes(FilterProvider provider, NodeState before, NodeState after) {
+        filterStats.commitCount.incrementAndGet();
+        if (provider instanceof ChangeSetFilter) {
+            long t0 = System.nanoTime();
+            ChangeSet changeSet = changeSetCache.getChangeSet(before, after);
+            boolean excludes = ((ChangeSetFilter) provider).excludes(changeSet);
+            filterStats.prefilterTime.addAndGet(System.nanoTime() - t0);
+            if (excludes) {
+                filterStats.skippedCount.incrementAndGet();
+                filterStats.diffTimeSaved.addAndGet(changeSet.getDiffTime());
+            }
+            return excludes;
+        } else {
+            return false;
+        }
+    }
+
+    private static class FilterStats implements EventListenerFilterMBean {
+        final AtomicLong commitCount = new AtomicLong();
+        final AtomicLong skippedCount = new AtomicLong();
+        final AtomicLong diffTimeSaved = new AtomicLong();
+        final AtomicLong prefilterTime = new AtomicLong();
+        final AtomicLong filterTime = new AtomicLong();
+        volatile BackgroundObserver observer;
+
+        @Override
+        public long getCommitCount() {
+            return commitCount.get();
+        }
+
+        @Override
+        public long getSkippedCommitCount() {
+            return skippedCount.get();
+        }
+
+        @Override
+        public long getDiffTimeSaved() {
+            return TimeUnit.NANOSECONDS.toMillis(diffTimeSaved.get());
+        }
+
+        @Override
+        public long getPrefilterTime() {
+            return TimeUnit.NANOSECONDS.toMillis(prefilterTime.get());
+        }
+
+        @Override
+        public long getFilterTime() {
+            return TimeUnit.NANOSECONDS.toMillis(filterTime.get());
+        }
+
+        @Override
+        public int getRevisionLag() {
+            BackgroundObserver observer = this.observer;
+            return observer == null ? 0 : observer.getBacklog();
+        }
+
+        @Override
+        public long getLagSeconds() {
+            BackgroundObserver observer = this.observer;
+            return observer == null ? 0 : TimeUnit.MILLISECONDS.toSeconds(observer.getLag());
+        }
+    }
+
     private static class CountingIterator implements EventIterator {
         private final long t0 = System.nanoTime();
         private final EventIterator events;
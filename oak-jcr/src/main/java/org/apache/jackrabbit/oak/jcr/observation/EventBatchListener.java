@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.jcr.observation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static javax.jcr.observation.Event.NODE_ADDED;
+import static javax.jcr.observation.Event.NODE_MOVED;
+import static javax.jcr.observation.Event.NODE_REMOVED;
+import static javax.jcr.observation.Event.PROPERTY_ADDED;
+import static javax.jcr.observation.Event.PROPERTY_CHANGED;
+import static org.apache.jackrabbit.oak.jcr.observation.QueueingHandler.getMixinTypes;
+import static org.apache.jackrabbit.oak.jcr.observation.QueueingHandler.getPrimaryType;
+
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.apache.jackrabbit.oak.namepath.NamePathMapper;
+import org.apache.jackrabbit.oak.plugins.observation.EventBatch;
+import org.apache.jackrabbit.oak.plugins.observation.EventBatchObserver;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Adapter delivering the events of an {@link EventBatchObserver} to a JCR
+ * {@link EventListener}. The JCR events are only created while the listener
+ * iterates over them. Unlike with listeners registered through the
+ * {@code ObservationManager}, the events of a single commit may be passed
+ * to the listener in more than one {@link EventListener#onEvent(EventIterator)}
+ * call if they don't fit into a single batch.
+ */
+public class EventBatchListener extends EventBatchObserver {
+    private final EventListener listener;
+    private final NamePathMapper namePathMapper;
+
+    public EventBatchListener(@Nonnull String sessionId, @Nonnull FilterProvider filterProvider,
+            int batchSize, @Nonnull EventListener listener, @Nonnull NamePathMapper namePathMapper) {
+        super(sessionId, filterProvider, batchSize);
+        this.listener = checkNotNull(listener);
+        this.namePathMapper = checkNotNull(namePathMapper);
+    }
+
+    public EventBatchListener(@Nonnull String sessionId, @Nonnull FilterProvider filterProvider,
+            @Nonnull EventListener listener, @Nonnull NamePathMapper namePathMapper) {
+        this(sessionId, filterProvider, DEFAULT_BATCH_SIZE, listener, namePathMapper);
+    }
+
+    @Override
+    protected void onEvents(@Nonnull EventBatch batch) {
+        listener.onEvent(new BatchIterator(
+                batch, new EventFactory(namePathMapper, batch.getCommitInfo())));
+    }
+
+    @Override
+    public String toString() {
+        return "EventBatchListener[" + listener + ']';
+    }
+
+    private static Event createEvent(EventBatch batch, EventFactory factory, int i) {
+        NodeState node = batch.getNode(i);
+        String primaryType = getPrimaryType(node);
+        Iterable<String> mixinTypes = getMixinTypes(node);
+        String parentPath = batch.getParentPath(i);
+        String name = batch.getName(i);
+        String identifier = batch.getIdentifier(i);
+        switch (batch.getType(i)) {
+            case NODE_ADDED:
+                return factory.nodeAdded(primaryType, mixinTypes, parentPath, name, identifier);
+            case NODE_REMOVED:
+                return factory.nodeDeleted(primaryType, mixinTypes, parentPath, name, identifier);
+            case NODE_MOVED:
+                if (batch.isReorder(i)) {
+                    return factory.nodeReordered(primaryType, mixinTypes, parentPath, name,
+                            identifier, batch.getDestName(i));
+                } else {
+                    return factory.nodeMoved(primaryType, mixinTypes, parentPath, name,
+                            identifier, batch.getSourcePath(i));
+                }
+            case PROPERTY_ADDED:
+                return factory.propertyAdded(batch.getAfter(i), primaryType, mixinTypes,
+                        parentPath, name, identifier);
+            case PROPERTY_CHANGED:
+                return factory.propertyChanged(batch.getBefore(i), batch.getAfter(i),
+                        primaryType, mixinTypes, parentPath, name, identifier);
+            default:
+                return factory.propertyDeleted(batch.getBefore(i), primaryType, mixinTypes,
+                        parentPath, name, identifier);
+        }
+    }
+
+    /**
+     * Iterator creating the JCR events of a batch on demand
+     */
+    private static class BatchIterator implements EventIterator {
+        private final EventBatch batch;
+        private final EventFactory factory;
+        private int position;
+
+        BatchIterator(EventBatch batch, EventFactory factory) {
+            this.batch = batch;
+            this.factory = factory;
+        }
+
+        @Override
+        public Event nextEvent() {
+            if (hasNext()) {
+                return createEvent(batch, factory, position++);
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void skip(long skipNum) {
+            if (position + skipNum > batch.size()) {
+                throw new NoSuchElementException("Not enough events to skip");
+            }
+            position += skipNum;
+        }
+
+        @Override
+        public long getSize() {
+            return batch.size();
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < batch.size();
+        }
+
+        @Override
+        public Object next() {
+            return nextEvent();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -22,7 +22,9 @@ import static com.google.common.collect.Lists.newLinkedList;
 
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.jcr.observation.Event;
 import javax.jcr.observation.EventIterator;
@@ -50,8 +52,9 @@ class EventQueue implements EventIterator {
     public EventQueue(
             @Nonnull NamePathMapper mapper, CommitInfo info,
             @Nonnull NodeState before, @Nonnull NodeState after,
-            @Nonnull Iterable<String> basePaths, @Nonnull EventFilter filter) {
-        this.generator = new EventGenerator();
+            @Nonnull Iterable<String> basePaths, @Nonnull EventFilter filter,
+            @CheckForNull Executor executor) {
+        this.generator = new EventGenerator(executor);
         EventFactory factory = new EventFactory(mapper, info);
         EventHandler handler = new FilteredHandler(
                 filter, new QueueingHandler(this, factory, before, after));
@@ -168,7 +168,7 @@ class QueueingHandler extends DefaultEventHandler {
                 destName));
     }
 
-    private static String getPrimaryType(NodeState before) {
+    static String getPrimaryType(NodeState before) {
         PropertyState primaryType = before.getProperty(JCR_PRIMARYTYPE);
         if (primaryType != null && primaryType.getType() == NAME) {
             return primaryType.getValue(NAME);
@@ -177,7 +177,7 @@ class QueueingHandler extends DefaultEventHandler {
         }
     }
 
-    private static Iterable<String> getMixinTypes(NodeState before) {
+    static Iterable<String> getMixinTypes(NodeState before) {
         PropertyState mixinTypes = before.getProperty(JCR_MIXINTYPES);
         if (mixinTypes != null && mixinTypes.getType() == NAMES) {
             return mixinTypes.getValue(NAMES);
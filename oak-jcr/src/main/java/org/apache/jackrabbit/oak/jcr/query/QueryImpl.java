@@ -51,6 +51,9 @@ public class QueryImpl implements Query {
     private final String statement;
     private long limit = Long.MAX_VALUE;
     private long offset;
+    private boolean keyset;
+    private Value[] keysetValues;
+    private String keysetPath;
     private boolean parsed;
     private String storedQueryPath;
 
@@ -98,6 +101,10 @@ public class QueryImpl implements Query {
                 new SessionOperation<QueryResult>("execute") {
                     @Override
                     public QueryResult perform() throws RepositoryException {
+                        if (keyset) {
+                            return manager.executeQuery(statement, language, limit,
+                                    keysetValues, keysetPath, bindVariableMap);
+                        }
                         return manager.executeQuery(statement, language, limit,
                                 offset, bindVariableMap);
                     }
@@ -146,6 +153,25 @@ public class QueryImpl implements Query {
         this.offset = offset;
     }
 
+    /**
+     * Use keyset pagination instead of an offset: only rows that sort after
+     * the last row of the previous page are returned, which allows indexes
+     * to seek to that row instead of reading and skipping all rows of the
+     * previous pages. Rows with the same "order by" values are ordered by
+     * path. To get the first page, call this method with null values.
+     * <p>
+     * This is an Oak specific extension.
+     * 
+     * @param lastValues the "order by" values of the last row of the
+     *            previous page, or null to get the first page
+     * @param lastPath the path of the last row of the previous page
+     */
+    public void setKeyset(Value[] lastValues, String lastPath) {
+        this.keyset = true;
+        this.keysetValues = lastValues;
+        this.keysetPath = lastPath;
+    }
+
     @Override
     public Node storeAsNode(String absPath) throws RepositoryException {
         manager.ensureIsAlive();
@@ -126,12 +126,48 @@ public class QueryManagerImpl implements QueryManager {
 
     public QueryResult executeQuery(String statement, String language,
             long limit, long offset, HashMap<String, Value> bindVariableMap) throws RepositoryException {
+        return executeQuery(statement, language, limit, offset, false, 
+                null, null, bindVariableMap);
+    }
+
+    /**
+     * Execute a query using keyset pagination.
+     * 
+     * @param statement the query statement
+     * @param language the query language
+     * @param limit the maximum number of rows
+     * @param keysetValues the "order by" values of the last row of the
+     *            previous page, or null to get the first page
+     * @param keysetPath the path of the last row of the previous page
+     * @param bindVariableMap the bind variable values
+     * @return the result
+     * @see QueryEngine#executeQuery(String, String, long, PropertyValue[], String, Map, Map)
+     */
+    public QueryResult executeQuery(String statement, String language,
+            long limit, Value[] keysetValues, String keysetPath,
+            HashMap<String, Value> bindVariableMap) throws RepositoryException {
+        return executeQuery(statement, language, limit, 0, true, 
+                keysetValues, keysetPath, bindVariableMap);
+    }
+
+    private QueryResult executeQuery(String statement, String language,
+            long limit, long offset, boolean keyset, Value[] keysetValues, String keysetPath,
+            HashMap<String, Value> bindVariableMap) throws RepositoryException {
         try {
             Map<String, PropertyValue> bindMap = convertMap(bindVariableMap);
             long t0 = System.nanoTime();
-            Result r = queryEngine.executeQuery(
-                    statement, language, limit, offset, bindMap,
-                    sessionContext.getSessionLocalMappings());
+            Result r;
+            if (keyset) {
+                r = queryEngine.executeQuery(
+                        statement, language, limit, 
+                        convertValues(keysetValues), 
+                        keysetPath == null ? null : sessionContext.getOakPathOrThrow(keysetPath),
+                        bindMap, sessionContext.getSessionLocalMappings());
+            } else {
+                r = queryEngine.executeQuery(
+                        statement, language, limit, offset, bindMap,
+                        sessionContext.getSessionLocalMappings());
+            }
             queryCount.incrementAndGet();
             long dt = (System.nanoTime() - t0) / 1000000;
             queryDuration.addAndGet(dt);
@@ -156,6 +192,20 @@ public class QueryManagerImpl implements QueryManager {
         return map;
     }
 
+    private static PropertyValue[] convertValues(Value[] values) throws RepositoryException {
+        if (values == null) {
+            return null;
+        }
+        PropertyValue[] list = new PropertyValue[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                list[i] = PropertyValues.create(
+                        PropertyStates.createProperty("", values[i]));
+            }
+        }
+        return list;
+    }
+
     void ensureIsAlive() throws RepositoryException {
         // check session status
         if (!sessionDelegate.isAlive()) {
@@ -76,6 +76,18 @@ public class QueryResultImpl implements QueryResult {
         this.result = result;
     }
 
+    /**
+     * Count the rows, without returning them.
+     *
+     * @param exact whether an exact count is required; if false, the count
+     *            may be answered by the index, without checking access rights
+     * @return the count
+     * @see Result#getCount(boolean)
+     */
+    public Result.Count getCount(boolean exact) {
+        return result.getCount(exact);
+    }
+
     @Override
     public String[] getColumnNames() throws RepositoryException {
         return result.getColumnNames();
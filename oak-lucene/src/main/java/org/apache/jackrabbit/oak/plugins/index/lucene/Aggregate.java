@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.CheckForNull;
@@ -34,6 +35,7 @@ import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.ConfigUtil;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 
@@ -41,6 +43,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Iterables.toArray;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static com.google.common.collect.Sets.newLinkedHashSet;
 import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
 import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
 
@@ -113,7 +116,7 @@ class Aggregate {
 
     private static void collectAggregates(NodeState nodeState, List<Matcher> matchers,
                                           ResultCollector collector) throws CommitFailedException {
-        for (ChildNodeEntry cne : nodeState.getChildNodeEntries()) {
+        for (ChildNodeEntry cne : getChildNodeEntries(nodeState, matchers)) {
             List<Matcher> nextSet = newArrayListWithCapacity(matchers.size());
             for (Matcher m : matchers) {
                 Matcher result = m.match(cne.getName(), cne.getNodeState());
@@ -131,6 +134,33 @@ class Aggregate {
         }
     }
 
+    /**
+     * Returns the child nodes which can be matched by any of the given matchers.
+     * All matchers are evaluated against each child in a single pass. If none
+     * of them matches arbitrary names the children are looked up by name,
+     * which avoids iterating over all siblings of e.g. a jcr:content node.
+     */
+    private static Iterable<? extends ChildNodeEntry> getChildNodeEntries(NodeState nodeState,
+                                                                         List<Matcher> matchers) {
+        Set<String> names = newLinkedHashSet();
+        for (Matcher m : matchers) {
+            String name = m.getNextName();
+            if (name == null) {
+                return nodeState.getChildNodeEntries();
+            }
+            names.add(name);
+        }
+
+        List<ChildNodeEntry> entries = newArrayListWithCapacity(names.size());
+        for (String name : names) {
+            NodeState child = nodeState.getChildNode(name);
+            if (child.exists()) {
+                entries.add(new MemoryChildNodeEntry(name, child));
+            }
+        }
+        return entries;
+    }
+
     private List<Matcher> createMatchers() {
         List<Matcher> matchers = newArrayListWithCapacity(includes.size());
         for (Include include : includes) {
@@ -189,6 +219,19 @@ class Aggregate {
             return elements.length;
         }
 
+        /**
+         * @return name a node at the given depth must have to be matched, or
+         *         {@code null} if nodes with any name may match
+         */
+        @CheckForNull
+        String getName(int depth) {
+            if (depth >= elements.length) {
+                return null;
+            }
+            String element = elements[depth];
+            return MATCH_ALL.equals(element) ? null : element;
+        }
+
         public void collectResults(T rootInclude, String rootIncludePath,
                                    String nodePath, NodeState nodeState,  ResultCollector results)
                 throws CommitFailedException {
@@ -528,6 +571,15 @@ class Aggregate {
             return status;
         }
 
+        /**
+         * @return name the next child node must have to be matched, or
+         *         {@code null} if children with any name may match
+         */
+        @CheckForNull
+        public String getNextName() {
+            return currentInclude.getName(depth);
+        }
+
         public boolean aggregatesProperty(String name) {
             checkArgument(status == Status.MATCH_FOUND);
             return currentInclude.aggregatesProperty(name);
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the evaluation of the aggregation rules while indexing.
+ * An evaluation collects the aggregated nodes and properties of one indexed
+ * node. The fields created for an aggregated node are memoized for the
+ * duration of an indexing run, so that nodes aggregated by several ancestors
+ * are only processed once.
+ */
+public class AggregateStats {
+
+    private final AtomicLong evaluationCount = new AtomicLong();
+
+    private final AtomicLong evaluationTime = new AtomicLong();
+
+    private final AtomicLong memoHitCount = new AtomicLong();
+
+    private final AtomicLong memoMissCount = new AtomicLong();
+
+    void evaluated(long timeInNanos) {
+        evaluationCount.incrementAndGet();
+        evaluationTime.addAndGet(timeInNanos);
+    }
+
+    void memoHit() {
+        memoHitCount.incrementAndGet();
+    }
+
+    void memoMiss() {
+        memoMissCount.incrementAndGet();
+    }
+
+    /**
+     * @return number of indexed nodes for which the aggregation rules
+     *         were evaluated
+     */
+    public long getEvaluationCount() {
+        return evaluationCount.get();
+    }
+
+    /**
+     * @return time spent evaluating the aggregation rules in milliseconds
+     */
+    public long getEvaluationTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(evaluationTime.get());
+    }
+
+    /**
+     * @return number of aggregated nodes whose fields were taken from the memo
+     */
+    public long getMemoHitCount() {
+        return memoHitCount.get();
+    }
+
+    /**
+     * @return number of aggregated nodes whose fields had to be created
+     */
+    public long getMemoMissCount() {
+        return memoMissCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AggregateStats[evaluations=%d (%d ms), memo hits=%d, memo misses=%d]",
+                getEvaluationCount(), getEvaluationTimeMillis(), getMemoHitCount(), getMemoMissCount());
+    }
+
+}
@@ -36,4 +36,12 @@ public interface CopyOnReadStatsMBean {
     long getDownloadTime();
 
     String getLocalIndexSize();
+
+    int getUploadCount();
+
+    int getUploadQueueSize();
+
+    String getUploadSize();
+
+    long getUploadTime();
 }
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.tika.exception.TikaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of text extracted from binaries, keyed by the
+ * {@link Blob#getContentIdentity() content identity} of the binary and the
+ * Tika configuration used for the extraction. Entries are kept as plain files
+ * below a local directory so that they survive restarts and can be populated
+ * upfront by a pre-extraction run. Binaries without a content identity are
+ * never cached.
+ * <p>
+ * The size of the directory is bounded. Once it exceeds the maximum size the
+ * least recently used entries are removed.
+ * <p>
+ * The cache also keeps the statistics about text extraction which are
+ * exposed via {@link LuceneIndexMBean}. If no directory is configured only
+ * the statistics are collected.
+ */
+public class ExtractedTextCache {
+    /**
+     * Text indexed for binaries from which no text could be extracted
+     */
+    public static final String TEXT_EXTRACTION_ERROR = "TextExtractionError";
+
+    private static final String COMPLETE = "complete";
+    private static final String TRUNCATED = "truncated ";
+    private static final String ERROR = "error";
+
+    /**
+     * Default maximum size of the cache directory in bytes
+     */
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+    private final File directory;
+
+    private final long maxSize;
+
+    /**
+     * Size of the cache directory in bytes, or -1 if not yet known. Guarded
+     * by this.
+     */
+    private long size = -1;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong extractionCount = new AtomicLong();
+    private final AtomicLong extractionTime = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ExtractedTextCache(@Nullable File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param directory the cache directory or {@code null} to only collect
+     *                  the statistics
+     * @param maxSize the maximum size of the cache directory in bytes
+     */
+    public ExtractedTextCache(@Nullable File directory, long maxSize) {
+        checkArgument(maxSize > 0, "maxSize must be positive");
+        this.directory = directory;
+        this.maxSize = maxSize;
+        if (directory != null) {
+            log.info("Extracted text would be cached under {} (max {} MB)",
+                    directory.getAbsolutePath(), maxSize / (1024 * 1024));
+        }
+    }
+
+    /**
+     * Returns the identifier of a Tika configuration, which is part of the
+     * key of the cache entries.
+     *
+     * @param config the content of the Tika configuration
+     * @return the identifier
+     */
+    public static String getConfigId(byte[] config) {
+        return Hashing.sha1().hashBytes(config).toString();
+    }
+
+    /**
+     * Returns the cached text for the given binary.
+     *
+     * @param blob the binary
+     * @param configId the identifier of the Tika configuration (see
+     *                 {@link #getConfigId(byte[])}), or {@code null} for the
+     *                 default configuration
+     * @param maxExtractLength the maximum number of characters the caller
+     *                         would extract from the binary
+     * @return the cached text (at most {@code maxExtractLength} characters),
+     *         {@link #TEXT_EXTRACTION_ERROR} if extraction failed earlier or
+     *         {@code null} if the text needs to be extracted
+     */
+    @CheckForNull
+    public String get(Blob blob, @Nullable String configId, int maxExtractLength) {
+        File file = getFile(blob, configId);
+        if (file == null) {
+            return null;
+        }
+        String text = null;
+        if (file.exists()) {
+            try {
+                text = decode(Files.toString(file, Charsets.UTF_8), maxExtractLength);
+            } catch (IOException e) {
+                log.warn("Error reading extracted text from {}", file, e);
+            }
+        }
+        if (text != null) {
+            hitCount.incrementAndGet();
+            //Least recently used entries are evicted first
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            missCount.incrementAndGet();
+        }
+        return text;
+    }
+
+    /**
+     * Stores the text extracted from the given binary.
+     *
+     * @param blob the binary
+     * @param configId the identifier of the Tika configuration used
+     * @param text the extracted text
+     * @param maxExtractLength the limit used for the extraction
+     * @param truncated whether the extraction stopped at the limit
+     */
+    public void put(Blob blob, @Nullable String configId, String text,
+                    int maxExtractLength, boolean truncated) {
+        write(blob, configId, (truncated ? TRUNCATED + maxExtractLength : COMPLETE) + '\n' + text);
+    }
+
+    /**
+     * Records that no text can be extracted from the given binary so
+     * that later indexing runs don't retry the extraction. This must only
+     * be used for failures of the parser (a {@link TikaException}), not for
+     * errors reading the binary, which might be transient.
+     *
+     * @param blob the binary
+     * @param configId the identifier of the Tika configuration used
+     */
+    public void putError(Blob blob, @Nullable String configId) {
+        write(blob, configId, ERROR + '\n');
+    }
+
+    /**
+     * Returns whether a failure of the text extraction is caused by the
+     * content of the binary, so that it can be cached with
+     * {@link #putError(Blob, String)}.
+     */
+    public static boolean isParserFailure(Throwable t) {
+        return t instanceof TikaException;
+    }
+
+    void recordExtraction(long timeInNanos, boolean failed) {
+        extractionCount.incrementAndGet();
+        extractionTime.addAndGet(timeInNanos);
+        if (failed) {
+            failureCount.incrementAndGet();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getExtractionCount() {
+        return extractionCount.get();
+    }
+
+    public long getExtractionTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(extractionTime.get());
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExtractedTextCache[hits=%d, misses=%d, extractions=%d (%d ms), failures=%d, evictions=%d]",
+                getHitCount(), getMissCount(), getExtractionCount(),
+                getExtractionTimeMillis(), getFailureCount(), getEvictionCount());
+    }
+
+    //~-------------------------------------------< internal >
+
+    @CheckForNull
+    private File getFile(Blob blob, @Nullable String configId) {
+        if (directory == null) {
+            return null;
+        }
+        String id = blob.getContentIdentity();
+        if (id == null) {
+            return null;
+        }
+        if (configId != null) {
+            id = configId + ':' + id;
+        }
+        String name = Hashing.sha1().hashString(id, Charsets.UTF_8).toString();
+        return new File(new File(directory, name.substring(0, 2)), name);
+    }
+
+    private void write(Blob blob, @Nullable String configId, String content) {
+        File file = getFile(blob, configId);
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createParentDirs(file);
+            //Write to a temporary file first so that concurrent readers
+            //never see a partially written entry
+            File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            Files.write(content, tmp, Charsets.UTF_8);
+            long length = tmp.length() - file.length();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                if (!file.exists()) {
+                    log.warn("Could not store extracted text in {}", file);
+                }
+            } else {
+                added(length);
+            }
+        } catch (IOException e) {
+            log.warn("Error storing extracted text in {}", file, e);
+        }
+    }
+
+    private synchronized void added(long length) {
+        if (size < 0) {
+            size = 0;
+            for (File file : listFiles()) {
+                size += file.length();
+            }
+        }
+        size += length;
+        if (size > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the directory is at
+     * three quarters of the maximum size, so that not every new entry
+     * triggers an eviction.
+     */
+    private void evict() {
+        List<File> files = listFiles();
+        final Map<File, Long> lastModified = Maps.newHashMap();
+        size = 0;
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+            size += file.length();
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return lastModified.get(f1).compareTo(lastModified.get(f2));
+            }
+        });
+        long target = maxSize / 4 * 3;
+        for (File file : files) {
+            if (size <= target) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                evictionCount.incrementAndGet();
+            }
+        }
+        log.debug("Evicted extracted text from {}, size is now {} bytes", directory, size);
+    }
+
+    private List<File> listFiles() {
+        List<File> files = Lists.newArrayList();
+        File[] dirs = directory.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] entries = dir.listFiles();
+                if (entries != null) {
+                    Collections.addAll(files, entries);
+                }
+            }
+        }
+        return files;
+    }
+
+    @CheckForNull
+    private static String decode(String content, int maxExtractLength) {
+        int eol = content.indexOf('\n');
+        if (eol < 0) {
+            return null;
+        }
+        String header = content.substring(0, eol);
+        String text = content.substring(eol + 1);
+        if (ERROR.equals(header)) {
+            return TEXT_EXTRACTION_ERROR;
+        }
+        if (header.startsWith(TRUNCATED)) {
+            //Text extracted with a lower limit cannot serve a higher one
+            try {
+                int limit = Integer.parseInt(header.substring(TRUNCATED.length()));
+                if (limit < maxExtractLength) {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else if (!COMPLETE.equals(header)) {
+            return null;
+        }
+        return text.length() > maxExtractLength ? text.substring(0, maxExtractLength) : text;
+    }
+}
@@ -22,11 +22,13 @@ import com.google.common.primitives.Ints;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.util.ISO8601;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
 
 import static org.apache.lucene.index.FieldInfo.IndexOptions.DOCS_AND_FREQS_AND_POSITIONS;
 
@@ -94,6 +96,14 @@ public final class FieldFactory {
         return new StringField(PATH, path, YES);
     }
 
+    /**
+     * Field holding the path as doc values, used by indexes confirming to
+     * {@link IndexFormatVersion#V3} or above
+     */
+    public static Field newPathDocValuesField(String path) {
+        return new BinaryDocValuesField(PATH, new BytesRef(path));
+    }
+
     public static Field newPropertyField(String name, String value,
             boolean tokenized, boolean stored) {
         if (tokenized) {
@@ -23,10 +23,15 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -46,6 +51,7 @@ import com.google.common.collect.Sets;
 import com.google.common.hash.Hashing;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.commons.IOUtils;
 import org.apache.lucene.store.BaseDirectory;
 import org.apache.lucene.store.Directory;
@@ -59,8 +65,9 @@ import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Maps.newConcurrentMap;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 
-class IndexCopier implements CopyOnReadStatsMBean {
+public class IndexCopier implements CopyOnReadStatsMBean {
     private static final Set<String> REMOTE_ONLY = ImmutableSet.of("segments.gen");
 
     private final Logger log = LoggerFactory.getLogger(getClass());
@@ -72,6 +79,10 @@ class IndexCopier implements CopyOnReadStatsMBean {
     private final AtomicInteger invalidFileCount = new AtomicInteger();
     private final AtomicLong downloadSize = new AtomicLong();
     private final AtomicLong downloadTime = new AtomicLong();
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final AtomicInteger uploadQueueSize = new AtomicInteger();
+    private final AtomicLong uploadSize = new AtomicLong();
+    private final AtomicLong uploadTime = new AtomicLong();
 
     private final Map<String, String> indexPathMapping = Maps.newConcurrentMap();
     private final Map<String, String> indexPathVersionMapping = Maps.newConcurrentMap();
@@ -86,6 +97,17 @@ class IndexCopier implements CopyOnReadStatsMBean {
         return new CopyOnReadDirectory(remote, local);
     }
 
+    /**
+     * Wraps the directory of an index for writing. Files are written to a
+     * local directory and uploaded to the remote one in the background, see
+     * {@link CopyOnWriteDirectory}.
+     */
+    public Directory wrapForWrite(IndexDefinition definition, OakDirectory remote) throws IOException {
+        File writeDir = new File(new File(indexRootDir, "write"), UUID.randomUUID().toString());
+        checkState(writeDir.mkdirs(), "Cannot create directory %s", writeDir);
+        return new CopyOnWriteDirectory(remote, FSDirectory.open(writeDir), writeDir);
+    }
+
     protected Directory createLocalDir(String indexPath, IndexDefinition definition) throws IOException {
         File indexDir = getIndexDir(indexPath);
         String newVersion = String.valueOf(definition.getReindexCount());
@@ -332,6 +354,233 @@ class IndexCopier implements CopyOnReadStatsMBean {
         }
     }
 
+    /**
+     * Directory implementation used while updating an index. New files are
+     * written to a local directory and uploaded to the remote directory in
+     * background once they get synced, i.e. once a commit references them.
+     * Files which are deleted before, like the files of merged away segments
+     * or the ones folded into a compound file, are never uploaded. The
+     * uploads only create the blobs while the files get added to the remote
+     * directory by the indexing thread itself as the remote directory is
+     * backed by a non thread safe NodeBuilder.
+     * All uploads are completed when the directory gets closed, i.e. before
+     * the index update gets persisted.
+     */
+    private class CopyOnWriteDirectory extends BaseDirectory {
+        private final OakDirectory remote;
+        private final Directory local;
+        private final File localDir;
+
+        /**
+         * Files written in this session which are read from the local directory
+         */
+        private final Set<String> localFiles = Sets.newConcurrentHashSet();
+
+        /**
+         * Uploads of local files which have not yet been added to the remote directory
+         */
+        private final ConcurrentMap<String, Upload> pendingUploads = newConcurrentMap();
+
+        /**
+         * Local files which are uploaded or pending upload. Lucene never
+         * changes a file once written, so they need not be uploaded again
+         * when synced by later commits.
+         */
+        private final Set<String> syncedFiles = Sets.newConcurrentHashSet();
+
+        public CopyOnWriteDirectory(OakDirectory remote, Directory local, File localDir) throws IOException {
+            this.remote = remote;
+            this.local = local;
+            this.localDir = localDir;
+            setLockFactory(local.getLockFactory());
+        }
+
+        @Override
+        public String[] listAll() throws IOException {
+            Set<String> names = Sets.newHashSet(remote.listAll());
+            names.addAll(localFiles);
+            return names.toArray(new String[names.size()]);
+        }
+
+        @Override
+        public boolean fileExists(String name) throws IOException {
+            return localFiles.contains(name) || remote.fileExists(name);
+        }
+
+        @Override
+        public void deleteFile(String name) throws IOException {
+            //A pending upload of the file is simply discarded
+            Upload upload = pendingUploads.remove(name);
+            if (upload != null) {
+                upload.cancel(false);
+            }
+            syncedFiles.remove(name);
+            if (localFiles.remove(name)) {
+                local.deleteFile(name);
+            }
+            if (remote.fileExists(name)) {
+                remote.deleteFile(name);
+            }
+        }
+
+        @Override
+        public long fileLength(String name) throws IOException {
+            if (localFiles.contains(name)) {
+                return local.fileLength(name);
+            }
+            return remote.fileLength(name);
+        }
+
+        @Override
+        public IndexOutput createOutput(final String name, IOContext context) throws IOException {
+            if (fileExists(name)) {
+                deleteFile(name);
+            }
+            final IndexOutput out = local.createOutput(name, context);
+            localFiles.add(name);
+            return new IndexOutput() {
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+
+                @Override
+                public long getFilePointer() {
+                    return out.getFilePointer();
+                }
+
+                @SuppressWarnings("deprecation")
+                @Override
+                public void seek(long pos) throws IOException {
+                    out.seek(pos);
+                }
+
+                @Override
+                public long length() throws IOException {
+                    return out.length();
+                }
+
+                @Override
+                public void writeByte(byte b) throws IOException {
+                    out.writeByte(b);
+                }
+
+                @Override
+                public void writeBytes(byte[] b, int offset, int length) throws IOException {
+                    out.writeBytes(b, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public void sync(Collection<String> names) throws IOException {
+            local.sync(names);
+            for (String name : names) {
+                if (localFiles.contains(name) && syncedFiles.add(name)) {
+                    upload(name);
+                }
+            }
+            addUploadedFiles(false);
+        }
+
+        @Override
+        public IndexInput openInput(String name, IOContext context) throws IOException {
+            if (localFiles.contains(name)) {
+                return local.openInput(name, context);
+            }
+            return remote.openInput(name, context);
+        }
+
+        /**
+         * Completes all uploads and removes the local files. Closing the
+         * directory fails if any of the uploads failed.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                addUploadedFiles(true);
+                local.close();
+                remote.close();
+            } finally {
+                FileUtils.deleteQuietly(localDir);
+            }
+        }
+
+        private void upload(String name) {
+            Upload task = new Upload(name);
+            uploadQueueSize.incrementAndGet();
+            pendingUploads.put(name, task);
+            executor.execute(task);
+        }
+
+        private void addUploadedFiles(boolean wait) throws IOException {
+            for (Map.Entry<String, Upload> e : pendingUploads.entrySet()) {
+                String name = e.getKey();
+                Upload task = e.getValue();
+                if (wait) {
+                    //Run the upload right away if the executor has not got to it yet
+                    task.run();
+                } else if (!task.isDone()) {
+                    continue;
+                }
+                try {
+                    remote.addFile(name, getUninterruptibly(task));
+                    pendingUploads.remove(name, task);
+                } catch (ExecutionException ex) {
+                    throw new IOException("Failed to upload file [" + name + "] from "
+                            + localDir + " to the index", ex.getCause());
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "CopyOnWrite[" + localDir + "]";
+        }
+
+        /**
+         * Upload of a local file. A discarded upload is cancelled so that it
+         * does not run if the executor has not got to it yet.
+         */
+        private class Upload extends FutureTask<List<Blob>> {
+            Upload(final String name) {
+                super(new Callable<List<Blob>>() {
+                    @Override
+                    public List<Blob> call() throws Exception {
+                        long start = System.currentTimeMillis();
+                        IndexInput input = null;
+                        try {
+                            input = local.openInput(name, IOContext.READONCE);
+                            List<Blob> blobs = remote.createBlobs(name, input);
+                            uploadCount.incrementAndGet();
+                            uploadSize.addAndGet(input.length());
+                            uploadTime.addAndGet(System.currentTimeMillis() - start);
+                            return blobs;
+                        } finally {
+                            if (input != null) {
+                                input.close();
+                            }
+                        }
+                    }
+                });
+            }
+
+            /**
+             * Invoked exactly once when the upload completed, failed or got
+             * cancelled, including a cancel before it started.
+             */
+            @Override
+            protected void done() {
+                uploadQueueSize.decrementAndGet();
+            }
+        }
+    }
+
     private class DeleteOldDirOnClose extends FilterDirectory {
         private final File oldIndexDir;
 
@@ -396,6 +645,26 @@ class IndexCopier implements CopyOnReadStatsMBean {
         return downloadTime.get();
     }
 
+    @Override
+    public int getUploadCount() {
+        return uploadCount.get();
+    }
+
+    @Override
+    public int getUploadQueueSize() {
+        return uploadQueueSize.get();
+    }
+
+    @Override
+    public String getUploadSize() {
+        return IOUtils.humanReadableByteCount(uploadSize.get());
+    }
+
+    @Override
+    public long getUploadTime() {
+        return uploadTime.get();
+    }
+
     @Override
     public String getLocalIndexSize() {
         return IOUtils.humanReadableByteCount(FileUtils.sizeOfDirectory(indexRootDir));
@@ -62,6 +62,9 @@ import org.apache.lucene.analysis.miscellaneous.LimitTokenCountAnalyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.path.PathHierarchyTokenizerFactory;
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.index.sorter.NumericDocValuesSorter;
+import org.apache.lucene.index.sorter.Sorter;
+import org.apache.lucene.search.SortField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,6 +89,8 @@ import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstant
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INCLUDE_PROPERTY_NAMES;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INCLUDE_PROPERTY_TYPES;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INDEX_DATA_CHILD_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INDEX_SORT;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INDEX_SORT_DESCENDING;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.ORDERED_PROP_NAMES;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.PROP_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.PROP_NODE;
@@ -191,6 +196,14 @@ class IndexDefinition implements Aggregate.AggregateMapper{
 
     private final boolean hasCustomTikaConfig;
 
+    /**
+     * Name of the ordered property the index segments are sorted by, or
+     * null if the segments are not sorted
+     */
+    private final String indexSortProperty;
+
+    private final boolean indexSortDescending;
+
     private final int maxFieldLength;
 
     private final int maxExtractLength;
@@ -257,6 +270,8 @@ class IndexDefinition implements Aggregate.AggregateMapper{
         this.maxExtractLength = determineMaxExtractLength();
         this.suggesterUpdateFrequencyMinutes = getOptionalValue(defn, LuceneIndexConstants.SUGGEST_UPDATE_FREQUENCY_MINUTES, 60);
         this.scorerProviderName = getOptionalValue(defn, LuceneIndexConstants.PROP_SCORER_PROVIDER, null);
+        this.indexSortProperty = determineIndexSortProperty(defn);
+        this.indexSortDescending = getOptionalValue(defn, INDEX_SORT_DESCENDING, false);
     }
 
     public boolean isFullTextEnabled() {
@@ -361,6 +376,32 @@ class IndexDefinition implements Aggregate.AggregateMapper{
         return scorerProviderName;
     }
 
+    /**
+     * Returns the sort field matching the order of the sorted index
+     * segments, or null if the segments are not sorted.
+     */
+    @CheckForNull
+    public SortField getIndexSort() {
+        if (indexSortProperty == null) {
+            return null;
+        }
+        return new SortField(FieldNames.createDocValFieldName(indexSortProperty),
+                SortField.Type.LONG, indexSortDescending);
+    }
+
+    /**
+     * Returns the sorter used to sort the index segments when they are
+     * merged, or null if the segments are not sorted.
+     */
+    @CheckForNull
+    public Sorter getIndexSorter() {
+        if (indexSortProperty == null) {
+            return null;
+        }
+        return new NumericDocValuesSorter(FieldNames.createDocValFieldName(indexSortProperty),
+                !indexSortDescending);
+    }
+
     @Override
     public String toString() {
         return "Lucene Index : " + indexName;
@@ -1295,9 +1336,10 @@ class IndexDefinition implements Aggregate.AggregateMapper{
         }
 
         //Check if fulltext is false which indicates its a property index and
-        //hence confirm to V2 or above
+        //hence confirm to V2 or above. Fresh property indexes also store the
+        //paths as doc values, i.e. confirm to V3
         if (fulltext != null && !fulltext.getValue(Type.BOOLEAN)){
-            return IndexFormatVersion.max(result,IndexFormatVersion.V2);
+            return IndexFormatVersion.max(result,IndexFormatVersion.V3);
         }
 
         return result;
@@ -1307,6 +1349,24 @@ class IndexDefinition implements Aggregate.AggregateMapper{
         return IndexFormatVersion.getVersion(Ints.checkedCast(ps.getValue(Type.LONG)));
     }
 
+    @CheckForNull
+    private String determineIndexSortProperty(NodeState defn) {
+        String name = getOptionalValue(defn, INDEX_SORT, null);
+        if (name == null) {
+            return null;
+        }
+        for (IndexingRule rule : definedRules) {
+            PropertyDefinition pd = rule.getConfig(name);
+            if (pd != null && pd.ordered
+                    && (pd.getType() == PropertyType.LONG || pd.getType() == PropertyType.DATE)) {
+                return name;
+            }
+        }
+        log.warn("Ignoring the index sort of index [{}] as [{}] is not an ordered property " +
+                "of type Long or Date", indexName, name);
+        return null;
+    }
+
     private static boolean hasIndexingRules(NodeState defn) {
         return defn.getChildNode(LuceneIndexConstants.INDEX_RULES).exists();
     }
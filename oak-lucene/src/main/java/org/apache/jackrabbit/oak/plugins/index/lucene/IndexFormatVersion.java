@@ -27,7 +27,12 @@ public enum IndexFormatVersion {
     /**
      * Index confirming to Oak version upto 1.0.9
      */
-    V2(2);
+    V2(2),
+    /**
+     * Index which additionally stores the paths as doc values, so that they
+     * can be read without loading the stored fields
+     */
+    V3(3);
 
     private final int version;
 
@@ -55,6 +60,7 @@ public enum IndexFormatVersion {
         switch(version){
             case 1 : return V1;
             case 2 : return V2;
+            case 3 : return V3;
             default : throw new IllegalArgumentException("Unknown version : " + version);
         }
     }
@@ -17,6 +17,8 @@
 package org.apache.jackrabbit.oak.plugins.index.lucene;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Sets.newIdentityHashSet;
+import static org.apache.jackrabbit.JcrConstants.JCR_DATA;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INDEX_DATA_CHILD_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.PERSISTENCE_FILE;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.PERSISTENCE_NAME;
@@ -24,31 +26,64 @@ import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstant
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nullable;
 
+import com.google.common.base.Objects;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.ReadOnlyBuilder;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.Lock;
+import org.apache.lucene.store.LockFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 class IndexNode {
+    private static final Logger log = LoggerFactory.getLogger(IndexNode.class);
 
     static IndexNode open(String indexPath, NodeState root, NodeState defnNodeState,@Nullable IndexCopier cloner)
             throws IOException {
+        return open(indexPath, root, defnNodeState, cloner, null, null);
+    }
+
+    /**
+     * Open the index at {@code indexPath}. If {@code previous} is an earlier
+     * revision of the same index, the Lucene segments not changed since then
+     * are shared with {@code previous} instead of being opened again. Reads
+     * of the index files are recorded in {@code readStats}, if given.
+     */
+    static IndexNode open(String indexPath, NodeState root, NodeState defnNodeState,
+            @Nullable IndexCopier cloner, @Nullable IndexNode previous,
+            @Nullable IndexReadStats readStats) throws IOException {
         Directory directory = null;
         IndexDefinition definition = new IndexDefinition(root, defnNodeState, indexPath);
         NodeState data = defnNodeState.getChildNode(INDEX_DATA_CHILD_NAME);
         if (data.exists()) {
-            directory = new OakDirectory(new ReadOnlyBuilder(data), definition);
+            directory = new OakDirectory(new ReadOnlyBuilder(data), definition, readStats);
             if (cloner != null){
                 directory = cloner.wrap(indexPath, definition, directory);
+            } else {
+                if (previous != null && previous.canReopen(data)) {
+                    IndexNode index = previous.reopen(definition, data, directory);
+                    if (index != null) {
+                        return index;
+                    }
+                }
+                directory = new ReopenableDirectory(directory);
             }
         } else if (PERSISTENCE_FILE.equalsIgnoreCase(defnNodeState.getString(PERSISTENCE_NAME))) {
             String path = defnNodeState.getString(PERSISTENCE_PATH);
@@ -60,6 +95,7 @@ class IndexNode {
         if (directory != null) {
             try {
                 IndexNode index = new IndexNode(PathUtils.getName(indexPath), definition, directory);
+                index.data = data.exists() ? data : null;
                 directory = null; // closed in Index.close()
                 return index;
             } finally {
@@ -78,21 +114,62 @@ class IndexNode {
 
     private final Directory directory;
 
-    private final IndexReader reader;
+    private final DirectoryReader reader;
 
     private final IndexSearcher searcher;
 
+    /**
+     * Cache of the frequent query clauses, shared with the later revisions
+     * of this index opened by {@link #reopen}
+     */
+    private final QueryFilterCache filterCache;
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     private boolean closed = false;
 
+    /**
+     * Index data this index node was opened from, {@code null} if not
+     * backed by the repository.
+     */
+    private NodeState data;
+
+    /**
+     * Whether the directory is shared with a later revision of this index
+     */
+    private volatile boolean reopened;
+
+    /**
+     * Time in milliseconds it took to open this index node
+     */
+    private long openTime;
+
+    /**
+     * Number of Lucene segments shared with the previous revision of this index
+     */
+    private int reusedSegmentCount;
+
     IndexNode(String name, IndexDefinition definition, Directory directory)
             throws IOException {
         this.name = name;
         this.definition = definition;
         this.directory = directory;
+        long start = System.nanoTime();
         this.reader = DirectoryReader.open(directory);
+        this.openTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        this.searcher = new IndexSearcher(reader);
+        this.filterCache = new QueryFilterCache();
+    }
+
+    private IndexNode(String name, IndexDefinition definition, Directory directory,
+            DirectoryReader reader, NodeState data, QueryFilterCache filterCache) {
+        this.name = name;
+        this.definition = definition;
+        this.directory = directory;
+        this.reader = reader;
+        this.data = data;
         this.searcher = new IndexSearcher(reader);
+        this.filterCache = filterCache;
     }
 
     String getName() {
@@ -107,6 +184,25 @@ class IndexNode {
         return searcher;
     }
 
+    QueryFilterCache getFilterCache() {
+        return filterCache;
+    }
+
+    /**
+     * @return  time in milliseconds it took to open or reopen this index node
+     */
+    long getOpenTime() {
+        return openTime;
+    }
+
+    /**
+     * @return  number of Lucene segments shared with the previous
+     *          revision of this index
+     */
+    int getReusedSegmentCount() {
+        return reusedSegmentCount;
+    }
+
     boolean acquire() {
         lock.readLock().lock();
         if (closed) {
@@ -131,9 +227,164 @@ class IndexNode {
         }
 
         try {
-            reader.close();
+            // segments shared with a later revision stay open
+            // until that revision is closed too
+            reader.decRef();
         } finally {
-            directory.close();
+            if (!reopened) {
+                directory.close();
+            }
+        }
+    }
+
+    //------------------------------------------------------------< private >---
+
+    /**
+     * Segments can only be shared if the files present in both revisions
+     * of the index are the same. Lucene never modifies a file once written,
+     * but files with the same name are written again when reindexing.
+     */
+    private boolean canReopen(NodeState data) {
+        if (this.data == null || !(directory instanceof ReopenableDirectory)) {
+            return false;
+        }
+        for (ChildNodeEntry entry : this.data.getChildNodeEntries()) {
+            NodeState file = data.getChildNode(entry.getName());
+            if (file.exists() && !Objects.equal(
+                    entry.getNodeState().getProperty(JCR_DATA), file.getProperty(JCR_DATA))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open the next revision of this index, sharing the unchanged segments.
+     * @return  the next revision or {@code null} if it could not be opened
+     *          incrementally.
+     */
+    private IndexNode reopen(IndexDefinition definition, NodeState data, Directory next) {
+        long start = System.nanoTime();
+        ReopenableDirectory directory = (ReopenableDirectory) this.directory;
+        Directory current = directory.delegate;
+        directory.delegate = next;
+        try {
+            DirectoryReader reader = DirectoryReader.openIfChanged(this.reader);
+            if (reader == null) {
+                // no new commit, share the reader
+                this.reader.incRef();
+                reader = this.reader;
+            }
+            reopened = true;
+            IndexNode index = new IndexNode(name, definition, directory, reader, data, filterCache);
+            index.openTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            index.reusedSegmentCount = countSharedSegments(this.reader, reader);
+            log.debug("Reopened index {} in {} ms sharing {} of {} segments", name,
+                    index.openTime, index.reusedSegmentCount, reader.leaves().size());
+            return index;
+        } catch (IOException e) {
+            log.warn("Failed to reopen index " + name + ". Opening it again.", e);
+            directory.delegate = current;
+            return null;
+        }
+    }
+
+    private static int countSharedSegments(DirectoryReader previous, DirectoryReader next) {
+        Set<Object> keys = newIdentityHashSet();
+        for (AtomicReaderContext context : previous.leaves()) {
+            keys.add(context.reader().getCoreCacheKey());
+        }
+        int count = 0;
+        for (AtomicReaderContext context : next.leaves()) {
+            if (keys.contains(context.reader().getCoreCacheKey())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Directory delegating to the revision of the index data it was last
+     * pointed to. {@link DirectoryReader#openIfChanged(DirectoryReader)}
+     * requires the next revision of an index to be read from the same
+     * directory instance as the previous one. The segments already open
+     * keep reading from the revision they were opened from.
+     */
+    private static class ReopenableDirectory extends Directory {
+        private volatile Directory delegate;
+
+        ReopenableDirectory(Directory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] listAll() throws IOException {
+            return delegate.listAll();
+        }
+
+        @Override
+        public boolean fileExists(String name) throws IOException {
+            return delegate.fileExists(name);
+        }
+
+        @Override
+        public void deleteFile(String name) throws IOException {
+            delegate.deleteFile(name);
+        }
+
+        @Override
+        public long fileLength(String name) throws IOException {
+            return delegate.fileLength(name);
+        }
+
+        @Override
+        public IndexOutput createOutput(String name, IOContext context) throws IOException {
+            return delegate.createOutput(name, context);
+        }
+
+        @Override
+        public void sync(Collection<String> names) throws IOException {
+            delegate.sync(names);
+        }
+
+        @Override
+        public IndexInput openInput(String name, IOContext context) throws IOException {
+            return delegate.openInput(name, context);
+        }
+
+        @Override
+        public Lock makeLock(String name) {
+            return delegate.makeLock(name);
+        }
+
+        @Override
+        public void clearLock(String name) throws IOException {
+            delegate.clearLock(name);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public void setLockFactory(LockFactory lockFactory) throws IOException {
+            delegate.setLockFactory(lockFactory);
+        }
+
+        @Override
+        public LockFactory getLockFactory() {
+            return delegate.getLockFactory();
+        }
+
+        @Override
+        public String getLockID() {
+            return delegate.getLockID();
+        }
+
+        @Override
+        public String toString() {
+            return "Reopenable(" + delegate + ')';
         }
     }
 
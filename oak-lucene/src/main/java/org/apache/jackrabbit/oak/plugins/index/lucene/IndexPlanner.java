@@ -317,6 +317,7 @@ class IndexPlanner {
                 .setPathPrefix(getPathPrefix())
                 .setDelayed(true) //Lucene is always async
                 .setAttribute(LucenePropertyIndex.ATTR_PLAN_RESULT, result)
+                .setPlanName(indexPath)
                 .setEstimatedEntryCount(estimatedEntryCount());
     }
 
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the reads of Lucene index files stored in the repository.
+ * The bytes requested by Lucene are compared to the bytes actually read from
+ * the underlying blobs, which gives the read amplification of the chunked
+ * storage.
+ */
+public class IndexReadStats {
+
+    private final AtomicLong requestedBytes = new AtomicLong();
+
+    private final AtomicLong readBytes = new AtomicLong();
+
+    private final AtomicLong readCount = new AtomicLong();
+
+    /**
+     * Records the bytes requested by an input since its last update along
+     * with the bytes of a blob read, if any. Inputs batch their updates as
+     * the statistics are shared by all concurrent readers.
+     */
+    void read(long requested, long bytes) {
+        if (requested > 0) {
+            requestedBytes.addAndGet(requested);
+        }
+        if (bytes > 0) {
+            readBytes.addAndGet(bytes);
+            readCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of bytes requested by Lucene
+     */
+    public long getRequestedBytes() {
+        return requestedBytes.get();
+    }
+
+    /**
+     * @return number of bytes read from the blobs
+     */
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    /**
+     * @return number of reads from the blobs
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * @return ratio of the bytes read from the blobs to the bytes requested,
+     *         or zero if nothing was requested yet
+     */
+    public double getReadAmplification() {
+        long requested = requestedBytes.get();
+        return requested == 0 ? 0 : (double) readBytes.get() / requested;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requested: %d bytes, read: %d bytes in %d reads, amplification: %.2f",
+                getRequestedBytes(), getReadBytes(), getReadCount(), getReadAmplification());
+    }
+
+}
@@ -55,6 +55,10 @@ class IndexTracker {
 
     private final IndexCopier cloner;
 
+    private final IndexReadStats readStats = new IndexReadStats();
+
+    private final QueryBatchStats queryBatchStats = new QueryBatchStats();
+
     private NodeState root = EMPTY_NODE;
 
     private volatile Map<String, IndexNode> indices = emptyMap();
@@ -87,12 +91,13 @@ class IndexTracker {
         List<Editor> editors = newArrayListWithCapacity(original.size());
         for (Map.Entry<String, IndexNode> entry : original.entrySet()) {
             final String path = entry.getKey();
+            final IndexNode previous = entry.getValue();
 
             editors.add(new SubtreeEditor(new DefaultEditor() {
                 @Override
                 public void leave(NodeState before, NodeState after) {
                     try {
-                        IndexNode index = IndexNode.open(path, root, after, cloner);
+                        IndexNode index = IndexNode.open(path, root, after, cloner, previous, readStats);
                         log.debug("Index found to be updated at [{}]. Reopening the IndexNode", path);
                         updates.put(path, index); // index can be null
                     } catch (IOException e) {
@@ -135,6 +140,14 @@ class IndexTracker {
         }
     }
 
+    IndexReadStats getReadStats() {
+        return readStats;
+    }
+
+    QueryBatchStats getQueryBatchStats() {
+        return queryBatchStats;
+    }
+
     Set<String> getIndexNodePaths(){
         return indices.keySet();
     }
@@ -156,7 +169,7 @@ class IndexTracker {
 
         try {
             if (isLuceneIndexNode(node)) {
-                index = IndexNode.open(path, root, node, cloner);
+                index = IndexNode.open(path, root, node, cloner, null, readStats);
                 if (index != null) {
                     checkState(index.acquire());
                     indices = ImmutableMap.<String, IndexNode>builder()
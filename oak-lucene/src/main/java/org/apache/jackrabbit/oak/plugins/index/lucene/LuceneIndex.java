@@ -48,6 +48,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.annotation.Nullable;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
@@ -250,7 +251,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
             // we only restrict non-full-text conditions if there is
             // no relative property in the full-text constraint
             boolean nonFullTextConstraints = parent.isEmpty();
-            String planDesc = getLuceneRequest(filter, null, nonFullTextConstraints, index.getDefinition()) + " ft:(" + ft + ")";
+            String planDesc = getLuceneRequest(filter, null, nonFullTextConstraints, index.getDefinition(), null) + " ft:(" + ft + ")";
             if (!parent.isEmpty()) {
                 planDesc += " parent:" + parent;
             }
@@ -342,7 +343,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
                 try {
                     IndexSearcher searcher = indexNode.getSearcher();
                     LuceneRequestFacade luceneRequestFacade = getLuceneRequest(filter, searcher.getIndexReader(),
-                            nonFullTextConstraints, indexNode.getDefinition());
+                            nonFullTextConstraints, indexNode.getDefinition(), indexNode.getFilterCache());
                     if (luceneRequestFacade.getLuceneRequest() instanceof Query) {
                         Query query = (Query) luceneRequestFacade.getLuceneRequest();
                         TopDocs docs;
@@ -494,10 +495,13 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
      *            path, node type, and so on) should be added to the Lucene
      *            query
      * @param indexDefinition nodestate that contains the index definition
+     * @param filterCache cache for the node type and path restrictions, or
+     *            {@code null} if they should not be cached
      * @return the Lucene query
      */
     private static LuceneRequestFacade getLuceneRequest(Filter filter, IndexReader reader,
-                                                        boolean nonFullTextConstraints, IndexDefinition indexDefinition) {
+                                                        boolean nonFullTextConstraints, IndexDefinition indexDefinition,
+                                                        @Nullable QueryFilterCache filterCache) {
         List<Query> qs = new ArrayList<Query>();
         Analyzer analyzer = indexDefinition.getAnalyzer();
         FullTextExpression ft = filter.getFullTextConstraint();
@@ -540,7 +544,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
             }
         } else if (nonFullTextConstraints) {
             addNonFullTextConstraints(qs, filter, reader, analyzer,
-                    indexDefinition);
+                    indexDefinition, filterCache);
         }
         if (qs.size() == 0) {
             return new LuceneRequestFacade<Query>(new MatchAllDocsQuery());
@@ -556,9 +560,10 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
     }
 
     private static void addNonFullTextConstraints(List<Query> qs,
-            Filter filter, IndexReader reader, Analyzer analyzer, IndexDefinition indexDefinition) {
+            Filter filter, IndexReader reader, Analyzer analyzer, IndexDefinition indexDefinition,
+            @Nullable QueryFilterCache filterCache) {
         if (!filter.matchesAllTypes()) {
-            addNodeTypeConstraints(qs, filter);
+            addNodeTypeConstraints(qs, filter, filterCache);
         }
 
         String path = filter.getPath();
@@ -571,7 +576,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
                 if (!path.endsWith("/")) {
                     path += "/";
                 }
-                qs.add(new PrefixQuery(newPathTerm(path)));
+                qs.add(cached(new PrefixQuery(newPathTerm(path)), filterCache));
             }
             break;
         case DIRECT_CHILDREN:
@@ -579,7 +584,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
                 if (!path.endsWith("/")) {
                     path += "/";
                 }
-                qs.add(new PrefixQuery(newPathTerm(path)));
+                qs.add(cached(new PrefixQuery(newPathTerm(path)), filterCache));
             }
             break;
         case EXACT:
@@ -758,7 +763,8 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
         qs.add(bq);
     }
 
-    private static void addNodeTypeConstraints(List<Query> qs, Filter filter) {
+    private static void addNodeTypeConstraints(List<Query> qs, Filter filter,
+                                               @Nullable QueryFilterCache filterCache) {
         BooleanQuery bq = new BooleanQuery();
         for (String type : filter.getPrimaryTypes()) {
             bq.add(new TermQuery(new Term(JCR_PRIMARYTYPE, type)), SHOULD);
@@ -766,7 +772,11 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
         for (String type : filter.getMixinTypes()) {
             bq.add(new TermQuery(new Term(JCR_MIXINTYPES, type)), SHOULD);
         }
-        qs.add(bq);
+        qs.add(cached(bq, filterCache));
+    }
+
+    private static Query cached(Query query, @Nullable QueryFilterCache filterCache) {
+        return filterCache != null ? filterCache.getQuery(query) : query;
     }
 
     static Query getFullTextQuery(FullTextExpression ft, final Analyzer analyzer, final IndexReader reader) {
@@ -255,4 +255,17 @@ public interface LuceneIndexConstants {
      * 'IS NOT NULL' constraint
      */
     String PROP_NOT_NULL_CHECK_ENABLED = "notNullCheckEnabled";
+
+    /**
+     * Name of an ordered property of type Long or Date by which the index
+     * segments are sorted when they are merged. Queries ordering by just
+     * this property then only need to read the head of each sorted segment.
+     */
+    String INDEX_SORT = "indexSort";
+
+    /**
+     * Boolean property indicating that the segments are sorted by the
+     * {@link #INDEX_SORT} property in descending order. Defaults to false.
+     */
+    String INDEX_SORT_DESCENDING = "indexSortDescending";
 }
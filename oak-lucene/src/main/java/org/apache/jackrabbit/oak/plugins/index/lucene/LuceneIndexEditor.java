@@ -22,6 +22,7 @@ import static org.apache.jackrabbit.oak.commons.PathUtils.getName;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newDepthField;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newFulltextField;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newAncestorsField;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newPathDocValuesField;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newPathField;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newPropertyField;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.TermFactory.newPathTerm;
@@ -49,6 +50,7 @@ import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.lucene.Aggregate.Matcher;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorContext.AggregatedFields;
 import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.plugins.tree.TreeFactory;
 import org.apache.jackrabbit.oak.spi.commit.Editor;
@@ -64,6 +66,7 @@ import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.BytesRef;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
@@ -112,16 +115,48 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
 
     private final MatcherState matcherState;
 
+    /**
+     * Tree of the subtree root for editors created by a {@link ParallelReindex}
+     * worker, {@code null} otherwise.
+     */
+    private final Tree subtreeRoot;
+
+    /**
+     * Flag indicating that the child nodes have already been reindexed
+     * by a {@link ParallelReindex}.
+     */
+    private boolean childrenReindexed;
+
     LuceneIndexEditor(NodeState root, NodeBuilder definition,
         IndexUpdateCallback updateCallback) throws CommitFailedException {
+        this(root, new LuceneIndexEditorContext(root, definition, updateCallback));
+    }
+
+    LuceneIndexEditor(NodeState root, LuceneIndexEditorContext context) {
         this.parent = null;
         this.name = null;
         this.path = "/";
-        this.context = new LuceneIndexEditorContext(root, definition,
-                updateCallback);
+        this.context = context;
+        this.root = root;
+        this.isDeleted = false;
+        this.matcherState = MatcherState.NONE;
+        this.subtreeRoot = null;
+    }
+
+    /**
+     * Creates an editor which reindexes the subtree at the given path
+     * on behalf of a {@link ParallelReindex} worker.
+     */
+    LuceneIndexEditor(LuceneIndexEditorContext context, NodeState root,
+                      String path, Tree subtreeRoot) {
+        this.parent = null;
+        this.name = getName(path);
+        this.path = path;
+        this.context = context;
         this.root = root;
         this.isDeleted = false;
         this.matcherState = MatcherState.NONE;
+        this.subtreeRoot = subtreeRoot;
     }
 
     private LuceneIndexEditor(LuceneIndexEditor parent, String name,
@@ -134,6 +169,7 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
         this.root = parent.root;
         this.isDeleted = isDeleted;
         this.matcherState = matcherState;
+        this.subtreeRoot = null;
     }
 
     public String getPath() {
@@ -147,11 +183,14 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
     @Override
     public void enter(NodeState before, NodeState after)
             throws CommitFailedException {
-        if (EmptyNodeState.MISSING_NODE == before && parent == null){
+        if (EmptyNodeState.MISSING_NODE == before && parent == null && subtreeRoot == null){
             context.enableReindexMode();
         }
 
-        if (parent == null){
+        if (subtreeRoot != null) {
+            afterTree = subtreeRoot;
+            beforeTree = TreeFactory.createReadOnlyTree(before);
+        } else if (parent == null){
             afterTree = TreeFactory.createReadOnlyTree(after);
             beforeTree = TreeFactory.createReadOnlyTree(before);
         } else {
@@ -166,6 +205,12 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
         if (indexingRule != null) {
             currentMatchers = indexingRule.getAggregate().createMatchers(this);
         }
+
+        if (parent == null && subtreeRoot == null
+                && context.isReindex() && context.getReindexThreads() > 1) {
+            new ParallelReindex(context, root, context.getReindexThreads()).reindex(afterTree, after);
+            childrenReindexed = true;
+        }
     }
 
     @Override
@@ -185,7 +230,7 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
             m.markRootDirty();
         }
 
-        if (parent == null) {
+        if (parent == null && subtreeRoot == null) {
             try {
                 context.closeWriter();
             } catch (IOException e) {
@@ -218,6 +263,9 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
 
     @Override
     public Editor childNodeAdded(String name, NodeState after) {
+        if (childrenReindexed) {
+            return null;
+        }
         return new LuceneIndexEditor(this, name, getMatcherState(name, after), false);
     }
 
@@ -320,6 +368,9 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
 
         Document document = new Document();
         document.add(newPathField(path));
+        if (getDefinition().getVersion().isAtLeast(IndexFormatVersion.V3)) {
+            document.add(newPathDocValuesField(path));
+        }
         String name = getName(path);
 
         //TODO Possibly index nodeName without tokenization for node name based queries
@@ -349,6 +400,13 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
             document.add(suggestField);
         }
 
+        // sorting the segments needs a value for every document. Documents
+        // without the property get 0, which is also how they sort at query time
+        SortField indexSort = getDefinition().getIndexSort();
+        if (indexSort != null && document.getField(indexSort.getField()) == null) {
+            document.add(new NumericDocValuesField(indexSort.getField(), 0));
+        }
+
         //TODO Boost at document level
 
         return document;
@@ -616,8 +674,14 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
 
     private boolean indexAggregates(final String path, final List<Field> fields,
                                     final NodeState state) throws CommitFailedException {
+        Aggregate aggregate = indexingRule.getAggregate();
+        if (aggregate.getIncludes().isEmpty()) {
+            return false;
+        }
+
+        long start = System.nanoTime();
         final AtomicBoolean dirtyFlag = new AtomicBoolean();
-        indexingRule.getAggregate().collectAggregates(state, new Aggregate.ResultCollector() {
+        aggregate.collectAggregates(state, new Aggregate.ResultCollector() {
             @Override
             public void onResult(Aggregate.NodeIncludeResult result) throws CommitFailedException {
                 boolean dirty = indexAggregatedNode(path, fields, result);
@@ -641,6 +705,7 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
                 }
             }
         });
+        context.getAggregateStats().evaluated(System.nanoTime() - start);
         return dirtyFlag.get();
     }
 
@@ -655,6 +720,24 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
      */
     private boolean indexAggregatedNode(String path, List<Field> fields, Aggregate.NodeIncludeResult result)
             throws CommitFailedException {
+        //The same node is aggregated by each of its aggregating ancestors. The
+        //fields only depend on the aggregated node, the relative include it
+        //was matched by and the rule of the aggregate root
+        String aggregatedNodePath = PathUtils.concat(path, result.nodePath);
+        String memoKey = indexingRule.getNodeTypeName() + '|' + result.rootIncludePath
+                + '|' + aggregatedNodePath;
+        AggregatedFields aggregatedFields = context.getAggregatedFields(memoKey, result.nodeState);
+        if (aggregatedFields == null) {
+            aggregatedFields = newAggregatedFields(aggregatedNodePath, result);
+            context.putAggregatedFields(memoKey, aggregatedFields);
+        }
+        fields.addAll(aggregatedFields.fields);
+        return aggregatedFields.dirty;
+    }
+
+    private AggregatedFields newAggregatedFields(String aggregatedNodePath, Aggregate.NodeIncludeResult result)
+            throws CommitFailedException {
+        List<Field> fields = new ArrayList<Field>();
         //rule for node being aggregated might be null if such nodes
         //are not indexed on there own. In such cases we rely in current
         //rule for some checks
@@ -680,11 +763,10 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
             }
 
             if (Type.BINARY == property.getType()) {
-                String aggreagtedNodePath = PathUtils.concat(path, result.nodePath);
                 //Here the fulltext is being created for aggregate root hence nodePath passed
                 //should be null
                 String nodePath = result.isRelativeNode() ? result.rootIncludePath : null;
-                fields.addAll(newBinary(property, result.nodeState, nodePath, aggreagtedNodePath + "@" + pname));
+                fields.addAll(newBinary(property, result.nodeState, nodePath, aggregatedNodePath + "@" + pname));
                 dirty = true;
             } else {
                 PropertyDefinition pd = null;
@@ -707,7 +789,7 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
                 }
             }
         }
-        return dirty;
+        return new AggregatedFields(result.nodeState, fields, dirty);
     }
 
     /**
@@ -772,7 +854,17 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
     }
 
     private String parseStringValue(Blob v, Metadata metadata, String path) {
-        WriteOutContentHandler handler = new WriteOutContentHandler(context.getDefinition().getMaxExtractLength());
+        int maxExtractLength = context.getDefinition().getMaxExtractLength();
+        ExtractedTextCache cache = context.getExtractedTextCache();
+        String configId = context.getTikaConfigId();
+        String text = cache.get(v, configId, maxExtractLength);
+        if (text != null) {
+            return text;
+        }
+
+        WriteOutContentHandler handler = new WriteOutContentHandler(maxExtractLength);
+        boolean truncated = false;
+        long start = System.nanoTime();
         try {
             InputStream stream = v.getNewStream();
             try {
@@ -784,7 +876,10 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
             // Capture and ignore errors caused by extraction libraries
             // not being present. This is equivalent to disabling
             // selected media types in configuration, so we can simply
-            // ignore these errors.
+            // ignore these errors. The result is not cached as the
+            // libraries might be available later on.
+            cache.recordExtraction(System.nanoTime() - start, false);
+            return handler.toString();
         } catch (Throwable t) {
             // Capture and report any other full text extraction problems.
             // The special STOP exception is used for normal termination.
@@ -794,10 +889,20 @@ public class LuceneIndexEditor implements IndexEditor, Aggregate.AggregateRoot {
                         + " This is a fairly common case, and nothing to"
                         + " worry about. The stack trace is included to"
                         + " help improve the text extraction feature.", t);
-                return "TextExtractionError";
+                cache.recordExtraction(System.nanoTime() - start, true);
+                if (ExtractedTextCache.isParserFailure(t)) {
+                    //Errors reading the binary might be transient, so
+                    //only remember that the parser failed
+                    cache.putError(v, configId);
+                }
+                return ExtractedTextCache.TEXT_EXTRACTION_ERROR;
             }
+            truncated = true;
         }
-        return handler.toString();
+        cache.recordExtraction(System.nanoTime() - start, false);
+        text = handler.toString();
+        cache.put(v, configId, text, maxExtractLength, truncated);
+        return text;
     }
 
 }
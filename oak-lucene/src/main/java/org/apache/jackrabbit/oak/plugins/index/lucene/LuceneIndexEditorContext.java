@@ -26,21 +26,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Set;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.SuggestHelper;
+import org.apache.jackrabbit.oak.plugins.segment.SegmentNodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.util.ISO8601;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.sorter.Sorter;
+import org.apache.lucene.index.sorter.SortingMergePolicy;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.tika.config.TikaConfig;
@@ -50,11 +58,23 @@ import org.apache.tika.parser.Parser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
 public class LuceneIndexEditorContext {
 
     private static final Logger log = LoggerFactory
             .getLogger(LuceneIndexEditorContext.class);
 
+    /**
+     * Maximum total length in characters of the field values memoized for
+     * aggregated nodes during an indexing run. The values include the text
+     * extracted from binaries. Zero disables the memo.
+     */
+    static final long AGGREGATE_MEMO_WEIGHT = Long.getLong("oak.lucene.aggregateMemoWeight",
+            4 * 1024 * 1024);
+
     private static IndexWriterConfig getIndexWriterConfig(IndexDefinition definition) {
         // FIXME: Hack needed to make Lucene work in an OSGi environment
         Thread thread = Thread.currentThread();
@@ -66,6 +86,10 @@ public class LuceneIndexEditorContext {
             if (definition.getCodec() != null) {
                 config.setCodec(definition.getCodec());
             }
+            Sorter sorter = definition.getIndexSorter();
+            if (sorter != null) {
+                config.setMergePolicy(new SortingMergePolicy(config.getMergePolicy(), sorter));
+            }
             return config;
         } finally {
             thread.setContextClassLoader(loader);
@@ -114,13 +138,68 @@ public class LuceneIndexEditorContext {
 
     private Parser parser;
 
+    /**
+     * Identifier of the custom Tika configuration of the index, or
+     * {@code null} if the default one is used.
+     */
+    private String tikaConfigId;
+
+    private boolean tikaConfigIdLoaded;
+
     /**
      * The media types supported by the parser used.
      */
     private Set<MediaType> supportedMediaTypes;
 
+    private final ExtractedTextCache extractedTextCache;
+
+    private final AggregateStats aggregateStats;
+
+    /**
+     * Fields created for the aggregated nodes in this indexing run. A node is
+     * aggregated by each of its ancestors up to the recursion limit of the
+     * aggregation rules, which would otherwise read its properties (and
+     * extract its binaries) once per ancestor.
+     */
+    private final Cache<String, AggregatedFields> aggregateMemo = CacheBuilder.newBuilder()
+            .maximumWeight(AGGREGATE_MEMO_WEIGHT)
+            .weigher(new Weigher<String, AggregatedFields>() {
+                @Override
+                public int weigh(String key, AggregatedFields value) {
+                    return value.weight;
+                }
+            })
+            .build();
+
+    private final int reindexThreads;
+
+    /**
+     * Directory used instead of the one configured in the index definition,
+     * or {@code null} if the configured one should be used.
+     */
+    private final Directory directory;
+
+    /**
+     * Copier used to write the index via a local directory, or {@code null}
+     * if the index is written directly.
+     */
+    private final IndexCopier indexCopier;
+
+    private Directory copyOnWriteDirectory;
+
     LuceneIndexEditorContext(NodeState root, NodeBuilder definition, IndexUpdateCallback updateCallback) {
+        this(root, definition, updateCallback, null, new ExtractedTextCache(null), new AggregateStats(), 1);
+    }
+
+    LuceneIndexEditorContext(NodeState root, NodeBuilder definition, IndexUpdateCallback updateCallback,
+                             @Nullable IndexCopier indexCopier, ExtractedTextCache extractedTextCache,
+                             AggregateStats aggregateStats, int reindexThreads) {
         this.definitionBuilder = definition;
+        this.indexCopier = indexCopier;
+        this.extractedTextCache = extractedTextCache;
+        this.aggregateStats = aggregateStats;
+        this.reindexThreads = reindexThreads;
+        this.directory = null;
         this.definition = new IndexDefinition(root, definition);
         this.config = getIndexWriterConfig(this.definition);
         this.indexedNodes = 0;
@@ -130,6 +209,28 @@ public class LuceneIndexEditorContext {
         }
     }
 
+    /**
+     * Creates a context for a worker of a {@link ParallelReindex} which
+     * writes into the given local directory.
+     */
+    private LuceneIndexEditorContext(LuceneIndexEditorContext parent, Directory directory,
+                                     IndexUpdateCallback updateCallback) {
+        this.definitionBuilder = null;
+        this.indexCopier = null;
+        this.extractedTextCache = parent.extractedTextCache;
+        this.aggregateStats = parent.aggregateStats;
+        this.reindexThreads = 1;
+        this.directory = directory;
+        this.definition = parent.definition;
+        this.config = getIndexWriterConfig(definition);
+        this.indexedNodes = 0;
+        this.updateCallback = updateCallback;
+    }
+
+    LuceneIndexEditorContext newWorkerContext(Directory directory, IndexUpdateCallback updateCallback) {
+        return new LuceneIndexEditorContext(this, directory, updateCallback);
+    }
+
     Parser getParser() {
         if (parser == null){
             parser = initializeTikaParser(definition);
@@ -137,9 +238,41 @@ public class LuceneIndexEditorContext {
         return parser;
     }
 
+    /**
+     * Returns the identifier of the Tika configuration for the
+     * {@link ExtractedTextCache}, or {@code null} for the default one.
+     */
+    @CheckForNull
+    String getTikaConfigId() {
+        if (!tikaConfigIdLoaded) {
+            if (definition.hasCustomTikaConfig()) {
+                InputStream is = definition.getTikaConfig();
+                try {
+                    tikaConfigId = ExtractedTextCache.getConfigId(IOUtils.toByteArray(is));
+                } catch (IOException e) {
+                    //Don't share the cache entries with other indexes
+                    log.warn("Tika configuration not available : " + definition, e);
+                    tikaConfigId = definition.getIndexName();
+                } finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+            tikaConfigIdLoaded = true;
+        }
+        return tikaConfigId;
+    }
+
     IndexWriter getWriter() throws IOException {
         if (writer == null) {
-            writer = new IndexWriter(newIndexDirectory(definition, definitionBuilder), config);
+            Directory dir = directory;
+            if (dir == null) {
+                dir = newIndexDirectory(definition, definitionBuilder);
+                if (indexCopier != null && dir instanceof OakDirectory) {
+                    dir = indexCopier.wrapForWrite(definition, (OakDirectory) dir);
+                    copyOnWriteDirectory = dir;
+                }
+            }
+            writer = new IndexWriter(dir, config);
         }
         return writer;
     }
@@ -156,11 +289,23 @@ public class LuceneIndexEditorContext {
             getWriter();
         }
 
-        if (writer != null) {
+        if (writer != null && definitionBuilder == null) {
+            //Local index of a reindex worker which gets added to
+            //the actual index later
+            writer.close();
+        } else if (writer != null) {
 
             updateSuggester();
 
-            writer.close();
+            try {
+                writer.close();
+            } finally {
+                //Completes the pending uploads of the local index files
+                if (copyOnWriteDirectory != null) {
+                    copyOnWriteDirectory.close();
+                    copyOnWriteDirectory = null;
+                }
+            }
 
             //OAK-2029 Record the last updated status so
             //as to make IndexTracker detect changes when index
@@ -222,6 +367,18 @@ public class LuceneIndexEditorContext {
         return indexedNodes;
     }
 
+    void addIndexedNodes(long count) {
+        indexedNodes += count;
+    }
+
+    boolean isReindex() {
+        return reindex;
+    }
+
+    int getReindexThreads() {
+        return reindexThreads;
+    }
+
     public boolean isSupportedMediaType(String type) {
         if (supportedMediaTypes == null) {
             supportedMediaTypes = getParser().getSupportedTypes(null);
@@ -237,6 +394,61 @@ public class LuceneIndexEditorContext {
         return definition;
     }
 
+    ExtractedTextCache getExtractedTextCache() {
+        return extractedTextCache;
+    }
+
+    AggregateStats getAggregateStats() {
+        return aggregateStats;
+    }
+
+    /**
+     * Returns the fields memoized for an aggregated node, provided the node
+     * has not changed since.
+     *
+     * @param key key of the aggregated node, which includes its path
+     * @param state current state of the aggregated node
+     * @return the memoized fields, or {@code null} if not found
+     */
+    @CheckForNull
+    AggregatedFields getAggregatedFields(String key, NodeState state) {
+        AggregatedFields cached = aggregateMemo.getIfPresent(key);
+        if (cached != null && isSameState(cached.state, state)) {
+            aggregateStats.memoHit();
+            return cached;
+        }
+        aggregateStats.memoMiss();
+        return null;
+    }
+
+    void putAggregatedFields(String key, AggregatedFields fields) {
+        if (AGGREGATE_MEMO_WEIGHT > 0) {
+            aggregateMemo.put(key, fields);
+        }
+    }
+
+    /**
+     * Cheap check whether two states are the same, without comparing their
+     * content: either the same instance, or the same segment record. Other
+     * states are considered different.
+     */
+    private static boolean isSameState(NodeState a, NodeState b) {
+        if (a == b) {
+            return true;
+        }
+        return a instanceof SegmentNodeState && b instanceof SegmentNodeState
+                && ((SegmentNodeState) a).getRecordId().equals(
+                        ((SegmentNodeState) b).getRecordId());
+    }
+
+    /**
+     * Returns the Tika parser used for indexes which do not define
+     * their own Tika configuration.
+     */
+    public static Parser getDefaultParser() {
+        return defaultParser;
+    }
+
     private static Parser initializeTikaParser(IndexDefinition definition) {
         if (definition.hasCustomTikaConfig()){
             InputStream is = definition.getTikaConfig();
@@ -277,4 +489,35 @@ public class LuceneIndexEditorContext {
         }
         return TikaConfig.getDefaultConfig();
     }
+
+    /**
+     * Fields created for an aggregated node.
+     */
+    static class AggregatedFields {
+        final NodeState state;
+        final List<Field> fields;
+        /**
+         * True if the node has content relevant for the index, even if
+         * no field could be created for it (e.g. unsupported binaries)
+         */
+        final boolean dirty;
+        /**
+         * Total length of the field values, as weight in the memo
+         */
+        final int weight;
+
+        AggregatedFields(NodeState state, List<Field> fields, boolean dirty) {
+            this.state = state;
+            this.fields = fields;
+            this.dirty = dirty;
+            long length = 1;
+            for (Field field : fields) {
+                String value = field.stringValue();
+                if (value != null) {
+                    length += value.length();
+                }
+            }
+            this.weight = (int) Math.min(length, Integer.MAX_VALUE);
+        }
+    }
 }
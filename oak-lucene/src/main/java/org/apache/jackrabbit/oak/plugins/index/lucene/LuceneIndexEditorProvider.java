@@ -17,11 +17,10 @@
 package org.apache.jackrabbit.oak.plugins.index.lucene;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.TYPE_LUCENE;
 
-import org.apache.felix.scr.annotations.Component;
-import org.apache.felix.scr.annotations.Service;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
@@ -31,25 +30,68 @@ import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 
 /**
- * Service that provides Lucene based {@link IndexEditor}s
+ * Service that provides Lucene based {@link IndexEditor}s. In an OSGi
+ * environment it is registered by {@link LuceneIndexProviderService}.
  * 
  * @see LuceneIndexEditor
  * @see IndexEditorProvider
  * 
  */
-@Component
-@Service(IndexEditorProvider.class)
 public class LuceneIndexEditorProvider implements IndexEditorProvider {
+    private final IndexCopier indexCopier;
+
+    private final ExtractedTextCache extractedTextCache;
+
+    private final AggregateStats aggregateStats = new AggregateStats();
+
+    private final int reindexThreads;
+
+    public LuceneIndexEditorProvider() {
+        this(new ExtractedTextCache(null));
+    }
+
+    public LuceneIndexEditorProvider(ExtractedTextCache extractedTextCache) {
+        this(extractedTextCache, 1);
+    }
+
+    /**
+     * @param extractedTextCache cache for the text extracted from binaries
+     * @param reindexThreads number of threads used to reindex an index. With
+     *                       more than one thread the content is partitioned
+     *                       and indexed concurrently, see {@link ParallelReindex}
+     */
+    public LuceneIndexEditorProvider(ExtractedTextCache extractedTextCache, int reindexThreads) {
+        this(null, extractedTextCache, reindexThreads);
+    }
+
+    /**
+     * @param indexCopier if not null the index files are written to a local
+     *                    directory first and uploaded in the background,
+     *                    see {@link IndexCopier#wrapForWrite}
+     */
+    public LuceneIndexEditorProvider(@Nullable IndexCopier indexCopier,
+                                     ExtractedTextCache extractedTextCache, int reindexThreads) {
+        this.indexCopier = indexCopier;
+        this.extractedTextCache = extractedTextCache;
+        this.reindexThreads = reindexThreads;
+    }
 
     @Override
     public Editor getIndexEditor(
             @Nonnull String type, @Nonnull NodeBuilder definition, @Nonnull NodeState root, @Nonnull IndexUpdateCallback callback)
             throws CommitFailedException {
         if (TYPE_LUCENE.equals(type)) {
-            return new LuceneIndexEditor(root, definition, callback);
+            return new LuceneIndexEditor(root, new LuceneIndexEditorContext(root, definition,
+                    callback, indexCopier, extractedTextCache, aggregateStats, reindexThreads));
         }
         return null;
     }
 
+    public ExtractedTextCache getExtractedTextCache() {
+        return extractedTextCache;
+    }
 
+    public AggregateStats getAggregateStats() {
+        return aggregateStats;
+    }
 }
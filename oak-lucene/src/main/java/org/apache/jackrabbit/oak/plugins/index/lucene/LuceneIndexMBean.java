@@ -28,4 +28,32 @@ public interface LuceneIndexMBean {
 
     TabularData getIndexStats() throws IOException;
 
+    long getTextExtractionCount();
+
+    long getTextExtractionTime();
+
+    long getTextExtractionFailureCount();
+
+    long getExtractedTextCacheHitCount();
+
+    double getExtractedTextCacheHitRate();
+
+    long getIndexRequestedBytes();
+
+    long getIndexReadBytes();
+
+    double getIndexReadAmplification();
+
+    long getQueryCount();
+
+    long getQueryBatchCount();
+
+    long getMaxQueryBatchCount();
+
+    long getAggregateEvaluationCount();
+
+    long getAggregateEvaluationTime();
+
+    long getAggregateMemoHitCount();
+
 }
@@ -48,10 +48,24 @@ import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements LuceneIndexMBean {
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final IndexTracker indexTracker;
+    private final ExtractedTextCache extractedTextCache;
+    private final AggregateStats aggregateStats;
 
     public LuceneIndexMBeanImpl(IndexTracker indexTracker) throws NotCompliantMBeanException {
+        this(indexTracker, new ExtractedTextCache(null));
+    }
+
+    public LuceneIndexMBeanImpl(IndexTracker indexTracker, ExtractedTextCache extractedTextCache)
+            throws NotCompliantMBeanException {
+        this(indexTracker, extractedTextCache, new AggregateStats());
+    }
+
+    public LuceneIndexMBeanImpl(IndexTracker indexTracker, ExtractedTextCache extractedTextCache,
+                                AggregateStats aggregateStats) throws NotCompliantMBeanException {
         super(LuceneIndexMBean.class);
         this.indexTracker = indexTracker;
+        this.extractedTextCache = extractedTextCache;
+        this.aggregateStats = aggregateStats;
     }
 
     @Override
@@ -67,7 +81,7 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
                 try {
                     indexNode = indexTracker.acquireIndexNode(path);
                     if (indexNode != null) {
-                        IndexStats stats = new IndexStats(path, indexNode.getSearcher().getIndexReader());
+                        IndexStats stats = new IndexStats(path, indexNode);
                         tds.put(stats.toCompositeData());
                     }
                 } finally {
@@ -82,6 +96,76 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
         return tds;
     }
 
+    @Override
+    public long getTextExtractionCount() {
+        return extractedTextCache.getExtractionCount();
+    }
+
+    @Override
+    public long getTextExtractionTime() {
+        return extractedTextCache.getExtractionTimeMillis();
+    }
+
+    @Override
+    public long getTextExtractionFailureCount() {
+        return extractedTextCache.getFailureCount();
+    }
+
+    @Override
+    public long getExtractedTextCacheHitCount() {
+        return extractedTextCache.getHitCount();
+    }
+
+    @Override
+    public double getExtractedTextCacheHitRate() {
+        return extractedTextCache.getHitRate();
+    }
+
+    @Override
+    public long getIndexRequestedBytes() {
+        return indexTracker.getReadStats().getRequestedBytes();
+    }
+
+    @Override
+    public long getIndexReadBytes() {
+        return indexTracker.getReadStats().getReadBytes();
+    }
+
+    @Override
+    public double getIndexReadAmplification() {
+        return indexTracker.getReadStats().getReadAmplification();
+    }
+
+    @Override
+    public long getQueryCount() {
+        return indexTracker.getQueryBatchStats().getQueryCount();
+    }
+
+    @Override
+    public long getQueryBatchCount() {
+        return indexTracker.getQueryBatchStats().getBatchCount();
+    }
+
+    @Override
+    public long getMaxQueryBatchCount() {
+        return indexTracker.getQueryBatchStats().getMaxBatchCount();
+    }
+
+    @Override
+    public long getAggregateEvaluationCount() {
+        return aggregateStats.getEvaluationCount();
+    }
+
+    @Override
+    public long getAggregateEvaluationTime() {
+        return aggregateStats.getEvaluationTimeMillis();
+    }
+
+    @Override
+    public long getAggregateMemoHitCount() {
+        return aggregateStats.getMemoHitCount();
+    }
+
     public void dumpIndexContent(String sourcePath, String destPath) throws IOException {
         IndexNode indexNode = null;
         try {
@@ -114,6 +198,11 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
                 "numDocs",
                 "maxDoc",
                 "numDeletedDocs",
+                "segmentCount",
+                "reusedSegmentCount",
+                "openTime",
+                "filterCacheHitCount",
+                "filterCacheMissCount",
         };
 
         static final String[] FIELD_DESCRIPTIONS = new String[]{
@@ -123,6 +212,11 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
                 "Number of documents in this index.",
                 "The time and date for when the longest query took place",
                 "Number of deleted documents",
+                "Number of Lucene segments",
+                "Number of Lucene segments shared with the previous revision of the index",
+                "Time in milliseconds it took to open the current revision of the index",
+                "Number of segments for which the documents matching a node type or path restriction were cached",
+                "Number of segments for which the documents matching a node type or path restriction were searched",
         };
 
         @SuppressWarnings("rawtypes")
@@ -133,6 +227,11 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
                 SimpleType.INTEGER,
                 SimpleType.INTEGER,
                 SimpleType.INTEGER,
+                SimpleType.INTEGER,
+                SimpleType.INTEGER,
+                SimpleType.LONG,
+                SimpleType.LONG,
+                SimpleType.LONG,
         };
 
         static final CompositeType TYPE = createCompositeType();
@@ -156,9 +255,20 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
         private final int maxDoc;
         private final int numDeletedDocs;
         private final String indexSizeStr;
+        private final int segmentCount;
+        private final int reusedSegmentCount;
+        private final long openTime;
+        private final long filterCacheHitCount;
+        private final long filterCacheMissCount;
 
-        public IndexStats(String path, IndexReader indexReader) throws IOException {
+        public IndexStats(String path, IndexNode indexNode) throws IOException {
             this.path = path;
+            IndexReader indexReader = indexNode.getSearcher().getIndexReader();
+            segmentCount = indexReader.leaves().size();
+            reusedSegmentCount = indexNode.getReusedSegmentCount();
+            openTime = indexNode.getOpenTime();
+            filterCacheHitCount = indexNode.getFilterCache().getHitCount();
+            filterCacheMissCount = indexNode.getFilterCache().getMissCount();
             numDocs = indexReader.numDocs();
             maxDoc = indexReader.maxDoc();
             numDeletedDocs = indexReader.numDeletedDocs();
@@ -173,7 +283,12 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
                     indexSize,
                     numDocs,
                     maxDoc,
-                    numDeletedDocs
+                    numDeletedDocs,
+                    segmentCount,
+                    reusedSegmentCount,
+                    openTime,
+                    filterCacheHitCount,
+                    filterCacheMissCount
             };
             try {
                 return new CompositeDataSupport(TYPE, FIELD_NAMES, values);
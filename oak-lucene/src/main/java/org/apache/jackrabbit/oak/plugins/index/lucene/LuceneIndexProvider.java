@@ -98,6 +98,14 @@ public class LuceneIndexProvider implements QueryIndexProvider, Observer, Closea
         return this;
     }
 
+    /**
+     * @return statistics about the reads of the index files of the tracked
+     *         indexes
+     */
+    public IndexReadStats getReadStats() {
+        return tracker.getReadStats();
+    }
+
     IndexTracker getTracker() {
         return tracker;
     }
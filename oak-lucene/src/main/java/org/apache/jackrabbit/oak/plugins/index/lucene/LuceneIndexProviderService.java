@@ -38,6 +38,7 @@ import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.ReferencePolicyOption;
 import org.apache.jackrabbit.oak.commons.PropertiesUtil;
 import org.apache.jackrabbit.oak.osgi.OsgiWhiteboard;
+import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.aggregate.NodeAggregator;
 import org.apache.jackrabbit.oak.spi.commit.BackgroundObserver;
 import org.apache.jackrabbit.oak.plugins.index.lucene.score.ScorerProviderFactory;
@@ -90,10 +91,19 @@ public class LuceneIndexProviderService {
     )
     private static final String PROP_COPY_ON_READ = "enableCopyOnReadSupport";
 
+    @Property(
+            boolValue = false,
+            label = "Enable CopyOnWrite",
+            description = "Enable writing of Lucene index updates to the local file system first. The index " +
+                    "files are then uploaded to the repository in the background"
+    )
+    private static final String PROP_COPY_ON_WRITE = "enableCopyOnWriteSupport";
+
     @Property(
             label = "Local index storage path",
             description = "Local file system path where Lucene indexes would be copied when CopyOnRead is enabled. " +
-                    "If not specified then indexes would be stored under 'index' dir under Repository Home"
+                    "or written when CopyOnWrite is enabled. If not specified then indexes would be stored " +
+                    "under 'index' dir under Repository Home"
     )
     private static final String PROP_LOCAL_INDEX_DIR = "localIndexDir";
 
@@ -104,12 +114,39 @@ public class LuceneIndexProviderService {
     )
     private static final String PROP_ASYNC_INDEX_OPEN = "enableOpenIndexAsync";
 
+    @Property(
+            label = "Extracted text cache path",
+            description = "Local file system path where text extracted from binaries is cached so that " +
+                    "reindexing does not need to parse the binaries again. The directory can also be " +
+                    "populated upfront via the oak-run 'tika' command. If not specified no text is cached"
+    )
+    private static final String PROP_EXTRACTED_TEXT_CACHE_DIR = "extractedTextCacheDir";
+
+    @Property(
+            intValue = 1024,
+            label = "Extracted text cache size (in MB)",
+            description = "Maximum size of the extracted text cache directory. Once exceeded the least " +
+                    "recently used entries are removed"
+    )
+    private static final String PROP_EXTRACTED_TEXT_CACHE_SIZE = "extractedTextCacheSizeInMB";
+
+    @Property(
+            intValue = 1,
+            label = "Reindex threads",
+            description = "Number of threads used to reindex a Lucene index. With more than one thread the " +
+                    "content is split into subtrees which are indexed concurrently into local directories " +
+                    "and merged into the index afterwards"
+    )
+    private static final String PROP_REINDEX_THREADS = "reindexThreads";
+
     private Whiteboard whiteboard;
 
     private WhiteboardExecutor executor;
 
     private BackgroundObserver backgroundObserver;
 
+    private IndexCopier indexCopier;
+
     @Reference
     ScorerProviderFactory scorerFactory;
 
@@ -128,9 +165,21 @@ public class LuceneIndexProviderService {
         regs.add(bundleContext.registerService(QueryIndexProvider.class.getName(), indexProvider, null));
         registerObserver(bundleContext, config);
 
+        boolean enableCopyOnWrite = PropertiesUtil.toBoolean(config.get(PROP_COPY_ON_WRITE), false);
+        if (enableCopyOnWrite) {
+            log.info("Enabling CopyOnWrite support. Index updates would be written locally first");
+        }
+        ExtractedTextCache extractedTextCache = createExtractedTextCache(config);
+        LuceneIndexEditorProvider editorProvider = new LuceneIndexEditorProvider(
+                enableCopyOnWrite ? getIndexCopier(bundleContext, config) : null,
+                extractedTextCache,
+                PropertiesUtil.toInteger(config.get(PROP_REINDEX_THREADS), 1));
+        regs.add(bundleContext.registerService(IndexEditorProvider.class.getName(), editorProvider, null));
+
         oakRegs.add(registerMBean(whiteboard,
                 LuceneIndexMBean.class,
-                new LuceneIndexMBeanImpl(indexProvider.getTracker()),
+                new LuceneIndexMBeanImpl(indexProvider.getTracker(), extractedTextCache,
+                        editorProvider.getAggregateStats()),
                 LuceneIndexMBean.TYPE,
                 "Lucene Index statistics"));
     }
@@ -158,6 +207,8 @@ public class LuceneIndexProviderService {
             executor.stop();
         }
 
+        indexCopier = null;
+
         InfoStream.setDefault(InfoStream.NO_OUTPUT);
     }
 
@@ -185,31 +236,46 @@ public class LuceneIndexProviderService {
     private IndexTracker createTracker(BundleContext bundleContext, Map<String, ?> config) {
         boolean enableCopyOnRead = PropertiesUtil.toBoolean(config.get(PROP_COPY_ON_READ), false);
         if (enableCopyOnRead){
-            String indexDirPath = PropertiesUtil.toString(config.get(PROP_LOCAL_INDEX_DIR), null);
-            if (Strings.isNullOrEmpty(indexDirPath)) {
-                String repoHome = bundleContext.getProperty(REPOSITORY_HOME);
-                if (repoHome != null){
-                    indexDirPath = FilenameUtils.concat(repoHome, "index");
-                }
-            }
-
-            checkNotNull(indexDirPath, "Index directory cannot be determined as neither index " +
-                    "directory path [%s] nor repository home [%s] defined", PROP_LOCAL_INDEX_DIR, REPOSITORY_HOME);
+            log.info("Enabling CopyOnRead support");
+            return new IndexTracker(getIndexCopier(bundleContext, config));
+        }
 
-            File indexDir = new File(indexDirPath);
-            IndexCopier copier = new IndexCopier(executor, indexDir);
-            log.info("Enabling CopyOnRead support. Index files would be copied under {}", indexDir.getAbsolutePath());
+        return new IndexTracker();
+    }
 
-            oakRegs.add(registerMBean(whiteboard,
-                    CopyOnReadStatsMBean.class,
-                    copier,
-                    CopyOnReadStatsMBean.TYPE,
-                    "CopyOnRead support statistics"));
+    private IndexCopier getIndexCopier(BundleContext bundleContext, Map<String, ?> config) {
+        if (indexCopier != null) {
+            return indexCopier;
+        }
 
-            return new IndexTracker(copier);
+        String indexDirPath = PropertiesUtil.toString(config.get(PROP_LOCAL_INDEX_DIR), null);
+        if (Strings.isNullOrEmpty(indexDirPath)) {
+            String repoHome = bundleContext.getProperty(REPOSITORY_HOME);
+            if (repoHome != null){
+                indexDirPath = FilenameUtils.concat(repoHome, "index");
+            }
         }
 
-        return new IndexTracker();
+        checkNotNull(indexDirPath, "Index directory cannot be determined as neither index " +
+                "directory path [%s] nor repository home [%s] defined", PROP_LOCAL_INDEX_DIR, REPOSITORY_HOME);
+
+        File indexDir = new File(indexDirPath);
+        indexCopier = new IndexCopier(executor, indexDir);
+        log.info("Index files would be copied under {}", indexDir.getAbsolutePath());
+
+        oakRegs.add(registerMBean(whiteboard,
+                CopyOnReadStatsMBean.class,
+                indexCopier,
+                CopyOnReadStatsMBean.TYPE,
+                "CopyOnRead and CopyOnWrite support statistics"));
+        return indexCopier;
+    }
+
+    private ExtractedTextCache createExtractedTextCache(Map<String, ?> config) {
+        String cacheDirPath = PropertiesUtil.toString(config.get(PROP_EXTRACTED_TEXT_CACHE_DIR), null);
+        File cacheDir = Strings.isNullOrEmpty(cacheDirPath) ? null : new File(cacheDirPath);
+        long cacheSize = PropertiesUtil.toInteger(config.get(PROP_EXTRACTED_TEXT_CACHE_SIZE), 1024);
+        return new ExtractedTextCache(cacheDir, cacheSize * 1024 * 1024);
     }
 
     private void registerObserver(BundleContext bundleContext, Map<String, ?> config) {
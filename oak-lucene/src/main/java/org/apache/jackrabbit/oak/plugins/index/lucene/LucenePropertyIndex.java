@@ -66,11 +66,16 @@ import org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvanceFulltextQueryIndex;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.StoredFieldVisitor;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.sorter.EarlyTerminatingSortingCollector;
+import org.apache.lucene.index.sorter.Sorter;
 import org.apache.lucene.queries.CustomScoreQuery;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
@@ -79,6 +84,7 @@ import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.NumericRangeQuery;
@@ -90,9 +96,12 @@ import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.search.spell.SuggestWord;
 import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -112,6 +121,7 @@ import static org.apache.jackrabbit.oak.plugins.index.lucene.TermFactory.newAnce
 import static org.apache.jackrabbit.oak.plugins.index.lucene.TermFactory.newPathTerm;
 import static org.apache.jackrabbit.oak.query.QueryImpl.JCR_PATH;
 import static org.apache.jackrabbit.oak.spi.query.QueryIndex.AdvancedQueryIndex;
+import static org.apache.jackrabbit.oak.spi.query.QueryIndex.CountingQueryIndex;
 import static org.apache.jackrabbit.oak.spi.query.QueryIndex.NativeQueryIndex;
 import static org.apache.lucene.search.BooleanClause.Occur.MUST;
 import static org.apache.lucene.search.BooleanClause.Occur.MUST_NOT;
@@ -157,7 +167,7 @@ import static org.apache.lucene.search.BooleanClause.Occur.SHOULD;
  *
  */
 public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, NativeQueryIndex,
-        AdvanceFulltextQueryIndex {
+        AdvanceFulltextQueryIndex, CountingQueryIndex {
 
     private static final Logger LOG = LoggerFactory
             .getLogger(LucenePropertyIndex.class);
@@ -169,6 +179,11 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
      */
     static final int LUCENE_QUERY_BATCH_SIZE = 50;
 
+    /**
+     * Maximum batch size for fetching results from Lucene queries.
+     */
+    static final int LUCENE_QUERY_BATCH_SIZE_MAX = 100000;
+
     protected final IndexTracker tracker;
 
     private final ScorerProviderFactory scorerProviderFactory;
@@ -235,7 +250,7 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                     .append("(")
                     .append(path)
                     .append(") ");
-            sb.append(getLuceneRequest(plan, null));
+            sb.append(getLuceneRequest(plan, null, null));
             if(plan.getSortOrder() != null && !plan.getSortOrder().isEmpty()){
                 sb.append(" ordering:").append(plan.getSortOrder());
             }
@@ -257,13 +272,15 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
     public Cursor query(final IndexPlan plan, NodeState rootState) {
         final Filter filter = plan.getFilter();
         final Sort sort = getSort(plan);
+        final FieldDoc keysetStart = getKeysetStart(plan, sort);
         final PlanResult pr = getPlanResult(plan);
         QueryEngineSettings settings = filter.getQueryEngineSettings();
         Iterator<LuceneResultRow> itr = new AbstractIterator<LuceneResultRow>() {
             private final Deque<LuceneResultRow> queue = Queues.newArrayDeque();
             private final Set<String> seenPaths = Sets.newHashSet();
             private ScoreDoc lastDoc;
-            private int nextBatchSize = LUCENE_QUERY_BATCH_SIZE;
+            private int nextBatchSize = getFirstBatchSize(filter);
+            private int batchCount = 0;
             private boolean noDocs = false;
 
             @Override
@@ -275,12 +292,7 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
             }
 
             private LuceneResultRow convertToRow(ScoreDoc doc, IndexSearcher searcher) throws IOException {
-                IndexReader reader = searcher.getIndexReader();
-                //TODO Look into usage of field cache for retrieving the path
-                //instead of reading via reader if no of docs in index are limited
-                PathStoredFieldVisitor visitor = new PathStoredFieldVisitor();
-                reader.document(doc.doc, visitor);
-                String path = visitor.getPath();
+                String path = getPath(searcher.getIndexReader(), doc.doc);
                 if (path != null) {
                     if ("".equals(path)) {
                         path = "/";
@@ -315,7 +327,8 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                 checkState(indexNode != null);
                 try {
                     IndexSearcher searcher = indexNode.getSearcher();
-                    LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, searcher.getIndexReader());
+                    LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, searcher.getIndexReader(),
+                            indexNode.getFilterCache());
                     if (luceneRequestFacade.getLuceneRequest() instanceof Query) {
                         Query query = (Query) luceneRequestFacade.getLuceneRequest();
 
@@ -332,19 +345,26 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                             if (sort == null) {
                                 docs = searcher.searchAfter(lastDoc, query, nextBatchSize);
                             } else {
-                                docs = searcher.searchAfter(lastDoc, query, LUCENE_QUERY_BATCH_SIZE, sort);
+                                docs = searcher.searchAfter(lastDoc, query, nextBatchSize, sort);
                             }
                         } else {
                             LOG.debug("loading the first {} entries for query {}", nextBatchSize, query);
                             if (sort == null) {
                                 docs = searcher.search(query, nextBatchSize);
+                            } else if (keysetStart != null) {
+                                // keyset pagination: seek to the last value of the previous page
+                                docs = searcher.searchAfter(keysetStart, query, nextBatchSize, sort);
+                            } else if (isIndexSorted(indexNode.getDefinition(), sort)) {
+                                docs = searchSortedIndex(searcher, query, sort, nextBatchSize,
+                                        indexNode.getDefinition().getIndexSorter());
                             } else {
-                                docs = searcher.search(query, LUCENE_QUERY_BATCH_SIZE, sort);
+                                docs = searcher.search(query, nextBatchSize, sort);
                             }
                         }
                         time = System.currentTimeMillis() - time;
                         LOG.debug("... took {} ms", time);
-                        nextBatchSize = (int) Math.min(nextBatchSize * 2L, 100000);
+                        nextBatchSize = (int) Math.min(nextBatchSize * 2L, LUCENE_QUERY_BATCH_SIZE_MAX);
+                        tracker.getQueryBatchStats().batchLoaded(++batchCount);
 
                         for (ScoreDoc doc : docs.scoreDocs) {
                             LuceneResultRow row = convertToRow(doc, searcher);
@@ -417,6 +437,35 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
         return new LucenePathCursor(itr, plan, settings);
     }
 
+    @Override
+    public long getEntryCount(Filter filter, IndexPlan plan, NodeState rootState) {
+        if (plan == null) {
+            return -1;
+        }
+        IndexNode indexNode = acquireIndexNode(plan);
+        if (indexNode == null) {
+            return -1;
+        }
+        try {
+            IndexSearcher searcher = indexNode.getSearcher();
+            LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, searcher.getIndexReader(),
+                    indexNode.getFilterCache());
+            if (!(luceneRequestFacade.getLuceneRequest() instanceof Query)) {
+                // spellcheck and suggest queries
+                return -1;
+            }
+            // only count the matching documents, without scoring or loading them
+            TotalHitCountCollector collector = new TotalHitCountCollector();
+            searcher.search((Query) luceneRequestFacade.getLuceneRequest(), collector);
+            return collector.getTotalHits();
+        } catch (IOException e) {
+            LOG.warn("count via {} failed.", LucenePropertyIndex.this, e);
+            return -1;
+        } finally {
+            indexNode.release();
+        }
+    }
+
     @Override
     public NodeAggregator getNodeAggregator() {
         return null;
@@ -463,6 +512,97 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
         }
     }
 
+    /**
+     * Get the position to start searching from when using keyset pagination,
+     * if the index sorts by the keyset property only.
+     *
+     * @param plan index plan
+     * @param sort the sort order (may be null)
+     * @return the position, or null to search from the beginning
+     */
+    @CheckForNull
+    private static FieldDoc getKeysetStart(IndexPlan plan, @Nullable Sort sort) {
+        PropertyRestriction keyset = plan.getFilter().getKeysetRestriction();
+        if (keyset == null || sort == null || sort.getSort().length != 1) {
+            return null;
+        }
+        OrderEntry oe = plan.getSortOrder().get(0);
+        SortField sf = sort.getSort()[0];
+        if (!oe.getPropertyName().equals(keyset.propertyName)) {
+            return null;
+        }
+        PropertyValue value = keyset.first != null ? keyset.first : keyset.last;
+        PropertyDefinition pd = getPlanResult(plan).getOrderedProperty(0);
+        int type = getPropertyType(pd, oe.getPropertyName(), value.getType().tag());
+        Object top;
+        try {
+            switch (sf.getType()) {
+                case LONG:
+                    if (type == PropertyType.DATE) {
+                        top = FieldFactory.dateToLong(value.getValue(Type.DATE));
+                    } else {
+                        top = value.getValue(Type.LONG);
+                    }
+                    break;
+                case DOUBLE:
+                    top = value.getValue(Type.DOUBLE);
+                    break;
+                default:
+                    top = new BytesRef(value.getValue(Type.STRING));
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Keyset value {} can not be converted for sort field {}", value, sf, e);
+            return null;
+        }
+        // documents with the same value were not necessarily returned on the
+        // previous page (the query engine filters them), so use a document
+        // number that makes sure all of them are included
+        return new FieldDoc(-1, Float.NaN, new Object[] { top });
+    }
+
+    /**
+     * Returns true if the segments of the index are sorted in the given
+     * order when they are merged.
+     */
+    private static boolean isIndexSorted(IndexDefinition defn, Sort sort) {
+        SortField indexSort = defn.getIndexSort();
+        if (indexSort == null || sort.getSort().length != 1) {
+            return false;
+        }
+        SortField sf = sort.getSort()[0];
+        return indexSort.getField().equals(sf.getField())
+                && indexSort.getType() == sf.getType()
+                && indexSort.getReverse() == sf.getReverse();
+    }
+
+    /**
+     * Searches an index whose segments are sorted in the requested order.
+     * Collecting stops after the first {@code n} documents of each sorted
+     * segment, without scoring the other matches. Segments that are not
+     * sorted yet (not merged since they were written) are fully collected.
+     */
+    private static TopDocs searchSortedIndex(IndexSearcher searcher, Query query, Sort sort,
+                                             int n, Sorter sorter) throws IOException {
+        TopFieldCollector collector = TopFieldCollector.create(sort, n, true, false, false, false);
+        searcher.search(query, new EarlyTerminatingSortingCollector(collector, sorter, n));
+        return collector.topDocs();
+    }
+
+    /**
+     * Returns the number of results to load in the first batch. If the
+     * query needs a known number of rows, that many are loaded at once so
+     * that the Lucene query does not need to run again for the next batch.
+     * Queries without a limit start with the default batch size.
+     */
+    static int getFirstBatchSize(Filter filter) {
+        long hint = filter.getLimitHint();
+        if (hint < 0 || hint == Long.MAX_VALUE) {
+            return LUCENE_QUERY_BATCH_SIZE;
+        }
+        long limit = Math.min(hint, LUCENE_QUERY_BATCH_SIZE_MAX);
+        return (int) Math.max(LUCENE_QUERY_BATCH_SIZE, limit);
+    }
+
     /**
      * Identifies the default sort order used by the index (@jcr:score descending)
      *
@@ -500,9 +640,12 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
      *
      * @param plan index plan containing filter details
      * @param reader the Lucene reader
+     * @param filterCache cache for the node type and path restrictions, or
+     *                    {@code null} if they should not be cached
      * @return the Lucene query
      */
-    private static LuceneRequestFacade getLuceneRequest(IndexPlan plan, IndexReader reader) {
+    private static LuceneRequestFacade getLuceneRequest(IndexPlan plan, IndexReader reader,
+                                                        @Nullable QueryFilterCache filterCache) {
         List<Query> qs = new ArrayList<Query>();
         Filter filter = plan.getFilter();
         FullTextExpression ft = filter.getFullTextConstraint();
@@ -553,7 +696,7 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                 }
             }
         } else if (planResult.evaluateNonFullTextConstraints()) {
-            addNonFullTextConstraints(qs, plan, reader);
+            addNonFullTextConstraints(qs, plan, reader, filterCache);
         }
 
         if (qs.size() == 0
@@ -613,12 +756,12 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
     }
 
     private static void addNonFullTextConstraints(List<Query> qs,
-            IndexPlan plan, IndexReader reader) {
+            IndexPlan plan, IndexReader reader, @Nullable QueryFilterCache filterCache) {
         Filter filter = plan.getFilter();
         PlanResult planResult = getPlanResult(plan);
         IndexDefinition defn = planResult.indexDefinition;
         if (!filter.matchesAllTypes()) {
-            addNodeTypeConstraints(planResult.indexingRule, qs, filter);
+            addNodeTypeConstraints(planResult.indexingRule, qs, filter, filterCache);
         }
 
         String path = getPathRestriction(plan);
@@ -628,7 +771,7 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                 if ("/".equals(path)) {
                     break;
                 }
-                qs.add(new TermQuery(newAncestorTerm(path)));
+                qs.add(cached(new TermQuery(newAncestorTerm(path)), filterCache));
             }
             break;
         case DIRECT_CHILDREN:
@@ -636,7 +779,7 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
                 BooleanQuery bq = new BooleanQuery();
                 bq.add(new BooleanClause(new TermQuery(newAncestorTerm(path)), BooleanClause.Occur.MUST));
                 bq.add(new BooleanClause(newDepthQuery(path), BooleanClause.Occur.MUST));
-                qs.add(bq);
+                qs.add(cached(bq, filterCache));
             }
             break;
         case EXACT:
@@ -899,7 +1042,8 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
         qs.add(bq);
     }
 
-    private static void addNodeTypeConstraints(IndexingRule defn, List<Query> qs, Filter filter) {
+    private static void addNodeTypeConstraints(IndexingRule defn, List<Query> qs, Filter filter,
+                                               @Nullable QueryFilterCache filterCache) {
         BooleanQuery bq = new BooleanQuery();
         PropertyDefinition primaryType = defn.getConfig(JCR_PRIMARYTYPE);
         //TODO OAK-2198 Add proper nodeType query support
@@ -918,10 +1062,19 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
         }
 
         if (bq.clauses().size() != 0) {
-            qs.add(bq);
+            qs.add(cached(bq, filterCache));
         }
     }
 
+    /**
+     * Node type and path restrictions are repeated by most queries and
+     * do not contribute to the relevance of the results, so the documents
+     * matching them are cached per index.
+     */
+    private static Query cached(Query query, @Nullable QueryFilterCache filterCache) {
+        return filterCache != null ? filterCache.getQuery(query) : query;
+    }
+
     static Query getFullTextQuery(final IndexPlan plan, FullTextExpression ft,
                                   final Analyzer analyzer) {
         final PlanResult pr = getPlanResult(plan);
@@ -1193,6 +1346,27 @@ public class LucenePropertyIndex implements AdvancedQueryIndex, QueryIndex, Nati
         }
     }
 
+    /**
+     * Returns the path of the given document. The path is read from the doc
+     * values of the segment if present, and from the stored fields for
+     * segments written by indexes older than {@link IndexFormatVersion#V3}.
+     */
+    @CheckForNull
+    private static String getPath(IndexReader reader, int docId) throws IOException {
+        List<AtomicReaderContext> leaves = reader.leaves();
+        AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        BinaryDocValues paths = leaf.reader().getBinaryDocValues(PATH);
+        if (paths != null) {
+            BytesRef result = new BytesRef();
+            paths.get(docId - leaf.docBase, result);
+            return result.utf8ToString();
+        }
+
+        PathStoredFieldVisitor visitor = new PathStoredFieldVisitor();
+        reader.document(docId, visitor);
+        return visitor.getPath();
+    }
+
     private static class PathStoredFieldVisitor extends StoredFieldVisitor {
 
         private String path;
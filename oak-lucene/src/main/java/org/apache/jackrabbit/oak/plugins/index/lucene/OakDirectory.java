@@ -24,7 +24,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableSet;
 import com.google.common.primitives.Ints;
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -54,14 +58,42 @@ import static org.apache.jackrabbit.oak.api.Type.BINARIES;
 class OakDirectory extends Directory {
 
     static final String PROP_BLOB_SIZE = "blobSize";
+
+    /**
+     * Extensions of the Lucene files holding only metadata. These files are
+     * small, so they are stored in small blobs to avoid allocating a full
+     * sized chunk buffer when they are written.
+     */
+    private static final Set<String> METADATA_FILE_EXTENSIONS = ImmutableSet.of(
+            "si", "fnm", "gen", "liv", "del", "cfe", "dvm", "nvm", "fdx", "tvx", "tip");
+
+    /**
+     * If set to true, the index files are read in whole chunks as they used
+     * to be, instead of reading just the requested ranges.
+     */
+    private static final boolean READ_FULL_CHUNKS = Boolean.getBoolean("oak.lucene.readFullChunks");
+
+    /**
+     * Size of the buffer used when reading an index file. Reads larger than
+     * this buffer go directly to the blobs.
+     */
+    static final int READ_BUFFER_SIZE = 16 * 1024;
+
     protected final NodeBuilder directoryBuilder;
     private final IndexDefinition definition;
+    private final IndexReadStats readStats;
     private LockFactory lockFactory;
 
     public OakDirectory(NodeBuilder directoryBuilder, IndexDefinition definition) {
+        this(directoryBuilder, definition, null);
+    }
+
+    public OakDirectory(NodeBuilder directoryBuilder, IndexDefinition definition,
+                        @Nullable IndexReadStats readStats) {
         this.lockFactory = NoLockFactory.getNoLockFactory();
         this.directoryBuilder = directoryBuilder;
         this.definition = definition;
+        this.readStats = readStats != null ? readStats : new IndexReadStats();
     }
 
     @Override
@@ -83,7 +115,7 @@ class OakDirectory extends Directory {
     @Override
     public long fileLength(String name) throws IOException {
         NodeBuilder file = directoryBuilder.getChildNode(name);
-        OakIndexInput input = new OakIndexInput(name, file);
+        OakIndexInput input = new OakIndexInput(name, file, readStats);
         try {
             return input.length();
         } finally {
@@ -97,11 +129,11 @@ class OakDirectory extends Directory {
         NodeBuilder file;
         if (!directoryBuilder.hasChildNode(name)) {
             file = directoryBuilder.child(name);
-            file.setProperty(PROP_BLOB_SIZE, definition.getBlobSize());
+            file.setProperty(PROP_BLOB_SIZE, getBlobSize(name));
         } else {
             file = directoryBuilder.child(name);
         }
-        return new OakIndexOutput(name, file);
+        return new OakIndexOutput(name, file, readStats);
     }
 
 
@@ -110,12 +142,55 @@ class OakDirectory extends Directory {
             throws IOException {
         NodeBuilder file = directoryBuilder.getChildNode(name);
         if (file.exists()) {
-            return new OakIndexInput(name, file);
+            return new OakIndexInput(name, file, readStats);
         } else {
             throw new FileNotFoundException(name);
         }
     }
 
+    /**
+     * Creates the blobs holding the content of the given input. Unlike the
+     * other methods this one does not modify the directory builder and can
+     * thus be called from a background thread. The file is added to the
+     * directory later on via {@link #addFile(String, List)}.
+     */
+    List<Blob> createBlobs(String name, IndexInput input) throws IOException {
+        int blobSize = getBlobSize(name);
+        byte[] buffer = new byte[blobSize];
+        List<Blob> blobs = newArrayList();
+        long remaining = input.length();
+        while (remaining > 0) {
+            int n = (int) Math.min(blobSize, remaining);
+            input.readBytes(buffer, 0, n);
+            blobs.add(directoryBuilder.createBlob(new ByteArrayInputStream(buffer, 0, n)));
+            remaining -= n;
+        }
+        return blobs;
+    }
+
+    /**
+     * Adds a file whose content was created via {@link #createBlobs(String, IndexInput)}.
+     */
+    void addFile(String name, List<Blob> blobs) {
+        NodeBuilder file = directoryBuilder.child(name);
+        file.setProperty(PROP_BLOB_SIZE, getBlobSize(name));
+        file.setProperty(JCR_LASTMODIFIED, System.currentTimeMillis());
+        file.setProperty(JCR_DATA, blobs, BINARIES);
+    }
+
+    /**
+     * Returns the size of the chunks the given file is split into. Metadata
+     * files use small chunks, all other files the blob size configured for
+     * the index.
+     */
+    int getBlobSize(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        if (METADATA_FILE_EXTENSIONS.contains(extension) || name.startsWith("segments")) {
+            return Math.min(DEFAULT_BLOB_SIZE, definition.getBlobSize());
+        }
+        return definition.getBlobSize();
+    }
+
     @Override
     public Lock makeLock(String name) {
         return lockFactory.makeLock(name);
@@ -166,19 +241,45 @@ class OakDirectory extends Directory {
 
         private final List<Blob> data;
 
+        private final IndexReadStats readStats;
+
         private boolean dataModified = false;
 
+        /**
+         * Index of the chunk held in {@link #blob}, or -1 if none
+         */
         private int index = -1;
 
-        private final byte[] blob;
+        /**
+         * Buffer holding a whole chunk. Only allocated when the file is
+         * written, or when full chunk reads are enabled.
+         */
+        private byte[] blob;
 
         private boolean blobModified = false;
 
-        public OakIndexFile(String name, NodeBuilder file) {
+        /**
+         * Buffer holding the bytes of the file from {@link #bufferStart},
+         * lazily allocated on the first small read.
+         */
+        private byte[] buffer;
+
+        private long bufferStart = -1;
+
+        private int bufferLength = 0;
+
+        /**
+         * Bytes requested since the last update of the shared
+         * {@link #readStats}, which are only updated on blob reads and when
+         * the input gets closed to keep contention off the read path.
+         */
+        private long requested = 0;
+
+        public OakIndexFile(String name, NodeBuilder file, IndexReadStats readStats) {
             this.name = name;
             this.file = file;
             this.blobSize = determineBlobSize(file);
-            this.blob = new byte[blobSize];
+            this.readStats = readStats;
 
             PropertyState property = file.getProperty(JCR_DATA);
             if (property != null && property.getType() == BINARIES) {
@@ -198,7 +299,7 @@ class OakDirectory extends Directory {
             this.name = that.name;
             this.file = that.file;
             this.blobSize = that.blobSize;
-            this.blob = new byte[blobSize];
+            this.readStats = that.readStats;
 
             this.position = that.position;
             this.length = that.length;
@@ -212,17 +313,40 @@ class OakDirectory extends Directory {
                 flushBlob();
                 checkState(!blobModified);
 
-                int n = (int) Math.min(blobSize, length - i * blobSize);
-                InputStream stream = data.get(i).getNewStream();
-                try {
-                    ByteStreams.readFully(stream, blob, 0, n);
-                } finally {
-                    stream.close();
+                if (blob == null) {
+                    blob = new byte[blobSize];
                 }
+                int n = (int) Math.min(blobSize, length - (long) i * blobSize);
+                readChunk(i, 0, blob, 0, n);
                 index = i;
             }
         }
 
+        /**
+         * Reads {@code len} bytes starting at offset {@code o} of the chunk
+         * {@code i}. Only the requested range is read from the blob, as the
+         * streams of the blobs skip without reading the skipped bytes.
+         */
+        private void readChunk(int i, int o, byte[] b, int offset, int len)
+                throws IOException {
+            InputStream stream = data.get(i).getNewStream();
+            try {
+                ByteStreams.skipFully(stream, o);
+                ByteStreams.readFully(stream, b, offset, len);
+            } finally {
+                stream.close();
+            }
+            readStats.read(requested, len);
+            requested = 0;
+        }
+
+        private void flushReadStats() {
+            if (requested > 0) {
+                readStats.read(requested, 0);
+                requested = 0;
+            }
+        }
+
         private void flushBlob() throws IOException {
             if (blobModified) {
                 int n = (int) Math.min(blobSize, length - index * blobSize);
@@ -258,21 +382,55 @@ class OakDirectory extends Directory {
                 throw new IOException(msg);
             }
 
-            int i = (int) (position / blobSize);
-            int o = (int) (position % blobSize);
+            requested += len;
             while (len > 0) {
-                loadBlob(i);
-
+                int i = (int) (position / blobSize);
+                int o = (int) (position % blobSize);
                 int l = Math.min(len, blobSize - o);
-                System.arraycopy(blob, o, b, offset, l);
+
+                if (index == i || READ_FULL_CHUNKS) {
+                    loadBlob(i);
+                    System.arraycopy(blob, o, b, offset, l);
+                } else if (position >= bufferStart
+                        && position < bufferStart + bufferLength) {
+                    int bo = (int) (position - bufferStart);
+                    l = Math.min(len, bufferLength - bo);
+                    System.arraycopy(buffer, bo, b, offset, l);
+                } else if (len >= READ_BUFFER_SIZE) {
+                    readChunk(i, o, b, offset, l);
+                } else {
+                    fillBuffer(i, o);
+                    continue;
+                }
 
                 offset += l;
                 len -= l;
                 position += l;
+            }
+        }
 
-                i++;
-                o = 0;
+        /**
+         * Reads the bytes of the chunk {@code i} from offset {@code o} on
+         * into the read buffer, up to the end of the chunk.
+         */
+        private void fillBuffer(int i, int o) throws IOException {
+            if (buffer == null) {
+                buffer = new byte[(int) Math.min(READ_BUFFER_SIZE, length)];
             }
+            long chunkLength = Math.min(blobSize, length - (long) i * blobSize);
+            bufferLength = (int) Math.min(buffer.length, chunkLength - o);
+            readChunk(i, o, buffer, 0, bufferLength);
+            bufferStart = position;
+        }
+
+        public byte readByte() throws IOException {
+            if (position >= bufferStart && position < bufferStart + bufferLength) {
+                requested++;
+                return buffer[(int) (position++ - bufferStart)];
+            }
+            byte[] b = new byte[1];
+            readBytes(b, 0, 1);
+            return b[0];
         }
 
         public void writeBytes(byte[] b, int offset, int len)
@@ -287,6 +445,9 @@ class OakDirectory extends Directory {
                         loadBlob(i);
                     } else {
                         flushBlob();
+                        if (blob == null) {
+                            blob = new byte[blobSize];
+                        }
                         index = i;
                     }
                 }
@@ -330,9 +491,9 @@ class OakDirectory extends Directory {
 
         private final OakIndexFile file;
 
-        public OakIndexInput(String name, NodeBuilder file) {
+        public OakIndexInput(String name, NodeBuilder file, IndexReadStats readStats) {
             super(name);
-            this.file = new OakIndexFile(name, file);
+            this.file = new OakIndexFile(name, file, readStats);
         }
 
         private OakIndexInput(OakIndexInput that) {
@@ -352,9 +513,7 @@ class OakDirectory extends Directory {
 
         @Override
         public byte readByte() throws IOException {
-            byte[] b = new byte[1];
-            readBytes(b, 0, 1);
-            return b[0];
+            return file.readByte();
         }
 
         @Override
@@ -374,7 +533,7 @@ class OakDirectory extends Directory {
 
         @Override
         public void close() {
-            // do nothing
+            file.flushReadStats();
         }
 
     }
@@ -383,8 +542,9 @@ class OakDirectory extends Directory {
 
         private final OakIndexFile file;
 
-        public OakIndexOutput(String name, NodeBuilder file) throws IOException {
-            this.file = new OakIndexFile(name, file);
+        public OakIndexOutput(String name, NodeBuilder file, IndexReadStats readStats)
+                throws IOException {
+            this.file = new OakIndexFile(name, file, readStats);
         }
 
         @Override
@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
+import org.apache.jackrabbit.oak.spi.commit.EditorDiff;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
+import static org.apache.jackrabbit.oak.spi.commit.VisibleEditor.wrap;
+import static org.apache.lucene.store.NoLockFactory.getNoLockFactory;
+
+/**
+ * Reindexes the content below the root of an index using multiple threads.
+ * The content is split into partitions which are indexed concurrently by
+ * worker threads. Each worker writes into its own local index and the local
+ * indexes are added to the actual index once all partitions are done.
+ * <p>
+ * Progress is logged periodically along with an estimate of the remaining
+ * time based on the number of partitions done so far. The index update
+ * callback is only ever invoked from the calling thread.
+ */
+class ParallelReindex {
+    private static final Logger log = LoggerFactory.getLogger(ParallelReindex.class);
+
+    /**
+     * Number of partitions per thread the content is split into where possible
+     * such that large subtrees don't leave the other threads idle
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * Maximum depth up to which the content is split into partitions
+     */
+    private static final int MAX_PARTITION_DEPTH = 3;
+
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final LuceneIndexEditorContext context;
+
+    private final NodeState root;
+
+    private final int threads;
+
+    private final AtomicLong updates = new AtomicLong();
+
+    private final AtomicInteger completedPartitions = new AtomicInteger();
+
+    ParallelReindex(LuceneIndexEditorContext context, NodeState root, int threads) {
+        this.context = context;
+        this.root = root;
+        this.threads = threads;
+    }
+
+    /**
+     * Reindexes all descendants of the given node. The node itself is
+     * not indexed.
+     */
+    void reindex(Tree tree, NodeState state) throws CommitFailedException {
+        String indexName = context.getDefinition().getIndexName();
+        List<Partition> partitions = partition(tree, state);
+        log.info("{} => Reindexing {} partitions using {} threads", indexName, partitions.size(), threads);
+
+        Queue<Partition> queue = new ConcurrentLinkedQueue<Partition>(partitions);
+        File workDir = Files.createTempDir();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "oak-lucene-reindex-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Worker> workers = newArrayList();
+        try {
+            List<Future<Void>> futures = newArrayList();
+            for (int i = 0; i < threads; i++) {
+                Worker worker = new Worker(new File(workDir, String.valueOf(i)), queue);
+                workers.add(worker);
+                futures.add(executor.submit(worker));
+            }
+            awaitCompletion(futures, partitions.size());
+            merge(workers);
+        } catch (IOException e) {
+            throw new CommitFailedException("Lucene", 6,
+                    "Failed to reindex the content in parallel", e);
+        } finally {
+            executor.shutdownNow();
+            for (Worker worker : workers) {
+                worker.closeDirectory();
+            }
+            FileUtils.deleteQuietly(workDir);
+        }
+    }
+
+    private void merge(List<Worker> workers) throws IOException {
+        List<Directory> directories = newArrayList();
+        long indexedNodes = 0;
+        for (Worker worker : workers) {
+            if (worker.indexedNodes > 0) {
+                directories.add(worker.directory);
+                indexedNodes += worker.indexedNodes;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        IndexWriter writer = context.getWriter();
+        writer.addIndexes(directories.toArray(new Directory[directories.size()]));
+        context.addIndexedNodes(indexedNodes);
+        log.info("{} => Added {} local indexes with {} nodes in {} ms",
+                context.getDefinition().getIndexName(), directories.size(),
+                indexedNodes, System.currentTimeMillis() - start);
+    }
+
+    private void awaitCompletion(List<Future<Void>> futures, int partitionCount)
+            throws CommitFailedException {
+        long start = System.currentTimeMillis();
+        long reported = 0;
+        for (Future<Void> future : futures) {
+            while (true) {
+                try {
+                    future.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    reported = reportProgress(start, reported, partitionCount);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CommitFailedException("Lucene", 6,
+                            "Interrupted while reindexing the content in parallel", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CommitFailedException) {
+                        throw (CommitFailedException) e.getCause();
+                    }
+                    throw new CommitFailedException("Lucene", 6,
+                            "Failed to reindex the content in parallel", e.getCause());
+                }
+            }
+        }
+        reportProgress(start, reported, partitionCount);
+    }
+
+    private long reportProgress(long start, long reported, int partitionCount)
+            throws CommitFailedException {
+        long count = updates.get();
+        for (long i = reported; i < count; i++) {
+            context.indexUpdate();
+        }
+
+        int done = completedPartitions.get();
+        long elapsed = System.currentTimeMillis() - start;
+        String eta = "unknown";
+        if (done > 0) {
+            long remaining = elapsed * (partitionCount - done) / done;
+            eta = TimeUnit.MILLISECONDS.toMinutes(remaining) + " min";
+        }
+        log.info("{} => Reindexed {} nodes, {}/{} partitions done in {} s, estimated time remaining {}",
+                context.getDefinition().getIndexName(), count, done, partitionCount,
+                TimeUnit.MILLISECONDS.toSeconds(elapsed), eta);
+        return count;
+    }
+
+    private List<Partition> partition(Tree tree, NodeState state) {
+        List<Partition> partitions = newArrayList();
+        addChildren(partitions, "/", tree, state);
+
+        int target = threads * PARTITIONS_PER_THREAD;
+        for (int depth = 1; partitions.size() < target && depth < MAX_PARTITION_DEPTH; depth++) {
+            List<Partition> split = newArrayList();
+            for (Partition p : partitions) {
+                if (p.subtree) {
+                    split.add(new Partition(p.path, p.tree, p.state, false));
+                    addChildren(split, p.path, p.tree, p.state);
+                } else {
+                    split.add(p);
+                }
+            }
+            partitions = split;
+        }
+        return partitions;
+    }
+
+    private static void addChildren(List<Partition> partitions, String path,
+                                    Tree tree, NodeState state) {
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            String name = child.getName();
+            if (NodeStateUtils.isHidden(name)) {
+                continue;
+            }
+            partitions.add(new Partition(concat(path, name), tree.getChild(name),
+                    child.getNodeState(), true));
+        }
+    }
+
+    private static class Partition {
+        final String path;
+        final Tree tree;
+        final NodeState state;
+
+        /**
+         * Whether the whole subtree or only the node itself is to be indexed
+         */
+        final boolean subtree;
+
+        Partition(String path, Tree tree, NodeState state, boolean subtree) {
+            this.path = path;
+            this.tree = tree;
+            this.state = state;
+            this.subtree = subtree;
+        }
+    }
+
+    private class Worker implements Callable<Void> {
+        private final File dir;
+        private final Queue<Partition> queue;
+        private volatile Directory directory;
+        private volatile long indexedNodes;
+
+        Worker(File dir, Queue<Partition> queue) {
+            this.dir = dir;
+            this.queue = queue;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            directory = FSDirectory.open(dir, getNoLockFactory());
+            LuceneIndexEditorContext workerContext = context.newWorkerContext(directory,
+                    new IndexUpdateCallback() {
+                        @Override
+                        public void indexUpdate() {
+                            updates.incrementAndGet();
+                        }
+                    });
+
+            Partition p;
+            while ((p = queue.poll()) != null) {
+                LuceneIndexEditor editor = new LuceneIndexEditor(workerContext, root, p.path, p.tree);
+                if (p.subtree) {
+                    CommitFailedException e = EditorDiff.process(wrap(editor), MISSING_NODE, p.state);
+                    if (e != null) {
+                        throw e;
+                    }
+                } else {
+                    editor.enter(MISSING_NODE, p.state);
+                    editor.leave(MISSING_NODE, p.state);
+                }
+                completedPartitions.incrementAndGet();
+            }
+
+            workerContext.closeWriter();
+            indexedNodes = workerContext.getIndexedNodes();
+            return null;
+        }
+
+        void closeDirectory() {
+            if (directory != null) {
+                try {
+                    directory.close();
+                } catch (IOException e) {
+                    log.debug("Error closing the local index directory {}", dir, e);
+                }
+            }
+        }
+    }
+}
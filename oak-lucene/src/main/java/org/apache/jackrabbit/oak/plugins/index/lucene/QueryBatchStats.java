@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics about the batches in which the results of Lucene queries are
+ * loaded. Each batch runs the Lucene query again, so queries needing many
+ * batches are expensive.
+ */
+class QueryBatchStats {
+
+    private final AtomicLong queryCount = new AtomicLong();
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong maxBatchCount = new AtomicLong();
+
+    /**
+     * Records that a batch was loaded for a query.
+     *
+     * @param batch the number of the batch within the query, starting at 1
+     */
+    void batchLoaded(int batch) {
+        if (batch == 1) {
+            queryCount.incrementAndGet();
+        }
+        batchCount.incrementAndGet();
+        long max = maxBatchCount.get();
+        while (batch > max && !maxBatchCount.compareAndSet(max, batch)) {
+            max = maxBatchCount.get();
+        }
+    }
+
+    long getQueryCount() {
+        return queryCount.get();
+    }
+
+    long getBatchCount() {
+        return batchCount.get();
+    }
+
+    long getMaxBatchCount() {
+        return maxBatchCount.get();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Cache of the documents matching query clauses which are repeated across
+ * most queries, like the node type and path restrictions. The matching
+ * documents are cached per segment, keyed by the segment core, so entries of
+ * segments shared with the next revision of the index stay valid once it is
+ * reopened, while changed segments are evaluated again.
+ */
+class QueryFilterCache {
+
+    /**
+     * Maximum number of query clauses for which the matching documents are
+     * cached per index. Zero disables the cache.
+     */
+    static final int DEFAULT_SIZE = Integer.getInteger("oak.lucene.filterCacheSize", 100);
+
+    private final int size;
+
+    private final Map<Query, Filter> filters;
+
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    QueryFilterCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    QueryFilterCache(final int size) {
+        this.size = size;
+        this.filters = new LinkedHashMap<Query, Filter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Filter> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns a query matching the same documents as the given query, which
+     * reads them from the cache. All matching documents get the same score.
+     *
+     * @param query query to cache, which must not depend on the scoring
+     * @return the caching query, or the passed query if the cache is disabled
+     */
+    Query getQuery(Query query) {
+        if (size <= 0) {
+            return query;
+        }
+        Filter filter;
+        synchronized (filters) {
+            filter = filters.get(query);
+            if (filter == null) {
+                filter = new CountingFilter(query);
+                filters.put(query, filter);
+            }
+        }
+        return new ConstantScoreQuery(filter);
+    }
+
+    /**
+     * @return number of segments for which the matching documents of a
+     *         query clause were taken from the cache
+     */
+    long getHitCount() {
+        return lookupCount.get() - missCount.get();
+    }
+
+    /**
+     * @return number of segments for which the matching documents of a
+     *         query clause had to be determined
+     */
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    private class CountingFilter extends CachingWrapperFilter {
+
+        CountingFilter(Query query) {
+            super(new QueryWrapperFilter(query));
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            lookupCount.incrementAndGet();
+            return super.getDocIdSet(context, acceptDocs);
+        }
+
+        @Override
+        protected DocIdSet docIdSetToCache(DocIdSet docIdSet, AtomicReader reader) throws IOException {
+            missCount.incrementAndGet();
+            return super.docIdSetToCache(docIdSet, reader);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.index.lucene.util;
 
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.COMPAT_MODE;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneIndexHelper.newLuceneIndexDefinition;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneIndexHelper.newLuceneFileIndexDefinition;
 
@@ -41,6 +42,8 @@ public class LuceneInitializerHelper implements RepositoryInitializer {
 
     private Boolean storageEnabled;
 
+    private Integer compatVersion;
+
     public LuceneInitializerHelper(String name) {
         this(name, LuceneIndexHelper.JR_PROPERTY_INCLUDES, null, null, null);
     }
@@ -77,18 +80,32 @@ public class LuceneInitializerHelper implements RepositoryInitializer {
         return this;
     }
 
+    /**
+     * Sets the index format version ({@code compatVersion}) of the index
+     */
+    public LuceneInitializerHelper compatVersion(int version) {
+        compatVersion = version;
+        return this;
+    }
+
     @Override
     public void initialize(@Nonnull NodeBuilder builder) {
         if (builder.hasChildNode(INDEX_DEFINITIONS_NAME)
                 && builder.getChildNode(INDEX_DEFINITIONS_NAME).hasChildNode(name)) {
             // do nothing
-        } else if (filePath == null) {
-            newLuceneIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
-                    name, propertyTypes, excludes, async, storageEnabled);
         } else {
-            newLuceneFileIndexDefinition(
-                    builder.child(INDEX_DEFINITIONS_NAME),
-                    name, propertyTypes, excludes, filePath, async);
+            NodeBuilder index;
+            if (filePath == null) {
+                index = newLuceneIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                        name, propertyTypes, excludes, async, storageEnabled);
+            } else {
+                index = newLuceneFileIndexDefinition(
+                        builder.child(INDEX_DEFINITIONS_NAME),
+                        name, propertyTypes, excludes, filePath, async);
+            }
+            if (compatVersion != null) {
+                index.setProperty(COMPAT_MODE, compatVersion);
+            }
         }
     }
 
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.io.IOException;
+
+import com.google.common.base.Strings;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.apache.tika.exception.TikaException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtractedTextCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void cacheEntries() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        Blob b1 = new IdBlob("hello", "1");
+
+        assertNull(cache.get(b1, null, 100));
+        cache.put(b1, null, "hello", 100, false);
+        assertEquals("hello", cache.get(b1, null, 100));
+        assertEquals("he", cache.get(b1, null, 2));
+
+        //Entries survive a restart
+        cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        assertEquals("hello", cache.get(b1, null, 100));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1.0, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void truncatedEntries() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        Blob b1 = new IdBlob("hello world", "1");
+
+        cache.put(b1, null, "hello", 5, true);
+        assertEquals("hello", cache.get(b1, null, 5));
+        assertEquals("hel", cache.get(b1, null, 3));
+        //Extracted with a lower limit so cannot be used
+        assertNull(cache.get(b1, null, 10));
+    }
+
+    @Test
+    public void errorEntries() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        Blob b1 = new IdBlob("hello", "1");
+
+        cache.putError(b1, null);
+        assertEquals(ExtractedTextCache.TEXT_EXTRACTION_ERROR, cache.get(b1, null, 100));
+    }
+
+    @Test
+    public void tikaConfig() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        Blob b1 = new IdBlob("hello", "1");
+        String configId = ExtractedTextCache.getConfigId("<properties/>".getBytes());
+
+        cache.put(b1, configId, "hello", 100, false);
+        assertEquals("hello", cache.get(b1, configId, 100));
+        //Not used for indexes with another configuration
+        assertNull(cache.get(b1, null, 100));
+        assertNull(cache.get(b1, ExtractedTextCache.getConfigId("<other/>".getBytes()), 100));
+    }
+
+    @Test
+    public void parserFailures() throws Exception {
+        assertTrue(ExtractedTextCache.isParserFailure(new TikaException("corrupt")));
+        assertFalse(ExtractedTextCache.isParserFailure(new IOException("blob not available")));
+    }
+
+    @Test
+    public void eviction() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot(), 1000);
+        String text = Strings.repeat("x", 290);
+        for (int i = 0; i < 3; i++) {
+            cache.put(new IdBlob(text, "b" + i), null, text, 1000, false);
+        }
+        assertEquals(0, cache.getEvictionCount());
+
+        //Make b0 the most recently used entry
+        Thread.sleep(1000);
+        assertEquals(text, cache.get(new IdBlob(text, "b0"), null, 1000));
+
+        //Exceeds the maximum size: the least recently used entries are removed
+        cache.put(new IdBlob(text, "b3"), null, text, 1000, false);
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(text, cache.get(new IdBlob(text, "b0"), null, 1000));
+        assertEquals(text, cache.get(new IdBlob(text, "b3"), null, 1000));
+    }
+
+    @Test
+    public void noContentIdentity() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(temporaryFolder.getRoot());
+        Blob b1 = new ArrayBasedBlob("hello".getBytes());
+
+        cache.put(b1, null, "hello", 100, false);
+        assertNull(cache.get(b1, null, 100));
+        assertEquals(0, temporaryFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void statsOnly() throws Exception {
+        ExtractedTextCache cache = new ExtractedTextCache(null);
+        Blob b1 = new IdBlob("hello", "1");
+
+        cache.put(b1, null, "hello", 100, false);
+        assertNull(cache.get(b1, null, 100));
+
+        cache.recordExtraction(1000, false);
+        cache.recordExtraction(1000, true);
+        assertEquals(2, cache.getExtractionCount());
+        assertEquals(1, cache.getFailureCount());
+    }
+
+    private static class IdBlob extends ArrayBasedBlob {
+        private final String id;
+
+        public IdBlob(String value, String id) {
+            super(value.getBytes());
+            this.id = id;
+        }
+
+        @Override
+        public String getContentIdentity() {
+            return id;
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Executor;
@@ -219,6 +220,71 @@ public class IndexCopierTest {
         assertTrue(baseDir.fileExists("t2"));
     }
 
+    @Test
+    public void copyOnWrite() throws Exception{
+        IndexDefinition defn = new IndexDefinition(root, builder.getNodeState());
+        IndexCopier copier = new IndexCopier(sameThreadExecutor(), getWorkDir());
+
+        Directory remote = new OakDirectory(builder.child(":data"), defn);
+        writeFile(remote, "t1");
+
+        Directory wrapped = copier.wrapForWrite(defn, (OakDirectory) remote);
+        byte[] t2 = writeFile(wrapped, "t2");
+        writeFile(wrapped, "t3");
+        wrapped.deleteFile("t3");
+        wrapped.deleteFile("t1");
+
+        //Local files are only uploaded once synced
+        assertTrue(wrapped.fileExists("t2"));
+        assertFalse(remote.fileExists("t2"));
+        assertFalse(remote.fileExists("t1"));
+        assertEquals(1, wrapped.listAll().length);
+        readAndAssert(wrapped, "t2", t2);
+        assertEquals(0, copier.getUploadCount());
+
+        wrapped.sync(Collections.singleton("t2"));
+        wrapped.sync(Collections.singleton("t2"));
+        wrapped.close();
+        assertTrue(remote.fileExists("t2"));
+        assertFalse(remote.fileExists("t3"));
+        readAndAssert(remote, "t2", t2);
+
+        assertEquals(1, copier.getUploadCount());
+        assertEquals(0, copier.getUploadQueueSize());
+        assertEquals(0, new File(getWorkDir(), "write").list().length);
+    }
+
+    @Test
+    public void copyOnWriteDiscardedUpload() throws Exception{
+        IndexDefinition defn = new IndexDefinition(root, builder.getNodeState());
+        final List<Runnable> tasks = newArrayList();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+        IndexCopier copier = new IndexCopier(executor, getWorkDir());
+
+        Directory remote = new OakDirectory(builder.child(":data"), defn);
+        Directory wrapped = copier.wrapForWrite(defn, (OakDirectory) remote);
+        writeFile(wrapped, "t1");
+        wrapped.sync(Collections.singleton("t1"));
+        assertEquals(1, copier.getUploadQueueSize());
+
+        //Deleting the file before its upload ran discards the upload
+        wrapped.deleteFile("t1");
+        assertEquals(0, copier.getUploadQueueSize());
+        for (Runnable task : tasks) {
+            task.run();
+        }
+
+        wrapped.close();
+        assertFalse(remote.fileExists("t1"));
+        assertEquals(0, copier.getUploadCount());
+        assertEquals(0, copier.getUploadQueueSize());
+    }
+
     @After
     public void close() throws IOException {
         FileUtils.deleteQuietly(getWorkDir());
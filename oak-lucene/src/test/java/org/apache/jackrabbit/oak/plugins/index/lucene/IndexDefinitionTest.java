@@ -392,11 +392,11 @@ public class IndexDefinitionTest {
     }
 
     @Test
-    public void versionPropertyIsV2() throws Exception{
+    public void versionPropertyIsV3() throws Exception{
         NodeBuilder defnb = newLucenePropertyIndexDefinition(builder, "test", of("foo"), "async");
 
         IndexDefinition defn = new IndexDefinition(root, defnb.getNodeState());
-        assertEquals(IndexFormatVersion.V2, defn.getVersion());
+        assertEquals(IndexFormatVersion.V3, defn.getVersion());
     }
 
     @Test
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
@@ -60,6 +61,7 @@ import static org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent.IN
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class LuceneIndexEditorTest {
@@ -329,6 +331,87 @@ public class LuceneIndexEditorTest {
         before = commitAndDump(before, builder.getNodeState());
     }
 
+    @Test
+    public void reopenSharesUnchangedSegments() throws Exception {
+        NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+        NodeBuilder nb = newLuceneIndexDefinitionV2(index, "lucene",
+                of(TYPENAME_STRING));
+        nb.setProperty(LuceneIndexConstants.FULL_TEXT_ENABLED, false);
+        nb.setProperty(createProperty(INCLUDE_PROPERTY_NAMES, of("foo"), STRINGS));
+        NodeState before = builder.getNodeState();
+        builder.child("test").setProperty("foo", "bar");
+        before = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        tracker.update(before);
+
+        assertEquals("/test", getPath(new TermQuery(new Term("foo", "bar"))));
+        assertEquals(0, indexNode.getReusedSegmentCount());
+        releaseIndexNode();
+
+        builder = before.builder();
+        builder.child("test2").setProperty("foo", "baz");
+        before = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        tracker.update(before);
+
+        assertEquals("/test", getPath(new TermQuery(new Term("foo", "bar"))));
+        assertEquals("/test2", getPath(new TermQuery(new Term("foo", "baz"))));
+        assertTrue(indexNode.getReusedSegmentCount() > 0);
+    }
+
+    @Test
+    public void parallelReindex() throws Exception {
+        EditorHook hook = new EditorHook(new IndexUpdateProvider(
+                new LuceneIndexEditorProvider(new ExtractedTextCache(null), 4)));
+        NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+        NodeBuilder nb = newLuceneIndexDefinitionV2(index, "lucene",
+                of(TYPENAME_STRING));
+        nb.setProperty(LuceneIndexConstants.FULL_TEXT_ENABLED, false);
+        nb.setProperty(createProperty(INCLUDE_PROPERTY_NAMES, of("foo"), STRINGS));
+
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder child = builder.child("test" + i);
+            child.setProperty("foo", "bar" + i);
+            for (int j = 0; j < 10; j++) {
+                child.child("c" + j).child("d").setProperty("foo", "baz" + i + "-" + j);
+            }
+        }
+        NodeState indexed = hook.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        tracker.update(indexed);
+
+        assertEquals(110, getSearcher().getIndexReader().numDocs());
+        assertEquals("/test3", getPath(new TermQuery(new Term("foo", "bar3"))));
+        assertEquals("/test7/c2/d", getPath(new TermQuery(new Term("foo", "baz7-2"))));
+        assertEquals(110, indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("lucene")
+                .getChildNode(":status").getProperty("indexedNodes").getValue(Type.LONG).longValue());
+    }
+
+    @Test
+    public void aggregatedNodesMemoized() throws Exception {
+        LuceneIndexEditorProvider provider = new LuceneIndexEditorProvider();
+        EditorHook hook = new EditorHook(new IndexUpdateProvider(provider));
+        NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+        NodeBuilder nb = newLuceneIndexDefinitionV2(index, "lucene",
+                of(TYPENAME_STRING));
+        nb.child(LuceneIndexConstants.AGGREGATES).child("nt:base").child("include0")
+                .setProperty(LuceneIndexConstants.AGG_PATH, "*");
+
+        NodeState before = builder.getNodeState();
+        builder.child("a").child("b").child("c").setProperty("foo", "fox is jumping");
+        NodeState indexed = hook.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        tracker.update(indexed);
+
+        //c is aggregated by b and by a (via b), the latter reusing the fields
+        //created for the former
+        AggregateStats stats = provider.getAggregateStats();
+        assertTrue(stats.getEvaluationCount() >= 3);
+        assertTrue(stats.getMemoHitCount() >= 1);
+
+        IndexDefinition defn = new IndexDefinition(root, nb.getNodeState());
+        TopDocs td = getSearcher().search(new QueryParser(VERSION, FieldNames.FULLTEXT,
+                defn.getAnalyzer()).parse("fox"), 100);
+        assertEquals(3, td.totalHits);
+    }
+
     @After
     public void releaseIndexNode(){
         if(indexNode != null){
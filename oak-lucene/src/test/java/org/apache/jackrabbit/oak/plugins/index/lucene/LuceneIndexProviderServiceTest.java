@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 import java.util.HashMap;
 
 import com.google.common.collect.ImmutableMap;
+import org.apache.jackrabbit.oak.plugins.index.IndexEditorProvider;
 import org.apache.jackrabbit.oak.spi.commit.BackgroundObserver;
 import org.apache.jackrabbit.oak.spi.commit.Observer;
 import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
@@ -45,6 +46,7 @@ public class LuceneIndexProviderServiceTest {
 
         assertNotNull(context.getService(QueryIndexProvider.class));
         assertNotNull(context.getService(Observer.class));
+        assertNotNull(context.getService(IndexEditorProvider.class));
 
         assertTrue(context.getService(Observer.class) instanceof BackgroundObserver);
 
@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -49,6 +50,7 @@ import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.nodetype.write.InitialContent;
 import org.apache.jackrabbit.oak.plugins.nodetype.write.NodeTypeRegistry;
 import org.apache.jackrabbit.oak.query.AbstractQueryTest;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.spi.commit.Observer;
 import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
 import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
@@ -78,6 +80,7 @@ import static org.apache.jackrabbit.oak.plugins.memory.PropertyStates.createProp
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.matchers.JUnitMatchers.containsString;
 
 public class LucenePropertyIndexTest extends AbstractQueryTest {
@@ -86,6 +89,8 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
      */
     static final int NUMBER_OF_NODES = LucenePropertyIndex.LUCENE_QUERY_BATCH_SIZE * 2;
 
+    private LuceneIndexProvider provider;
+
     @Override
     protected void createTestIndexNode() throws Exception {
         setTraversalEnabled(false);
@@ -93,7 +98,7 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
 
     @Override
     protected ContentRepository createRepository() {
-        LuceneIndexProvider provider = new LuceneIndexProvider();
+        provider = new LuceneIndexProvider();
         return new Oak()
                 .with(new InitialContent())
                 .with(new OpenSecurityProvider())
@@ -132,6 +137,19 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
         return index.getChild(INDEX_DEFINITIONS_NAME).getChild(name);
     }
 
+    @Test
+    public void fulltextSearchWithPathDocValues() throws Exception {
+        Tree idx = createFulltextIndex(root.getTree("/"), "test");
+        idx.setProperty(LuceneIndexConstants.COMPAT_MODE, IndexFormatVersion.V3.getVersion());
+
+        Tree test = root.getTree("/").addChild("test");
+        test.addChild("a").setProperty("foo", "fox jumping");
+        test.addChild("b").setProperty("foo", "dog sleeping");
+        root.commit();
+
+        assertQuery("select * from [nt:base] where CONTAINS(*, 'fox')", asList("/test/a"));
+    }
+
     @Test
     public void indexSelection() throws Exception {
         createIndex("test1", of("propa", "propb"));
@@ -698,6 +716,37 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
         assertSortedLong();
     }
 
+    @Test
+    public void sortQueriesWithLong_IndexSort() throws Exception {
+        Tree idx = createIndex("test1", of("foo", "bar"));
+        idx.setProperty(createProperty(ORDERED_PROP_NAMES, of("foo"), STRINGS));
+        idx.setProperty(LuceneIndexConstants.INDEX_SORT, "foo");
+        idx.setProperty(LuceneIndexConstants.INDEX_SORT_DESCENDING, true);
+        Tree propIdx = idx.addChild(PROP_NODE).addChild("foo");
+        propIdx.setProperty(LuceneIndexConstants.PROP_TYPE, PropertyType.TYPENAME_LONG);
+        root.commit();
+
+        // commit in several batches so that segments get merged and sorted
+        Tree test = root.getTree("/").addChild("test");
+        List<Long> values = createLongs(NUMBER_OF_NODES * 2);
+        List<Tuple> tuples = Lists.newArrayListWithCapacity(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Tree child = test.addChild("n" + i);
+            child.setProperty("foo", values.get(i));
+            child.setProperty("bar", "baz");
+            tuples.add(new Tuple(values.get(i), child.getPath()));
+            if (i % 10 == 9) {
+                root.commit();
+            }
+        }
+        root.commit();
+
+        assertOrderedQuery("select [jcr:path] from [nt:base] where [bar] = 'baz' order by [foo] DESC",
+                getSortedPaths(tuples, OrderDirection.DESC));
+        assertOrderedQuery("select [jcr:path] from [nt:base] where [bar] = 'baz' order by [foo]",
+                getSortedPaths(tuples, OrderDirection.ASC));
+    }
+
     @Test
     public void sortQueriesWithLong_NotIndexed() throws Exception {
         Tree idx = createIndex("test1", Collections.<String>emptySet());
@@ -817,6 +866,72 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
         assertSortedString();
     }
 
+    @Test
+    public void keysetPagination() throws Exception {
+        Tree idx = createIndex("test1", of("foo", "bar"));
+        idx.addChild(PROP_NODE).addChild("foo");
+        root.commit();
+
+        // few distinct values, so that pages end within runs of equal values
+        Tree test = root.getTree("/").addChild("test");
+        List<Tuple> tuples = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            Tree child = test.addChild("n" + i);
+            String value = "value" + (i % 4);
+            child.setProperty("foo", value);
+            child.setProperty("bar", "baz");
+            tuples.add(new Tuple(value, child.getPath()));
+        }
+        root.commit();
+
+        String query = "select [jcr:path], [foo] from [nt:base] where [bar] = 'baz' order by [foo]";
+        assertThat(explain(query), containsString("lucene:test1"));
+        assertEquals(getKeysetOrder(tuples, OrderDirection.ASC), readKeysetPages(query, 3));
+        assertEquals(getKeysetOrder(tuples, OrderDirection.DESC), readKeysetPages(query + " DESC", 3));
+    }
+
+    /**
+     * Read all pages of a query using keyset pagination, starting each page
+     * after the last row of the previous one.
+     */
+    private List<String> readKeysetPages(String query, int pageSize) throws Exception {
+        List<String> paths = Lists.newArrayList();
+        PropertyValue[] lastValues = null;
+        String lastPath = null;
+        int count;
+        do {
+            count = 0;
+            for (ResultRow row : qe.executeQuery(query, SQL2, pageSize, lastValues, lastPath,
+                    null, NO_MAPPINGS).getRows()) {
+                lastPath = row.getPath();
+                lastValues = new PropertyValue[] {row.getValue("foo")};
+                paths.add(lastPath);
+                count++;
+            }
+            assertTrue("too many rows: " + paths, paths.size() <= 20);
+        } while (count == pageSize);
+        return paths;
+    }
+
+    /**
+     * The order of keyset pagination: by value, and by path for equal values.
+     */
+    private static List<String> getKeysetOrder(List<Tuple> tuples, final OrderDirection dir) {
+        List<Tuple> sorted = Lists.newArrayList(tuples);
+        Collections.sort(sorted, new Comparator<Tuple>() {
+            @Override
+            public int compare(Tuple o1, Tuple o2) {
+                int comp = OrderDirection.DESC == dir ? o2.compareTo(o1) : o1.compareTo(o2);
+                return comp != 0 ? comp : o1.path.compareTo(o2.path);
+            }
+        });
+        List<String> paths = Lists.newArrayListWithCapacity(sorted.size());
+        for (Tuple t : sorted) {
+            paths.add(t.path);
+        }
+        return paths;
+    }
+
     void assertSortedString() throws CommitFailedException {
         Tree test = root.getTree("/").addChild("test");
         List<String> values = createStrings(NUMBER_OF_NODES);
@@ -1083,6 +1198,81 @@ public class LucenePropertyIndexTest extends AbstractQueryTest {
         assertQuery(sql, asList("/test/node1"));
     }
 
+    @Test
+    public void firstBatchSizedByLimit() throws Exception {
+        createIndex("test1", of("propa"));
+
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < NUMBER_OF_NODES * 2; i++) {
+            test.addChild("n" + i).setProperty("propa", "foo");
+        }
+        root.commit();
+
+        QueryBatchStats stats = provider.getTracker().getQueryBatchStats();
+        long batches = stats.getBatchCount();
+        int limit = NUMBER_OF_NODES + 10;
+        List<? extends ResultRow> result = Lists.newArrayList(
+            qe.executeQuery("select [jcr:path] from [nt:base] where [propa] = 'foo'", SQL2,
+                limit, 0, Maps.<String, PropertyValue>newHashMap(), NO_MAPPINGS).getRows());
+
+        assertEquals(limit, result.size());
+        assertEquals(1, stats.getBatchCount() - batches);
+    }
+
+    @Test
+    public void pathRestrictionCached() throws Exception {
+        Tree idx = createIndex("test1", of("propa"));
+        idx.setProperty(LuceneIndexConstants.EVALUATE_PATH_RESTRICTION, true);
+        idx.addChild(PROP_NODE).addChild("propa");
+        root.commit();
+
+        Tree test = root.getTree("/").addChild("test");
+        test.addChild("a").setProperty("propa", "foo");
+        test.addChild("b").setProperty("propa", "foo");
+        root.getTree("/").addChild("test2").addChild("c").setProperty("propa", "foo");
+        root.commit();
+
+        String query = "select [jcr:path] from [nt:base] as s where ISDESCENDANTNODE(s, '/test') and propa = 'foo'";
+        assertQuery(query, asList("/test/a", "/test/b"));
+
+        IndexNode indexNode = provider.getTracker().acquireIndexNode("/oak:index/test1");
+        QueryFilterCache filterCache;
+        try {
+            filterCache = indexNode.getFilterCache();
+        } finally {
+            indexNode.release();
+        }
+        long hits = filterCache.getHitCount();
+        assertTrue(filterCache.getMissCount() > 0);
+
+        assertQuery(query, asList("/test/a", "/test/b"));
+        assertTrue(filterCache.getHitCount() > hits);
+    }
+
+    @Test
+    public void firstBatchWithoutLimit() throws Exception {
+        assertEquals(LucenePropertyIndex.LUCENE_QUERY_BATCH_SIZE,
+                LucenePropertyIndex.getFirstBatchSize(new FilterImpl()));
+
+        createIndex("test1", of("propa"));
+
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < NUMBER_OF_NODES * 2; i++) {
+            test.addChild("n" + i).setProperty("propa", "foo");
+        }
+        root.commit();
+
+        QueryBatchStats stats = provider.getTracker().getQueryBatchStats();
+        long batches = stats.getBatchCount();
+        List<? extends ResultRow> result = Lists.newArrayList(
+            qe.executeQuery("select [jcr:path] from [nt:base] where [propa] = 'foo'", SQL2,
+                Long.MAX_VALUE, 0, Maps.<String, PropertyValue>newHashMap(), NO_MAPPINGS).getRows());
+
+        //A first batch of the default size needs more batches for all results
+        assertEquals(NUMBER_OF_NODES * 2, result.size());
+        assertTrue(stats.getBatchCount() - batches > 1);
+    }
+
     private String measureWithLimit(String query, String lang, int limit) throws ParseException {
         List<? extends ResultRow> result = Lists.newArrayList(
             qe.executeQuery(query, lang, limit, 0, Maps.<String, PropertyValue>newHashMap(),
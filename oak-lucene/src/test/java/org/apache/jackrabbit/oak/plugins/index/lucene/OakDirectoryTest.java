@@ -106,6 +106,44 @@ public class OakDirectoryTest {
         assertEquals((long)blobSize * (dataSize - 1), input.length());
     }
 
+    @Test
+    public void rangedReads() throws Exception{
+        IndexReadStats stats = new IndexReadStats();
+        Directory dir = new OakDirectory(builder.child(INDEX_DATA_CHILD_NAME),
+                new IndexDefinition(root, builder.getNodeState()), stats);
+        byte[] data = randomBytes(fileSize);
+        IndexOutput o = dir.createOutput("test", IOContext.DEFAULT);
+        o.writeBytes(data, data.length);
+        o.close();
+
+        IndexInput i = dir.openInput("test", IOContext.DEFAULT);
+        for (int n = 0; n < 100; n++) {
+            int pos = rnd.nextInt(fileSize - 10);
+            i.seek(pos);
+            assertEquals(data[pos], i.readByte());
+            byte[] result = new byte[10];
+            i.readBytes(result, 0, result.length);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(data, pos + 1, pos + 11), result));
+        }
+        i.close();
+
+        assertEquals(1100, stats.getRequestedBytes());
+        assertTrue(stats.getReadBytes() <= 200 * OakDirectory.READ_BUFFER_SIZE);
+    }
+
+    @Test
+    public void metadataFileBlobSize() throws Exception{
+        OakDirectory dir = (OakDirectory) createDir(builder);
+        assertEquals(OakDirectory.DEFAULT_BLOB_SIZE, dir.getBlobSize("_0.si"));
+        assertEquals(OakDirectory.DEFAULT_BLOB_SIZE, dir.getBlobSize("segments_1"));
+        assertEquals(IndexDefinition.DEFAULT_BLOB_SIZE, dir.getBlobSize("_0.cfs"));
+
+        builder.setProperty(LuceneIndexConstants.BLOB_SIZE, 300);
+        dir = (OakDirectory) createDir(builder);
+        assertEquals(300, dir.getBlobSize("_0.si"));
+        assertEquals(300, dir.getBlobSize("_0.cfs"));
+    }
+
     byte[] assertWrites(Directory dir, int blobSize) throws IOException {
         byte[] data = randomBytes(fileSize);
         IndexOutput o = dir.createOutput("test", IOContext.DEFAULT);
@@ -195,6 +195,11 @@ public class BenchmarkRunner {
             new SQL2SearchTest(),
             new DescendantSearchTest(),
             new SQL2DescendantSearchTest(),
+            new XPathOrQueryTest(false),
+            new XPathOrQueryTest(true),
+            CountQueryTest.iterate(),
+            CountQueryTest.exact(),
+            CountQueryTest.approximate(),
             new FlatTreeUpdateTest(),
             new CreateManyChildNodesTest(),
             new CreateManyNodesTest(),
@@ -204,12 +209,18 @@ public class BenchmarkRunner {
                     wikipedia.value(options),
                     flatStructure.value(options),
                     report.value(options)),
+            new LuceneReindexTest(
+                    wikipedia.value(options),
+                    flatStructure.value(options),
+                    report.value(options)),
             new RepositoryGrowthTest(wikipedia.value(options),
                     base.value(options),
                     luceneIndexOnFS.value(options)),
             new CreateNodesBenchmark(),
             new ManyNodes(),
             new ObservationTest(),
+            ObservationTest.disjointSubtrees(),
+            ObservationTest.batched(),
             new XmlImportTest(),
             new FlatTreeWithAceForSamePrincipalTest(),
             new ReadDeepTreeTest(
@@ -263,6 +274,7 @@ public class BenchmarkRunner {
             ReadManyTest.uniform("UniformReadFiles", 1, ReadManyTest.FILES),
             ReadManyTest.uniform("UniformReadNodes", 1, ReadManyTest.NODES),
             new ConcurrentCreateNodesTest(),
+            new ConcurrentHotKeyIndexTest(),
             new SequentialCreateNodesTest(),
             new CreateManyIndexedNodesTest(),
             new GetPoliciesTest(),
@@ -280,6 +292,10 @@ public class BenchmarkRunner {
                     wikipedia.value(options),
                     flatStructure.value(options),
                     report.value(options), withStorage.value(options)),
+            new LuceneSearchReadTest(
+                    wikipedia.value(options),
+                    flatStructure.value(options),
+                    report.value(options), withStorage.value(options)),
             new FullTextSolrSearchTest(
                     wikipedia.value(options),
                     flatStructure.value(options),
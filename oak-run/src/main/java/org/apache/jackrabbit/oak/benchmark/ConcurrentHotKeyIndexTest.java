@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+
+/**
+ * Concurrent writers adding nodes that all get the same value for an indexed
+ * property. Provide {@code -Dshards=N} to spread the entries of the hot key
+ * over N buckets of the property index.
+ */
+public class ConcurrentHotKeyIndexTest extends AbstractTest {
+
+    protected static final String ROOT_NODE_NAME = "test" + TEST_ID;
+    private static final int WORKER_COUNT = Integer.getInteger("workerCount", 20);
+    private static final int NODES_PER_SAVE = 10;
+    private static final long SHARDS = Long.getLong("shards", 0);
+    private static final String PROPERTY = "status";
+    private static final String HOT_VALUE = "published";
+    private Writer writer;
+    private Node index;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        Session session = loginWriter();
+        index = new OakIndexUtils.PropertyIndex().property(PROPERTY).create(session);
+        if (SHARDS > 1) {
+            index.setProperty(IndexConstants.SHARDS_PROPERTY_NAME, SHARDS);
+        }
+        Node rootNode = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < WORKER_COUNT; i++) {
+            rootNode.addNode("node" + i);
+        }
+        session.save();
+        for (int i = 1; i < WORKER_COUNT; i++) {
+            addBackgroundJob(new Writer(rootNode.getPath() + "/node" + i));
+        }
+        writer = new Writer(rootNode.getPath() + "/node" + 0);
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        Session session = index.getSession();
+        session.refresh(false);
+        session.getNode("/" + ROOT_NODE_NAME).remove();
+        index.remove();
+        session.save();
+    }
+
+    private class Writer implements Runnable {
+
+        private final Session session = loginWriter();
+        private final String path;
+        private int count = 0;
+
+        private Writer(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void run() {
+            try {
+                session.refresh(false);
+                Node root = session.getNode(path);
+                for (int i = 0; i < NODES_PER_SAVE; i++) {
+                    root.addNode("node" + count++).setProperty(PROPERTY, HOT_VALUE);
+                }
+                session.save();
+            } catch (RepositoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        writer.run();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryResult;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+import org.apache.jackrabbit.oak.jcr.query.QueryResultImpl;
+
+/**
+ * Counts the rows of a query on an indexed property, either by iterating
+ * over the result, by an exact count (reading and checking the rows
+ * internally), or by an approximate count from the index (without reading
+ * the rows).
+ */
+public class CountQueryTest extends AbstractTest {
+
+    private static final int NODE_COUNT = Integer.getInteger("countQueryNodeCount", 10000);
+
+    private static final int BATCH_SAVING_SIZE = 1024;
+
+    enum Mode {
+        ITERATE, EXACT, APPROXIMATE
+    }
+
+    private final Mode mode;
+
+    private Session session;
+
+    private Node testRoot;
+
+    private Node index;
+
+    public static Benchmark iterate() {
+        return new CountQueryTest(Mode.ITERATE);
+    }
+
+    public static Benchmark exact() {
+        return new CountQueryTest(Mode.EXACT);
+    }
+
+    public static Benchmark approximate() {
+        return new CountQueryTest(Mode.APPROXIMATE);
+    }
+
+    private CountQueryTest(Mode mode) {
+        this.mode = mode;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+        case EXACT:
+            return "CountQueryExactTest";
+        case APPROXIMATE:
+            return "CountQueryApproximateTest";
+        default:
+            return "CountQueryIterateTest";
+        }
+    }
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        session = loginWriter();
+        index = new OakIndexUtils.PropertyIndex().property("status").create(session);
+        testRoot = session.getRootNode().addNode(
+                getClass().getSimpleName() + TEST_ID, "nt:unstructured");
+        Node parent = null;
+        for (int i = 0; i < NODE_COUNT; i++) {
+            if (i % 1000 == 0) {
+                parent = testRoot.addNode("n" + i / 1000, "nt:unstructured");
+            }
+            Node n = parent.addNode("n" + i, "nt:unstructured");
+            n.setProperty("status", i % 4 == 0 ? "draft" : "published");
+            if (i % BATCH_SAVING_SIZE == 0) {
+                session.save();
+            }
+        }
+        session.save();
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        Query q = session.getWorkspace().getQueryManager().createQuery(
+                "select [jcr:path] from [nt:base] where [status] = 'published'",
+                Query.JCR_SQL2);
+        QueryResult result = q.execute();
+        long count;
+        if (mode == Mode.ITERATE) {
+            count = 0;
+            NodeIterator it = result.getNodes();
+            while (it.hasNext()) {
+                it.nextNode();
+                count++;
+            }
+        } else {
+            count = ((QueryResultImpl) result).getCount(mode == Mode.EXACT).getValue();
+        }
+        if (count <= 0) {
+            throw new AssertionError("Expected rows, got " + count);
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        testRoot.remove();
+        if (index != null) {
+            index.remove();
+        }
+        session.save();
+        session.logout();
+    }
+
+}
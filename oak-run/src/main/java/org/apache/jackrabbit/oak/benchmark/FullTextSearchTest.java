@@ -69,6 +69,12 @@ public class FullTextSearchTest extends AbstractTest<FullTextSearchTest.TestCont
 
     private int maxRowsToFetch = Integer.getInteger("maxRowsToFetch",100);
 
+    /**
+     * Index format version of the fulltext index, e.g. 3 to read the paths
+     * of the results from doc values. Uses the default version if not set.
+     */
+    private final Integer compatVersion = Integer.getInteger("compatVersion");
+
     private TestContext defaultContext;
 
     /**
@@ -161,11 +167,15 @@ public class FullTextSearchTest extends AbstractTest<FullTextSearchTest.TestCont
             return ((OakRepositoryFixture) fixture).setUpCluster(1, new JcrCreator() {
                 @Override
                 public Jcr customize(Oak oak) {
-                    LuceneIndexProvider provider = new LuceneIndexProvider();
+                    LuceneIndexProvider provider = createLuceneIndexProvider();
+                    LuceneInitializerHelper index = new LuceneInitializerHelper("luceneGlobal", storageEnabled);
+                    if (compatVersion != null) {
+                        index.compatVersion(compatVersion);
+                    }
                     oak.with((QueryIndexProvider) provider)
                        .with((Observer) provider)
                        .with(new LuceneIndexEditorProvider())
-                       .with(new LuceneInitializerHelper("luceneGlobal", storageEnabled));
+                       .with(index);
                     return new Jcr(oak);
                 }
             });
@@ -173,4 +183,8 @@ public class FullTextSearchTest extends AbstractTest<FullTextSearchTest.TestCont
         return super.createRepository(fixture);
     }
 
+    protected LuceneIndexProvider createLuceneIndexProvider() {
+        return new LuceneIndexProvider();
+    }
+
 }
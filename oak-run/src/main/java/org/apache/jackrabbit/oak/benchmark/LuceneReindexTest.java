@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.io.File;
+
+import javax.jcr.Node;
+import javax.jcr.Repository;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.benchmark.wikipedia.WikipediaImport;
+import org.apache.jackrabbit.oak.fixture.JcrCreator;
+import org.apache.jackrabbit.oak.fixture.OakRepositoryFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.jcr.Jcr;
+import org.apache.jackrabbit.oak.plugins.index.lucene.ExtractedTextCache;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneInitializerHelper;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+
+/**
+ * Measures the time needed to reindex a Lucene fulltext index over the
+ * imported Wikipedia pages. The number of reindex threads can be set via
+ * the {@code reindexThreads} system property and defaults to the number of
+ * available processors.
+ */
+public class LuceneReindexTest extends AbstractTest {
+
+    private static final String INDEX_NAME = "luceneGlobal";
+
+    private final WikipediaImport importer;
+
+    private final int reindexThreads =
+            Integer.getInteger("reindexThreads", Runtime.getRuntime().availableProcessors());
+
+    private Session session;
+
+    public LuceneReindexTest(File dump, boolean flat, boolean doReport) {
+        this.importer = new WikipediaImport(dump, flat, doReport);
+    }
+
+    @Override
+    public void beforeSuite() throws Exception {
+        session = loginWriter();
+        importer.importWikipedia(session);
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        Node index = session.getNode("/oak:index/" + INDEX_NAME);
+        index.setProperty("reindex", true);
+        long start = System.currentTimeMillis();
+        session.save();
+        System.out.format("Reindexed using %d threads in %d ms%n",
+                reindexThreads, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        session.logout();
+    }
+
+    @Override
+    protected Repository[] createRepository(RepositoryFixture fixture) throws Exception {
+        if (fixture instanceof OakRepositoryFixture) {
+            return ((OakRepositoryFixture) fixture).setUpCluster(1, new JcrCreator() {
+                @Override
+                public Jcr customize(Oak oak) {
+                    LuceneIndexProvider provider = new LuceneIndexProvider();
+                    oak.with((QueryIndexProvider) provider)
+                       .with((Observer) provider)
+                       .with(new LuceneIndexEditorProvider(new ExtractedTextCache(null), reindexThreads))
+                       .with(new LuceneInitializerHelper(INDEX_NAME));
+                    return new Jcr(oak);
+                }
+            });
+        }
+        return super.createRepository(fixture);
+    }
+
+}
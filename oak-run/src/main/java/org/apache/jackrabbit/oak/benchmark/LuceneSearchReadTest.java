@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.io.File;
+
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexProvider;
+
+/**
+ * Runs the fulltext searches of {@link FullTextSearchTest} against the Lucene
+ * index stored in the repository, without copy-on-read, and reports how many
+ * bytes were read from the blobs of the index files compared to the bytes
+ * requested by Lucene. Run with {@code -Doak.lucene.readFullChunks=true} to
+ * compare with reading whole chunks.
+ */
+public class LuceneSearchReadTest extends FullTextSearchTest {
+
+    private LuceneIndexProvider provider;
+
+    public LuceneSearchReadTest(File dump, boolean flat, boolean doReport, Boolean storageEnabled) {
+        super(dump, flat, doReport, storageEnabled);
+    }
+
+    @Override
+    protected LuceneIndexProvider createLuceneIndexProvider() {
+        provider = super.createLuceneIndexProvider();
+        return provider;
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        if (provider != null) {
+            System.out.format("Index reads: %s%n", provider.getReadStats());
+        }
+    }
+
+}
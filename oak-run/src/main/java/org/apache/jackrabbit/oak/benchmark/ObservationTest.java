@@ -27,7 +27,10 @@ import static javax.jcr.observation.Event.PROPERTY_ADDED;
 import static javax.jcr.observation.Event.PROPERTY_CHANGED;
 import static javax.jcr.observation.Event.PROPERTY_REMOVED;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -42,8 +45,31 @@ import javax.jcr.observation.EventListener;
 import javax.jcr.observation.ObservationManager;
 
 import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.fixture.JcrCreator;
+import org.apache.jackrabbit.oak.fixture.OakRepositoryFixture;
 import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.jcr.Jcr;
+import org.apache.jackrabbit.oak.jcr.observation.EventBatchListener;
+import org.apache.jackrabbit.oak.namepath.NamePathMapper;
+import org.apache.jackrabbit.oak.plugins.observation.filter.FilterBuilder;
+import org.apache.jackrabbit.oak.spi.commit.BackgroundObserver;
 
+/**
+ * Observation throughput benchmark. By default a configurable number of
+ * listeners observe the whole repository. The {@link #disjointSubtrees()}
+ * variant registers many listeners on disjoint subtrees while each commit
+ * only touches one of them, which measures the cost of skipping the
+ * listeners whose subtrees were not changed. The {@link #batched()} variant
+ * registers the listeners as {@link EventBatchListener}s instead of through
+ * the observation manager. All variants report the number of bytes allocated
+ * per delivered event.
+ * <p>
+ * Running with a large {@code saveInterval} (e.g. {@code -DsaveInterval=100000})
+ * simulates large imports. Comparing the reported time to the last event with
+ * and without {@code -Doak.observation.parallelEventGeneration=true} shows
+ * the effect of generating the events of large commits concurrently.
+ */
 public class ObservationTest extends Benchmark {
     public static final int EVENT_TYPES = NODE_ADDED | NODE_REMOVED | NODE_MOVED |
             PROPERTY_ADDED | PROPERTY_REMOVED | PROPERTY_CHANGED | PERSIST;
@@ -51,6 +77,43 @@ public class ObservationTest extends Benchmark {
     private static final int SAVE_INTERVAL = Integer.getInteger("saveInterval", 100);
     private static final int OUTPUT_RESOLUTION = 100;
     private static final int LISTENER_COUNT = Integer.getInteger("listenerCount", 100);
+    private static final int SUBTREE_LISTENER_COUNT = Integer.getInteger("subtreeListenerCount", 500);
+    private static final int SUBTREE_NODE_COUNT = Integer.getInteger("subtreeNodeCount", 50000);
+
+    enum Mode {
+        DEFAULT, DISJOINT_SUBTREES, BATCHED
+    }
+
+    private final Mode mode;
+    private final AtomicInteger batchedEventCount = new AtomicInteger();
+
+    public ObservationTest() {
+        this(Mode.DEFAULT);
+    }
+
+    private ObservationTest(Mode mode) {
+        this.mode = mode;
+    }
+
+    public static Benchmark disjointSubtrees() {
+        return new ObservationTest(Mode.DISJOINT_SUBTREES);
+    }
+
+    public static Benchmark batched() {
+        return new ObservationTest(Mode.BATCHED);
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+        case DISJOINT_SUBTREES:
+            return "ObservationDisjointSubtreesTest";
+        case BATCHED:
+            return "ObservationBatchedTest";
+        default:
+            return super.toString();
+        }
+    }
 
     @Override
     public void run(Iterable<RepositoryFixture> fixtures) {
@@ -58,11 +121,15 @@ public class ObservationTest extends Benchmark {
             if (fixture.isAvailable(1)) {
                 System.out.format("%s: Observation throughput benchmark%n", fixture);
                 try {
-                    Repository[] cluster = fixture.setUpCluster(1);
+                    ExecutorService executor = Executors.newCachedThreadPool();
+                    Repository[] cluster = setUpCluster(fixture, executor);
                     try {
-                        run(cluster[0]);
+                        if (cluster != null) {
+                            run(cluster[0]);
+                        }
                     } finally {
                         fixture.tearDownCluster();
+                        executor.shutdown();
                     }
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -71,28 +138,87 @@ public class ObservationTest extends Benchmark {
         }
     }
 
+    private Repository[] setUpCluster(RepositoryFixture fixture, final ExecutorService executor)
+            throws Exception {
+        if (mode != Mode.BATCHED) {
+            return fixture.setUpCluster(1);
+        } else if (fixture instanceof OakRepositoryFixture) {
+            return ((OakRepositoryFixture) fixture).setUpCluster(1, new JcrCreator() {
+                @Override
+                public Jcr customize(Oak oak) {
+                    for (int k = 0; k < LISTENER_COUNT; k++) {
+                        EventBatchListener listener = new EventBatchListener(
+                                "batch-listener-" + k, new FilterBuilder().build(),
+                                new Listener(batchedEventCount), NamePathMapper.DEFAULT);
+                        oak.with(new BackgroundObserver(listener, executor, 1000));
+                    }
+                    return new Jcr(oak);
+                }
+            });
+        } else {
+            System.out.format("%s: batched listeners require an Oak fixture%n", fixture);
+            return null;
+        }
+    }
+
     private void run(Repository repository) throws RepositoryException, ExecutionException, InterruptedException {
         Session session = createSession(repository);
         long t0 = System.currentTimeMillis();
+        long a0 = getAllocatedBytes();
+        int events = 0;
         try {
-            observationThroughput(repository);
+            if (mode == Mode.DISJOINT_SUBTREES) {
+                events = disjointSubtreeThroughput(repository);
+            } else {
+                events = observationThroughput(repository);
+            }
         } finally {
             System.out.println("Time elapsed: " + (System.currentTimeMillis() - t0) + " ms");
+            long allocated = getAllocatedBytes() - a0;
+            if (a0 >= 0 && events > 0) {
+                System.out.println("Allocated: " + allocated / events + " bytes/event");
+            }
             session.logout();
         }
     }
 
-    public void observationThroughput(final Repository repository)
+    /**
+     * Total number of bytes allocated by all live threads, or {@code -1} if
+     * not supported by the JVM. Allocations of threads terminating during the
+     * benchmark are not accounted for.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                long total = 0;
+                for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+                    if (bytes > 0) {
+                        total += bytes;
+                    }
+                }
+                return total;
+            }
+        }
+        return -1;
+    }
+
+    public int observationThroughput(final Repository repository)
             throws RepositoryException, InterruptedException, ExecutionException {
         long t = 0;
-        final AtomicInteger eventCount = new AtomicInteger();
+        final AtomicInteger eventCount = mode == Mode.BATCHED
+                ? batchedEventCount
+                : new AtomicInteger();
         final AtomicInteger nodeCount = new AtomicInteger();
 
-        Session[] sessions = new Session[LISTENER_COUNT];
-        EventListener[] listeners = new Listener[LISTENER_COUNT];
+        // batched listeners are registered when setting up the repository
+        int sessionCount = mode == Mode.BATCHED ? 0 : LISTENER_COUNT;
+        Session[] sessions = new Session[sessionCount];
+        EventListener[] listeners = new Listener[sessionCount];
 
         try {
-            for (int k = 0; k < LISTENER_COUNT; k++) {
+            for (int k = 0; k < sessionCount; k++) {
                 sessions[k] = createSession(repository);
                 listeners[k] = new Listener(eventCount);
                 ObservationManager obsMgr = sessions[k].getWorkspace().getObservationManager();
@@ -132,7 +258,11 @@ public class ObservationTest extends Benchmark {
             });
 
             System.out.println("ms      #node   nodes/s #event  event/s event ratio");
+            long lastSave = 0;
             while (!createNodes.isDone() || (eventCount.get() < nodeCount.get() * EVENTS_PER_NODE)) {
+                if (lastSave == 0 && createNodes.isDone()) {
+                    lastSave = System.currentTimeMillis();
+                }
                 long t0 = System.currentTimeMillis();
                 Thread.sleep(OUTPUT_RESOLUTION);
                 t += System.currentTimeMillis() - t0;
@@ -147,14 +277,97 @@ public class ObservationTest extends Benchmark {
                 System.out.format("%7d %7d %7.1f %7d %7.1f %1.2f%n", t, nc, nps, ec, eps, epn);
             }
             createNodes.get();
+            if (lastSave > 0) {
+                System.out.println("Time to last event: "
+                        + (System.currentTimeMillis() - lastSave) + " ms after last save");
+            }
+            return eventCount.get();
         } finally {
-            for (int k = 0; k < LISTENER_COUNT; k++) {
+            for (int k = 0; k < sessionCount; k++) {
                 sessions[k].getWorkspace().getObservationManager().removeEventListener(listeners[k]);
                 sessions[k].logout();
             }
         }
     }
 
+    public int disjointSubtreeThroughput(final Repository repository)
+            throws RepositoryException, InterruptedException, ExecutionException {
+        long t = 0;
+        final AtomicInteger eventCount = new AtomicInteger();
+        final AtomicInteger nodeCount = new AtomicInteger();
+
+        Session session = createSession(repository);
+        Node testRoot = session.getRootNode().addNode("observationBenchmark");
+        for (int k = 0; k < SUBTREE_LISTENER_COUNT; k++) {
+            testRoot.addNode("s" + k);
+        }
+        session.save();
+
+        Session[] sessions = new Session[SUBTREE_LISTENER_COUNT];
+        EventListener[] listeners = new Listener[SUBTREE_LISTENER_COUNT];
+
+        try {
+            for (int k = 0; k < SUBTREE_LISTENER_COUNT; k++) {
+                sessions[k] = createSession(repository);
+                listeners[k] = new Listener(eventCount);
+                ObservationManager obsMgr = sessions[k].getWorkspace().getObservationManager();
+                obsMgr.addEventListener(listeners[k], EVENT_TYPES,
+                        "/observationBenchmark/s" + k, true, null, null, false);
+            }
+
+            Future<?> createNodes = Executors.newSingleThreadExecutor().submit(new Runnable() {
+                private final Session session = createSession(repository);
+
+                @Override
+                public void run() {
+                    try {
+                        // Each commit adds SAVE_INTERVAL nodes to a single subtree,
+                        // so only one of the listeners receives events from it
+                        Node testRoot = session.getNode("/observationBenchmark");
+                        for (int c = 0; c < SUBTREE_NODE_COUNT; c++) {
+                            int commit = c / SAVE_INTERVAL;
+                            testRoot.getNode("s" + (commit % SUBTREE_LISTENER_COUNT)).addNode("n" + c);
+                            if (nodeCount.incrementAndGet() % SAVE_INTERVAL == 0) {
+                                session.save();
+                            }
+                        }
+                        session.save();
+                    } catch (RepositoryException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        session.logout();
+                    }
+                }
+            });
+
+            System.out.println("ms      #node   nodes/s #event  event/s event ratio");
+            while (!createNodes.isDone() || (eventCount.get() < nodeCount.get() * EVENTS_PER_NODE)) {
+                long t0 = System.currentTimeMillis();
+                Thread.sleep(OUTPUT_RESOLUTION);
+                t += System.currentTimeMillis() - t0;
+
+                int nc = nodeCount.get();
+                int ec = eventCount.get();
+
+                double nps = (double) nc / t * 1000;
+                double eps = (double) ec / t * 1000;
+                double epn = (double) ec / nc / EVENTS_PER_NODE;
+
+                System.out.format("%7d %7d %7.1f %7d %7.1f %1.2f%n", t, nc, nps, ec, eps, epn);
+            }
+            createNodes.get();
+            return eventCount.get();
+        } finally {
+            for (int k = 0; k < SUBTREE_LISTENER_COUNT; k++) {
+                if (sessions[k] != null) {
+                    sessions[k].getWorkspace().getObservationManager().removeEventListener(listeners[k]);
+                    sessions[k].logout();
+                }
+            }
+            session.logout();
+        }
+    }
+
     private static Session createSession(Repository repository)
             throws RepositoryException {
         return repository.login(new SimpleCredentials("admin", "admin".toCharArray()));
@@ -67,6 +67,13 @@ public abstract class OrderedIndexBaseTest extends AbstractTest {
      */
     static final boolean BATCH_SAVING = BATCH_SAVING_SIZE > 0;
 
+    /**
+     * storage of the ordered index. Provide {@code -DorderedIndexStorage=btree} for running the
+     * ordered index benchmarks against the B+tree instead of the skip list.
+     */
+    static final String ORDERED_INDEX_STORAGE = System.getProperty("orderedIndexStorage",
+        OrderedIndex.STORAGE_SKIP_LIST);
+
     /**
      * node name below which creating the test data
      */
@@ -140,6 +147,7 @@ public abstract class OrderedIndexBaseTest extends AbstractTest {
             .getString())) {
             throw new RuntimeException("The index type does not match the expected");
         }
+        index.setProperty(OrderedIndex.STORAGE, ORDERED_INDEX_STORAGE);
         session.save();
         return index;
     }
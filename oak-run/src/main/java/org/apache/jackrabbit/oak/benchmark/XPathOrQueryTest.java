@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Repository;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.fixture.JcrCreator;
+import org.apache.jackrabbit.oak.fixture.OakRepositoryFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.jcr.Jcr;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexProvider;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+
+/**
+ * XPath queries with an "or" condition over two indexed properties, which are
+ * converted to a union of two SQL-2 queries. The query matches about 100'000
+ * nodes, but only the first 10 rows are read. With "order by", both sides of
+ * the union are sorted by the index, so that they can be merged on demand
+ * instead of reading and sorting all rows.
+ */
+public class XPathOrQueryTest extends AbstractTest {
+
+    /**
+     * The number of nodes to create; about two thirds of them match.
+     */
+    private static final int NODE_COUNT = Integer.getInteger("orQueryNodeCount", 150000);
+
+    private static final int LIMIT = 10;
+
+    private static final int BATCH_SAVING_SIZE = 1024;
+
+    private final boolean orderBy;
+
+    private Session session;
+
+    private Node testRoot;
+
+    private Node index;
+
+    public XPathOrQueryTest(boolean orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    @Override
+    public String toString() {
+        return orderBy ? "XPathOrQueryOrderByTest" : "XPathOrQueryTest";
+    }
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        session = loginWriter();
+        index = defineIndex(session);
+        testRoot = session.getRootNode().addNode(
+                getClass().getSimpleName() + TEST_ID, "nt:unstructured");
+        Node parent = null;
+        for (int i = 0; i < NODE_COUNT; i++) {
+            if (i % 1000 == 0) {
+                parent = testRoot.addNode("n" + i / 1000, "nt:unstructured");
+            }
+            Node n = parent.addNode("n" + i, "nt:unstructured");
+            if (i % 2 == 0) {
+                n.setProperty("a", "x");
+            }
+            if (i % 3 == 0) {
+                n.setProperty("b", "y");
+            }
+            n.setProperty("c", (long) i);
+            if (i % BATCH_SAVING_SIZE == 0) {
+                session.save();
+            }
+        }
+        session.save();
+    }
+
+    /**
+     * Define a (synchronous) Lucene property index on the properties "a" and
+     * "b", and the ordered property "c".
+     */
+    private static Node defineIndex(Session session) throws Exception {
+        Node def = session.getRootNode().getNode("oak:index").addNode(
+                "xpathOrQuery", "oak:QueryIndexDefinition");
+        def.setProperty("type", "lucene");
+        def.setProperty("compatVersion", 2L);
+        def.setProperty("reindex", true);
+        Node props = def.addNode("indexRules", "nt:unstructured")
+                .addNode("nt:base", "nt:unstructured")
+                .addNode("properties", "nt:unstructured");
+        for (String name : new String[] {"a", "b", "c"}) {
+            Node p = props.addNode(name, "nt:unstructured");
+            p.setProperty("name", name);
+            p.setProperty("propertyIndex", true);
+            if ("c".equals(name)) {
+                p.setProperty("ordered", true);
+                p.setProperty("type", "Long");
+            }
+        }
+        session.save();
+        return def;
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        QueryManager qm = session.getWorkspace().getQueryManager();
+        String xpath = "/jcr:root" + testRoot.getPath() + "//*[@a = 'x' or @b = 'y']";
+        if (orderBy) {
+            xpath += " order by @c";
+        }
+        @SuppressWarnings("deprecation")
+        Query q = qm.createQuery(xpath, Query.XPATH);
+        q.setLimit(LIMIT);
+        NodeIterator it = q.execute().getNodes();
+        int count = 0;
+        while (it.hasNext()) {
+            it.nextNode();
+            count++;
+        }
+        if (count != LIMIT) {
+            throw new AssertionError("Expected " + LIMIT + " rows, got " + count);
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        testRoot.remove();
+        index.remove();
+        session.save();
+        session.logout();
+    }
+
+    @Override
+    protected Repository[] createRepository(RepositoryFixture fixture) throws Exception {
+        if (fixture instanceof OakRepositoryFixture) {
+            return ((OakRepositoryFixture) fixture).setUpCluster(1, new JcrCreator() {
+                @Override
+                public Jcr customize(Oak oak) {
+                    LuceneIndexProvider provider = new LuceneIndexProvider();
+                    oak.with((QueryIndexProvider) provider)
+                       .with((Observer) provider)
+                       .with(new LuceneIndexEditorProvider());
+                    return new Jcr(oak);
+                }
+            });
+        }
+        return super.createRepository(fixture);
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.tika;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.api.Blob;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.lucene.ExtractedTextCache;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.WriteOutContentHandler;
+
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+
+/**
+ * Extracts the text of all binaries below a path into an
+ * {@link ExtractedTextCache} ahead of (re)indexing. The repository is
+ * traversed by the calling thread while the binaries are parsed by a
+ * fixed number of worker threads.
+ */
+public class TextPreExtractor {
+    private final ExtractedTextCache cache;
+    private final Parser parser;
+    private final String configId;
+    private final Set<MediaType> supportedTypes;
+    private final int maxExtractLength;
+    private final int threads;
+
+    private final Set<String> seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong binaryCount = new AtomicLong();
+    private final AtomicLong cachedCount = new AtomicLong();
+    private final AtomicLong extractedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * @param cache the cache to populate
+     * @param parser the parser to extract the text with
+     * @param configId the identifier of the Tika configuration of the parser
+     *                 (see {@link ExtractedTextCache#getConfigId(byte[])}), or
+     *                 {@code null} for the default configuration
+     * @param maxExtractLength the maximum number of characters to extract
+     * @param threads the number of worker threads
+     */
+    public TextPreExtractor(ExtractedTextCache cache, Parser parser, @Nullable String configId,
+                            int maxExtractLength, int threads) {
+        this.cache = cache;
+        this.parser = parser;
+        this.configId = configId;
+        this.supportedTypes = parser.getSupportedTypes(new ParseContext());
+        this.maxExtractLength = maxExtractLength;
+        this.threads = threads;
+    }
+
+    /**
+     * Extracts the text of all binaries below the given node and waits
+     * for the extraction to finish.
+     */
+    public void extract(NodeState state, String path) throws InterruptedException {
+        //A bounded queue with the caller running the rejected tasks keeps
+        //the traversal from getting too far ahead of the workers
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads * 16),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            traverse(executor, state, path);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public long getBinaryCount() {
+        return binaryCount.get();
+    }
+
+    public long getCachedCount() {
+        return cachedCount.get();
+    }
+
+    public long getExtractedCount() {
+        return extractedCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("binaries=%d, already cached=%d, extracted=%d, failed=%d",
+                getBinaryCount(), getCachedCount(), getExtractedCount(), getFailureCount());
+    }
+
+    private void traverse(ThreadPoolExecutor executor, NodeState state, String path) {
+        String type = state.getString(JcrConstants.JCR_MIMETYPE);
+        if (type != null && supportedTypes.contains(MediaType.parse(type))) {
+            for (PropertyState property : state.getProperties()) {
+                if (property.getType().tag() != Type.BINARY.tag()) {
+                    continue;
+                }
+                Metadata metadata = new Metadata();
+                metadata.set(Metadata.CONTENT_TYPE, type);
+                if (JcrConstants.JCR_DATA.equals(property.getName())) {
+                    String encoding = state.getString(JcrConstants.JCR_ENCODING);
+                    if (encoding != null) {
+                        metadata.set(Metadata.CONTENT_ENCODING, encoding);
+                    }
+                }
+                for (Blob blob : property.getValue(Type.BINARIES)) {
+                    submit(executor, blob, metadata);
+                }
+            }
+        }
+
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            traverse(executor, child.getNodeState(), concat(path, child.getName()));
+        }
+    }
+
+    private void submit(ThreadPoolExecutor executor, final Blob blob, final Metadata metadata) {
+        binaryCount.incrementAndGet();
+        String id = blob.getContentIdentity();
+        if (id == null || !seen.add(id)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cache.get(blob, configId, maxExtractLength) != null) {
+                    cachedCount.incrementAndGet();
+                } else {
+                    extract(blob, metadata);
+                }
+            }
+        });
+    }
+
+    private void extract(Blob blob, Metadata metadata) {
+        WriteOutContentHandler handler = new WriteOutContentHandler(maxExtractLength);
+        boolean truncated = false;
+        try {
+            InputStream stream = blob.getNewStream();
+            try {
+                parser.parse(stream, handler, metadata, new ParseContext());
+            } finally {
+                stream.close();
+            }
+        } catch (LinkageError e) {
+            // Extraction libraries not present, leave it to the indexer
+            return;
+        } catch (Throwable t) {
+            if (!handler.isWriteLimitReached(t)) {
+                failureCount.incrementAndGet();
+                if (ExtractedTextCache.isParserFailure(t)) {
+                    //Errors reading the binary are left to the indexer
+                    cache.putError(blob, configId);
+                }
+                return;
+            }
+            truncated = true;
+        }
+        extractedCount.incrementAndGet();
+        cache.put(blob, configId, handler.toString(), maxExtractLength, truncated);
+    }
+}
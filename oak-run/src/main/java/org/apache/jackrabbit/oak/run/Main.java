@@ -23,6 +23,7 @@ import static org.apache.jackrabbit.oak.checkpoint.Checkpoints.CP;
 import static org.apache.jackrabbit.oak.plugins.segment.RecordType.NODE;
 import static org.apache.jackrabbit.oak.plugins.segment.file.tooling.ConsistencyChecker.checkConsistency;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
@@ -49,9 +50,11 @@ import java.util.regex.Pattern;
 import javax.jcr.Repository;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.google.common.io.Closer;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
@@ -88,6 +91,8 @@ import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
 import org.apache.jackrabbit.oak.plugins.document.util.MapDBMapFactory;
 import org.apache.jackrabbit.oak.plugins.document.util.MapFactory;
 import org.apache.jackrabbit.oak.plugins.document.util.MongoConnection;
+import org.apache.jackrabbit.oak.plugins.index.lucene.ExtractedTextCache;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorContext;
 import org.apache.jackrabbit.oak.plugins.segment.RecordId;
 import org.apache.jackrabbit.oak.plugins.segment.RecordUsageAnalyser;
 import org.apache.jackrabbit.oak.plugins.segment.Segment;
@@ -99,6 +104,7 @@ import org.apache.jackrabbit.oak.plugins.segment.compaction.CompactionStrategy.C
 import org.apache.jackrabbit.oak.plugins.segment.file.FileStore;
 import org.apache.jackrabbit.oak.plugins.segment.standby.client.StandbyClient;
 import org.apache.jackrabbit.oak.plugins.segment.standby.server.StandbyServer;
+import org.apache.jackrabbit.oak.plugins.tika.TextPreExtractor;
 import org.apache.jackrabbit.oak.scalability.ScalabilityRunner;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
@@ -107,6 +113,9 @@ import org.apache.jackrabbit.server.remoting.davex.JcrRemotingServlet;
 import org.apache.jackrabbit.webdav.jcr.JCRWebdavServerServlet;
 import org.apache.jackrabbit.webdav.server.AbstractWebdavServlet;
 import org.apache.jackrabbit.webdav.simple.SimpleWebdavServlet;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.Parser;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -187,6 +196,9 @@ public class Main {
             case REPAIR:
                 repair(args);
                 break;
+            case TIKA:
+                tika(args);
+                break;
             case HELP:
             default:
                 System.err.print("Available run modes: ");
@@ -667,6 +679,50 @@ public class Main {
         }
     }
 
+    private static void tika(String[] args) throws IOException {
+        Closer closer = Closer.create();
+        String h = "tika { /path/to/oak/repository | mongodb://host:port/database } <path/to/text/cache> [<path>]";
+        try {
+            NodeStore store = bootstrapNodeStore(args, closer, h);
+            if (args.length < 2) {
+                System.err.println("usage: " + h);
+                System.exit(1);
+            }
+            String path = args.length > 2 ? args[2] : "/";
+            NodeState state = store.getRoot();
+            for (String name : PathUtils.elements(path)) {
+                state = state.getChildNode(name);
+            }
+
+            int threads = Integer.getInteger("tika.threads", Runtime.getRuntime().availableProcessors());
+            // defaults to the limit used by indexes without a tika/maxExtractLength setting
+            int maxExtractLength = Integer.getInteger("tika.maxExtractLength", 100000);
+            long cacheSize = Long.getLong("tika.cacheSizeInMB",
+                    ExtractedTextCache.DEFAULT_MAX_SIZE / MB) * MB;
+            // the cache entries are only used by indexes with the same tika configuration
+            Parser parser = LuceneIndexEditorContext.getDefaultParser();
+            String configId = null;
+            String configPath = System.getProperty("tika.config");
+            if (configPath != null) {
+                byte[] config = Files.toByteArray(new File(configPath));
+                parser = new AutoDetectParser(new TikaConfig(new ByteArrayInputStream(config)));
+                configId = ExtractedTextCache.getConfigId(config);
+            }
+            TextPreExtractor extractor = new TextPreExtractor(
+                    new ExtractedTextCache(new File(args[1]), cacheSize),
+                    parser, configId, maxExtractLength, threads);
+
+            System.out.println("Extracting text of binaries under " + path + " using " + threads + " threads");
+            Stopwatch watch = Stopwatch.createStarted();
+            extractor.extract(state, path);
+            System.out.println("Done in " + watch + ": " + extractor);
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+    }
+
     private static void debug(String[] args) throws IOException {
         if (args.length == 0) {
             System.err.println("usage: debug <path> [id...]");
@@ -1175,7 +1231,8 @@ public class Main {
         HELP("help"),
         CHECKPOINTS("checkpoints"),
         RECOVERY("recovery"),
-        REPAIR("repair");
+        REPAIR("repair"),
+        TIKA("tika");
 
         private final String name;
 
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.scalability;
+
+import javax.annotation.Nonnull;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.oak.scalability.ScalabilityAbstractSuite.ExecutionContext;
+
+/**
+ * Searches on path and returns the first page of the results ordered by the
+ * date property only, which can be served from the head of sorted index
+ * segments (see the {@code indexSort} option of {@link ScalabilityNodeSuite}).
+ */
+public class OrderByDateSearcher extends SearchScalabilityBenchmark {
+    @SuppressWarnings("deprecation") @Override
+    protected Query getQuery(@Nonnull QueryManager qm, ExecutionContext context)
+        throws RepositoryException {
+        // /jcr:root/LongevitySearchAssets/12345//element(*, ParentType) order by @added descending
+        StringBuilder statement = new StringBuilder("/jcr:root/");
+
+        statement.append(
+            ((String) context.getMap().get(ScalabilityNodeSuite.CTX_ROOT_NODE_NAME_PROP)))
+            .append("//element(*, ")
+            .append(context.getMap().get(ScalabilityNodeSuite.CTX_ACT_NODE_TYPE_PROP)).append(")")
+            .append(" order by @").append(ScalabilityNodeSuite.DATE_PROP).append(" descending");
+
+        LOG.debug("{}", statement);
+
+        Query query = qm.createQuery(statement.toString(), Query.XPATH);
+        query.setLimit(PaginationEnabledSearcher.LIMIT);
+        return query;
+    }
+}
@@ -25,11 +25,13 @@ import javax.annotation.Nonnull;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import javax.jcr.Value;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.RowIterator;
 
+import org.apache.jackrabbit.oak.jcr.query.QueryImpl;
 import org.apache.jackrabbit.oak.scalability.ScalabilityAbstractSuite.ExecutionContext;
 
 /**
@@ -48,8 +50,15 @@ public abstract class PaginationEnabledSearcher extends SearchScalabilityBenchma
      */
     protected static final int PAGES = Integer.getInteger("pages", 5);
 
+    /**
+     * Number of rows before the first accessed page, for deep pagination
+     */
+    protected static final int DEPTH = Integer.getInteger("pageDepth", 10000);
+
     protected static final String KEYSET_VAL_PROP = "keysetval";
 
+    protected static final String KEYSET_DEPTH_POSITION_PROP = "keysetDepthPosition";
+
     protected void processResultsOffsetPagination(@Nonnull final QueryManager qm,
             ExecutionContext context) throws RepositoryException {
         for (int page = 0; page < PAGES; page++) {
@@ -61,7 +70,7 @@ public abstract class PaginationEnabledSearcher extends SearchScalabilityBenchma
         }
     }
 
-    private Node iterate(Query query) throws RepositoryException {
+    protected Node iterate(Query query) throws RepositoryException {
         QueryResult r = query.execute();
         RowIterator it = r.getRows();
         Node last = null;
@@ -93,9 +102,76 @@ public abstract class PaginationEnabledSearcher extends SearchScalabilityBenchma
         context.getMap().remove(KEYSET_VAL_PROP);
     }
 
+    protected void processResultsDeepOffsetPagination(@Nonnull final QueryManager qm,
+            ExecutionContext context) throws RepositoryException {
+        for (int page = 0; page < PAGES; page++) {
+            Query query = getQuery(qm, context);
+            query.setLimit(LIMIT);
+            query.setOffset(DEPTH + page * LIMIT);
+
+            iterate(query);
+        }
+    }
+
+    /**
+     * Accesses the pages after {@link #DEPTH} rows using the Oak keyset
+     * pagination, where the index seeks to the last row of the previous page.
+     * The position of the row at the given depth is only looked up once (as
+     * a user navigating to that page would know it from the previous page).
+     */
+    protected void processResultsDeepKeysetPagination(@Nonnull final QueryManager qm,
+            ExecutionContext context) throws RepositoryException {
+        String key = KEYSET_DEPTH_POSITION_PROP + toString();
+        KeysetPosition position = (KeysetPosition) context.getMap().get(key);
+        if (position == null) {
+            Query query = getQuery(qm, context);
+            query.setLimit(1);
+            query.setOffset(DEPTH - 1);
+            Node node = iterate(query);
+            if (node == null) {
+                return;
+            }
+            position = new KeysetPosition(node, getOrderByProperties());
+            context.getMap().put(key, position);
+        }
+
+        for (int page = 0; page < PAGES && position != null; page++) {
+            Query query = getQuery(qm, context);
+            query.setLimit(LIMIT);
+            ((QueryImpl) query).setKeyset(position.values, position.path);
+
+            Node lastNode = iterate(query);
+            position = lastNode == null ? null : new KeysetPosition(lastNode, getOrderByProperties());
+        }
+    }
+
+    /**
+     * The properties used in the order by clause, in the same order.
+     */
+    protected String[] getOrderByProperties() {
+        return new String[] {ScalabilityNodeSuite.SORT_PROP, ScalabilityNodeSuite.DATE_PROP};
+    }
+
     protected String getOrderByClause() {
         return " order by" + " @" + ScalabilityNodeSuite.SORT_PROP + " descending," + " @"
             + ScalabilityNodeSuite.DATE_PROP + " descending";
     }
-}
 
+    /**
+     * The order by values and path of the last row of a page.
+     */
+    private static class KeysetPosition {
+        private final Value[] values;
+        private final String path;
+
+        KeysetPosition(Node node, String[] orderByProperties) throws RepositoryException {
+            values = new Value[orderByProperties.length];
+            for (int i = 0; i < values.length; i++) {
+                if (node.hasProperty(orderByProperties[i])) {
+                    values[i] = node.getProperty(orderByProperties[i]).getValue();
+                }
+            }
+            path = node.getPath();
+        }
+    }
+}
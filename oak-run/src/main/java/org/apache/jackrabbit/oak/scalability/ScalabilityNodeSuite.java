@@ -124,6 +124,13 @@ public class ScalabilityNodeSuite extends ScalabilityAbstractSuite {
      */
     protected static final boolean CUSTOM_TYPE = Boolean.getBoolean("customType");
 
+    /**
+     * Controls whether the segments of the Lucene index are sorted by the
+     * date property in descending order. Only applies to the LUCENE_DOC and
+     * LUCENE_FILE_DOC index types, where the date property is ordered.
+     */
+    protected static final boolean INDEX_SORT = Boolean.getBoolean("indexSort");
+
     public static final String CTX_SEARCH_PATHS_PROP = "searchPaths";
 
     public static final String CTX_DESC_SEARCH_PATHS_PROP = "descPaths";
@@ -246,10 +253,15 @@ public class ScalabilityNodeSuite extends ScalabilityAbstractSuite {
                 propMap.put(LuceneIndexConstants.PROP_TYPE, PropertyType.TYPENAME_DATE);
                 orderedMap.put(DATE_PROP, propMap);
             case LUCENE:
-                OakIndexUtils.luceneIndexDefinition(session, "customIndex", ASYNC_INDEX,
+                Node index = OakIndexUtils.luceneIndexDefinition(session, "customIndex", ASYNC_INDEX,
                     new String[] {FILTER_PROP, DATE_PROP},
                     new String[] {PropertyType.TYPENAME_STRING, PropertyType.TYPENAME_DATE},
                     orderedMap, persistencePath);
+                if (INDEX_SORT && !orderedMap.isEmpty()) {
+                    index.setProperty(LuceneIndexConstants.INDEX_SORT, DATE_PROP);
+                    index.setProperty(LuceneIndexConstants.INDEX_SORT_DESCENDING, true);
+                    session.save();
+                }
                 break;
             case PROPERTY:
                 break;
@@ -126,11 +126,14 @@ public class ScalabilityRunner {
                                         new OrderByDate()),
                         new ScalabilityNodeSuite(withStorage.value(options))
                                 .addBenchmarks(new OrderBySearcher(),
+                                        new OrderByDateSearcher(),
                                         new SplitOrderBySearcher(),
                                         new OrderByOffsetPageSearcher(),
                                         new SplitOrderByOffsetPageSearcher(),
                                         new OrderByKeysetPageSearcher(),
                                         new SplitOrderByKeysetPageSearcher(),
+                                        new OrderByDeepOffsetPageSearcher(),
+                                        new OrderByDeepKeysetPageSearcher(),
                                         new MultiFilterOrderBySearcher(),
                                         new MultiFilterSplitOrderBySearcher(),
                                         new MultiFilterOrderByOffsetPageSearcher(),